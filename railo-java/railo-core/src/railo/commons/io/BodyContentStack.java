@@ -1,4 +1,5 @@
 package railo.commons.io;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.jsp.JspWriter;
 import javax.servlet.jsp.tagext.BodyContent;
@@ -34,11 +35,21 @@ public final class BodyContentStack {
      * @param rsp
      */
     public void init(HttpServletResponse rsp, boolean suppresswhitespace, boolean closeConn, boolean showVersion, boolean contentLength) {
+    	init(null, rsp, suppresswhitespace, closeConn, showVersion, contentLength, false);
+    }
+
+    /**
+     * initialize the BodyContentStack
+     * @param req request, used to negotiate the compression of the content
+     * @param rsp
+     * @param allowCompression compress the content when the client accepts it
+     */
+    public void init(HttpServletRequest req, HttpServletResponse rsp, boolean suppresswhitespace, boolean closeConn, boolean showVersion, boolean contentLength, boolean allowCompression) {
 //      this.base=new JSPWriterWhiteSpace(rsp,-1,false);
         if(suppresswhitespace)
-            this.base=new CFMLWriterWhiteSpace(rsp,-1,false,closeConn,showVersion,contentLength);
+            this.base=new CFMLWriterWhiteSpace(req,rsp,-1,false,closeConn,showVersion,contentLength,allowCompression);
         else 
-            this.base=new CFMLWriterImpl(rsp,-1,false,closeConn,showVersion,contentLength);
+            this.base=new CFMLWriterImpl(req,rsp,-1,false,closeConn,showVersion,contentLength,allowCompression);
     }
 
     /**
@@ -1,5 +1,6 @@
 package railo.commons.io.res.type.compress;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.HashMap;
@@ -15,6 +16,7 @@ import railo.commons.io.IOUtil;
 import railo.commons.io.SystemUtil;
 import railo.commons.io.res.Resource;
 import railo.commons.io.res.ResourceProvider;
+import railo.commons.io.res.type.file.FileResource;
 import railo.commons.io.res.type.ram.RamResourceProviderOld;
 import railo.commons.io.res.util.ResourceUtil;
 import railo.runtime.config.Config;
@@ -36,7 +38,7 @@ public final class Compress {
 	private final Resource ffile;
 	//private ResourceProvider ramProvider;
 	private long syn=-1;
-	private Resource root;
+	private volatile Resource root;
 	private Synchronizer synchronizer;
 	private long lastMod=-1;
 	private long lastCheck=-1;
@@ -45,6 +47,8 @@ public final class Compress {
 	private int mode;
 	private boolean caseSensitive;
 	private Resource temp;
+	private volatile ZipIndex index;
+	private long indexCheck=-1;
 	
 	/**
 	 * private Constructor of the class, will be invoked be getInstance
@@ -57,7 +61,10 @@ public final class Compress {
 		this.format=format;
 		this.mode=ffile.getMode();
 		if(mode==0) mode=0777;
-		load(this.caseSensitive=caseSensitive);
+		this.caseSensitive=caseSensitive;
+		// a local zip file is read with help of its central directory, it is only extracted when something is written
+		if(format!=FORMAT_ZIP || !(ffile instanceof FileResource) || !ffile.isFile())
+			load(caseSensitive);
 	}
 
 	/**
@@ -140,18 +147,48 @@ public final class Compress {
 
 	public Resource getRamProviderResource(String path) {
 		long t=System.currentTimeMillis();
-		if(t>lastCheck+2000){
-			
-			lastCheck=t;
-			t=ffile.lastModified();
-			if((lastMod-t)>10 || (t-lastMod)>10 || root==null || !root.exists()){
-				lastMod=t;
-				load(caseSensitive);
+		if(t>lastCheck+2000 || root==null){
+			synchronized (this) {
+				if(t>lastCheck+2000 || root==null){
+					lastCheck=t;
+					t=ffile.lastModified();
+					if((lastMod-t)>10 || (t-lastMod)>10 || root==null || !root.exists()){
+						lastMod=t;
+						index=null;
+						load(caseSensitive);
+					}
+				}
 			}
 		}
 		return root.getRealResource(path);//ramProvider.getResource(path);
 	}
 
+	/**
+	 * returns the index of the zip file used to read it without extracting it,
+	 * the index is read again when the file has changed (checked at most every 2 seconds)
+	 * @return index or null when the archive is extracted (written before), not a local zip file or can not be read this way
+	 */
+	ZipIndex getIndex() {
+		if(root!=null || format!=FORMAT_ZIP || !(ffile instanceof FileResource)) return null;
+		ZipIndex index=this.index;
+		long t=System.currentTimeMillis();
+		if(index!=null && t<=indexCheck+2000) return index;
+		synchronized (this) {
+			if(root!=null) return null;
+			File file=(File) ffile;
+			if(this.index==null || !this.index.isValid(file)) {
+				try {
+					this.index=file.isFile()?ZipIndex.load(file, caseSensitive):null;
+				}
+				catch (IOException e) {
+					this.index=null;
+				}
+			}
+			indexCheck=t;
+			return this.index;
+		}
+	}
+
 	/**
 	 * @return the zipFile
 	 */
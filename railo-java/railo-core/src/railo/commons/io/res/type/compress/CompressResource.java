@@ -44,6 +44,14 @@ public final class CompressResource extends ResourceSupport {
 		return zip.getRamProviderResource(path);
 	}
 
+	/**
+	 * @param index
+	 * @return entry of the zip index matching this resource or null
+	 */
+	private ZipIndex.Entry getEntry(ZipIndex index) {
+		return index.get(path);
+	}
+
 	/**
 	 * @see railo.commons.io.res.Resource#exists()
 	 */
@@ -54,6 +62,8 @@ public final class CompressResource extends ResourceSupport {
 		catch (IOException e) {
 			return false;
 		}
+		ZipIndex index=zip.getIndex();
+		if(index!=null) return getEntry(index)!=null;
 		return getRamResource().exists();
 	}
 
@@ -62,6 +72,12 @@ public final class CompressResource extends ResourceSupport {
 	 */
 	public InputStream getInputStream() throws IOException {
 		ResourceUtil.checkGetInputStreamOK(this);
+		ZipIndex index=zip.getIndex();
+		if(index!=null) {
+			ZipIndex.Entry entry=getEntry(index);
+			if(entry==null) throw new IOException("file ["+getPath()+"] does not exists");
+			return index.getInputStream(entry);
+		}
 		return getRamResource().getInputStream();
 	}
 
@@ -115,6 +131,7 @@ public final class CompressResource extends ResourceSupport {
 	 * @see railo.commons.io.res.Resource#isAbsolute()
 	 */
 	public boolean isAbsolute() {
+		if(zip.getIndex()!=null) return true;
 		return getRamResource().isAbsolute();
 	}
 
@@ -122,6 +139,11 @@ public final class CompressResource extends ResourceSupport {
 	 * @see railo.commons.io.res.Resource#isDirectory()
 	 */
 	public boolean isDirectory() {
+		ZipIndex index=zip.getIndex();
+		if(index!=null) {
+			ZipIndex.Entry entry=getEntry(index);
+			return entry!=null && entry.isDirectory();
+		}
 		return getRamResource().isDirectory();
 	}
 
@@ -129,6 +151,11 @@ public final class CompressResource extends ResourceSupport {
 	 * @see railo.commons.io.res.Resource#isFile()
 	 */
 	public boolean isFile() {
+		ZipIndex index=zip.getIndex();
+		if(index!=null) {
+			ZipIndex.Entry entry=getEntry(index);
+			return entry!=null && !entry.isDirectory();
+		}
 		return getRamResource().isFile();
 	}
 
@@ -136,6 +163,8 @@ public final class CompressResource extends ResourceSupport {
 	 * @see railo.commons.io.res.Resource#isReadable()
 	 */
 	public boolean isReadable() {
+		ZipIndex index=zip.getIndex();
+		if(index!=null) return getEntry(index)!=null;
 		return getRamResource().isReadable();
 	}
 
@@ -143,6 +172,8 @@ public final class CompressResource extends ResourceSupport {
 	 * @see railo.commons.io.res.Resource#isWriteable()
 	 */
 	public boolean isWriteable() {
+		ZipIndex index=zip.getIndex();
+		if(index!=null) return getEntry(index)!=null;
 		return getRamResource().isWriteable();
 	}
 
@@ -150,6 +181,11 @@ public final class CompressResource extends ResourceSupport {
 	 * @see railo.commons.io.res.Resource#lastModified()
 	 */
 	public long lastModified() {
+		ZipIndex index=zip.getIndex();
+		if(index!=null) {
+			ZipIndex.Entry entry=getEntry(index);
+			return entry==null?0:entry.getTime();
+		}
 		return getRamResource().lastModified();
 	}
 
@@ -157,6 +193,11 @@ public final class CompressResource extends ResourceSupport {
 	 * @see railo.commons.io.res.Resource#length()
 	 */
 	public long length() {
+		ZipIndex index=zip.getIndex();
+		if(index!=null) {
+			ZipIndex.Entry entry=getEntry(index);
+			return entry==null?0:entry.getSize();
+		}
 		return getRamResource().length();
 	}
 
@@ -178,6 +219,11 @@ public final class CompressResource extends ResourceSupport {
 	 * @see railo.commons.io.res.util.ResourceSupport#list()
 	 */
 	public String[] list() {
+		ZipIndex index=zip.getIndex();
+		if(index!=null) {
+			ZipIndex.Entry entry=getEntry(index);
+			return entry==null?null:index.list(entry);
+		}
 		return getRamResource().list();
 	}
 
@@ -254,6 +300,8 @@ public final class CompressResource extends ResourceSupport {
 	 * @see railo.commons.io.res.Resource#getMode()
 	 */
 	public int getMode() {
+		ZipIndex index=zip.getIndex();
+		if(index!=null) return getEntry(index)==null?0:0777;
 		return getRamResource().getMode();
 	}
 
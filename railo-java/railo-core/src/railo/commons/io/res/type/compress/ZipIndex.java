@@ -0,0 +1,383 @@
+package railo.commons.io.res.type.compress;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * read only index of a zip file built from its central directory, so a entry can be read without extracting the archive.
+ * Stored entries are read directly from the file (memory mapped when they are large), deflated entries are inflated while they are read.
+ * Zip64 archives and encrypted entries are not supported, for them load returns null.
+ */
+final class ZipIndex {
+
+	private static final int LOCAL_HEADER=0x04034b50;
+	private static final int CENTRAL_HEADER=0x02014b50;
+	private static final int END_HEADER=0x06054b50;
+	private static final int END_SIZE=22;
+	private static final int MAX_COMMENT=0xFFFF;
+	private static final int METHOD_STORED=0;
+	private static final int METHOD_DEFLATED=8;
+	// stored entries of this size or bigger are mapped into memory, smaller ones are simply read
+	private static final long MIN_MAPPED=64*1024;
+
+	private final File file;
+	private final long lastModified;
+	private final long length;
+	private final boolean caseSensitive;
+	private final Map<String,Entry> entries=new HashMap<String,Entry>();
+
+	private ZipIndex(File file, boolean caseSensitive) {
+		this.file=file;
+		this.lastModified=file.lastModified();
+		this.length=file.length();
+		this.caseSensitive=caseSensitive;
+		Entry root=new Entry("",true);
+		root.time=lastModified;
+		entries.put("",root);
+	}
+
+	/**
+	 * reads the central directory of the given zip file
+	 * @param file
+	 * @param caseSensitive
+	 * @return index or null when the archive cannot be read this way (zip64, encrypted entries)
+	 * @throws IOException
+	 */
+	static ZipIndex load(File file, boolean caseSensitive) throws IOException {
+		ZipIndex index=new ZipIndex(file,caseSensitive);
+		RandomAccessFile raf=new RandomAccessFile(file,"r");
+		try {
+			return index.read(raf)?index:null;
+		}
+		finally {
+			raf.close();
+		}
+	}
+
+	private boolean read(RandomAccessFile raf) throws IOException {
+		// the end of central directory record is at the end of the file, followed only by the comment
+		int size=(int)Math.min(length, END_SIZE+MAX_COMMENT);
+		if(size<END_SIZE) return length==0;
+		byte[] tail=new byte[size];
+		raf.seek(length-size);
+		raf.readFully(tail);
+		int end=-1;
+		for(int i=size-END_SIZE;i>=0;i--) {
+			if(getInt(tail,i)==END_HEADER) {
+				end=i;
+				break;
+			}
+		}
+		if(end==-1) throw new IOException("["+file+"] is not a valid zip file");
+		int count=getShort(tail,end+10);
+		long cdSize=getUInt(tail,end+12);
+		long cdOffset=getUInt(tail,end+16);
+		if(count==0xFFFF || cdSize==0xFFFFFFFFL || cdOffset==0xFFFFFFFFL) return false;
+
+		byte[] cd=new byte[(int)cdSize];
+		raf.seek(cdOffset);
+		raf.readFully(cd);
+		int pos=0,nameLength,flags;
+		String name;
+		Entry e;
+		for(int i=0;i<count;i++) {
+			if(getInt(cd,pos)!=CENTRAL_HEADER) throw new IOException("["+file+"] has a invalid central directory");
+			flags=getShort(cd,pos+8);
+			if((flags&1)!=0) return false;
+			nameLength=getShort(cd,pos+28);
+			name=new String(cd,pos+46,nameLength,"UTF-8");
+			e=new Entry(name,name.endsWith("/"));
+			e.method=getShort(cd,pos+10);
+			e.time=dosToJavaTime(getUInt(cd,pos+12));
+			e.compressedSize=getUInt(cd,pos+20);
+			e.size=getUInt(cd,pos+24);
+			e.offset=getUInt(cd,pos+42);
+			add(e);
+			pos+=46+nameLength+getShort(cd,pos+30)+getShort(cd,pos+32);
+		}
+		return true;
+	}
+
+	private void add(Entry e) {
+		String path=normalize(e.name);
+		if(path.length()==0) return;
+		e.name=path.substring(path.lastIndexOf('/')+1);
+		String key=toKey(path);
+		Entry existing=entries.get(key);
+		// a directory implicitly created by a child before
+		if(existing!=null && existing.directory && e.directory) {
+			existing.time=e.time;
+			return;
+		}
+		entries.put(key, e);
+
+		// register the entry by its parent, the parents are created when they are not in the archive
+		int index=path.lastIndexOf('/');
+		String parentPath=index==-1?"":path.substring(0,index);
+		Entry parent=entries.get(toKey(parentPath));
+		if(parent==null) {
+			parent=new Entry(parentPath,true);
+			parent.time=lastModified;
+			add(parent);
+		}
+		if(parent.children==null) parent.children=new ArrayList<String>();
+		if(existing==null) parent.children.add(e.name);
+	}
+
+	/**
+	 * @param file
+	 * @return is this the index of the given file in its current state
+	 */
+	boolean isValid(File file) {
+		return this.file.equals(file) && file.lastModified()==lastModified && file.length()==length;
+	}
+
+	/**
+	 * @param path
+	 * @return entry matching the given path or null
+	 */
+	Entry get(String path) {
+		return entries.get(toKey(normalize(path)));
+	}
+
+	/**
+	 * @param entry
+	 * @return names of the children of the given directory
+	 */
+	String[] list(Entry entry) {
+		if(!entry.directory) return null;
+		if(entry.children==null) return new String[0];
+		return entry.children.toArray(new String[entry.children.size()]);
+	}
+
+	/**
+	 * @param entry
+	 * @return stream of the data of the given entry
+	 * @throws IOException
+	 */
+	InputStream getInputStream(Entry entry) throws IOException {
+		if(entry.directory) throw new IOException("can't read directory ["+entry.name+"]");
+		if(entry.method!=METHOD_STORED && entry.method!=METHOD_DEFLATED)
+			throw new IOException("can't read entry ["+entry.name+"] of ["+file+"], compression method ["+entry.method+"] is not supported");
+
+		RandomAccessFile raf=new RandomAccessFile(file,"r");
+		try {
+			long offset=getDataOffset(raf, entry);
+			if(entry.method==METHOD_STORED) {
+				if(entry.size>=MIN_MAPPED) {
+					ByteBuffer bb = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, offset, entry.size);
+					return new MappedInputStream(bb);
+				}
+				byte[] barr=new byte[(int)entry.size];
+				raf.seek(offset);
+				raf.readFully(barr);
+				return new ByteArrayInputStream(barr);
+			}
+			InputStream is=new InflatingInputStream(new RegionInputStream(raf,offset,entry.compressedSize),entry.size);
+			raf=null;
+			return is;
+		}
+		finally {
+			if(raf!=null)raf.close();
+		}
+	}
+
+	/**
+	 * the local header can have a other extra field than the central directory, so it is read to find the data
+	 */
+	private long getDataOffset(RandomAccessFile raf, Entry entry) throws IOException {
+		if(entry.dataOffset!=-1) return entry.dataOffset;
+		byte[] header=new byte[30];
+		raf.seek(entry.offset);
+		raf.readFully(header);
+		if(getInt(header,0)!=LOCAL_HEADER) throw new IOException("invalid local header for entry ["+entry.name+"] in ["+file+"]");
+		return entry.dataOffset=entry.offset+30+getShort(header,26)+getShort(header,28);
+	}
+
+	private String toKey(String path) {
+		return caseSensitive?path:path.toLowerCase();
+	}
+
+	/**
+	 * @param path
+	 * @return path without leading and trailing slashes and without empty elements
+	 */
+	static String normalize(String path) {
+		StringBuilder sb=new StringBuilder(path.length());
+		char c;
+		for(int i=0;i<path.length();i++) {
+			c=path.charAt(i);
+			if(c=='\\')c='/';
+			if(c=='/' && (sb.length()==0 || sb.charAt(sb.length()-1)=='/')) continue;
+			sb.append(c);
+		}
+		if(sb.length()>0 && sb.charAt(sb.length()-1)=='/') sb.setLength(sb.length()-1);
+		return sb.toString();
+	}
+
+	private static int getShort(byte[] barr, int off) {
+		return (barr[off]&0xff) | ((barr[off+1]&0xff)<<8);
+	}
+
+	private static int getInt(byte[] barr, int off) {
+		return getShort(barr,off) | (getShort(barr,off+2)<<16);
+	}
+
+	private static long getUInt(byte[] barr, int off) {
+		return getInt(barr,off)&0xFFFFFFFFL;
+	}
+
+	private static long dosToJavaTime(long dtime) {
+		Calendar c=Calendar.getInstance();
+		c.clear();
+		c.set((int)(((dtime>>25)&0x7f)+1980), (int)(((dtime>>21)&0x0f)-1), (int)((dtime>>16)&0x1f),
+				(int)((dtime>>11)&0x1f), (int)((dtime>>5)&0x3f), (int)((dtime<<1)&0x3e));
+		return c.getTimeInMillis();
+	}
+
+	static final class Entry {
+		private String name;
+		private final boolean directory;
+		private int method;
+		private long time;
+		private long size;
+		private long compressedSize;
+		private long offset;
+		private volatile long dataOffset=-1;
+		private List<String> children;
+
+		private Entry(String name, boolean directory) {
+			this.name=name;
+			this.directory=directory;
+		}
+
+		boolean isDirectory() {
+			return directory;
+		}
+
+		long getTime() {
+			return time;
+		}
+
+		long getSize() {
+			return directory?0:size;
+		}
+	}
+
+	/**
+	 * stream of a memory mapped entry
+	 */
+	private static final class MappedInputStream extends InputStream {
+		private final ByteBuffer bb;
+
+		private MappedInputStream(ByteBuffer bb) {
+			this.bb=bb;
+		}
+
+		public int read() {
+			return bb.hasRemaining()?bb.get()&0xff:-1;
+		}
+
+		public int read(byte[] b, int off, int len) {
+			if(len==0) return 0;
+			if(!bb.hasRemaining()) return -1;
+			len=Math.min(len, bb.remaining());
+			bb.get(b, off, len);
+			return len;
+		}
+
+		public long skip(long n) {
+			int len=(int)Math.max(0,Math.min(n, bb.remaining()));
+			bb.position(bb.position()+len);
+			return len;
+		}
+
+		public int available() {
+			return bb.remaining();
+		}
+	}
+
+	/**
+	 * stream of a region of the file, reads with positions so the file pointer is not shared
+	 */
+	private static final class RegionInputStream extends InputStream {
+		private final RandomAccessFile raf;
+		private final FileChannel channel;
+		private long pos;
+		private final long end;
+		// the inflater needs a additional dummy byte at the end of the data of a entry without zlib wrapper
+		private boolean dummy=true;
+
+		private RegionInputStream(RandomAccessFile raf, long offset, long length) {
+			this.raf=raf;
+			this.channel=raf.getChannel();
+			this.pos=offset;
+			this.end=offset+length;
+		}
+
+		public int read() throws IOException {
+			byte[] b=new byte[1];
+			return read(b,0,1)==-1?-1:b[0]&0xff;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			if(len==0) return 0;
+			if(pos>=end) {
+				if(!dummy) return -1;
+				dummy=false;
+				b[off]=0;
+				return 1;
+			}
+			len=(int)Math.min(len, end-pos);
+			int read=channel.read(ByteBuffer.wrap(b, off, len), pos);
+			if(read==-1) throw new EOFException("unexpected end of zip file");
+			pos+=read;
+			return read;
+		}
+
+		public void close() throws IOException {
+			raf.close();
+		}
+	}
+
+	private static final class InflatingInputStream extends InflaterInputStream {
+		private long remaining;
+		private boolean closed;
+
+		private InflatingInputStream(InputStream in, long size) {
+			super(in, new Inflater(true), (int)Math.max(512, Math.min(8192, size)));
+			this.remaining=size;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read=super.read(b, off, len);
+			if(read>0) remaining-=read;
+			return read;
+		}
+
+		public int available() throws IOException {
+			if(closed) return 0;
+			return (int)Math.min(Integer.MAX_VALUE, Math.max(0,remaining));
+		}
+
+		public void close() throws IOException {
+			if(closed) return;
+			closed=true;
+			inf.end();
+			super.close();
+		}
+	}
+}
@@ -2,7 +2,10 @@ package railo.runtime;
 
 import java.net.URL;
 import java.util.Iterator;
-import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.servlet.Servlet;
 import javax.servlet.ServletRequest;
@@ -23,10 +26,8 @@ import railo.runtime.engine.CFMLEngineImpl;
 import railo.runtime.engine.ThreadLocalPageContext;
 import railo.runtime.exp.RequestTimeoutException;
 import railo.runtime.lock.LockManager;
-import railo.runtime.lock.LockManagerImpl;
 import railo.runtime.query.QueryCache;
-import railo.runtime.type.Collection;
-import railo.runtime.type.KeyImpl;
+import railo.runtime.thread.ChildThreadExecutor;
 import railo.runtime.type.List;
 import railo.runtime.type.Struct;
 import railo.runtime.type.StructImpl;
@@ -41,11 +42,19 @@ public final class CFMLFactoryImpl extends CFMLFactory {
 	
 	private static JspEngineInfo info=new JspEngineInfoImpl("1.0");
 	private ConfigWebImpl config;
-	Stack<PageContext> pcs=new Stack<PageContext>();
-    private Struct runningPcs=new StructImpl();
-    int idCounter=1;
+	// idle PageContexts ready for reuse, no lock is needed to borrow or return a PageContext
+	private ConcurrentLinkedQueue<PageContext> pcs=new ConcurrentLinkedQueue<PageContext>();
+	private AtomicInteger idle=new AtomicInteger();
+	// lowest number of idle PageContexts since the last trim, this PageContexts were not needed and can be dropped
+	private volatile int idleLow;
+	private AtomicLong created=new AtomicLong();
+	private AtomicLong reused=new AtomicLong();
+	private AtomicLong dropped=new AtomicLong();
+    private ConcurrentHashMap<Integer,PageContextImpl> runningPcs=new ConcurrentHashMap<Integer,PageContextImpl>();
+    private AtomicInteger idCounter=new AtomicInteger(1);
     private QueryCache queryCache;
     private ScopeContext scopeContext=new ScopeContext();
+    private ChildThreadExecutor childThreadExecutor=new ChildThreadExecutor();
     private String label;
 	private HttpServlet servlet;
 	private URL url=null;
@@ -66,10 +75,9 @@ public final class CFMLFactoryImpl extends CFMLFactory {
      * reset the PageContexes
      */
     public void resetPageContext() {
-        SystemOut.printDate(config.getOutWriter(),"Reset "+pcs.size()+" Unused PageContexts");
-        synchronized(pcs) {
-            pcs.clear();
-        }
+        SystemOut.printDate(config.getOutWriter(),"Reset "+idle.get()+" Unused PageContexts");
+        while(pcs.poll()!=null) idle.decrementAndGet();
+        idleLow=0;
     }
     
 	/**
@@ -107,9 +115,7 @@ public final class CFMLFactoryImpl extends CFMLFactory {
 		int bufferSize,
 		boolean autoflush)  {
         //runningCount++;
-        synchronized (pcs) {
-            return getPageContextImpl(servlet, req, rsp, errorPageURL, needsSession, bufferSize, autoflush,true,false);
-        }
+        return getPageContextImpl(servlet, req, rsp, errorPageURL, needsSession, bufferSize, autoflush,true,false);
 	}
 	
 	public PageContextImpl getPageContextImpl(
@@ -122,14 +128,19 @@ public final class CFMLFactoryImpl extends CFMLFactory {
 				boolean autoflush,boolean registerPageContext2Thread,boolean isChild)  {
 		        //runningCount++;
 				PageContextImpl pc;
-        		synchronized (pcs) {
-		            if(pcs.isEmpty()) pc=new PageContextImpl(scopeContext,config,queryCache,idCounter++,servlet);
-		            else pc=((PageContextImpl)pcs.pop());
-		            runningPcs.setEL(ArgumentIntKey.init(pc.getId()),pc);
-		            this.servlet=servlet;
-		            if(registerPageContext2Thread)ThreadLocalPageContext.register(pc);
-		    		
-		        }
+				pc=(PageContextImpl) pcs.poll();
+				if(pc==null) {
+					pc=new PageContextImpl(scopeContext,config,queryCache,idCounter.getAndIncrement(),servlet);
+					created.incrementAndGet();
+				}
+				else {
+					int i=idle.decrementAndGet();
+					if(i<idleLow) idleLow=i;
+					reused.incrementAndGet();
+				}
+	            runningPcs.put(new Integer(pc.getId()),pc);
+	            this.servlet=servlet;
+	            if(registerPageContext2Thread)ThreadLocalPageContext.register(pc);
 		        pc.initialize(servlet,req,rsp,errorPageURL,needsSession,bufferSize,autoflush,isChild);
 		        return pc;
 			}
@@ -150,11 +161,13 @@ public final class CFMLFactoryImpl extends CFMLFactory {
         pc.release();
         ThreadLocalPageContext.release();
         //if(!pc.hasFamily()){
-			synchronized (pcs) {
-	            runningPcs.removeEL(ArgumentIntKey.init(pc.getId()));
-	            pcs.push(pc);
-	            SystemOut.printDate(config.getOutWriter(),"Release: ("+pc.getId()+")");
-	        }
+            runningPcs.remove(new Integer(pc.getId()));
+            // the pool is full, the PageContext is left to the garbage collector
+            if(idle.incrementAndGet()>config.getPageContextPoolMax()) {
+            	idle.decrementAndGet();
+            	dropped.incrementAndGet();
+            }
+            else pcs.offer(pc);
        /*}
         else {
         	 SystemOut.printDate(config.getOutWriter(),"Unlink: ("+pc.getId()+")");
@@ -166,38 +179,54 @@ public final class CFMLFactoryImpl extends CFMLFactory {
 	 */
 	public void checkTimeout() {
 		if(!engine.allowRequestTimeout())return;
-		synchronized (pcs) {
-            //int len=runningPcs.size();
-			Iterator it = runningPcs.keyIterator();
-            PageContext pc;
-            Collection.Key key;
+        //int len=runningPcs.size();
+		// the iterator of the concurrent map does not lock, requests can start and end while it runs
+		Iterator<PageContextImpl> it = runningPcs.values().iterator();
+            PageContextImpl pc;
+            Thread thread;
+            long generation;
             while(it.hasNext()) {
-            	key=KeyImpl.toKey(it.next(),null);
-                //print.out("key:"+key);
-                pc=(PageContext) runningPcs.get(key,null);
-                if(pc==null) {
-                	runningPcs.removeEL(key);
-                	continue;
-                }
+                pc=it.next();
+                // the request can end while it is checked, the timeout is only set when it is still the same request
+                generation=pc.getGeneration();
+                thread=pc.getThread();
+                if(thread==null) continue;
                 
                 long timeout=pc.getRequestTimeout();
                 if(pc.getStartTime()+timeout<System.currentTimeMillis()) {
-                    terminate(pc);
+                	// the request was already asked to end
+                	if(!pc.isRequestTimeout())terminate(pc,thread,generation);
                 }
                 // after 10 seconds downgrade priority of the thread
-                else if(pc.getStartTime()+10000<System.currentTimeMillis() && pc.getThread().getPriority()!=Thread.MIN_PRIORITY) {
+                else if(pc.getStartTime()+10000<System.currentTimeMillis() && thread.getPriority()!=Thread.MIN_PRIORITY) {
                     Log log = config.getRequestTimeoutLogger();
                     if(log!=null)log.warn("controler","downgrade priority of the a thread at "+getPath(pc));
                     try {
-                    	pc.getThread().setPriority(Thread.MIN_PRIORITY);
+                    	thread.setPriority(Thread.MIN_PRIORITY);
                     }
                     catch(Throwable t) {}
                 }
             }
-        }
 	}
 	
+	/**
+	 * ends the given request, the thread is not stopped, the request ends with a RequestTimeoutException the next time it checks
+	 * for the timeout (loop iteration, function call) or when the blocking operation it waits for is aborted.
+	 * So the request leaves all locks, pooled connections ... in a clean state.
+	 * @param pc
+	 */
 	public static void terminate(PageContext pc) {
+		PageContextImpl pci=(PageContextImpl)pc;
+		terminate(pci,pci.getThread(),pci.getGeneration());
+	}
+	
+	/**
+	 * ends the given request, when it is still the request running on the given thread with the given generation
+	 * @param pc
+	 * @param thread
+	 * @param generation
+	 */
+	private static void terminate(PageContextImpl pc, Thread thread, long generation) {
 		Log log = pc.getConfig().getRequestTimeoutLogger();
         LockManager manager = pc.getConfig().getLockManager();
         String[] locks = manager.getOpenLockNames();
@@ -205,11 +234,10 @@ public final class CFMLFactoryImpl extends CFMLFactory {
         if(StringUtil.isEmpty(strLocks))strLocks="no open locks";
         else //manager.unlock(pc.getId());
         strLocks="open locks ("+strLocks+")";
-        LockManagerImpl.unlockAll(pc.getId());
         
-        if(log!=null)log.error("controler",
-        		"stop thread ("+pc.getId()+") because run into a timeout "+getPath(pc)+". "+strLocks);
-        pc.getThread().stop(new RequestTimeoutException(pc,"request ("+getPath(pc)+":"+pc.getId()+") is run into a timeout ("+(pc.getRequestTimeout()/1000)+" seconds) and has been stopped. "+strLocks));
+        String path=getPath(pc);
+        if(pc.requestTimeout(thread,generation,new RequestTimeoutException(pc,"request ("+path+":"+pc.getId()+") is run into a timeout ("+(pc.getRequestTimeout()/1000)+" seconds) and has been stopped. "+strLocks)) && log!=null)
+        	log.error("controler","stop request ("+pc.getId()+") because run into a timeout "+path+". "+strLocks);
         
 	}
 
@@ -301,11 +329,54 @@ public final class CFMLFactoryImpl extends CFMLFactory {
 		this.config=config;
 	}
 
+	/**
+	 * @return copy of the running PageContexts, the key is the id of the PageContext
+	 */
 	public Struct getRunningPageContextes() {
-		return runningPcs;
+		Struct sct=new StructImpl();
+		Iterator<PageContextImpl> it = runningPcs.values().iterator();
+		PageContextImpl pc;
+		while(it.hasNext()) {
+			pc=it.next();
+			sct.setEL(ArgumentIntKey.init(pc.getId()),pc);
+		}
+		return sct;
 	}
 
 	public long getPageContextesSize() {
 		return SizeOf.size(pcs);
 	}
+
+	/**
+	 * drops the idle PageContexts that were not used since the last call of this method (called every minute)
+	 */
+	public void trimPageContextPool() {
+		int toDrop=idleLow;
+		while(toDrop-->0 && pcs.poll()!=null) {
+			idle.decrementAndGet();
+			dropped.incrementAndGet();
+		}
+		idleLow=idle.get();
+	}
+
+	/**
+	 * @return executor of the cfthread threads of this context
+	 */
+	public ChildThreadExecutor getChildThreadExecutor() {
+		return childThreadExecutor;
+	}
+
+	/**
+	 * @return statistic of the PageContext pool
+	 */
+	public Struct getPageContextPoolInfo() {
+		Struct sct=new StructImpl();
+		sct.setEL("max",new Double(config.getPageContextPoolMax()));
+		sct.setEL("idle",new Double(idle.get()));
+		sct.setEL("running",new Double(runningPcs.size()));
+		sct.setEL("created",new Double(created.get()));
+		sct.setEL("reused",new Double(reused.get()));
+		sct.setEL("dropped",new Double(dropped.get()));
+		return sct;
+	}
 }
\ No newline at end of file
@@ -258,6 +258,13 @@ public abstract class ComponentPage extends PagePlus  {
         		pc.variablesScope().setEL("AMF-Forward", rtn);
         		//ThreadLocalWDDXResult.set(rtn);
         	}
+        	// JSON is written directly to the response, without building the complete string first
+        	else if(UDF.RETURN_FORMAT_JSON==props.format && props.type!=CFTypes.TYPE_XML) {
+        		rtn=Caster.castTo(pc, (short)props.type, props.strType, rtn);
+        		boolean byColumn=toByColumn(queryFormat);
+        		if(props.secureJson)pc.forceWrite(pc.getApplicationContext().getSecureJsonPrefix());
+        		new JSONConverter().serialize(pc,rtn,byColumn,pc.getOut());
+        	}
         	else {
         		pc.forceWrite(convertResult(pc, props, queryFormat, rtn));
         	}
@@ -335,16 +342,10 @@ public abstract class ComponentPage extends PagePlus  {
 		}
 		// JSON
 		else if(UDF.RETURN_FORMAT_JSON==props.format) {
-			boolean byColumn = false;
-    		if(queryFormat instanceof String){
-    			String strQF=((String) queryFormat).trim();
-    			if(strQF.equalsIgnoreCase("row"));
-    			else if(strQF.equalsIgnoreCase("column"))byColumn=true;
-    			else throw new ApplicationException("invalid queryformat definition ["+strQF+"], valid formats are [row,column]");
-    		}
+			boolean byColumn = toByColumn(queryFormat);
     		JSONConverter converter = new JSONConverter();
     		if(props.secureJson)
-    			return pc.getApplicationContext().getSecureJsonPrefix();
+    			return pc.getApplicationContext().getSecureJsonPrefix()+converter.serialize(pc,rtn,byColumn);
             return converter.serialize(pc,rtn,byColumn);
 		}
 		// Serialize
@@ -359,6 +360,16 @@ public abstract class ComponentPage extends PagePlus  {
 		return null;
 	}
 
+	private static boolean toByColumn(Object queryFormat) throws ApplicationException {
+		if(queryFormat instanceof String){
+			String strQF=((String) queryFormat).trim();
+			if(strQF.equalsIgnoreCase("row"));
+			else if(strQF.equalsIgnoreCase("column"))return true;
+			else throw new ApplicationException("invalid queryformat definition ["+strQF+"], valid formats are [row,column]");
+		}
+		return false;
+	}
+
 	public static Struct translate(Component c, String strMethod, Struct params) {
 		Key[] keys = params.keys();
 		FunctionArgument[] args=null;
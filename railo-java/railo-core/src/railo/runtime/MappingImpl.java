@@ -143,7 +143,7 @@ public final class MappingImpl implements Mapping {
 	/**
      * @see railo.runtime.Mapping#getClassLoaderForPhysical(boolean)
      */
-	public ClassLoader getClassLoaderForPhysical(boolean reload) throws IOException {
+	public synchronized ClassLoader getClassLoaderForPhysical(boolean reload) throws IOException {
 		
 		// first access
 		if(physicalClassLoader==null){
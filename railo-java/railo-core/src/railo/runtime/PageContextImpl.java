@@ -64,6 +64,7 @@ import railo.runtime.debug.DebugEntry;
 import railo.runtime.debug.Debugger;
 import railo.runtime.debug.DebuggerImpl;
 import railo.runtime.dump.DumpUtil;
+import railo.runtime.engine.Cancelable;
 import railo.runtime.engine.ExecutionLog;
 import railo.runtime.err.ErrorPage;
 import railo.runtime.err.ErrorPageImpl;
@@ -77,7 +78,8 @@ import railo.runtime.exp.MissingIncludeException;
 import railo.runtime.exp.PageException;
 import railo.runtime.exp.PageExceptionBox;
 import railo.runtime.exp.PageServletException;
-import railo.runtime.interpreter.CFMLExpressionInterpreter;
+import railo.runtime.exp.RequestTimeoutException;
+import railo.runtime.interpreter.ExpressionCache;
 import railo.runtime.interpreter.VariableInterpreter;
 import railo.runtime.listener.AppListenerSupport;
 import railo.runtime.listener.ApplicationListener;
@@ -85,6 +87,8 @@ import railo.runtime.listener.ModernAppListenerException;
 import railo.runtime.net.ftp.FTPPool;
 import railo.runtime.net.ftp.FTPPoolImpl;
 import railo.runtime.net.http.HTTPServletRequestWrap;
+import railo.runtime.net.http.HttpServletRequestDummy;
+import railo.runtime.net.http.HttpUtil;
 import railo.runtime.op.Caster;
 import railo.runtime.op.Decision;
 import railo.runtime.orm.ORMConfiguration;
@@ -219,6 +223,11 @@ public final class PageContextImpl extends PageContext implements Sizeable {
 
     private Debugger debugger=new DebuggerImpl();
 	private long requestTimeout=-1;
+	private volatile RequestTimeoutException requestTimeoutException;
+	private volatile Cancelable cancelable;
+	// state of the request cloned for the child threads, shared by all of them
+	private HttpServletRequestDummy childRequest;
+	private final ExpressionCache expressionCache=new ExpressionCache();
 	private short enablecfoutputonly=0;
 	private int outputState;
 	private String cfid;
@@ -256,8 +265,11 @@ public final class PageContextImpl extends PageContext implements Sizeable {
 
     private Tag parentTag=null;
     private Tag currentTag=null;
-    private Thread thread;
-    private long startTime;
+    private volatile Thread thread;
+    private volatile long startTime;
+    // changed with every request using this page context, guarded by timeoutLock like the thread, so a timeout reaches only the request it was detected for
+    private volatile long generation;
+    private final Object timeoutLock=new Object();
 	private boolean isCFCRequest;
 	
 	private DataSourceManager manager;
@@ -384,8 +396,14 @@ public final class PageContextImpl extends PageContext implements Sizeable {
         //rsp.setHeader("Connection", "close");
         applicationContext=defaultApplicationContext;
         
-        startTime=System.currentTimeMillis();
-        thread=Thread.currentThread();
+        synchronized(timeoutLock) {
+        	generation++;
+        	startTime=System.currentTimeMillis();
+        	thread=Thread.currentThread();
+        	requestTimeoutException=null;
+        }
+        // a interruption left by the servlet engine or a previous request must not abort this request
+        Thread.interrupted();
         
         isCFCRequest = StringUtil.endsWithIgnoreCase(req.getServletPath(),".cfc");
         
@@ -394,7 +412,7 @@ public final class PageContextImpl extends PageContext implements Sizeable {
         this.servlet=servlet;
 
          // Writers
-         bodyContentStack.init(rsp,config.isSuppressWhitespace(),config.closeConnection(),config.isShowVersion(),config.contentLength());
+         bodyContentStack.init(req,rsp,config.isSuppressWhitespace(),config.closeConnection(),config.isShowVersion(),config.contentLength(),config.allowCompression());
 		 writer=bodyContentStack.getWriter();
          forceWriter=writer;
          
@@ -476,7 +494,11 @@ public final class PageContextImpl extends PageContext implements Sizeable {
         
 		
 		close();
-        thread=null;
+		// after this no timeout can be set for the ending request
+		synchronized(timeoutLock) {
+			thread=null;
+			generation++;
+		}
         
         RequestImpl r = request;
         
@@ -539,6 +561,13 @@ public final class PageContextImpl extends PageContext implements Sizeable {
 		
 		// Properties
         requestTimeout=-1;
+        if(requestTimeoutException!=null) {
+        	requestTimeoutException=null;
+        	// the thread goes back to the pool of the servlet engine, so the interruption flag set by the timeout has to be removed
+        	Thread.interrupted();
+        }
+        cancelable=null;
+        childRequest=null;
         outputState=0;
         cfid=null;
         cftoken=null;
@@ -862,7 +891,7 @@ public final class PageContextImpl extends PageContext implements Sizeable {
     	other.undefined=new UndefinedImpl(other,(short)other.undefined.getType());
     	
     	// writers
-    	other.bodyContentStack.init(other.rsp,other.config.isSuppressWhitespace(),other.config.closeConnection(),other.config.isShowVersion(),config.contentLength());
+    	other.bodyContentStack.init(other.req,other.rsp,other.config.isSuppressWhitespace(),other.config.closeConnection(),other.config.isShowVersion(),config.contentLength(),config.allowCompression());
     	other.writer=other.bodyContentStack.getWriter();
     	other.forceWriter=other.writer;
         
@@ -2072,6 +2101,91 @@ public final class PageContextImpl extends PageContext implements Sizeable {
 		this.requestTimeout = requestTimeout;
 	}
 
+    /**
+     * ends the request because it run into a timeout, the request is not stopped directly,
+     * it ends with the given exception the next time it checks for the timeout (loops and function calls).
+     * A blocking operation registered with setCancelable is aborted and the thread is interrupted (sleep, wait ...)
+     * @param rte exception thrown by the request
+     */
+    public void requestTimeout(RequestTimeoutException rte) {
+    	Thread t;
+    	long g;
+    	synchronized(timeoutLock) {
+    		t=thread;
+    		g=generation;
+    	}
+    	requestTimeout(t,g,rte);
+    }
+
+    /**
+     * ends the request because it run into a timeout, but only when it is still the request with the given thread and generation, 
+     * the request may have ended and the page context may already be used by the next request.
+     * @param thread thread of the request when the timeout was detected
+     * @param generation generation of the request when the timeout was detected
+     * @param rte exception thrown by the request
+     * @return the request was asked to end
+     */
+    public boolean requestTimeout(Thread thread, long generation, RequestTimeoutException rte) {
+    	Cancelable c;
+    	synchronized(timeoutLock) {
+    		if(thread==null || this.thread!=thread || this.generation!=generation || requestTimeoutException!=null) return false;
+    		requestTimeoutException=rte;
+    		c=cancelable;
+    		thread.interrupt();
+    	}
+    	// outside the lock, a blocking cancel does not delay the end of the request
+    	if(c!=null) {
+    		try {
+    			c.cancel();
+    		}
+    		catch(Throwable t) {}
+    	}
+    	return true;
+    }
+
+    /**
+     * @return generation of the current request, changes with every start and end of a request
+     */
+    public long getGeneration() {
+    	return generation;
+    }
+
+    /**
+     * @return the request run into a timeout and was asked to end
+     */
+    public boolean isRequestTimeout() {
+    	return requestTimeoutException!=null;
+    }
+
+    /**
+     * checks if the request run into a timeout, called by the compiled code at every loop iteration and function call
+     * @throws RequestTimeoutException
+     */
+    public void checkRequestTimeout() throws RequestTimeoutException {
+    	RequestTimeoutException rte=requestTimeoutException;
+    	if(rte!=null) {
+    		// the interruption is done with the lock held, so it is cleared here for sure, 
+    		// the error page must not be written by a interrupted thread (a interrupted thread closes nio channels it uses)
+    		synchronized(timeoutLock) {
+    			if(Thread.currentThread()==thread) Thread.interrupted();
+    		}
+    		throw rte;
+    	}
+    }
+
+    /**
+     * sets the blocking operation the request is waiting for, so it can be aborted on a timeout
+     * @param cancelable operation or null when the operation is done
+     * @return the operation set before
+     */
+    public Cancelable setCancelable(Cancelable cancelable) {
+    	Cancelable old=this.cancelable;
+    	this.cancelable=cancelable;
+    	// the timeout was before the operation was set
+    	if(cancelable!=null && requestTimeoutException!=null) cancelable.cancel();
+    	return old;
+    }
+
     /**
      * @see PageContext#getCFID()
      */
@@ -2635,7 +2749,10 @@ public final class PageContextImpl extends PageContext implements Sizeable {
 
 
 	public void setThread(Thread thread) {
-		this.thread=thread;
+		synchronized(timeoutLock) {
+			this.thread=thread;
+			generation++;
+		}
 	}
 
     /**
@@ -2720,7 +2837,7 @@ public final class PageContextImpl extends PageContext implements Sizeable {
 
 	public Object evaluate(String expression) throws PageException {
 		// TODO kann das objekt nicht variable von object sein
-		return new CFMLExpressionInterpreter().interpret(this,expression);
+		return expressionCache.evaluate(this,expression);
 	}
 
 	/**
@@ -2753,6 +2870,17 @@ public final class PageContextImpl extends PageContext implements Sizeable {
 	}
 
 
+	/**
+	 * returns a copy of the request for a child thread, the request is cloned only once,
+	 * all child threads get a copy sharing the cloned state (only the attributes are read again)
+	 * @return request for a child thread
+	 */
+	public synchronized HttpServletRequestDummy getChildRequest() {
+		if(childRequest==null)
+			childRequest=HttpServletRequestDummy.clone(config,config.getRootDirectory(),getHttpServletRequest());
+		return childRequest.copy(HttpUtil.getAttributesAsStruct(getHttpServletRequest()));
+	}
+
 	/**
 	 * @see railo.runtime.PageContext#getThreadScopeNames()
 	 */
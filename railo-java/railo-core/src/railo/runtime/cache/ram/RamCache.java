@@ -1,37 +1,72 @@
 package railo.runtime.cache.ram;
 
 import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import railo.commons.io.cache.CacheEntry;
+import railo.commons.lang.ByteSizeParser;
+import railo.commons.lang.SizeOf;
 import railo.runtime.cache.CacheSupport;
+import railo.runtime.cache.CacheUtil;
 import railo.runtime.config.Config;
 import railo.runtime.op.Caster;
 import railo.runtime.op.Constants;
 import railo.runtime.type.Struct;
 
+/**
+ * in memory cache, optional bounded by number of elements and/or size in bytes.
+ * When a bound is reached, entries are evicted with a "clock" (second chance) algorithm,
+ * every read gives an entry a credit, the eviction takes one credit per turn and evicts entries without credit.
+ * With policy LRU an entry can have one credit, with LFU up to 15, so often used entries survive longer.
+ */
 public class RamCache extends CacheSupport {
 
-	private Map<String, RamCacheEntry> entries= new HashMap<String, RamCacheEntry>();
-	private long missCount;
-	private int hitCount;
-	
+	public static final int POLICY_LRU=1;
+	public static final int POLICY_LFU=15;
+
+	private static final long SWEEP_INTERVAL=60000L;
+	private static Timer sweeper;
+
+	private ConcurrentHashMap<String, RamCacheEntry> entries= new ConcurrentHashMap<String, RamCacheEntry>();
+	private ConcurrentLinkedQueue<RamCacheEntry> clock=new ConcurrentLinkedQueue<RamCacheEntry>();
+	private AtomicLong missCount=new AtomicLong();
+	private AtomicLong hitCount=new AtomicLong();
+	private AtomicLong evictionCount=new AtomicLong();
+	private AtomicLong expiredCount=new AtomicLong();
+	private AtomicInteger count=new AtomicInteger();
+	private AtomicLong bytes=new AtomicLong();
+
 	private long idleTime;
 	private long until;
-	
+	private int maxElements;
+	private long maxSize;
+	private int policy=POLICY_LRU;
+
+	public RamCache() {
+		schedule(this);
+	}
 
 	public static void init(Config config,String[] cacheNames,Struct[] arguments)  {
 	}
-	
+
 	public void init(String cacheName, Struct arguments) throws IOException {
 		until=Caster.toLongValue(arguments.get("timeToLiveSeconds",Constants.LONG_ZERO),Constants.LONG_ZERO)*1000;
 		idleTime=Caster.toLongValue(arguments.get("timeToIdleSeconds",Constants.LONG_ZERO),Constants.LONG_ZERO)*1000;
+		maxElements=Caster.toIntValue(arguments.get("maxelementsinmemory",Constants.INTEGER_0),0);
+		maxSize=ByteSizeParser.parseByteSizeDefinition(Caster.toString(arguments.get("maxsizeinmemory",""),""),0);
+		String strPolicy=Caster.toString(arguments.get("memoryevictionpolicy","LRU"),"LRU");
+		policy="LFU".equalsIgnoreCase(strPolicy.trim())?POLICY_LFU:POLICY_LRU;
 	}
-	
+
 	/**
 	 * @see railo.commons.io.cache.Cache#contains(java.lang.String)
 	 */
@@ -39,8 +74,8 @@ public class RamCache extends CacheSupport {
 		return getQuiet(key,null)!=null;
 	}
 
-	
-	
+
+
 
 	public CacheEntry getQuiet(String key, CacheEntry defaultValue) {
 		RamCacheEntry entry = entries.get(key);
@@ -48,7 +83,7 @@ public class RamCache extends CacheSupport {
 			return defaultValue;
 		}
 		if(!valid(entry)) {
-			entries.remove(key);
+			if(_remove(key, entry))expiredCount.incrementAndGet();
 			return defaultValue;
 		}
 		return entry;
@@ -60,10 +95,10 @@ public class RamCache extends CacheSupport {
 	public CacheEntry getCacheEntry(String key, CacheEntry defaultValue) {
 		RamCacheEntry ce = (RamCacheEntry) getQuiet(key, null);
 		if(ce!=null) {
-			hitCount++;
-			return ce.read();
+			hitCount.incrementAndGet();
+			return ce.read(policy);
 		}
-		missCount++;
+		missCount.incrementAndGet();
 		return defaultValue;
 	}
 
@@ -71,48 +106,143 @@ public class RamCache extends CacheSupport {
 	 * @see railo.commons.io.cache.Cache#hitCount()
 	 */
 	public long hitCount() {
-		return hitCount;
+		return hitCount.get();
 	}
 
 	/**
 	 * @see railo.commons.io.cache.Cache#missCount()
 	 */
 	public long missCount() {
-		return missCount;
+		return missCount.get();
 	}
 
 	public List keys() {
 		List list=new ArrayList();
-		
-		Iterator it = entries.entrySet().iterator();
+
+		Iterator<RamCacheEntry> it = entries.values().iterator();
 		RamCacheEntry entry;
 		while(it.hasNext()){
-			entry=(RamCacheEntry) ((Map.Entry)it.next()).getValue();
+			entry=it.next();
 			if(valid(entry))list.add(entry.getKey());
 		}
 		return list;
 	}
 
 	public void put(String key, Object value, Long idleTime, Long until) {
-		
+		long size=maxSize>0?SizeOf.size(value):0;
 		RamCacheEntry entry= entries.get(key);
 		if(entry==null){
-			entries.put(key, new RamCacheEntry(key,value,
+			entry=new RamCacheEntry(key,value,
 					idleTime==null?this.idleTime:idleTime.longValue(),
-					until==null?this.until:until.longValue()));
+					until==null?this.until:until.longValue(),size);
+			RamCacheEntry existing=entries.putIfAbsent(key, entry);
+			if(existing==null) {
+				count.incrementAndGet();
+				bytes.addAndGet(size);
+				clock.offer(entry);
+			}
+			else bytes.addAndGet(existing.update(value,size));
 		}
 		else
-			entry.update(value);
+			bytes.addAndGet(entry.update(value,size));
+
+		evict();
 	}
 
 	public boolean remove(String key) {
-		RamCacheEntry entry = entries.remove(key);
-		if(entry==null) {
+		RamCacheEntry entry = entries.get(key);
+		if(entry==null || !_remove(key,entry)) {
 			return false;
 		}
 		return valid(entry);
-		
+
+	}
+
+	/**
+	 * @see railo.runtime.cache.CacheSupport#getCustomInfo()
+	 */
+	public Struct getCustomInfo() {
+		Struct info=CacheUtil.getInfo(this);
+		info.setEL("eviction_count", new Double(evictionCount.get()));
+		info.setEL("expired_count", new Double(expiredCount.get()));
+		info.setEL("element_count", new Double(count.get()));
+		info.setEL("max_elements_in_memory", new Double(maxElements));
+		if(maxSize>0) {
+			info.setEL("size", new Double(bytes.get()));
+			info.setEL("max_size_in_memory", new Double(maxSize));
+		}
+		info.setEL("memory_eviction_policy", policy==POLICY_LFU?"LFU":"LRU");
+		return info;
+	}
+
+	private boolean _remove(String key, RamCacheEntry entry) {
+		if(!entries.remove(key, entry)) return false;
+		count.decrementAndGet();
+		bytes.addAndGet(-entry.size());
+		return true;
+	}
+
+	/**
+	 * evicts entries until the cache is back within its bounds
+	 */
+	private void evict() {
+		if(!overflow()) return;
+
+		RamCacheEntry entry;
+		// every entry can survive "policy" turns, so the loop ends at the latest after policy+1 rounds
+		int max=(count.get()+1)*(policy+1);
+		while(overflow() && max-->0 && (entry=clock.poll())!=null) {
+			if(entries.get(entry.getKey())!=entry) continue; // already removed or replaced
+			if(entry.useCredit()) clock.offer(entry);
+			else if(_remove(entry.getKey(), entry)) evictionCount.incrementAndGet();
+		}
+	}
+
+	private boolean overflow() {
+		return (maxElements>0 && count.get()>maxElements) || (maxSize>0 && bytes.get()>maxSize);
+	}
+
+	/**
+	 * removes all expired entries, called in the background
+	 */
+	void sweep() {
+		Iterator<RamCacheEntry> it = clock.iterator();
+		RamCacheEntry entry;
+		while(it.hasNext()){
+			entry=it.next();
+			if(entries.get(entry.getKey())!=entry) {
+				it.remove();
+			}
+			else if(!valid(entry) && _remove(entry.getKey(), entry)) {
+				it.remove();
+				expiredCount.incrementAndGet();
+			}
+		}
+	}
+
+	private static synchronized void schedule(RamCache cache) {
+		if(sweeper==null) sweeper=new Timer("RamCacheSweeper",true);
+		sweeper.schedule(new Sweep(cache), SWEEP_INTERVAL, SWEEP_INTERVAL);
 	}
 
+	private static class Sweep extends TimerTask {
 
+		private final WeakReference<RamCache> cache;
+
+		private Sweep(RamCache cache) {
+			this.cache=new WeakReference<RamCache>(cache);
+		}
+
+		public void run() {
+			RamCache c = cache.get();
+			if(c==null) {
+				cancel();
+				return;
+			}
+			try{
+				c.sweep();
+			}
+			catch(Throwable t){}
+		}
+	}
 }
@@ -9,19 +9,26 @@ import railo.runtime.type.Struct;
 public class RamCacheEntry implements CacheEntry {
 
 	private String key;
-	private Object value;
+	private volatile Object value;
 	private long idleTime;
 	private long until;
 	private long created;
-	private long modifed;
-	private long accessed;
-	private int hitCount;
+	private volatile long modifed;
+	private volatile long accessed;
+	private volatile int hitCount;
+	private volatile long size;
+	private volatile int credit;
 
 	public RamCacheEntry(String key, Object value, long idleTime, long until) {
+		this(key, value, idleTime, until, 0);
+	}
+
+	public RamCacheEntry(String key, Object value, long idleTime, long until, long size) {
 		this.key=key;
 		this.value=value;
 		this.idleTime=idleTime;
 		this.until=until;
+		this.size=size;
 		created=modifed=accessed=System.currentTimeMillis();
 		hitCount=1;
 	}
@@ -89,20 +96,55 @@ public class RamCacheEntry implements CacheEntry {
 		return until;
 	}
 
+	/**
+	 * @see railo.commons.io.cache.CacheEntry#size()
+	 */
 	public long size() {
-		// TODO Auto-generated method stub
-		return 0;
+		return size;
 	}
 
 	public void update(Object value) {
+		update(value, 0);
+	}
+
+	/**
+	 * updates the value of the entry
+	 * @param value new value
+	 * @param size size of the new value
+	 * @return difference between old and new size
+	 */
+	public long update(Object value, long size) {
 		this.value=value;
+		long diff=size-this.size;
+		this.size=size;
 		modifed=accessed=System.currentTimeMillis();
 		hitCount++;
+		return diff;
 	}
 
 	public RamCacheEntry read() {
+		return read(RamCache.POLICY_LRU);
+	}
+
+	/**
+	 * marks the entry as read and gives it a credit for the eviction, up to the given max
+	 * @param maxCredit
+	 * @return this entry
+	 */
+	public RamCacheEntry read(int maxCredit) {
 		accessed=System.currentTimeMillis();
 		hitCount++;
+		if(credit<maxCredit)credit++;
 		return this;
 	}
+
+	/**
+	 * takes one credit of this entry
+	 * @return false if the entry has no credit left and can be evicted
+	 */
+	boolean useCredit() {
+		if(credit<=0) return false;
+		credit--;
+		return true;
+	}
 }
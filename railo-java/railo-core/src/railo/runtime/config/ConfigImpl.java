@@ -95,6 +95,7 @@ import railo.runtime.search.SearchEngine;
 import railo.runtime.security.SecurityManager;
 import railo.runtime.spooler.SpoolerEngine;
 import railo.runtime.tag.Admin;
+import railo.runtime.thread.ChildThreadExecutor;
 import railo.runtime.type.Struct;
 import railo.runtime.type.StructImpl;
 import railo.runtime.type.UDF;
@@ -188,6 +189,7 @@ public abstract class ConfigImpl implements Config {
     private Resource configDir;
 
     private long loadTime;
+    private Struct loadStatistics;
 
     private int spoolInterval=30;
     private boolean spoolEnable=true;
@@ -257,6 +259,7 @@ public abstract class ConfigImpl implements Config {
     private Resource deployDirectory;
 
     private short compileType=RECOMPILE_NEVER;
+    private boolean warmUp=true;
     
     private String resourceCharset=SystemUtil.getCharset();
     private String templateCharset=SystemUtil.getCharset();
@@ -282,6 +285,7 @@ public abstract class ConfigImpl implements Config {
 
 	private Resource clientScopeDir;
 	private long clientScopeDirSize=1024*1024*10;
+	private long clientDatasourceCache=10000;
 
 	private Resource cacheDir;
 	private long cacheDirSize=1024*1024*10;
@@ -301,6 +305,7 @@ public abstract class ConfigImpl implements Config {
 
 	private boolean closeConnection=false;
 	private boolean contentLength=true;
+	private boolean allowCompression=false;
 
 	private boolean doLocalCustomTag=true; 
 
@@ -315,6 +320,11 @@ public abstract class ConfigImpl implements Config {
 	private LogAndSource remoteClientLog;
     
 	private boolean allowURLRequestTimeout=false;
+	private int pageContextPoolMax=100;
+	private int threadPoolMax=50;
+	private int threadQueueMax=1000;
+	private short threadRejection=ChildThreadExecutor.REJECTION_CALLER;
+	private boolean threadVirtual;
 	private CFMLFactory factory;
 	private boolean errorStatusCode=true;
 	private int localMode=Undefined.MODE_LOCAL_OR_ARGUMENTS_ONLY_WHEN_EXISTS;
@@ -380,6 +390,76 @@ public abstract class ConfigImpl implements Config {
 		this.allowURLRequestTimeout = allowURLRequestTimeout;
 	}
 
+	/**
+	 * @return max number of idle PageContext objects kept for reuse
+	 */
+	public int getPageContextPoolMax() {
+		return pageContextPoolMax;
+	}
+
+	/**
+	 * @param pageContextPoolMax max number of idle PageContext objects kept for reuse
+	 */
+	public void setPageContextPoolMax(int pageContextPoolMax) {
+		this.pageContextPoolMax = pageContextPoolMax;
+	}
+
+	/**
+	 * @return max number of threads executing cfthread threads of a web context
+	 */
+	public int getThreadPoolMax() {
+		return threadPoolMax;
+	}
+
+	/**
+	 * @param threadPoolMax max number of threads executing cfthread threads of a web context
+	 */
+	public void setThreadPoolMax(int threadPoolMax) {
+		this.threadPoolMax = threadPoolMax;
+	}
+
+	/**
+	 * @return max number of cfthread threads waiting for a free thread of the pool
+	 */
+	public int getThreadQueueMax() {
+		return threadQueueMax;
+	}
+
+	/**
+	 * @param threadQueueMax max number of cfthread threads waiting for a free thread of the pool
+	 */
+	public void setThreadQueueMax(int threadQueueMax) {
+		this.threadQueueMax = threadQueueMax;
+	}
+
+	/**
+	 * @return what happens with a cfthread thread when pool and queue are full (ChildThreadExecutor.REJECTION_XXX)
+	 */
+	public short getThreadRejection() {
+		return threadRejection;
+	}
+
+	/**
+	 * @param threadRejection what happens with a cfthread thread when pool and queue are full (ChildThreadExecutor.REJECTION_XXX)
+	 */
+	public void setThreadRejection(short threadRejection) {
+		this.threadRejection = threadRejection;
+	}
+
+	/**
+	 * @return if the pool executing cfthread threads uses virtual threads (when supported by the JVM)
+	 */
+	public boolean isThreadVirtual() {
+		return threadVirtual;
+	}
+
+	/**
+	 * @param threadVirtual if the pool executing cfthread threads uses virtual threads (when supported by the JVM)
+	 */
+	public void setThreadVirtual(boolean threadVirtual) {
+		this.threadVirtual = threadVirtual;
+	}
+
 
     /**
      * @see railo.runtime.config.Config#getCompileType()
@@ -388,6 +468,13 @@ public abstract class ConfigImpl implements Config {
         return compileType;
     }
 
+    /**
+     * @return if the templates of the mappings are compiled and loaded in the background after startup
+     */
+    public boolean isWarmUp() {
+        return warmUp;
+    }
+
     /**
      * @see railo.runtime.config.Config#reset()
      */
@@ -1615,6 +1702,20 @@ public abstract class ConfigImpl implements Config {
     protected void setLoadTime(long loadTime) {
         this.loadTime = loadTime;
     }
+
+    /**
+     * @return time needed by the loaders of the config when it was loaded the last time
+     */
+    public Struct getLoadStatistics() {
+        return loadStatistics;
+    }
+
+    /**
+     * @param loadStatistics time needed by the loaders of the config
+     */
+    protected void setLoadStatistics(Struct loadStatistics) {
+        this.loadStatistics = loadStatistics;
+    }
     /**
      * @return Returns the configLogger.
      * /
@@ -1905,6 +2006,13 @@ public abstract class ConfigImpl implements Config {
         this.compileType = compileType;
     }
 
+    /**
+     * @param warmUp The warmUp to set.
+     */
+    protected void setWarmUp(boolean warmUp) {
+        this.warmUp = warmUp;
+    }
+
     /** FUTHER
      * Returns the value of suppresswhitespace.
      * @return value suppresswhitespace
@@ -2297,6 +2405,20 @@ public abstract class ConfigImpl implements Config {
 	protected void setClientScopeDirSize(long clientScopeDirSize) {
 		this.clientScopeDirSize = clientScopeDirSize;
 	}
+
+	/**
+	 * @return time in milliseconds a client scope stored in a datasource is used from memory before it is read again, 0 reads it with every request
+	 */
+	public long getClientDatasourceCache() {
+		return clientDatasourceCache;
+	}
+
+	/**
+	 * @param clientDatasourceCache time in milliseconds a client scope stored in a datasource is used from memory before it is read again
+	 */
+	protected void setClientDatasourceCache(long clientDatasourceCache) {
+		this.clientDatasourceCache = clientDatasourceCache;
+	}
 	/**
 	 *
 	 * @see railo.runtime.config.Config#getRPCClassLoader()
@@ -2541,6 +2663,17 @@ public abstract class ConfigImpl implements Config {
 		this.contentLength=contentLength;
 	}
 
+	/**
+	 * @return compress the response content (gzip/deflate) when the client accepts it
+	 */
+	public boolean allowCompression() {
+		return allowCompression;
+	}
+
+	protected void setAllowCompression(boolean allowCompression) {
+		this.allowCompression=allowCompression;
+	}
+
 	/**
 	 * @return the constants
 	 */
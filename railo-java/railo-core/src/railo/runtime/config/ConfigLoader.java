@@ -0,0 +1,186 @@
+package railo.runtime.config;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.w3c.dom.Document;
+
+import railo.commons.lang.ClassException;
+import railo.runtime.engine.ThreadLocalConfig;
+import railo.runtime.exp.PageException;
+import railo.runtime.type.Struct;
+import railo.runtime.type.StructImpl;
+import railo.transformer.library.function.FunctionLibException;
+import railo.transformer.library.tag.TagLibException;
+
+/**
+ * runs the loaders of a config and measures the time every loader needs.
+ * Loaders independent of each other are forked and run in parallel, every forked loader gets its own copy of the document,
+ * because reading a element creates it when it is missing.
+ */
+final class ConfigLoader {
+
+	private static final int THREADS=Math.max(2,Runtime.getRuntime().availableProcessors());
+	private static ThreadPoolExecutor executor;
+
+	/**
+	 * a loader of the config
+	 */
+	static abstract class Task {
+		private final String name;
+
+		Task(String name) {
+			this.name=name;
+		}
+
+		abstract void load(Document doc) throws Exception;
+	}
+
+	private final ConfigImpl config;
+	private final long start=System.currentTimeMillis();
+	private long last=start;
+	private final Map<String,Long> times=new LinkedHashMap<String,Long>();
+	private final List<Future> forks=new ArrayList<Future>();
+	private final List<String> forkNames=new ArrayList<String>();
+
+	ConfigLoader(ConfigImpl config) {
+		this.config=config;
+	}
+
+	/**
+	 * records the time since the last call as the time of the loader with the given name
+	 * @param name
+	 */
+	void lap(String name) {
+		long now=System.currentTimeMillis();
+		synchronized (times) {
+			times.put(name, new Long(now-last));
+		}
+		last=now;
+	}
+
+	/**
+	 * runs the given loader in parallel to the following ones
+	 * @param task
+	 * @param doc
+	 */
+	void fork(final Task task, Document doc) {
+		final Document copy=(Document) doc.cloneNode(true);
+		forkNames.add(task.name);
+		forks.add(getExecutor().submit(new Callable<Object>() {
+			public Object call() throws Exception {
+				long start=System.currentTimeMillis();
+				ThreadLocalConfig.register(config);
+				try {
+					task.load(copy);
+				}
+				finally {
+					ThreadLocalConfig.release();
+					synchronized (times) {
+						times.put(task.name, new Long(System.currentTimeMillis()-start));
+					}
+				}
+				return null;
+			}
+		}));
+		last=System.currentTimeMillis();
+	}
+
+	/**
+	 * waits for all forked loaders, the exception of the first failing loader is thrown
+	 */
+	void join() throws ClassException, PageException, IOException, TagLibException, FunctionLibException {
+		Throwable first=null;
+		for(int i=0;i<forks.size();i++) {
+			try {
+				forks.get(i).get();
+			}
+			catch (InterruptedException e) {
+				if(first==null) first=e;
+			}
+			catch (ExecutionException e) {
+				if(first==null) first=e.getCause();
+			}
+		}
+		forks.clear();
+		last=System.currentTimeMillis();
+		if(first==null) return;
+		if(first instanceof ClassException) throw (ClassException) first;
+		if(first instanceof PageException) throw (PageException) first;
+		if(first instanceof IOException) throw (IOException) first;
+		if(first instanceof TagLibException) throw (TagLibException) first;
+		if(first instanceof FunctionLibException) throw (FunctionLibException) first;
+		if(first instanceof RuntimeException) throw (RuntimeException) first;
+		if(first instanceof Error) throw (Error) first;
+		IOException ioe=new IOException(first.getMessage());
+		ioe.initCause(first);
+		throw ioe;
+	}
+
+	/**
+	 * @param snapshot was the config read from the snapshot
+	 * @return time of every loader and the total time
+	 */
+	Struct getStatistics(boolean snapshot) {
+		Struct sct=new StructImpl();
+		sct.setEL("total",new Double(System.currentTimeMillis()-start));
+		sct.setEL("snapshot",Boolean.valueOf(snapshot));
+		sct.setEL("parallel",railo.runtime.type.List.arrayToList((String[])forkNames.toArray(new String[forkNames.size()]), ","));
+		Struct loaders=new StructImpl(StructImpl.TYPE_LINKED);
+		synchronized (times) {
+			Iterator<Map.Entry<String,Long>> it = times.entrySet().iterator();
+			Map.Entry<String,Long> e;
+			while(it.hasNext()) {
+				e=it.next();
+				loaders.setEL(e.getKey(),new Double(e.getValue().longValue()));
+			}
+		}
+		sct.setEL("loaders",loaders);
+		return sct;
+	}
+
+	/**
+	 * @see java.lang.Object#toString()
+	 */
+	public String toString() {
+		StringBuilder sb=new StringBuilder();
+		sb.append("in ").append(System.currentTimeMillis()-start).append("ms (");
+		synchronized (times) {
+			Iterator<Map.Entry<String,Long>> it = times.entrySet().iterator();
+			Map.Entry<String,Long> e;
+			while(it.hasNext()) {
+				e=it.next();
+				sb.append(e.getKey()).append(':').append(e.getValue()).append("ms");
+				if(forkNames.contains(e.getKey())) sb.append(" parallel");
+				if(it.hasNext()) sb.append(", ");
+			}
+		}
+		return sb.append(')').toString();
+	}
+
+	private static synchronized ThreadPoolExecutor getExecutor() {
+		if(executor==null) {
+			executor=new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				private final AtomicInteger count=new AtomicInteger();
+				public Thread newThread(Runnable r) {
+					Thread t=new Thread(r,"Config Loader "+count.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return executor;
+	}
+}
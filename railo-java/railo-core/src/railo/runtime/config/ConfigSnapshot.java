@@ -0,0 +1,211 @@
+package railo.runtime.config;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import org.apache.xerces.dom.DocumentImpl;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import railo.commons.digest.MD5;
+import railo.commons.io.IOUtil;
+import railo.commons.io.res.Resource;
+
+/**
+ * binary snapshot of a parsed config file, stored next to the config file.
+ * The snapshot is used instead of parsing the XML as long as the MD5 of the config file matches the one stored in the snapshot,
+ * a snapshot with a other format version or a invalid checksum is ignored and written again.
+ */
+final class ConfigSnapshot {
+
+	private static final int MAGIC=0x52434653;
+	private static final int VERSION=1;
+
+	private static final String SNAPSHOT="railo-snapshot";
+
+	private static final byte END=0;
+	private static final byte ELEMENT=1;
+	private static final byte TEXT=2;
+	private static final byte CDATA=3;
+	private static final byte COMMENT=4;
+	private static final byte PI=5;
+
+	/**
+	 * @param xmlFile
+	 * @return file containing the snapshot of the given config file
+	 */
+	static Resource getSnapshotFile(Resource xmlFile) {
+		return xmlFile.getParentResource().getRealResource(xmlFile.getName()+".snapshot");
+	}
+
+	/**
+	 * reads the snapshot of the config file with the given content
+	 * @param xmlFile
+	 * @param xml content of the config file
+	 * @return document or null when there is no valid snapshot for this content
+	 */
+	static Document read(Resource xmlFile, byte[] xml) {
+		Resource snapshot=getSnapshotFile(xmlFile);
+		if(!snapshot.isFile()) return null;
+		InputStream is=null;
+		try {
+			CRC32 crc=new CRC32();
+			byte[] barr=IOUtil.toBytes(snapshot);
+			if(barr.length<8) return null;
+			crc.update(barr, 0, barr.length-8);
+			DataInputStream tail=new DataInputStream(new ByteArrayInputStream(barr,barr.length-8,8));
+			if(tail.readLong()!=crc.getValue()) return null;
+
+			DataInputStream dis=new DataInputStream(is=new ByteArrayInputStream(barr,0,barr.length-8));
+			if(dis.readInt()!=MAGIC || dis.readInt()!=VERSION) return null;
+			if(!MD5.getDigestAsString(xml).equals(readString(dis))) return null;
+			Document doc=new DocumentImpl();
+			readChildren(dis,doc,doc);
+			if(doc.getDocumentElement()==null) return null;
+			doc.setUserData(SNAPSHOT, Boolean.TRUE, null);
+			return doc;
+		}
+		catch(Throwable t) {
+			return null;
+		}
+		finally {
+			IOUtil.closeEL(is);
+		}
+	}
+
+	/**
+	 * @param doc
+	 * @return was the given document read from a snapshot
+	 */
+	static boolean isSnapshot(Document doc) {
+		return Boolean.TRUE.equals(doc.getUserData(SNAPSHOT));
+	}
+
+	/**
+	 * writes the snapshot of a config file, a existing snapshot is replaced
+	 * @param xmlFile
+	 * @param xml content of the config file
+	 * @param doc document parsed from the content
+	 */
+	static void write(Resource xmlFile, byte[] xml, Document doc) {
+		Resource snapshot=getSnapshotFile(xmlFile);
+		Resource tmp=xmlFile.getParentResource().getRealResource(snapshot.getName()+".tmp");
+		OutputStream os=null;
+		try {
+			CheckedOutputStream cos=new CheckedOutputStream(new BufferedOutputStream(os=tmp.getOutputStream()), new CRC32());
+			DataOutputStream dos=new DataOutputStream(cos);
+			dos.writeInt(MAGIC);
+			dos.writeInt(VERSION);
+			writeString(dos,MD5.getDigestAsString(xml));
+			writeChildren(dos,doc);
+			dos.flush();
+			long crc=cos.getChecksum().getValue();
+			dos.writeLong(crc);
+			dos.flush();
+			os.close();
+			os=null;
+			if(snapshot.exists())snapshot.delete();
+			tmp.moveTo(snapshot);
+		}
+		catch(Throwable t) {
+			IOUtil.closeEL(os);
+			if(tmp.exists())tmp.delete();
+		}
+	}
+
+	private static void writeChildren(DataOutputStream dos, Node parent) throws IOException {
+		NodeList list=parent.getChildNodes();
+		int len=list.getLength();
+		Node node;
+		for(int i=0;i<len;i++) {
+			node=list.item(i);
+			switch(node.getNodeType()) {
+			case Node.ELEMENT_NODE:
+				dos.writeByte(ELEMENT);
+				writeString(dos,node.getNodeName());
+				NamedNodeMap attrs=node.getAttributes();
+				dos.writeInt(attrs.getLength());
+				Attr attr;
+				for(int y=0;y<attrs.getLength();y++) {
+					attr=(Attr) attrs.item(y);
+					writeString(dos,attr.getName());
+					writeString(dos,attr.getValue());
+				}
+				writeChildren(dos,node);
+			break;
+			case Node.TEXT_NODE:
+				dos.writeByte(TEXT);
+				writeString(dos,node.getNodeValue());
+			break;
+			case Node.CDATA_SECTION_NODE:
+				dos.writeByte(CDATA);
+				writeString(dos,node.getNodeValue());
+			break;
+			case Node.COMMENT_NODE:
+				dos.writeByte(COMMENT);
+				writeString(dos,node.getNodeValue());
+			break;
+			case Node.PROCESSING_INSTRUCTION_NODE:
+				dos.writeByte(PI);
+				writeString(dos,node.getNodeName());
+				writeString(dos,node.getNodeValue());
+			break;
+			}
+		}
+		dos.writeByte(END);
+	}
+
+	private static void readChildren(DataInputStream dis, Document doc, Node parent) throws IOException {
+		byte type;
+		while((type=dis.readByte())!=END) {
+			switch(type) {
+			case ELEMENT:
+				Element el=doc.createElement(readString(dis));
+				int len=dis.readInt();
+				for(int i=0;i<len;i++) {
+					el.setAttribute(readString(dis), readString(dis));
+				}
+				parent.appendChild(el);
+				readChildren(dis,doc,el);
+			break;
+			case TEXT:
+				parent.appendChild(doc.createTextNode(readString(dis)));
+			break;
+			case CDATA:
+				parent.appendChild(doc.createCDATASection(readString(dis)));
+			break;
+			case COMMENT:
+				parent.appendChild(doc.createComment(readString(dis)));
+			break;
+			case PI:
+				parent.appendChild(doc.createProcessingInstruction(readString(dis), readString(dis)));
+			break;
+			default:
+				throw new IOException("invalid node type ["+type+"] in config snapshot");
+			}
+		}
+	}
+
+	private static void writeString(DataOutputStream dos, String str) throws IOException {
+		byte[] barr=str.getBytes("UTF-8");
+		dos.writeInt(barr.length);
+		dos.write(barr);
+	}
+
+	private static String readString(DataInputStream dis) throws IOException {
+		byte[] barr=new byte[dis.readInt()];
+		dis.readFully(barr);
+		return new String(barr,"UTF-8");
+	}
+}
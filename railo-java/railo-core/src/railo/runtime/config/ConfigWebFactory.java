@@ -81,6 +81,7 @@ import railo.runtime.dump.TextDumpWriter;
 import railo.runtime.engine.ConsoleExecutionLog;
 import railo.runtime.engine.ExecutionLog;
 import railo.runtime.engine.ExecutionLogFactory;
+import railo.runtime.engine.ProfilerExecutionLog;
 import railo.runtime.engine.ThreadLocalConfig;
 import railo.runtime.exp.ApplicationException;
 import railo.runtime.exp.ExpressionException;
@@ -114,6 +115,7 @@ import railo.runtime.security.SecurityManager;
 import railo.runtime.security.SecurityManagerImpl;
 import railo.runtime.spooler.SpoolerEngineImpl;
 import railo.runtime.text.xml.XMLCaster;
+import railo.runtime.thread.ChildThreadExecutor;
 import railo.runtime.type.Collection.Key;
 import railo.runtime.type.KeyImpl;
 import railo.runtime.type.List;
@@ -296,9 +298,10 @@ public final class ConfigWebFactory {
      * @throws TagLibException
      * @throws PageException
      */
-    public static void load(ConfigServerImpl configServer, ConfigImpl config, Document doc,boolean isEventGatewayContext) 
+    public static void load(final ConfigServerImpl configServer, final ConfigImpl config, Document doc,final boolean isEventGatewayContext) 
     	throws ClassException, PageException, IOException, TagLibException, FunctionLibException {
     	ThreadLocalConfig.register(config);
+    	boolean snapshot=ConfigSnapshot.isSnapshot(doc);
     	
     	// fix
     	if(ConfigWebAdmin.fixS3(doc) | ConfigWebAdmin.fixPSQ(doc)) {
@@ -308,12 +311,16 @@ public final class ConfigWebFactory {
 			} catch (SAXException e) {}
     	}
     	
+    	ConfigLoader loader=new ConfigLoader(config);
     	loadConstants(configServer,config,doc);
+    	loader.lap("constants");
     	loadTempDirectory(configServer, config, doc);
+    	loader.lap("temp-directory");
     	loadId(config);
     	loadVersion(config,doc);
     	loadSecurity(configServer,config,doc);
-        ConfigServerImpl cs = configServer;
+    	loader.lap("security");
+        final ConfigServerImpl cs = configServer;
         /* SNSN
         if(configServer!=null) {
             int version = configServer.getSerialNumber().getVersion();
@@ -321,46 +328,101 @@ public final class ConfigWebFactory {
             if(!hasServerContext)configServer=null;
         }*/
         loadLib(cs,config);
+        loader.lap("lib");
         loadSystem(cs, config, doc);
-        loadORM(configServer, config, doc);
+        loader.lap("system");
     	loadResourceProvider(cs,config,doc);
+    	loader.lap("resource-provider");
+    	// read by the forked loaders, the resource charset by the log files they create and the timezone by the search engine
         loadCharset(configServer,config,doc);
+        loader.lap("charset");
+        loadRegional(configServer,config,doc);
+        loader.lap("regional");
+    	
+    	// the following loaders only read the parts of the config loaded above and set their own part of the config,
+    	// nothing loaded later reads it before the gateways are started
+    	loader.fork(new ConfigLoader.Task("orm") {
+    		void load(Document doc) throws Exception {
+    			loadORM(configServer, config, doc);
+    		}
+    	}, doc);
+    	loader.fork(new ConfigLoader.Task("datasources") {
+    		void load(Document doc) throws Exception {
+    			loadDataSources(configServer,config,doc);
+    		}
+    	}, doc);
+    	loader.fork(new ConfigLoader.Task("cache") {
+    		void load(Document doc) throws Exception {
+    			loadCache(configServer,config,doc);
+    		}
+    	}, doc);
+    	loader.fork(new ConfigLoader.Task("mail") {
+    		void load(Document doc) throws Exception {
+    			loadMail(configServer,config,doc);
+    		}
+    	}, doc);
+    	loader.fork(new ConfigLoader.Task("search") {
+    		void load(Document doc) throws Exception {
+    			loadSearch(configServer,config,doc);
+    		}
+    	}, doc);
+    	loader.fork(new ConfigLoader.Task("cfx") {
+    		void load(Document doc) throws Exception {
+    			loadCFX(configServer,config,doc);
+    		}
+    	}, doc);
+    	loader.fork(new ConfigLoader.Task("remote-client") {
+    		void load(Document doc) throws Exception {
+    			loadRemoteClient(cs, config, doc);
+    		}
+    	}, doc);
+    	
         loadMappings(configServer,config,doc);
+        loader.lap("mappings");
         loadExtensions(configServer,config,doc);
+        loader.lap("extensions");
         loadPagePool(configServer,config,doc);
-        loadDataSources(configServer,config,doc);
-        loadCache(configServer,config,doc);
         loadCustomTagsMappings(configServer,config,doc);
+        loader.lap("custom-tag-mappings");
     	loadPassword(cs,config,doc);
     	loadLabel(cs,config,doc);
     	loadFilesystem(cs,config,doc); // load tlds
+    	loader.lap("filesystem");
     	loadTag(cs,config,doc); // load tlds
-        loadRegional(configServer,config,doc);
+    	loader.lap("tag");
     	loadScope(configServer,config,doc);
-    	loadMail(configServer,config,doc);
-        loadSearch(configServer,config,doc);
+    	loader.lap("scope");
     	loadScheduler(configServer,config,doc,isEventGatewayContext);
+    	loader.lap("scheduler");
     	loadDebug(configServer,config,doc);
     	loadError(configServer,config,doc);
-        loadCFX(configServer,config,doc);
     	loadComponent(configServer,config,doc);
+    	loader.lap("component");
         loadApplication(configServer,config,doc);
         loadUpdate(cs,config,doc);
         loadJava(cs,config,doc); // define compile type
         loadSetting(cs,config,doc);
         loadProxy(cs,config,doc);
-        loadRemoteClient(cs, config, doc);
         loadVideo(cs, config, doc);
         loadFlex(configServer,config,doc);
+        loader.lap("settings");
         settings(config);
+        loader.lap("check-libraries");
         loadListener(cs,config,doc);
     	loadDumpWriter(cs, config, doc);
+    	loader.lap("dump-writer");
+    	loader.join();
     	loadGateway(configServer,config,doc);
+    	loader.lap("gateway");
     	loadExeLog(configServer,config,doc);
+    	loader.lap("execution-log");
     	config.setLoadTime(System.currentTimeMillis());
     	
     	doNew(config.getConfigDir(), false);
     	
+    	config.setLoadStatistics(loader.getStatistics(snapshot));
+    	SystemOut.printDate(SystemUtil.PRINTWRITER_OUT, "loaded config "+config.getConfigFile()+(snapshot?" from snapshot ":" ")+loader);
+    	
     	ThreadLocalConfig.release();
     }
 
@@ -782,14 +844,14 @@ public final class ConfigWebFactory {
      * @throws IOException
      */
     static Document loadDocument(Resource xmlFile) throws SAXException, IOException {
-        
-    	InputStream is=null;
-    	try {
-    		return _loadDocument(is=IOUtil.toBufferedInputStream(xmlFile.getInputStream()));
-    	}
-        finally {
-        	IOUtil.closeEL(is);
-        }
+    	// a unchanged config file is read from its snapshot
+    	byte[] xml=IOUtil.toBytes(xmlFile);
+    	Document doc=ConfigSnapshot.read(xmlFile, xml);
+    	if(doc!=null) return doc;
+    	
+    	doc=_loadDocument(new ByteArrayInputStream(xml));
+    	ConfigSnapshot.write(xmlFile, xml, doc);
+    	return doc;
     }
     
     /**
@@ -1598,6 +1660,8 @@ public final class ConfigWebFactory {
 	        try{
 				if("console".equalsIgnoreCase(strClass)) 
 					clazz=ConsoleExecutionLog.class;
+				else if("profiler".equalsIgnoreCase(strClass)) 
+					clazz=ProfilerExecutionLog.class;
 		        else {
 		        	Class c = ClassUtil.loadClass(strClass);
 		        	if((c.newInstance() instanceof ExecutionLog)) {
@@ -2657,6 +2721,17 @@ public final class ConfigWebFactory {
         	config.setContentLength(toBoolean(str,true));
         }
       else if(hasCS)config.setContentLength(configServer.contentLength());        
+        
+   // compression 
+        str=null;
+        if(setting!=null){
+        	str=setting.getAttribute("allow-compression");
+        	if(StringUtil.isEmpty(str))str=setting.getAttribute("allowcompression");
+        }  
+        if(!StringUtil.isEmpty(str) && hasAccess) {
+        	config.setAllowCompression(toBoolean(str,false));
+        }
+      else if(hasCS)config.setAllowCompression(configServer.allowCompression());        
     }
     
     private static void loadRemoteClient(ConfigServerImpl configServer, ConfigImpl config, Document doc) throws IOException {
@@ -2751,6 +2826,9 @@ public final class ConfigWebFactory {
 			engine.setPersisDirectory(dir);
 			
 		}
+		// max number of tasks executed at the same time
+		int maxThreads=Caster.toIntValue(_clients.getAttribute("spooler-max-threads"),SpoolerEngineImpl.DEFAULT_MAX_THREADS);
+		((SpoolerEngineImpl)config.getSpoolerEngine()).setMaxThreads(maxThreads);
     }
     
 
@@ -3091,6 +3169,13 @@ public final class ConfigWebFactory {
   	    	config.setClientScopeDirSize(ByteSizeParser.parseByteSizeDefinition(strMax,config.getClientScopeDirSize()));
 	    }
   	    else if(hasCS) config.setClientScopeDirSize(configServer.getClientScopeDirSize());
+  	    
+  	    // time a client scope stored in a datasource is used from memory, set 0 when other servers share the datasource
+  	    String strDSCache=scope.getAttribute("client-datasource-cache");
+  	    if(hasAccess && !StringUtil.isEmpty(strDSCache)) {
+  	    	config.setClientDatasourceCache(Math.max(0,Caster.toIntValue(strDSCache,10000)));
+  	    }
+  	    else if(hasCS) config.setClientDatasourceCache(configServer.getClientDatasourceCache());
 
   	    
   	    
@@ -3161,6 +3246,11 @@ public final class ConfigWebFactory {
             config.setCompileType(configServer.getCompileType());
         }
         
+        // warm-up
+        Boolean warmUp=Caster.toBoolean(java.getAttribute("warm-up"),null);
+        if(warmUp!=null) config.setWarmUp(warmUp.booleanValue());
+        else if(hasCS) config.setWarmUp(configServer.isWarmUp());
+        
         
     }
         
@@ -3846,6 +3936,38 @@ public final class ConfigWebFactory {
 	    }
 	    else if(hasCS) config.setAllowURLRequestTimeout(configServer.isAllowURLRequestTimeout());
 
+        // PageContext pool
+        String strPoolMax=application.getAttribute("pagecontext-pool-max");
+        if(hasAccess && !StringUtil.isEmpty(strPoolMax)) {
+	        config.setPageContextPoolMax(Caster.toIntValue(strPoolMax,100));
+	    }
+	    else if(hasCS) config.setPageContextPoolMax(configServer.getPageContextPoolMax());
+
+        // cfthread pool
+        String strThreadPoolMax=application.getAttribute("thread-pool-max");
+        if(hasAccess && !StringUtil.isEmpty(strThreadPoolMax)) {
+	        config.setThreadPoolMax(Caster.toIntValue(strThreadPoolMax,50));
+	    }
+	    else if(hasCS) config.setThreadPoolMax(configServer.getThreadPoolMax());
+        
+        String strThreadQueueMax=application.getAttribute("thread-queue-max");
+        if(hasAccess && !StringUtil.isEmpty(strThreadQueueMax)) {
+	        config.setThreadQueueMax(Caster.toIntValue(strThreadQueueMax,1000));
+	    }
+	    else if(hasCS) config.setThreadQueueMax(configServer.getThreadQueueMax());
+        
+        String strThreadRejection=application.getAttribute("thread-rejection");
+        if(hasAccess && !StringUtil.isEmpty(strThreadRejection)) {
+	        config.setThreadRejection(ChildThreadExecutor.toRejection(strThreadRejection,ChildThreadExecutor.REJECTION_CALLER));
+	    }
+	    else if(hasCS) config.setThreadRejection(configServer.getThreadRejection());
+        
+        String strThreadVirtual=application.getAttribute("thread-virtual");
+        if(hasAccess && !StringUtil.isEmpty(strThreadVirtual)) {
+	        config.setThreadVirtual(Caster.toBooleanValue(strThreadVirtual,false));
+	    }
+	    else if(hasCS) config.setThreadVirtual(configServer.isThreadVirtual());
+
         
         // Req Timeout
         String reqTimeoutApplication=application.getAttribute("requesttimeout");
@@ -27,6 +27,7 @@ import railo.runtime.exp.PageException;
 import railo.runtime.exp.SecurityException;
 import railo.runtime.lock.LockManager;
 import railo.runtime.lock.LockManagerImpl;
+import railo.runtime.net.http.HttpConnectionPool;
 import railo.runtime.security.SecurityManager;
 import railo.runtime.security.SecurityManagerImpl;
 
@@ -39,6 +40,7 @@ public final class ConfigWebImpl extends ConfigImpl implements ServletConfig, Co
     private ConfigServerImpl configServer;
     private SecurityManager securityManager;
     private LockManager lockManager= LockManagerImpl.getInstance();
+    private HttpConnectionPool httpConnectionPool=new HttpConnectionPool();
     private Resource rootDir;
     private CFMLCompilerImpl compiler=new CFMLCompilerImpl();
     private Page baseComponentPage;
@@ -211,6 +213,13 @@ public final class ConfigWebImpl extends ConfigImpl implements ServletConfig, Co
         return lockManager;
     }
 
+    /**
+     * @return the http connections shared by all cfhttp calls of this context
+     */
+    public HttpConnectionPool getHttpConnectionPool() {
+        return httpConnectionPool;
+    }
+
 	/**
 	 * @return the compiler
 	 */
@@ -1,6 +1,10 @@
 package railo.runtime.converter;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
@@ -31,6 +35,7 @@ import railo.runtime.type.Collection.Key;
 import railo.runtime.type.KeyImpl;
 import railo.runtime.type.ObjectWrap;
 import railo.runtime.type.Query;
+import railo.runtime.type.QueryColumn;
 import railo.runtime.type.Struct;
 import railo.runtime.type.StructImpl;
 import railo.runtime.type.UDF;
@@ -68,7 +73,7 @@ public final class JSONConverter {
 	 * @throws ConverterException
      */
     
-    private void _serializeClass(PageContext pc,Set test,Class clazz,Object obj, StringBuffer sb, boolean serializeQueryByColumns, Set<Object> done) throws ConverterException {
+    private void _serializeClass(PageContext pc,Set test,Class clazz,Object obj, Output sb, boolean serializeQueryByColumns, Set<Object> done) throws ConverterException {
     	Struct sct=new StructImpl(Struct.TYPE_LINKED);
     	if(test==null)test=new HashSet();
     	
@@ -119,7 +124,7 @@ public final class JSONConverter {
 	 * @param sb
 	 * @throws ConverterException
 	 */
-	private void _serializeDate(Date date, StringBuffer sb) {
+	private void _serializeDate(Date date, Output sb) throws ConverterException {
 		_serializeDateTime(new DateTimeImpl(date),sb);
 	}
 	/**
@@ -128,16 +133,15 @@ public final class JSONConverter {
 	 * @param sb
 	 * @throws ConverterException
 	 */
-	private void _serializeDateTime(DateTime dateTime, StringBuffer sb) {
+	private void _serializeDateTime(DateTime dateTime, Output sb) throws ConverterException {
 		
 		sb.append('"');
 		
-		//sb.append(escape(dateTime.toString()));
-		sb.append(escape(JSONDateFormat.format(dateTime,null)));
+		//sb.escape(dateTime.toString());
+		sb.escape(JSONDateFormat.format(dateTime,null));
 		sb.append('"');
 		
 		/*try {
-	        sb.append(goIn());
 		    sb.append("createDateTime(");
 		    sb.append(DateFormat.call(null,dateTime,"yyyy,m,d"));
 		    sb.append(' ');
@@ -158,7 +162,7 @@ public final class JSONConverter {
 	 * @param done 
 	 * @throws ConverterException
 	 */
-	private void _serializeArray(PageContext pc,Set test,Array array, StringBuffer sb, boolean serializeQueryByColumns, Set<Object> done) throws ConverterException {
+	private void _serializeArray(PageContext pc,Set test,Array array, Output sb, boolean serializeQueryByColumns, Set<Object> done) throws ConverterException {
 		_serializeList(pc,test,array.toList(),sb,serializeQueryByColumns,done);
 	}
 	
@@ -170,9 +174,8 @@ public final class JSONConverter {
 	 * @param done 
 	 * @throws ConverterException
 	 */
-	private void _serializeList(PageContext pc,Set test,List list, StringBuffer sb, boolean serializeQueryByColumns, Set<Object> done) throws ConverterException {
+	private void _serializeList(PageContext pc,Set test,List list, Output sb, boolean serializeQueryByColumns, Set<Object> done) throws ConverterException {
 		
-	    sb.append(goIn());
 	    sb.append("[");
 	    boolean doIt=false;
 		ListIterator it=list.listIterator();
@@ -184,9 +187,8 @@ public final class JSONConverter {
 		
 		sb.append(']');
 	}
-	private void _serializeArray(PageContext pc,Set test,Object[] arr, StringBuffer sb, boolean serializeQueryByColumns, Set<Object> done) throws ConverterException {
+	private void _serializeArray(PageContext pc,Set test,Object[] arr, Output sb, boolean serializeQueryByColumns, Set<Object> done) throws ConverterException {
 		
-	    sb.append(goIn());
 	    sb.append("[");
 	    for(int i=0;i<arr.length;i++) {
 		    if(i>0)sb.append(',');
@@ -204,7 +206,7 @@ public final class JSONConverter {
      * @param done 
      * @throws ConverterException
      */
-    public void _serializeStruct(PageContext pc,Set test,Struct struct, StringBuffer sb, boolean serializeQueryByColumns, boolean addUDFs, Set<Object> done) throws ConverterException {
+    private void _serializeStruct(PageContext pc,Set test,Struct struct, Output sb, boolean serializeQueryByColumns, boolean addUDFs, Set<Object> done) throws ConverterException {
         // Component
     	if(struct instanceof Component){
         	String res = castToJson(pc, (Component)struct, NULL_STRING);
@@ -215,7 +217,6 @@ public final class JSONConverter {
         }
     	
     	
-    	sb.append(goIn());
         sb.append("{");
         Key[] keys = struct.keys();
         Key key;
@@ -228,7 +229,7 @@ public final class JSONConverter {
         	if(doIt)sb.append(',');
             doIt=true;
             sb.append('"');
-            sb.append(escape(key.getString()));
+            sb.escape(key.getString());
             sb.append('"');
             sb.append(':');
             _serialize(pc,test,struct.get(key,null),sb,serializeQueryByColumns,done);
@@ -261,8 +262,7 @@ public final class JSONConverter {
      * @param done 
      * @throws ConverterException
      */
-    private void _serializeMap(PageContext pc,Set test,Map map, StringBuffer sb, boolean serializeQueryByColumns, Set<Object> done) throws ConverterException {
-        sb.append(goIn());
+    private void _serializeMap(PageContext pc,Set test,Map map, Output sb, boolean serializeQueryByColumns, Set<Object> done) throws ConverterException {
         sb.append("{");
         
         Iterator it=map.keySet().iterator();
@@ -272,7 +272,7 @@ public final class JSONConverter {
             if(doIt)sb.append(',');
             doIt=true;
             sb.append('"');
-            sb.append(escape(key.toString()));
+            sb.escape(key.toString());
             sb.append('"');
             sb.append(':');
             _serialize(pc,test,map.get(key),sb,serializeQueryByColumns,done);
@@ -288,7 +288,7 @@ public final class JSONConverter {
      * @param done 
      * @throws ConverterException
      */
-    private void _serializeComponent(PageContext pc,Set test,Component component, StringBuffer sb, boolean serializeQueryByColumns, Set<Object> done) throws ConverterException {
+    private void _serializeComponent(PageContext pc,Set test,Component component, Output sb, boolean serializeQueryByColumns, Set<Object> done) throws ConverterException {
     	try {
 			ComponentImpl ci = ComponentUtil.toComponentImpl(component);
 			ComponentWrap cw = new ComponentWrap(Component.ACCESS_PRIVATE,ci);
@@ -300,7 +300,7 @@ public final class JSONConverter {
     }
     
 
-    private void _serializeUDF(PageContext pc,Set test,UDF udf, StringBuffer sb,boolean serializeQueryByColumns, Set<Object> done) throws ConverterException {
+    private void _serializeUDF(PageContext pc,Set test,UDF udf, Output sb,boolean serializeQueryByColumns, Set<Object> done) throws ConverterException {
 		Struct sct=new StructImpl();
 		try {
 			// Meta
@@ -335,10 +335,9 @@ public final class JSONConverter {
 	 * @param done 
 	 * @throws ConverterException
 	 */
-	private void _serializeQuery(PageContext pc,Set test,Query query, StringBuffer sb, boolean serializeQueryByColumns, Set<Object> done) throws ConverterException {
+	private void _serializeQuery(PageContext pc,Set test,Query query, Output sb, boolean serializeQueryByColumns, Set<Object> done) throws ConverterException {
 		
 		String[] keys = query.keysAsString();
-		sb.append(goIn());
 		sb.append("{");
 		
 		/*
@@ -359,34 +358,33 @@ public final class JSONConverter {
 		for(int i=0;i<cols.length;i++) {
 			if(i>0)sb.append(",\"");
 			else sb.append('"');
-            sb.append(escape(cols[i].toUpperCase()));
+            sb.escape(cols[i].toUpperCase());
             sb.append('"');
 		}
 		sb.append("],");
 		
 		// Data
 		sb.append("\"DATA\":");
+		int len=query.getRecordcount();
+		QueryColumn[] columns=new QueryColumn[keys.length];
+		for(int i=0;i<keys.length;i++) {
+			columns[i]=query.getColumn(keys[i],null);
+		}
 		if(serializeQueryByColumns) {
 			sb.append('{');
 			boolean oDoIt=false;
-			int len=query.getRecordcount();
 			for(int i=0;i<keys.length;i++) {
 			    if(oDoIt)sb.append(',');
 			    oDoIt=true;
-			    sb.append(goIn());
 	            sb.append('"');
-	            sb.append(escape(keys[i]));
+	            sb.escape(keys[i]);
 	            sb.append('"');
 				sb.append(":[");
 				boolean doIt=false;
 					for(int y=1;y<=len;y++) {
 					    if(doIt)sb.append(',');
 					    doIt=true;
-					    try {
-							_serialize(pc,test,query.getAt(keys[i],y),sb,serializeQueryByColumns,done);
-						} catch (PageException e) {
-							_serialize(pc,test,e.getMessage(),sb,serializeQueryByColumns,done);
-						}
+					    _serializeCell(pc,test,query,keys[i],columns[i],y,sb,serializeQueryByColumns,done);
 					}
 				
 				sb.append(']');
@@ -397,7 +395,6 @@ public final class JSONConverter {
 		else {
 			sb.append('[');
 			boolean oDoIt=false;
-			int len=query.getRecordcount();
 			for(int row=1;row<=len;row++) {
 			    if(oDoIt)sb.append(',');
 			    oDoIt=true;
@@ -407,11 +404,7 @@ public final class JSONConverter {
 					for(int col=0;col<keys.length;col++) {
 					    if(doIt)sb.append(',');
 					    doIt=true;
-					    try {
-							_serialize(pc,test,query.getAt(keys[col],row),sb,serializeQueryByColumns,done);
-						} catch (PageException e) {
-							_serialize(pc,test,e.getMessage(),sb,serializeQueryByColumns,done);
-						}
+					    _serializeCell(pc,test,query,keys[col],columns[col],row,sb,serializeQueryByColumns,done);
 					}
 				sb.append(']');
 			}
@@ -419,6 +412,20 @@ public final class JSONConverter {
 		}
 		sb.append('}');
 	}
+
+	/**
+	 * serialize a single cell of a query, the column is only resolved once per query
+	 */
+	private void _serializeCell(PageContext pc,Set test,Query query, String key, QueryColumn column, int row, Output sb, boolean serializeQueryByColumns, Set<Object> done) throws ConverterException {
+		try {
+			Object value=column==null?query.getAt(key,row):column.get(row);
+			// numbers are the most common value, they are written without passing the type checks of _serialize
+			if(value instanceof Double) sb.append(Caster.toString(((Double)value).doubleValue()));
+			else _serialize(pc,test,value,sb,serializeQueryByColumns,done);
+		} catch (PageException e) {
+			_serialize(pc,test,e.getMessage(),sb,serializeQueryByColumns,done);
+		}
+	}
 	
 	/**
 	 * serialize a Object to his xml Format represenation
@@ -428,39 +435,34 @@ public final class JSONConverter {
 	 * @param done 
 	 * @throws ConverterException
 	 */
-	private void _serialize(PageContext pc,Set test,Object object, StringBuffer sb, boolean serializeQueryByColumns, Set<Object> done) throws ConverterException {
+	private void _serialize(PageContext pc,Set test,Object object, Output sb, boolean serializeQueryByColumns, Set<Object> done) throws ConverterException {
 		
 		// NULL
 		if(object==null || object==NULL) {
-		    sb.append(goIn());
 		    sb.append("null");
 		    return;
 		}
 		// String
 		if(object instanceof String || object instanceof StringBuffer) {
-		    sb.append(goIn());
 		    sb.append('"');
-		    sb.append(escape(object.toString()));
+		    sb.escape(object.toString());
 		    sb.append('"');
 		    return;
 		}
 		// Character
 		if(object instanceof Character) {
-		    sb.append(goIn());
 		    sb.append('"');
-		    sb.append(escape(String.valueOf(((Character)object).charValue())));
+		    sb.escape(String.valueOf(((Character)object).charValue()));
 		    sb.append('"');
 		    return;
 		}
 		// Number
 		if(object instanceof Number) {
-		    sb.append(goIn());
 		    sb.append(Caster.toString(((Number)object).doubleValue()));
 		    return;
 		}
 		// Boolean
 		if(object instanceof Boolean) {
-		    sb.append(goIn());
 		    sb.append(Caster.toString(((Boolean)object).booleanValue()));
 		    return;
 		}
@@ -496,7 +498,6 @@ public final class JSONConverter {
 		}
 		
 		if(done.contains(object)){
-			sb.append(goIn());
 		    sb.append("null");
 		    return;
 		}
@@ -569,19 +570,17 @@ public final class JSONConverter {
 		}
 	}
 
-	private void _serializeXML(Node node, StringBuffer sb) {
+	private void _serializeXML(Node node, Output sb) throws ConverterException {
     	node=XMLCaster.toRawNode(node);
-    	sb.append(goIn());
 	    sb.append('"');
-	    sb.append(escape(XMLCaster.toString(node,"")));
+	    sb.escape(XMLCaster.toString(node,""));
 	    sb.append('"');
     	
 	}
 
 
-	private void _serializeTimeSpan(TimeSpan span, StringBuffer sb) {
+	private void _serializeTimeSpan(TimeSpan span, Output sb) throws ConverterException {
     	
-	        sb.append(goIn());
 		    sb.append("createTimeSpan(");
 		    sb.append(span.getDay());
 		    sb.append(',');
@@ -631,18 +630,180 @@ public final class JSONConverter {
 	 * @throws ConverterException
 	 */
 	public String serialize(PageContext pc,Object object, boolean serializeQueryByColumns) throws ConverterException {
-		StringBuffer sb=new StringBuffer();
-		_serialize(pc,null,object,sb,serializeQueryByColumns,new HashSet<Object>());
-		return sb.toString();
+		Output sb=new Output(null);
+		try {
+			_serialize(pc,null,object,sb,serializeQueryByColumns,new HashSet<Object>());
+			return sb.toString();
+		}
+		finally {
+			sb.release();
+		}
 	}
-	
-	
-	/**
-	 * @return return current blockquote
+
+    /**
+	 * serialize a Object to his literal Format and writes it directly to the given Writer (for example the response writer)
+	 * @param object Object to serialize
+     * @param serializeQueryByColumns 
+     * @param writer Writer to write to
+	 * @throws ConverterException
 	 */
-	private String goIn() {
-	    return "";
+	public void serialize(PageContext pc,Object object, boolean serializeQueryByColumns, Writer writer) throws ConverterException {
+		Output sb=new Output(writer);
+		try {
+			_serialize(pc,null,object,sb,serializeQueryByColumns,new HashSet<Object>());
+			sb.flush();
+		}
+		finally {
+			sb.release();
+		}
 	}
 
+    /**
+	 * serialize a Object to his literal Format and writes it to the given stream
+	 * @param object Object to serialize
+     * @param serializeQueryByColumns 
+     * @param os stream to write to
+     * @param charset charset used to encode the output
+	 * @throws ConverterException
+	 */
+	public void serialize(PageContext pc,Object object, boolean serializeQueryByColumns, OutputStream os, String charset) throws ConverterException {
+		try {
+			Writer writer = new OutputStreamWriter(os,charset);
+			serialize(pc, object, serializeQueryByColumns, writer);
+			writer.flush();
+		}
+		catch (IOException e) {
+			throw new ConverterException(e);
+		}
+	}
+
+	/**
+	 * unsynchronized output buffer, when a Writer is given, the buffer is written to it every time it is full,
+	 * otherwise the buffer grows until the serialisation is done. 
+	 * The char array is reused by the next serialisation in the same thread.
+	 */
+	private static final class Output {
+		
+		private static final int SIZE=8192;
+		private static final int MAX_RETAINED=1024*256;
+		private static final char[] HEX="0123456789abcdef".toCharArray();
+		private static ThreadLocal buffers=new ThreadLocal();
+		
+		private final Writer writer;
+		private char[] buffer;
+		private int pos;
+		
+		private Output(Writer writer) {
+			this.writer=writer;
+			// take the buffer from the thread, so a nested serialisation (for example inside _toJson) gets a new one
+			buffer=(char[]) buffers.get();
+			if(buffer==null) buffer=new char[SIZE];
+			else buffers.set(null);
+		}
+		
+		private void release() {
+			if(buffer.length<=MAX_RETAINED) buffers.set(buffer);
+			buffer=null;
+		}
+
+		private void append(char c) throws ConverterException {
+			if(pos==buffer.length) ensure(1);
+			buffer[pos++]=c;
+		}
+
+		private void append(int i) throws ConverterException {
+			append(Integer.toString(i));
+		}
+
+		private void append(String str) throws ConverterException {
+			int len=str.length();
+			if(pos+len>buffer.length) {
+				ensure(len);
+				// bigger than the buffer, write it directly
+				if(len>buffer.length) {
+					write(str);
+					return;
+				}
+			}
+			str.getChars(0, len, buffer, pos);
+			pos+=len;
+		}
+
+		/**
+		 * appends the string escaped for a JSON string literal
+		 */
+		private void escape(String str) throws ConverterException {
+			int len=str.length();
+			char c;
+			for(int i=0;i<len;i++) {
+				c=str.charAt(i);
+				if(c<128 && c>=32){
+					switch(c) {
+						case '\\': append("\\\\"); break;
+						case '/': append("\\/"); break;
+						case '"' : append("\\\""); break;
+						default : append(c); break;
+					}
+				}
+				else if(c<32){
+					switch(c) {
+						case '\n': append("\\n"); break;
+						case '\r': append("\\r"); break;
+						case '\f': append("\\f"); break;
+						case '\b': append("\\b"); break;
+						case '\t': append("\\t"); break;
+						default : unicode(c); break;
+					}
+				}
+				else unicode(c);
+			}
+		}
+
+		private void unicode(char c) throws ConverterException {
+			if(pos+6>buffer.length) ensure(6);
+			buffer[pos++]='\\';
+			buffer[pos++]='u';
+			buffer[pos++]=HEX[(c>>12)&0xF];
+			buffer[pos++]=HEX[(c>>8)&0xF];
+			buffer[pos++]=HEX[(c>>4)&0xF];
+			buffer[pos++]=HEX[c&0xF];
+		}
+
+		/**
+		 * makes room for at least min characters, flushs the buffer to the writer or grows the buffer
+		 */
+		private void ensure(int min) throws ConverterException {
+			if(writer!=null) {
+				flush();
+				return;
+			}
+			char[] tmp=new char[Math.max(buffer.length*2, pos+min)];
+			System.arraycopy(buffer, 0, tmp, 0, pos);
+			buffer=tmp;
+		}
 
-}
\ No newline at end of file
+		private void flush() throws ConverterException {
+			if(pos==0) return;
+			try {
+				writer.write(buffer, 0, pos);
+			}
+			catch (IOException e) {
+				throw new ConverterException(e);
+			}
+			pos=0;
+		}
+
+		private void write(String str) throws ConverterException {
+			try {
+				writer.write(str);
+			}
+			catch (IOException e) {
+				throw new ConverterException(e);
+			}
+		}
+
+		public String toString() {
+			return new String(buffer,0,pos);
+		}
+	}
+}
@@ -0,0 +1,331 @@
+package railo.runtime.converter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import railo.runtime.type.ArrayImpl;
+import railo.runtime.type.KeyImpl;
+import railo.runtime.type.Struct;
+import railo.runtime.type.StructImpl;
+
+/**
+ * pull parser for JSON, reads the input incrementally from a Reader, so large inputs are never loaded as a whole.
+ * The caller gets one token after the other with next(), or the complete value with parse().
+ * Only strict JSON is supported, for the CFML syntax (single quotes, unquoted keys ...) use the JSONExpressionInterpreter
+ */
+public final class JSONParser {
+
+	public static final int END=0;
+	public static final int START_OBJECT=1;
+	public static final int END_OBJECT=2;
+	public static final int START_ARRAY=3;
+	public static final int END_ARRAY=4;
+	public static final int NAME=5;
+	public static final int STRING=6;
+	public static final int NUMBER=7;
+	public static final int BOOLEAN=8;
+	public static final int NULL=9;
+
+	private static final int CTX_TOP=0;
+	private static final int CTX_OBJECT=1;
+	private static final int CTX_ARRAY=2;
+
+	// states of a context
+	private static final int EXPECT_FIRST=0;
+	private static final int EXPECT_COLON=1;
+	private static final int EXPECT_COMMA=2;
+	private static final int EXPECT_NEXT=3;
+
+	private final Reader reader;
+	private final char[] buffer;
+	private int pos;
+	private int len;
+	private long offset;
+
+	private int[] contexts=new int[16];
+	private int[] states=new int[16];
+	private int depth;
+
+	private StringBuffer sb=new StringBuffer();
+	private String string;
+	private double number;
+	private boolean bool;
+
+	public JSONParser(Reader reader) {
+		this.reader=reader;
+		this.buffer=new char[8192];
+		contexts[0]=CTX_TOP;
+		states[0]=EXPECT_FIRST;
+	}
+
+	public JSONParser(String str) {
+		this(new StringReader(str));
+	}
+
+	/**
+	 * reads the next token
+	 * @return token type (END, START_OBJECT, END_OBJECT, START_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL)
+	 * @throws ConverterException
+	 */
+	public int next() throws ConverterException {
+		while(true) {
+			int c=readNonSpace();
+			int state=states[depth];
+			switch(contexts[depth]) {
+			case CTX_TOP:
+				if(state==EXPECT_FIRST) {
+					states[depth]=EXPECT_COMMA;
+					return value(c);
+				}
+				if(c!=-1) throw error("end of input expected");
+				return END;
+			case CTX_OBJECT:
+				if(state==EXPECT_COLON) {
+					if(c!=':') throw error("[:] expected");
+					states[depth]=EXPECT_COMMA;
+					return value(readNonSpace());
+				}
+				if(state==EXPECT_COMMA) {
+					if(c==',') {
+						states[depth]=EXPECT_NEXT;
+						continue;
+					}
+					if(c=='}') {
+						depth--;
+						return END_OBJECT;
+					}
+					throw error("[,] or [}] expected");
+				}
+				if(c=='}' && state==EXPECT_FIRST) {
+					depth--;
+					return END_OBJECT;
+				}
+				if(c!='"') throw error("name expected");
+				string=readString();
+				states[depth]=EXPECT_COLON;
+				return NAME;
+			default:
+				if(state==EXPECT_COMMA) {
+					if(c==',') {
+						states[depth]=EXPECT_NEXT;
+						continue;
+					}
+					if(c==']') {
+						depth--;
+						return END_ARRAY;
+					}
+					throw error("[,] or []] expected");
+				}
+				if(c==']' && state==EXPECT_FIRST) {
+					depth--;
+					return END_ARRAY;
+				}
+				states[depth]=EXPECT_COMMA;
+				return value(c);
+			}
+		}
+	}
+
+	/**
+	 * @return value of the last NAME or STRING token
+	 */
+	public String getString() {
+		return string;
+	}
+
+	/**
+	 * @return value of the last NUMBER token
+	 */
+	public double getNumber() {
+		return number;
+	}
+
+	/**
+	 * @return value of the last BOOLEAN token
+	 */
+	public boolean getBoolean() {
+		return bool;
+	}
+
+	/**
+	 * reads the complete input and returns it as CFML value (Struct, Array, String, Double, Boolean or null)
+	 * @return parsed value
+	 * @throws ConverterException
+	 */
+	public Object parse() throws ConverterException {
+		Object value=toValue(next());
+		if(next()!=END) throw error("end of input expected");
+		return value;
+	}
+
+	private Object toValue(int token) throws ConverterException {
+		switch(token) {
+		case START_OBJECT:
+			Struct sct=new StructImpl();
+			while((token=next())!=END_OBJECT) {
+				String name=string;
+				sct.setEL(KeyImpl.init(name), toValue(next()));
+			}
+			return sct;
+		case START_ARRAY:
+			ArrayImpl arr=new ArrayImpl();
+			while((token=next())!=END_ARRAY) {
+				arr.appendEL(toValue(token));
+			}
+			return arr;
+		case STRING:	return string;
+		case NUMBER:	return new Double(number);
+		case BOOLEAN:	return bool?Boolean.TRUE:Boolean.FALSE;
+		case NULL:		return null;
+		}
+		throw error("value expected");
+	}
+
+	private int value(int c) throws ConverterException {
+		switch(c) {
+		case '{':
+			push(CTX_OBJECT);
+			return START_OBJECT;
+		case '[':
+			push(CTX_ARRAY);
+			return START_ARRAY;
+		case '"':
+			string=readString();
+			return STRING;
+		case 't':
+			literal("rue");
+			bool=true;
+			return BOOLEAN;
+		case 'f':
+			literal("alse");
+			bool=false;
+			return BOOLEAN;
+		case 'n':
+			literal("ull");
+			return NULL;
+		}
+		if(c=='-' || (c>='0' && c<='9')) {
+			number=readNumber(c);
+			return NUMBER;
+		}
+		throw error("value expected");
+	}
+
+	private void push(int context) {
+		if(++depth==contexts.length) {
+			int[] tmp=new int[contexts.length*2];
+			System.arraycopy(contexts, 0, tmp, 0, contexts.length);
+			contexts=tmp;
+			tmp=new int[states.length*2];
+			System.arraycopy(states, 0, tmp, 0, states.length);
+			states=tmp;
+		}
+		contexts[depth]=context;
+		states[depth]=EXPECT_FIRST;
+	}
+
+	private void literal(String rest) throws ConverterException {
+		for(int i=0;i<rest.length();i++) {
+			if(read()!=rest.charAt(i)) throw error("invalid literal");
+		}
+	}
+
+	private double readNumber(int c) throws ConverterException {
+		sb.setLength(0);
+		sb.append((char)c);
+		while(true) {
+			c=peek();
+			if((c>='0' && c<='9') || c=='.' || c=='e' || c=='E' || c=='+' || c=='-') {
+				sb.append((char)c);
+				pos++;
+			}
+			else break;
+		}
+		try {
+			return Double.parseDouble(sb.toString());
+		}
+		catch(NumberFormatException e) {
+			throw error("invalid number ["+sb+"]");
+		}
+	}
+
+	private String readString() throws ConverterException {
+		sb.setLength(0);
+		int c;
+		while(true) {
+			// copy the plain part directly from the buffer
+			int start=pos;
+			while(pos<len && buffer[pos]!='"' && buffer[pos]!='\\') pos++;
+			if(pos>start) sb.append(buffer, start, pos-start);
+
+			c=read();
+			if(c=='"') return sb.toString();
+			if(c==-1) throw error("unterminated string");
+			if(c!='\\') {
+				sb.append((char)c);
+				continue;
+			}
+			c=read();
+			switch(c) {
+			case '"':	sb.append('"'); break;
+			case '\\':	sb.append('\\'); break;
+			case '/':	sb.append('/'); break;
+			case 'b':	sb.append('\b'); break;
+			case 'f':	sb.append('\f'); break;
+			case 'n':	sb.append('\n'); break;
+			case 'r':	sb.append('\r'); break;
+			case 't':	sb.append('\t'); break;
+			case 'u':
+				int code=0,d;
+				for(int i=0;i<4;i++) {
+					d=Character.digit((char)read(), 16);
+					if(d==-1) throw error("invalid unicode escape");
+					code=code*16+d;
+				}
+				sb.append((char)code);
+			break;
+			default: throw error("invalid escape");
+			}
+		}
+	}
+
+	private int readNonSpace() throws ConverterException {
+		int c;
+		do {
+			c=read();
+		}
+		while(c==' ' || c=='\n' || c=='\r' || c=='\t');
+		return c;
+	}
+
+	private int read() throws ConverterException {
+		if(pos==len && !fill()) return -1;
+		return buffer[pos++];
+	}
+
+	private int peek() throws ConverterException {
+		if(pos==len && !fill()) return -1;
+		return buffer[pos];
+	}
+
+	private boolean fill() throws ConverterException {
+		try {
+			offset+=len;
+			pos=0;
+			len=reader.read(buffer, 0, buffer.length);
+			if(len<=0) {
+				len=0;
+				return false;
+			}
+			return true;
+		}
+		catch (IOException e) {
+			throw new ConverterException(e);
+		}
+	}
+
+	private ConverterException error(String msg) {
+		return new ConverterException("invalid JSON, "+msg+" at position "+(offset+pos));
+	}
+}
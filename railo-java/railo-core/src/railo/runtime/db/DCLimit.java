@@ -0,0 +1,118 @@
+package railo.runtime.db;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import railo.runtime.type.Struct;
+import railo.runtime.type.StructImpl;
+
+/**
+ * connection limit and usage statistic of a single datasource (over all username/password combinations),
+ * threads waiting for a connection are served in arrival order (fair semaphore)
+ */
+class DCLimit {
+
+	private static final long[] BUCKETS=new long[]{1,5,10,50,100,500,1000,5000,10000};
+	private static final long SLICE=10000L;
+
+	private final int max;
+	private final Semaphore permits;
+
+	private final AtomicInteger active=new AtomicInteger();
+	private final AtomicInteger waiters=new AtomicInteger();
+	private final AtomicLong borrows=new AtomicLong();
+	private final AtomicLong waits=new AtomicLong();
+	private final AtomicLong timeouts=new AtomicLong();
+	private final AtomicLong created=new AtomicLong();
+	private final AtomicLong waitNanos=new AtomicLong();
+	private final AtomicLongArray histogram=new AtomicLongArray(BUCKETS.length+1);
+
+	DCLimit(int max) {
+		this.max=max;
+		this.permits=max==-1?null:new Semaphore(max,true);
+	}
+
+	/**
+	 * reserves a connection slot, waits up to the given time (in milliseconds) when the limit is reached
+	 * @param timeout max time to wait, 0 or less means waiting without limit
+	 * @return true if a slot was reserved, false when the time is up
+	 * @throws InterruptedException
+	 */
+	boolean acquire(long timeout) throws InterruptedException {
+		long start=System.nanoTime();
+		if(permits!=null && !permits.tryAcquire()) {
+			waits.incrementAndGet();
+			waiters.incrementAndGet();
+			try {
+				if(timeout>0) {
+					if(!permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+						timeouts.incrementAndGet();
+						return false;
+					}
+				}
+				else {
+					while(!permits.tryAcquire(SLICE, TimeUnit.MILLISECONDS)){}
+				}
+			}
+			finally {
+				waiters.decrementAndGet();
+			}
+		}
+		active.incrementAndGet();
+		borrows.incrementAndGet();
+		record(System.nanoTime()-start);
+		return true;
+	}
+
+	void release() {
+		active.decrementAndGet();
+		if(permits!=null) permits.release();
+	}
+
+	void created() {
+		created.incrementAndGet();
+	}
+
+	int getMax() {
+		return max;
+	}
+
+	int getActive() {
+		return active.get();
+	}
+
+	private void record(long nanos) {
+		waitNanos.addAndGet(nanos);
+		long millis=nanos/1000000L;
+		int index=0;
+		while(index<BUCKETS.length && millis>=BUCKETS[index]) index++;
+		histogram.incrementAndGet(index);
+	}
+
+	/**
+	 * @param idle number of idle connections
+	 * @return pool metrics as struct
+	 */
+	Struct toStruct(int idle) {
+		Struct sct=new StructImpl();
+		sct.setEL("connectionLimit",new Double(max));
+		sct.setEL("active",new Double(active.get()));
+		sct.setEL("idle",new Double(idle));
+		sct.setEL("waiters",new Double(waiters.get()));
+		sct.setEL("borrows",new Double(borrows.get()));
+		sct.setEL("waits",new Double(waits.get()));
+		sct.setEL("timeouts",new Double(timeouts.get()));
+		sct.setEL("created",new Double(created.get()));
+		sct.setEL("borrowTime",new Double(waitNanos.get()/1000000L));
+
+		Struct hist=new StructImpl(StructImpl.TYPE_LINKED);
+		for(int i=0;i<=BUCKETS.length;i++){
+			hist.setEL(i<BUCKETS.length?"<"+BUCKETS[i]+"ms":">="+BUCKETS[BUCKETS.length-1]+"ms", new Double(histogram.get(i)));
+		}
+		sct.setEL("borrowTimeHistogram",hist);
+		return sct;
+	}
+}
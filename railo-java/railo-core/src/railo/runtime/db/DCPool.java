@@ -0,0 +1,132 @@
+package railo.runtime.db;
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import railo.runtime.PageContext;
+import railo.runtime.PageContextImpl;
+import railo.runtime.engine.ThreadLocalPageContext;
+
+/**
+ * idle connections of one datasource/username/password combination,
+ * spread over several non blocking queues, every thread starts looking for a connection in "his" queue
+ */
+class DCPool {
+
+	private static final int STRIPES;
+	static {
+		int s=1;
+		int cores=Runtime.getRuntime().availableProcessors();
+		while(s<cores && s<64) s<<=1;
+		STRIPES=s;
+	}
+
+	private final ConcurrentLinkedQueue[] queues;
+	private final AtomicInteger idle=new AtomicInteger();
+	// lower case name of the datasource
+	private final String datasource;
+
+	DCPool(String datasource) {
+		this.datasource=datasource;
+		queues=new ConcurrentLinkedQueue[STRIPES];
+		for(int i=0;i<queues.length;i++){
+			queues[i]=new ConcurrentLinkedQueue();
+		}
+	}
+
+	/**
+	 * @param datasource name of a datasource
+	 * @return is this the pool of the given datasource (ignoring the case)
+	 */
+	boolean isOf(String datasource) {
+		return this.datasource.equalsIgnoreCase(datasource);
+	}
+
+	public void add(DatasourceConnection dc){
+		queues[stripe()].offer(dc);
+		idle.incrementAndGet();
+	}
+
+	/**
+	 * returns a idle connection or null if there is none, the connection is not validated against the driver,
+	 * this is done by the background sweep (see clear())
+	 * @param pc
+	 * @return connection or null
+	 */
+	public DatasourceConnection get(PageContext pc){
+		int start=stripe();
+		DatasourceConnection dc;
+		for(int i=0;i<queues.length;i++){
+			while((dc=(DatasourceConnection) queues[(start+i)&(queues.length-1)].poll())!=null){
+				idle.decrementAndGet();
+				if(checkRequest(pc,dc)) return dc;
+			}
+		}
+		return null;
+	}
+
+	private boolean checkRequest(PageContext pc,DatasourceConnection dc) {
+		if(dc.getDatasource().getConnectionTimeout()!=0) return true;
+
+		int dcid = ((DatasourceConnectionImpl)dc).getRequestId();
+		int pcid = ((PageContextImpl)ThreadLocalPageContext.get(pc)).getRequestId();
+		if(dcid==-1){
+			((DatasourceConnectionImpl)dc).setRequestId(pcid);
+			return true;
+		}
+		if(dcid!=pcid) {
+			close(dc);
+			return false;
+		}
+		return true;
+	}
+
+	public boolean isEmpty(){
+		return idle.get()<=0;
+	}
+
+	public int size(){
+		return Math.max(idle.get(),0);
+	}
+
+	/**
+	 * removes all timed out or closed connections from the pool
+	 */
+	public void clear() {
+		Iterator it;
+		DatasourceConnection dc;
+		for(int i=0;i<queues.length;i++){
+			it=queues[i].iterator();
+			while(it.hasNext()){
+				dc=(DatasourceConnection) it.next();
+				if(!isValid(dc) && queues[i].remove(dc)) {
+					idle.decrementAndGet();
+					close(dc);
+				}
+			}
+		}
+	}
+
+	private static boolean isValid(DatasourceConnection dc) {
+		try {
+			return !dc.isTimeout() && !dc.getConnection().isClosed();
+		}
+		catch (SQLException e) {
+			return false;
+		}
+	}
+
+	private static void close(DatasourceConnection dc) {
+		try {
+    		 if(dc.getConnection()!=null && !dc.getConnection().isClosed())dc.getConnection().close();
+    	}
+    	catch (Throwable t) {}
+	}
+
+	private static int stripe() {
+		long id=Thread.currentThread().getId();
+		return (int)(id^(id>>>16))&(STRIPES-1);
+	}
+}
@@ -17,6 +17,7 @@ public final class DatasourceConnectionImpl implements DatasourceConnection {
 	private int transactionIsolationLevel=-1;
 	private int requestId=-1;
 	private Boolean supportsGetGeneratedKeys;
+	private DCLimit limit;
 
     /**
      * @param connection
@@ -125,6 +126,17 @@ public final class DatasourceConnectionImpl implements DatasourceConnection {
 		this.requestId=requestId;
 	}
 
+	/**
+	 * sets the connection limit this connection was taken from
+	 * @param limit
+	 * @return the limit set before
+	 */
+	DCLimit setLimit(DCLimit limit) {
+		DCLimit old=this.limit;
+		this.limit=limit;
+		return old;
+	}
+
 	// FUTURE add to interface, pherhaps a more generic solition like getMeta(SUPPORT_GENERATED_KEYS)
 	public boolean supportsGetGeneratedKeys() {
 		if(supportsGetGeneratedKeys==null){
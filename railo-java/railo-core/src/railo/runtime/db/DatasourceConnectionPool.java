@@ -3,23 +3,24 @@ package railo.runtime.db;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import railo.commons.lang.StringUtil;
-import railo.commons.lang.types.RefInteger;
-import railo.commons.lang.types.RefIntegerImpl;
 import railo.runtime.PageContext;
 import railo.runtime.engine.ThreadLocalPageContext;
 import railo.runtime.exp.DatabaseException;
 import railo.runtime.exp.PageException;
 import railo.runtime.op.Caster;
-import railo.runtime.type.util.ArrayUtil;
+import railo.runtime.type.Struct;
+import railo.runtime.type.StructImpl;
 
 public class DatasourceConnectionPool {
 
-	private Map dcs=new HashMap();
-	private Map counter=new HashMap();
+	private ConcurrentMap pools=new ConcurrentHashMap();
+	private ConcurrentMap limits=new ConcurrentHashMap();
 	
 	/*public DatasourceConnection getDatasourceConnectionX(PageContext pc,DataSource datasource, String user, String pass) throws PageException {
 		if(pc!=null) {
@@ -45,36 +46,42 @@ public class DatasourceConnectionPool {
         if(pass==null)pass="";
 		
 		
-		// get stack
-		DCStack stack=getDCStack(datasource,user,pass);
+		// get pool
+		DCPool pool=getDCPool(datasource,user,pass);
 		
 		
 		// max connection
-		int max=datasource.getConnectionLimit();
-		synchronized (stack) {
-			while(max!=-1 && max<=_size(datasource)) {
-				try {
-					//stack.inc();
-					stack.wait(10000L);
-					
-				} 
-				catch (InterruptedException e) {
-					throw Caster.toPageException(e);
+		DCLimit limit=getDCLimit(datasource);
+		try {
+			if(!limit.acquire(pc==null?0:pc.getRequestTimeout()))
+				throw new DatabaseException("timeout while waiting for a free connection of datasource ["+datasource.getName()+"], " +
+						"all "+limit.getMax()+" connections are in use",null,null,null);
+		} 
+		catch (InterruptedException e) {
+			throw Caster.toPageException(e);
+		}
+		
+		try {
+			DatasourceConnectionImpl dc;
+			while((dc=(DatasourceConnectionImpl) pool.get(pc))!=null) {
+				if(reset(dc)){
+					dc.setLimit(limit);
+					return dc.using();
 				}
-				
-			}
-			while(!stack.isEmpty()) {
-				DatasourceConnectionImpl dc=(DatasourceConnectionImpl) stack.get(pc);
-					if(dc!=null && isValid(dc,Boolean.TRUE)){
-						_inc(datasource);
-						return dc.using();
-					}
-				
 			}
-			_inc(datasource);
-			return loadDatasourceConnection(datasource, user, pass).using();
+			dc=loadDatasourceConnection(datasource, user, pass);
+			limit.created();
+			dc.setLimit(limit);
+			return dc.using();
+		}
+		catch(PageException pe) {
+			limit.release();
+			throw pe;
+		}
+		catch(RuntimeException re) {
+			limit.release();
+			throw re;
 		}
-		
 	}
 
 	private DatasourceConnectionImpl loadDatasourceConnection(DataSource ds, String user, String pass) throws DatabaseException  {
@@ -102,57 +109,85 @@ public class DatasourceConnectionPool {
 	public void releaseDatasourceConnection(DatasourceConnection dc) {
 		if(dc==null) return;
 		
+		getDCPool(dc.getDatasource(), dc.getUsername(), dc.getPassword()).add(dc);
 		
-		DCStack stack=getDCStack(dc.getDatasource(), dc.getUsername(), dc.getPassword());
-		synchronized (stack) {
-			stack.add(dc);
-			int max = dc.getDatasource().getConnectionLimit();
-
-			if(max!=-1) {
-				_dec(dc.getDatasource());
-				stack.notify();
-				 
-			}
-			else _dec(dc.getDatasource());
-		}
+		DCLimit limit=null;
+		if(dc instanceof DatasourceConnectionImpl) limit=((DatasourceConnectionImpl)dc).setLimit(null);
+		if(limit==null) limit=getDCLimit(dc.getDatasource());
+		limit.release();
 	}
 
+	/**
+	 * removes all timed out and closed connections, this is called in the background by the controller
+	 */
 	public void clear() {
-		int size=0;
-		
-		// remove all timed out conns
-		try{
-			Object[] arr = dcs.entrySet().toArray();
-			if(ArrayUtil.isEmpty(arr)) return;
-			for(int i=0;i<arr.length;i++) {
-				DCStack conns=(DCStack) ((Map.Entry) arr[i]).getValue();
-				if(conns!=null)conns.clear();
-				size+=conns.size();
+		Iterator it = pools.values().iterator();
+		while(it.hasNext()) {
+			try{
+				((DCPool)it.next()).clear();
 			}
+			catch(Throwable t){}
 		}
-		catch(Throwable t){}
 	}
 
 	public void remove(String datasource) {
-		Object[] arr = dcs.keySet().toArray();
-		String key;
-        for(int i=0;i<arr.length;i++) {
-        	key=(String) arr[i];
-        	if(key.startsWith(datasource.toLowerCase())) {
-				DCStack conns=(DCStack) dcs.get(key);
-				conns.clear();
+		Iterator it = pools.entrySet().iterator();
+		Map.Entry entry;
+		while(it.hasNext()) {
+			entry=(Map.Entry) it.next();
+        	if(((DCPool)entry.getValue()).isOf(datasource)) {
+				((DCPool)entry.getValue()).clear();
         	}
 		}
-        
-        String did = createId(datasource);
-		RefInteger ri=(RefInteger) counter.get(did);
-		if(ri!=null)ri.setValue(0);
-		else counter.put(did,new RefIntegerImpl(0));
-        
+		limits.remove(createId(datasource));
+	}
+	
+	/**
+	 * returns the metrics of all pools
+	 * @return struct with datasource name as key and the pool metrics as value
+	 */
+	public Struct getMetrics() {
+		Struct sct=new StructImpl();
+		Iterator it = limits.entrySet().iterator();
+		Map.Entry entry;
+		while(it.hasNext()) {
+			entry=(Map.Entry) it.next();
+			sct.setEL((String)entry.getKey(),((DCLimit)entry.getValue()).toStruct(getIdle((String)entry.getKey())));
+		}
+		return sct;
+	}
+	
+	private int getIdle(String datasource) {
+		int idle=0;
+		Iterator it = pools.entrySet().iterator();
+		Map.Entry entry;
+		while(it.hasNext()) {
+			entry=(Map.Entry) it.next();
+			if(((DCPool)entry.getValue()).isOf(datasource)) idle+=((DCPool)entry.getValue()).size();
+		}
+		return idle;
 	}
 	
 
 	
+	/**
+	 * prepares a pooled connection for reuse, the connection is not validated here (this is done by the background sweep), 
+	 * but a connection the driver has closed in the meantime fails here
+	 */
+	private static boolean reset(DatasourceConnection dc) {
+		try {
+			dc.getConnection().setAutoCommit(true);
+		} 
+		catch (Throwable t) {
+			try {
+				dc.getConnection().close();
+			} 
+			catch (Throwable t2) {}
+			return false;
+		}
+		return true;
+	}
+	
 	public static boolean isValid(DatasourceConnection dc,Boolean autoCommit) {
 		try {
 			if(dc.getConnection().isClosed())return false;
@@ -165,34 +200,33 @@ public class DatasourceConnectionPool {
 	}
 
 
-	private DCStack getDCStack(DataSource datasource, String user, String pass) {
+	private DCPool getDCPool(DataSource datasource, String user, String pass) {
 		String id = createId(datasource,user,pass);
 		
-		DCStack stack=(DCStack)dcs.get(id);
-		
-		if(stack==null){
-			dcs.put(id, stack=new DCStack());
+		DCPool pool=(DCPool)pools.get(id);
+		if(pool==null){
+			DCPool tmp=(DCPool) pools.putIfAbsent(id, pool=new DCPool(createId(datasource.getName())));
+			if(tmp!=null) pool=tmp;
 		}
-		return stack;
-	}
-
-	private void _inc(DataSource datasource) {
-		_getCounter(datasource.getName()).plus(1);
-	}
-	private void _dec(DataSource datasource) {
-		_getCounter(datasource.getName()).minus(1);
-	}
-	private int _size(DataSource datasource) {
-		return _getCounter(datasource.getName()).toInt();
+		return pool;
 	}
 
-	private RefInteger _getCounter(String datasource) {
-		String did = createId(datasource);
-		RefInteger ri=(RefInteger) counter.get(did);
-		if(ri==null) {
-			counter.put(did,ri=new RefIntegerImpl(0));
+	private DCLimit getDCLimit(DataSource datasource) {
+		String id = createId(datasource.getName());
+		int max=datasource.getConnectionLimit();
+		
+		DCLimit limit=(DCLimit) limits.get(id);
+		while(limit==null || limit.getMax()!=max){
+			// limit has changed, connections in use are released to the limit they were taken from
+			DCLimit nl=new DCLimit(max);
+			if(limit==null) {
+				DCLimit tmp=(DCLimit) limits.putIfAbsent(id, nl);
+				limit=tmp==null?nl:tmp;
+			}
+			else if(limits.replace(id, limit, nl)) limit=nl;
+			else limit=(DCLimit) limits.get(id);
 		}
-		return ri;
+		return limit;
 	}
 
 	public static String createId(DataSource datasource, String user, String pass) {
@@ -1,7 +1,14 @@
 package railo.runtime.db;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import railo.commons.lang.CFTypes;
 import railo.commons.lang.StringUtil;
@@ -10,12 +17,14 @@ import railo.runtime.PageContext;
 import railo.runtime.exp.DatabaseException;
 import railo.runtime.exp.PageException;
 import railo.runtime.op.Caster;
+import railo.runtime.op.Decision;
 import railo.runtime.op.Operator;
 import railo.runtime.sql.Select;
 import railo.runtime.sql.SelectParser;
 import railo.runtime.sql.Selects;
 import railo.runtime.sql.exp.BracketExpression;
 import railo.runtime.sql.exp.Column;
+import railo.runtime.sql.exp.ColumnExpression;
 import railo.runtime.sql.exp.Expression;
 import railo.runtime.sql.exp.op.Operation;
 import railo.runtime.sql.exp.op.Operation1;
@@ -62,13 +71,16 @@ public final class QoQ {
     	
     	QueryImpl target=new QueryImpl(new String[0],0,"query");
 		target.setSql(sql);
+		
+		// without order by, duplicates are removed while the rows are collected, so maxrows can stop the loop
+		Set distinct=selects.isDistinct() && orders.length==0?new HashSet():null;
     	
     	for(int i=0;i<arrSelects.length;i++) {
-    		arrSelects[i].getFroms();
     		Column[] froms = arrSelects[i].getFroms();
-    		if(froms.length>1) throw new DatabaseException("can only work with single tables yet",null,sql,null);
-    		executeSingle(pc,arrSelects[i],getSingleTable(pc, froms[0]),target,arrSelects.length>1?-1:maxrows,sql,
-    				orders.length>0);
+    		if(froms.length>1) executeJoin(pc,arrSelects[i],froms,target,arrSelects.length>1?-1:maxrows,sql,
+    				orders.length>0,distinct);
+    		else executeSingle(pc,arrSelects[i],getSingleTable(pc, froms[0]),arrSelects[i].getWhere(),false,target,arrSelects.length>1?-1:maxrows,sql,
+    				orders.length>0,distinct);
     	}
     	
 	// Order By	
@@ -78,39 +90,44 @@ public final class QoQ {
 				Column order = orders[i];
 				target.sort(order.getColumn().toLowerCase(),order.isDirectionBackward()?Query.ORDER_DESC:Query.ORDER_ASC);
 			}
-			if(maxrows>-1) {
-			    target.cutRowsTo(maxrows);
-			}
 		}
     // Distinct
-        if(selects.isDistinct()) {
+        if(selects.isDistinct() && distinct==null) {
             String[] _keys=target.getColumns();
             QueryColumn[] columns=new QueryColumn[_keys.length];
             for(int i=0;i<columns.length;i++) {
                 columns[i]=target.getColumn(_keys[i]);
             }
             
-            int i;
-            outer:for(int row=target.getRecordcount();row>1;row--) {
-                for(i=0;i<columns.length;i++) {
-                    if(!Operator.equals(columns[i].get(row),columns[i].get(row-1),true))
-                        continue outer;
-                }
-                target.removeRow(row);
+            // keeps the first occurrence of every row, the order of the rows is not changed,
+            // the rows kept are moved up in one pass and the rest is cut off at the end
+            Set keys=new HashSet();
+            Object[] values=new Object[columns.length];
+            int recordcount=target.getRecordcount();
+            int kept=0;
+            for(int row=1;row<=recordcount;row++) {
+            	for(int i=0;i<columns.length;i++) {
+            		values[i]=columns[i].get(row,null);
+            	}
+            	if(!keys.add(toDistinctKey(values))) continue;
+            	if(++kept!=row) {
+            		for(int i=0;i<columns.length;i++) {
+                		columns[i].setEL(kept,values[i]);
+                	}
+            	}
             }
+            target.cutRowsTo(kept);
         }
+        if(orders.length>0 && maxrows>-1) {
+		    target.cutRowsTo(maxrows);
+		}
         return target;
 	}
     
 
 
-    private void executeSingle(PageContext pc, Select select, Query qr, QueryImpl target, int maxrows, SQL sql,boolean hasOrders) throws PageException {
-    	ValueNumber oTop = select.getTop();
-		if(oTop!=null) {
-			int top=(int)oTop.getValueAsDouble();
-			if(maxrows==-1 || maxrows>top) maxrows=top;
-		}
-		
+    private void executeSingle(PageContext pc, Select select, Query qr, Operation where, boolean isJoin, QueryImpl target, int maxrows, SQL sql,boolean hasOrders, Set distinct) throws PageException {
+    	maxrows=getMaxrows(select, maxrows);
     	
     	int recCount=qr.getRecordcount();
 		Expression[] expSelects = select.getSelects();
@@ -123,11 +140,28 @@ public final class QoQ {
 			Expression expSelect = expSelects[i];
 			
 			if(expSelect.getAlias().equals("*")) {
+				String prefix=null;
+				if(isJoin && expSelect instanceof Column && ((Column)expSelect).getTable()!=null)
+					prefix=((Column)expSelect).getTable().toLowerCase()+".";
 				
 				keys = qr.keys();
+				String name;
 				for(int y=0;y<keys.length;y++){
-					selects.put(keys[y].getLowerString(),keys[y].getLowerString());
-					queryAddColumn(target,keys[y].getLowerString());
+					name=keys[y].getLowerString();
+					// joined query, table.* selects only the columns of the given table 
+					if(prefix!=null) {
+						if(!name.startsWith(prefix)) continue;
+						selects.put(name.substring(prefix.length()),name);
+						queryAddColumn(target,name.substring(prefix.length()));
+					}
+					// joined query, * selects all columns, qualified names are only used for ambiguous columns
+					else if(isJoin && name.indexOf('.')!=-1 && qr.getColumn(name.substring(name.lastIndexOf('.')+1),null)!=null) {
+						continue;
+					}
+					else {
+						selects.put(name,name);
+						queryAddColumn(target,name);
+					}
 				}
 			}
 			else {
@@ -144,7 +178,6 @@ public final class QoQ {
 		
 	// loop records
 		//Column[] orders = select.getOrderbys();
-		Operation where = select.getWhere();
 		
 		boolean hasMaxrow=maxrows>-1 && !hasOrders;
 		
@@ -156,30 +189,591 @@ public final class QoQ {
 			trgValues[cell]=selects.get(headers[cell]);
 		}
 		
+	// Group By	
+		if(select.getGroupbys().length>0 || hasAggregate(expSelects)) {
+			executeGroupBy(pc, select, qr, where, target, trgColumns, headers, trgValues, hasMaxrow?maxrows:-1, sql, distinct);
+			return;
+		}
+		if(select.getHaving()!=null)
+			throw new DatabaseException("having is only supported in combination with group by",null,sql,null);
+		
+		Object[] values=new Object[headers.length];
 		for(int row=1;row<=recCount;row++) {
 		    sql.setPosition(0);
 			if(hasMaxrow && maxrows<=target.getRecordcount())break;
 		    boolean useRow=where==null || Caster.toBooleanValue(executeExp(pc,sql,qr, where, row));
 		    if(useRow) {
-			    target.addRow(1);
 			    for(int cell=0;cell<headers.length;cell++){
-					//Object value = selects.get(headers[cell]);
-					trgColumns[cell].set(target.getRecordcount(), getValue(pc,sql,qr,row,headers[cell],trgValues[cell]));
-						/*target.setAt(
-							headers[cell],
-							target.getRecordcount(),
-							getValue(pc,sql,qr,row,headers[cell],trgValues[cell])
-						);*/
+			    	values[cell]=getValue(pc,sql,qr,row,headers[cell],trgValues[cell]);
 				}
+			    addRow(target,trgColumns,values,distinct);
 			}
 		}
+	}
 
-	// Group By	
-	if(select.getGroupbys().length>0)
-		throw new DatabaseException("group by are not supported at the moment",null,sql,null);
-	if(select.getHaving()!=null)
-		throw new DatabaseException("having is not supported at the moment",null,sql,null);
+	/**
+	 * adds a row to the target query
+	 * @param target
+	 * @param columns columns of the target query
+	 * @param values values for the new row
+	 * @param distinct keys of the rows already added or null when the result is not distinct
+	 * @return false if the row is a duplicate and was not added
+	 * @throws PageException
+	 */
+	private boolean addRow(QueryImpl target, QueryColumn[] columns, Object[] values, Set distinct) throws PageException {
+		if(distinct!=null && !distinct.add(toDistinctKey(values))) return false;
+		target.addRow(1);
+		int row=target.getRecordcount();
+		for(int cell=0;cell<columns.length;cell++){
+			columns[cell].set(row, values[cell]);
+		}
+		return true;
+	}
+
+	private int getMaxrows(Select select, int maxrows) {
+		ValueNumber oTop = select.getTop();
+		if(oTop!=null) {
+			int top=(int)oTop.getValueAsDouble();
+			if(maxrows==-1 || maxrows>top) maxrows=top;
+		}
+		return maxrows;
+	}
+
+	/**
+	 * executes a select with more than one table, the where condition is split in its "and" parts, 
+	 * parts only referring to one table filter this table before the join, 
+	 * parts comparing columns of 2 tables with "=" are executed as hash join,
+	 * all other parts are executed on the joined rows.
+	 */
+	private void executeJoin(PageContext pc, Select select, Column[] froms, QueryImpl target, int maxrows, SQL sql,boolean hasOrders, Set distinct) throws PageException {
+		int len=froms.length;
+		Query[] tables=new Query[len];
+		String[] names=new String[len];
+		for(int i=0;i<len;i++) {
+			tables[i]=getSingleTable(pc, froms[i]);
+			names[i]=froms[i].getAlias().toLowerCase();
+			for(int y=0;y<i;y++) {
+				if(names[y].equals(names[i]))
+					throw new DatabaseException("table name ["+names[i]+"] is not unique, use a alias",null,sql,null);
+			}
+		}
+		
+	// split where
+		List conditions=new ArrayList();
+		if(select.getWhere()!=null) splitAnd(select.getWhere(), conditions);
+		
+		List[] filters=new List[len];
+		for(int i=0;i<len;i++) {
+			filters[i]=new ArrayList();
+		}
+		List joins=new ArrayList();
+		Operation residual=null;
+		Iterator it = conditions.iterator();
+		Expression condition;
+		boolean[] refs=new boolean[len];
+		while(it.hasNext()) {
+			condition=(Expression) it.next();
+			for(int i=0;i<len;i++) {
+				refs[i]=false;
+			}
+			getTables(condition, tables, names, refs, sql);
+			int count=0,index=-1;
+			for(int i=0;i<len;i++) {
+				if(refs[i]) {
+					count++;
+					index=i;
+				}
+			}
+			if(count==1) filters[index].add(condition);
+			else if(count==2 && isEquiJoin(condition)) {
+				Operation2 op2=(Operation2) condition;
+				joins.add(new JoinCondition(
+						(Column)op2.getLeft(),getTable((Column)op2.getLeft(), tables, names, sql),
+						(Column)op2.getRight(),getTable((Column)op2.getRight(), tables, names, sql)));
+			}
+			else residual=residual==null?(Operation)condition:new Operation2(residual,condition,Operation.OPERATION2_AND);
+		}
+		
+	// filter the single tables
+		int[][] rows=new int[len][];
+		for(int i=0;i<len;i++) {
+			rows[i]=filter(pc, sql, tables[i], filters[i]);
+		}
+		
+	// join
+		maxrows=getMaxrows(select, maxrows);
+		int limit=-1;
+		if(maxrows>-1 && !hasOrders && distinct==null && residual==null && select.getGroupbys().length==0 && !hasAggregate(select.getSelects()))
+			limit=maxrows;
+		
+		List tuples=new ArrayList();
+		for(int i=0;i<rows[0].length;i++) {
+			tuples.add(new int[]{rows[0][i]});
+		}
+		for(int t=1;t<len;t++) {
+			List conds=new ArrayList();
+			it=joins.iterator();
+			JoinCondition jc;
+			while(it.hasNext()) {
+				jc=(JoinCondition) it.next();
+				if(jc.other(t)!=-1 && jc.other(t)<t) conds.add(jc);
+			}
+			tuples=join(pc, sql, tables, tuples, t, rows[t], (JoinCondition[]) conds.toArray(new JoinCondition[conds.size()]),t+1==len?limit:-1);
+		}
+		
+	// create joined query
+		QueryImpl joined=new QueryImpl(new String[0],0,"query");
+		int size=tuples.size();
+		for(int t=0;t<len;t++) {
+			Key[] keys = tables[t].keys();
+			for(int y=0;y<keys.length;y++) {
+				QueryColumn column = tables[t].getColumn(keys[y]);
+				Object[] values=new Object[size];
+				for(int row=0;row<size;row++) {
+					values[row]=column.get(((int[])tuples.get(row))[t],null);
+				}
+				ArrayImpl arr = new ArrayImpl(values);
+				joined.addColumn(names[t]+"."+keys[y].getLowerString(), arr, column.getType());
+				if(isUnique(tables, t, keys[y]))
+					joined.addColumn(keys[y].getLowerString(), arr, column.getType());
+			}
+		}
 		
+		executeSingle(pc, select, joined, residual, true, target, maxrows, sql, hasOrders, distinct);
+	}
+
+	/**
+	 * joins the rows of table "t" to the existing tuples
+	 * @return new tuples
+	 */
+	private List join(PageContext pc, SQL sql, Query[] tables, List tuples, int t, int[] rows, JoinCondition[] conds, int limit) throws PageException {
+		List result=new ArrayList();
+		if(tuples.isEmpty() || rows.length==0) return result;
+		
+		// hash table over the rows of table t, based on the first condition
+		Map hash=null;
+		if(conds.length>0) {
+			hash=new HashMap();
+			Object key;
+			int[] list;
+			for(int i=0;i<rows.length;i++) {
+				key=toJoinKey(conds[0].value(pc, sql, tables, t, rows[i]));
+				if(key==null) {
+					hash=null;
+					break;
+				}
+				list=(int[]) hash.get(key);
+				if(list==null) list=new int[]{rows[i]};
+				else {
+					int[] tmp=new int[list.length+1];
+					System.arraycopy(list, 0, tmp, 0, list.length);
+					tmp[list.length]=rows[i];
+					list=tmp;
+				}
+				hash.put(key, list);
+			}
+		}
+		
+		Iterator it = tuples.iterator();
+		int[] tuple,candidates;
+		while(it.hasNext()) {
+			tuple=(int[]) it.next();
+			candidates=rows;
+			if(hash!=null) {
+				JoinCondition jc=conds[0];
+				int other=jc.other(t);
+				Object key=toJoinKey(jc.value(pc, sql, tables, other, tuple[other]));
+				if(key!=null) {
+					candidates=(int[]) hash.get(key);
+					if(candidates==null) continue;
+				}
+			}
+			outer:for(int i=0;i<candidates.length;i++) {
+				for(int y=0;y<conds.length;y++) {
+					if(!conds[y].matches(pc, sql, tables, tuple, t, candidates[i])) continue outer;
+				}
+				int[] tmp=new int[tuple.length+1];
+				System.arraycopy(tuple, 0, tmp, 0, tuple.length);
+				tmp[tuple.length]=candidates[i];
+				result.add(tmp);
+				if(limit>-1 && result.size()>=limit) return result;
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * @return the rows of the query matching all given conditions
+	 */
+	private int[] filter(PageContext pc, SQL sql, Query qr, List conditions) throws PageException {
+		int recCount=qr.getRecordcount();
+		int[] rows=new int[recCount];
+		int count=0;
+		Expression[] conds=(Expression[]) conditions.toArray(new Expression[conditions.size()]);
+		outer:for(int row=1;row<=recCount;row++) {
+			for(int i=0;i<conds.length;i++) {
+				if(!Caster.toBooleanValue(executeExp(pc,sql,qr, conds[i], row))) continue outer;
+			}
+			rows[count++]=row;
+		}
+		if(count==recCount) return rows;
+		int[] tmp=new int[count];
+		System.arraycopy(rows, 0, tmp, 0, count);
+		return tmp;
+	}
+
+	private void splitAnd(Expression exp, List conditions) {
+		if(exp instanceof Operation2 && ((Operation2)exp).getOperator()==Operation.OPERATION2_AND) {
+			splitAnd(((Operation2)exp).getLeft(), conditions);
+			splitAnd(((Operation2)exp).getRight(), conditions);
+		}
+		else if(exp instanceof BracketExpression) splitAnd(((BracketExpression)exp).getExp(), conditions);
+		else conditions.add(exp);
+	}
+
+	private boolean isEquiJoin(Expression exp) {
+		if(!(exp instanceof Operation2)) return false;
+		Operation2 op2=(Operation2) exp;
+		return op2.getOperator()==Operation.OPERATION2_EQ && 
+			op2.getLeft() instanceof Column && op2.getRight() instanceof Column;
+	}
+
+	/**
+	 * marks all tables the given expression refers to
+	 */
+	private void getTables(Expression exp, Query[] tables, String[] names, boolean[] refs, SQL sql) throws PageException {
+		if(exp instanceof Column) {
+			if(!((Column)exp).getColumn().equals("?"))
+				refs[getTable((Column)exp, tables, names, sql)]=true;
+		}
+		else if(exp instanceof BracketExpression) getTables(((BracketExpression)exp).getExp(), tables, names, refs, sql);
+		else if(exp instanceof Operation1) getTables(((Operation1)exp).getExp(), tables, names, refs, sql);
+		else if(exp instanceof Operation2) {
+			getTables(((Operation2)exp).getLeft(), tables, names, refs, sql);
+			getTables(((Operation2)exp).getRight(), tables, names, refs, sql);
+		}
+		else if(exp instanceof Operation3) {
+			getTables(((Operation3)exp).getExp(), tables, names, refs, sql);
+			getTables(((Operation3)exp).getLeft(), tables, names, refs, sql);
+			getTables(((Operation3)exp).getRight(), tables, names, refs, sql);
+		}
+		else if(exp instanceof OperationN) {
+			Expression[] operants = ((OperationN)exp).getOperants();
+			for(int i=0;i<operants.length;i++) {
+				getTables(operants[i], tables, names, refs, sql);
+			}
+		}
+	}
+
+	/**
+	 * @return index of the table the column belongs to
+	 */
+	private int getTable(Column column, Query[] tables, String[] names, SQL sql) throws PageException {
+		String table=column.getTable();
+		if(table!=null) {
+			table=table.toLowerCase();
+			for(int i=0;i<names.length;i++) {
+				if(names[i].equals(table)) return i;
+			}
+			throw new DatabaseException("table ["+table+"] is not part of the from clause",null,sql,null);
+		}
+		int index=-1;
+		for(int i=0;i<tables.length;i++) {
+			if(tables[i].getColumn(column.getColumn(),null)!=null) {
+				if(index!=-1) throw new DatabaseException("column name ["+column.getColumn()+"] is ambiguous",null,sql,null);
+				index=i;
+			}
+		}
+		if(index==-1) throw new DatabaseException("column ["+column.getColumn()+"] does not exist",null,sql,null);
+		return index;
+	}
+
+	private boolean isUnique(Query[] tables, int index, Key key) {
+		for(int i=0;i<tables.length;i++) {
+			if(i!=index && tables[i].getColumn(key,null)!=null) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * returns a key for the hash join, values with the same key compare equal with Operator.compare,
+	 * returns null for values without a key (dates and complex objects)
+	 */
+	private static Object toJoinKey(Object value) {
+		if(value==null) return "";
+		if(value instanceof Number) return toKey(((Number)value).doubleValue());
+		if(value instanceof Boolean) return toKey(((Boolean)value).booleanValue()?1:0);
+		if(value instanceof String) {
+			String str=(String) value;
+			if(Decision.isNumeric(str)) return toKey(Caster.toDoubleValue(str,Double.NaN));
+			if(Decision.isBoolean(str)) return toKey(Caster.toBooleanValue(str,false)?1:0);
+			return str.toLowerCase();
+		}
+		return null;
+	}
+	
+	private static Double toKey(double d) {
+		return new Double(d==0?0:d);
+	}
+
+	/**
+	 * returns a key for distinct, 2 rows are equal when all values have the same string representation
+	 */
+	private static Object toDistinctKey(Object[] values) {
+		List key=new ArrayList(values.length);
+		for(int i=0;i<values.length;i++) {
+			String str=Caster.toString(values[i],null);
+			key.add(str==null?values[i]:str);
+		}
+		return key;
+	}
+
+	/**
+	 * executes group by and aggregate functions (count, sum, avg, min, max), 
+	 * the rows are grouped in a hash table, then for every group the aggregates are calculated,
+	 * other columns get the value of the first row of the group.
+	 */
+	private void executeGroupBy(PageContext pc, Select select, Query qr, Operation where, QueryImpl target, 
+			QueryColumn[] trgColumns, String[] headers, Object[] trgValues, int maxrows, SQL sql, Set distinct) throws PageException {
+		Column[] groupbys = select.getGroupbys();
+		Operation having = select.getHaving();
+		
+	// aggregates
+		List aggregates=new ArrayList();
+		for(int cell=0;cell<trgValues.length;cell++){
+			if(trgValues[cell] instanceof Expression) getAggregates((Expression) trgValues[cell], aggregates);
+		}
+		if(having!=null) getAggregates(having, aggregates);
+		
+	// groups
+		Map groups=new LinkedHashMap();
+		int recCount=qr.getRecordcount();
+		Object[] values=new Object[groupbys.length];
+		Rows rows;
+		if(groupbys.length==0) groups.put("", new Rows());
+		for(int row=1;row<=recCount;row++) {
+		    sql.setPosition(0);
+		    if(where!=null && !Caster.toBooleanValue(executeExp(pc,sql,qr, where, row))) continue;
+		    for(int i=0;i<groupbys.length;i++) {
+		    	values[i]=toGroupKey(executeExp(pc,sql,qr, groupbys[i], row, null));
+		    }
+		    Object key=groupbys.length==0?"":(Object)Arrays.asList((Object[])values.clone());
+		    rows=(Rows) groups.get(key);
+		    if(rows==null) groups.put(key, rows=new Rows());
+		    rows.add(row);
+		}
+		
+	// query with one row for every group, containing the first row of the group and the aggregated values 
+		QueryImpl grouped=new QueryImpl(new String[0],0,"query");
+		int size=groups.size();
+		Key[] keys = qr.keys();
+		for(int i=0;i<keys.length;i++) {
+			QueryColumn column = qr.getColumn(keys[i]);
+			Object[] arr=new Object[size];
+			Iterator it = groups.values().iterator();
+			for(int g=0;g<size;g++) {
+				rows=(Rows) it.next();
+				arr[g]=rows.size==0?null:column.get(rows.rows[0],null);
+			}
+			grouped.addColumn(keys[i], new ArrayImpl(arr), column.getType());
+		}
+		for(int a=0;a<aggregates.size();a++) {
+			OperationN agg=(OperationN) aggregates.get(a);
+			Object[] arr=new Object[size];
+			Iterator it = groups.values().iterator();
+			for(int g=0;g<size;g++) {
+				arr[g]=executeAggregate(pc, sql, qr, agg, (Rows) it.next());
+			}
+			grouped.addColumn(AGGREGATE_PREFIX+a, new ArrayImpl(arr));
+		}
+		
+	// rewrite the expressions to read the aggregated values from the grouped query
+		Object[] exps=new Object[trgValues.length];
+		for(int cell=0;cell<trgValues.length;cell++){
+			exps[cell]=trgValues[cell] instanceof Expression?replaceAggregates((Expression) trgValues[cell], aggregates):trgValues[cell];
+		}
+		Expression h=having==null?null:replaceAggregates(having, aggregates);
+		
+		values=new Object[headers.length];
+		for(int row=1;row<=size;row++) {
+		    sql.setPosition(0);
+			if(maxrows>-1 && maxrows<=target.getRecordcount())break;
+			if(h!=null && !Caster.toBooleanValue(executeExp(pc,sql,grouped, h, row))) continue;
+			for(int cell=0;cell<headers.length;cell++){
+		    	values[cell]=getValue(pc,sql,grouped,row,headers[cell],exps[cell]);
+			}
+		    addRow(target,trgColumns,values,distinct);
+		}
+	}
+
+	private boolean hasAggregate(Expression[] exps) {
+		List aggregates=new ArrayList();
+		for(int i=0;i<exps.length;i++) {
+			getAggregates(exps[i], aggregates);
+		}
+		return !aggregates.isEmpty();
+	}
+
+	private boolean isAggregate(Expression exp) {
+		if(!(exp instanceof OperationN)) return false;
+		OperationN opn=(OperationN) exp;
+		if(opn.getOperants().length!=1) return false;
+		String op=StringUtil.toLowerCase(opn.getOperator());
+		return op.equals("count") || op.equals("sum") || op.equals("avg") || op.equals("min") || op.equals("max");
+	}
+
+	private void getAggregates(Expression exp, List aggregates) {
+		if(isAggregate(exp)) {
+			for(int i=0;i<aggregates.size();i++) {
+				if(aggregates.get(i)==exp) return;
+			}
+			aggregates.add(exp);
+		}
+		else if(exp instanceof BracketExpression) getAggregates(((BracketExpression)exp).getExp(), aggregates);
+		else if(exp instanceof Operation1) getAggregates(((Operation1)exp).getExp(), aggregates);
+		else if(exp instanceof Operation2) {
+			getAggregates(((Operation2)exp).getLeft(), aggregates);
+			getAggregates(((Operation2)exp).getRight(), aggregates);
+		}
+		else if(exp instanceof Operation3) {
+			getAggregates(((Operation3)exp).getExp(), aggregates);
+			getAggregates(((Operation3)exp).getLeft(), aggregates);
+			getAggregates(((Operation3)exp).getRight(), aggregates);
+		}
+		else if(exp instanceof OperationN) {
+			Expression[] operants = ((OperationN)exp).getOperants();
+			for(int i=0;i<operants.length;i++) {
+				getAggregates(operants[i], aggregates);
+			}
+		}
+	}
+
+	/**
+	 * returns a copy of the expression, where every aggregate function is replaced by the column holding its value
+	 */
+	private Expression replaceAggregates(Expression exp, List aggregates) {
+		for(int i=0;i<aggregates.size();i++) {
+			if(aggregates.get(i)==exp) return new ColumnExpression(AGGREGATE_PREFIX+i,0);
+		}
+		Expression rtn;
+		if(exp instanceof BracketExpression) 
+			rtn=new BracketExpression(replaceAggregates(((BracketExpression)exp).getExp(), aggregates));
+		else if(exp instanceof Operation1) 
+			rtn=new Operation1(replaceAggregates(((Operation1)exp).getExp(), aggregates),((Operation1)exp).getOperator());
+		else if(exp instanceof Operation2) {
+			Operation2 op2=(Operation2) exp;
+			rtn=new Operation2(replaceAggregates(op2.getLeft(), aggregates),replaceAggregates(op2.getRight(), aggregates),op2.getOperator());
+		}
+		else if(exp instanceof Operation3) {
+			Operation3 op3=(Operation3) exp;
+			rtn=new Operation3(replaceAggregates(op3.getExp(), aggregates),replaceAggregates(op3.getLeft(), aggregates),
+					replaceAggregates(op3.getRight(), aggregates),op3.getOperator());
+		}
+		else if(exp instanceof OperationN) {
+			Expression[] operants = ((OperationN)exp).getOperants();
+			List list=new ArrayList();
+			for(int i=0;i<operants.length;i++) {
+				list.add(replaceAggregates(operants[i], aggregates));
+			}
+			rtn=new OperationN(((OperationN)exp).getOperator(),list);
+		}
+		else return exp;
+		if(exp.hasAlias()) rtn.setAlias(exp.getAlias());
+		return rtn;
+	}
+
+	private Object executeAggregate(PageContext pc, SQL sql, Query qr, OperationN agg, Rows rows) throws PageException {
+		String op=StringUtil.toLowerCase(agg.getOperator());
+		Expression operant = agg.getOperants()[0];
+		
+		if(op.equals("count") && operant instanceof Column && ((Column)operant).getColumn().equals("*"))
+			return new Double(rows.size);
+		
+		int count=0;
+		double sum=0;
+		Object rtn=null,value;
+		for(int i=0;i<rows.size;i++) {
+			sql.setPosition(0);
+			value=executeExp(pc,sql,qr, operant, rows.rows[i], null);
+			if(value==null) continue;
+			count++;
+			if(op.equals("sum") || op.equals("avg")) sum+=Caster.toDoubleValue(value);
+			else if(op.equals("min")) {
+				if(rtn==null || Operator.compare(value, rtn)<0) rtn=value;
+			}
+			else if(op.equals("max")) {
+				if(rtn==null || Operator.compare(value, rtn)>0) rtn=value;
+			}
+		}
+		if(op.equals("count")) return new Double(count);
+		if(count==0) return null;
+		if(op.equals("sum")) return new Double(sum);
+		if(op.equals("avg")) return new Double(sum/count);
+		return rtn;
+	}
+
+	/**
+	 * returns a key for group by, values with the same key compare equal with Operator.compare
+	 */
+	private static Object toGroupKey(Object value) {
+		if(value==null) return null;
+		Object key=toJoinKey(value);
+		if(key!=null) return key;
+		String str=Caster.toString(value,null);
+		return str==null?value:str;
+	}
+
+	private static final String AGGREGATE_PREFIX="qoq_aggregate_";
+
+	private static class Rows {
+		private int[] rows=new int[4];
+		private int size;
+		
+		private void add(int row) {
+			if(size==rows.length) {
+				int[] tmp=new int[rows.length*2];
+				System.arraycopy(rows, 0, tmp, 0, rows.length);
+				rows=tmp;
+			}
+			rows[size++]=row;
+		}
+	}
+
+	/**
+	 * condition "a.x=b.y" comparing columns of 2 different tables
+	 */
+	private class JoinCondition {
+		private final Column left;
+		private final int leftTable;
+		private final Column right;
+		private final int rightTable;
+		
+		private JoinCondition(Column left, int leftTable, Column right, int rightTable) {
+			this.left=left;
+			this.leftTable=leftTable;
+			this.right=right;
+			this.rightTable=rightTable;
+		}
+
+		/**
+		 * @return the other table of the condition or -1 if the condition does not refer to the given table
+		 */
+		private int other(int table) {
+			if(table==leftTable) return rightTable;
+			if(table==rightTable) return leftTable;
+			return -1;
+		}
+
+		private Object value(PageContext pc, SQL sql, Query[] tables, int table, int row) throws PageException {
+			return executeExp(pc, sql, tables[table], table==leftTable?left:right, row);
+		}
+
+		private boolean matches(PageContext pc, SQL sql, Query[] tables, int[] tuple, int table, int row) throws PageException {
+			int other=other(table);
+			Object l=table==leftTable?value(pc, sql, tables, table, row):value(pc, sql, tables, other, tuple[other]);
+			Object r=table==leftTable?value(pc, sql, tables, other, tuple[other]):value(pc, sql, tables, table, row);
+			return Operator.compare(l, r)==0;
+		}
 	}
 
 	private void queryAddColumn(QueryImpl query, String column) throws DatabaseException {
@@ -301,6 +895,7 @@ public final class QoQ {
 	 */
 	private Object getValue(PageContext pc,SQL sql,Query querySource, int row, String key, Object value) throws PageException {
 		if(value instanceof Expression)return executeExp(pc,sql,querySource, ((Expression)value),row);
+		if(value instanceof String)return querySource.getAt((String)value,row);
 		return querySource.getAt(key,row);
 	}
 
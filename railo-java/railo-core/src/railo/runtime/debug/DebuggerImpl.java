@@ -26,7 +26,10 @@ import railo.runtime.exp.CatchBlock;
 import railo.runtime.exp.DatabaseException;
 import railo.runtime.exp.PageException;
 import railo.runtime.exp.PageExceptionImpl;
+import railo.runtime.engine.ThreadLocalPageContext;
 import railo.runtime.interpreter.CFMLExpressionInterpreter;
+import railo.runtime.lock.LockManager;
+import railo.runtime.lock.LockManagerImpl;
 import railo.runtime.op.Caster;
 import railo.runtime.type.Array;
 import railo.runtime.type.ArrayImpl;
@@ -49,6 +52,7 @@ public final class DebuggerImpl implements Dumpable, Debugger {
 	private static final Collection.Key TRACES = KeyImpl.getInstance("traces");
 	private static final Collection.Key EXCEPTIONS = KeyImpl.getInstance("exceptions");
 	private static final Collection.Key HISTORY = KeyImpl.getInstance("history");
+	private static final Collection.Key LOCKS = KeyImpl.getInstance("locks");
 	
 	private Map<String,DebugEntryImpl> pages=new HashMap<String,DebugEntryImpl>();
 	private List<QueryEntryImpl> queries=new ArrayList<QueryEntryImpl>();
@@ -522,6 +526,14 @@ public final class DebuggerImpl implements Dumpable, Debugger {
 		debugging.setEL(TRACES,qryTraces);
 		debugging.setEL(HISTORY,history);
 		debugging.setEL(EXCEPTIONS,arrExceptions);
+		
+		// lock statistic of the web context
+		PageContext pc = ThreadLocalPageContext.get();
+		if(pc!=null) {
+			LockManager manager = pc.getConfig().getLockManager();
+			if(manager instanceof LockManagerImpl)
+				debugging.setEL(LOCKS,((LockManagerImpl)manager).getStatisticsAsQuery());
+		}
 		return debugging;
     }
 
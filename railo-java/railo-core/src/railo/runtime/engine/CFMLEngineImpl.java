@@ -159,6 +159,8 @@ public final class CFMLEngineImpl implements CFMLEngine {
             ConfigWebImpl config=ConfigWebFactory.newInstance(factory,configServer,configDir,sg);
             queryCache.setConfigWeb(config);
             factory.setConfig(config);
+            // compile and load the templates in the background
+            PageWarmUp.start(config);
             return factory;
         }
         catch (Exception e) {
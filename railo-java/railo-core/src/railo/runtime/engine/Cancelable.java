@@ -0,0 +1,13 @@
+package railo.runtime.engine;
+
+/**
+ * a blocking operation (database query, http call ...) a request is waiting for,
+ * that can be aborted from a other thread when the request runs into a timeout
+ */
+public interface Cancelable {
+
+	/**
+	 * aborts the operation, the thread waiting for it gets an exception
+	 */
+	public void cancel();
+}
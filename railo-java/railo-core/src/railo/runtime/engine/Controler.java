@@ -21,6 +21,7 @@ import railo.runtime.config.ConfigWeb;
 import railo.runtime.config.ConfigWebImpl;
 import railo.runtime.net.smtp.SMTPConnectionPool;
 import railo.runtime.type.dt.DateTimeImpl;
+import railo.runtime.type.scope.ClientDatasourceWriter;
 import railo.runtime.type.scope.ClientFile;
 import railo.runtime.type.scope.ScopeContext;
 import railo.runtime.type.util.ArrayUtil;
@@ -30,7 +31,11 @@ import railo.runtime.type.util.ArrayUtil;
  */
 public final class Controler extends Thread {
 
+	// the request timeouts are checked more often than the other tasks, so a request does not run much longer than its timeout
+	private static final int TIMEOUT_INTERVAL=500;
+
 	private int interval;
+	private long lastInterval=System.currentTimeMillis();
 	private long lastMinuteInterval=System.currentTimeMillis();
 	private long lastHourInterval=System.currentTimeMillis();
 	
@@ -63,12 +68,19 @@ public final class Controler extends Thread {
 		CFMLFactoryImpl factories[]=null;
 		while(run.toBooleanValue()) {
 	        try {
-				sleep(interval);
+				sleep(Math.min(interval,TIMEOUT_INTERVAL));
 			} 
             catch (InterruptedException e) {
 				e.printStackTrace();
 			}
+            factories=toFactories(factories,contextes);
+            for(int i=0;i<factories.length;i++) {
+            	checkTimeout(factories[i]);
+	        }
+            
             long now = System.currentTimeMillis();
+            if(lastInterval+interval>now) continue;
+            lastInterval=now;
             //print.out("now:"+new Date(now));
             boolean doMinute=lastMinuteInterval+60000<now;
             if(doMinute)lastMinuteInterval=now;
@@ -77,7 +89,6 @@ public final class Controler extends Thread {
             
             // if(doMinute) System.gc();
             // broadcast cluster scope
-            factories=toFactories(factories,contextes);
             try {
 				ScopeContext.getClusterScope(configServer,true).broadcast();
 			} 
@@ -92,6 +103,13 @@ public final class Controler extends Thread {
 	        if(factories.length>0)
 				firstRun=false;
 	    }    
+	    // the templates used in this run are loaded first by the warm-up of the next run
+	    factories=toFactories(factories,contextes);
+	    for(int i=0;i<factories.length;i++) {
+	    	try{PageWarmUp.writeManifest((ConfigWebImpl) factories[i].getConfig());}catch(Throwable t){}
+	    }
+	    // client scopes not written yet
+	    try{ClientDatasourceWriter.getInstance().flush();}catch(Throwable t){}
 	}
 	private CFMLFactoryImpl[] toFactories(CFMLFactoryImpl[] factories,Map contextes) {
 		if(factories==null || factories.length!=contextes.size())
@@ -100,13 +118,20 @@ public final class Controler extends Thread {
 		return factories;
 	}
 
+	private void checkTimeout(CFMLFactoryImpl cfmlFactory) {
+		try {
+			if(cfmlFactory.getUsedPageContextLength()>0) {
+				cfmlFactory.checkTimeout();
+		    }
+		}
+		catch(Throwable t) {
+			t.printStackTrace();
+		}
+	}
+
 	private void run(CFMLFactoryImpl cfmlFactory, boolean doMinute, boolean doHour, boolean firstRun) {
 		
 		try {
-				boolean isRunning=cfmlFactory.getUsedPageContextLength()>0;   
-			    if(isRunning) {
-					cfmlFactory.checkTimeout();
-			    }
 				ConfigWeb config = null;
 				
 				if(firstRun) {
@@ -134,6 +159,10 @@ public final class Controler extends Thread {
 					try{((ConfigImpl)config).getDatasourceConnectionPool().clear();}catch(Throwable t){}
 					// clear all unused scopes
 					try{cfmlFactory.getScopeContext().clearUnused(cfmlFactory);}catch(Throwable t){}
+					// drop PageContexts not used in the last minute
+					try{cfmlFactory.trimPageContextPool();}catch(Throwable t){}
+					// close http connections not used for a while
+					try{((ConfigWebImpl)config).getHttpConnectionPool().closeIdleConnections();}catch(Throwable t){}
 					// Memory usage
 					// clear Query Cache
 					try{cfmlFactory.getQueryCache().clearUnused();}catch(Throwable t){}
@@ -156,6 +185,8 @@ public final class Controler extends Thread {
 					try{checkTempDirectorySize(config);}catch(Throwable t){}
 					// check cache directory
 					try{checkCacheFileSize(config);}catch(Throwable t){}
+					// remember the templates used most for the next warm-up
+					try{PageWarmUp.writeManifest((ConfigWebImpl) config);}catch(Throwable t){}
 				}
 			}
 			catch(Throwable t){
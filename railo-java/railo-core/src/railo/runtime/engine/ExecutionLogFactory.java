@@ -8,6 +8,7 @@ public class ExecutionLogFactory {
 	
 	private Class clazz;
 	private Map<String, String> arguments;
+	private Profile profile;
 
 	public ExecutionLogFactory(Class clazz, Map<String, String> arguments){
 		this.clazz=clazz;
@@ -22,7 +23,17 @@ public class ExecutionLogFactory {
 			e.printStackTrace();
 			el=new ConsoleExecutionLog();
 		}
+		if(el instanceof ProfilerExecutionLog)
+			((ProfilerExecutionLog)el).setProfile(getProfile());
 		el.init(pc, arguments);
 		return el;
 	}
+
+	/**
+	 * @return the line timings collected by the profiler logs created by this factory
+	 */
+	public synchronized Profile getProfile() {
+		if(profile==null) profile=new Profile();
+		return profile;
+	}
 }
@@ -0,0 +1,244 @@
+package railo.runtime.engine;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import railo.commons.io.IOUtil;
+import railo.commons.io.log.LogAndSource;
+import railo.commons.io.res.Resource;
+import railo.commons.io.res.filter.ExtensionResourceFilter;
+import railo.commons.io.res.filter.ResourceFilter;
+import railo.commons.lang.StringUtil;
+import railo.runtime.Mapping;
+import railo.runtime.MappingImpl;
+import railo.runtime.PageSource;
+import railo.runtime.PageSourceImpl;
+import railo.runtime.PageSourcePool;
+import railo.runtime.config.Config;
+import railo.runtime.config.ConfigWebImpl;
+
+/**
+ * compiles and loads the templates of the mappings of a web context in the background after startup,
+ * so the first requests after a restart or a deploy do not have to do it.
+ * The templates used most in the last run (see writeManifest) are loaded first,
+ * then all templates whose class file is missing or older than the template are compiled.
+ */
+public final class PageWarmUp implements Runnable {
+
+	private static final String MANIFEST="hot-templates.txt";
+	// max number of templates in the manifest
+	private static final int MAX_HOT=1000;
+	// max number of files scanned in all mappings
+	private static final int MAX_SCAN=20000;
+	// max number of templates loaded by a warm-up, the class loader of a mapping is recreated when it contains to many classes
+	private static final int MAX_LOAD=2000;
+
+	private static final Comparator ACCESS_COUNT=new Comparator() {
+		public int compare(Object left, Object right) {
+			int l=((PageSource)left).getAccessCount(),r=((PageSource)right).getAccessCount();
+			return l>r?-1:(l==r?0:1);
+		}
+	};
+
+	private final ConfigWebImpl config;
+	private final String[] hot;
+	private final AtomicInteger loaded=new AtomicInteger();
+	private final AtomicInteger failed=new AtomicInteger();
+
+	private PageWarmUp(ConfigWebImpl config, String[] hot) {
+		this.config=config;
+		this.hot=hot;
+	}
+
+	/**
+	 * starts the warm-up of the given context in a background thread
+	 * @param config
+	 */
+	public static void start(ConfigWebImpl config) {
+		if(!config.isWarmUp() || config.getCompileType()==Config.RECOMPILE_ALWAYS) return;
+		// the manifest is read before anything can overwrite it
+		String[] hot;
+		try {
+			Resource manifest=config.getConfigDir().getRealResource(MANIFEST);
+			hot=manifest.exists()?railo.runtime.type.List.listToStringArray(IOUtil.toString(manifest, "UTF-8"),'\n'):new String[0];
+		}
+		catch (IOException e) {
+			hot=new String[0];
+		}
+		Thread t=new Thread(new PageWarmUp(config,hot),"Warm-up "+config.getId());
+		t.setDaemon(true);
+		t.setPriority(Thread.MIN_PRIORITY);
+		t.start();
+	}
+
+	/**
+	 * @see java.lang.Runnable#run()
+	 */
+	public void run() {
+		long start=System.currentTimeMillis();
+		Set<PageSource> pages=new LinkedHashSet<PageSource>();
+		Mapping[] mappings=getMappings(config);
+
+		// templates used most in the last run
+		Map<String,Mapping> physicals=new HashMap<String,Mapping>();
+		for(int i=0;i<mappings.length;i++) {
+			physicals.put(mappings[i].getPhysical().getAbsolutePath(), mappings[i]);
+		}
+		String line;
+		int index;
+		Mapping mapping;
+		PageSource ps;
+		for(int i=0;i<hot.length && pages.size()<MAX_LOAD;i++) {
+			line=hot[i].trim();
+			index=line.indexOf('\t');
+			if(index==-1) continue;
+			mapping=physicals.get(line.substring(0,index));
+			if(mapping==null) continue;
+			ps=mapping.getPageSource(line.substring(index+1));
+			if(ps.physcalExists())pages.add(ps);
+		}
+		int countHot=pages.size();
+
+		// templates not compiled yet
+		boolean all=config.getCompileType()==Config.RECOMPILE_AFTER_STARTUP;
+		ResourceFilter filter=new ExtensionResourceFilter(config.getCFMLExtensions(),true);
+		int[] scanned=new int[1];
+		for(int i=0;i<mappings.length && pages.size()<MAX_LOAD;i++) {
+			scan(mappings[i],mappings[i].getPhysical(),"",filter,all,pages,scanned);
+		}
+
+		// compile and load them with all cores
+		int threads=Runtime.getRuntime().availableProcessors();
+		ThreadPoolExecutor executor=new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+			private int count=0;
+			public synchronized Thread newThread(Runnable r) {
+				Thread t=new Thread(r,"Warm-up "+config.getId()+" "+(++count));
+				t.setDaemon(true);
+				t.setPriority(Thread.MIN_PRIORITY);
+				return t;
+			}
+		});
+		Iterator<PageSource> it = pages.iterator();
+		while(it.hasNext()) {
+			final PageSource _ps=it.next();
+			executor.execute(new Runnable() {
+				public void run() {
+					load(_ps);
+				}
+			});
+		}
+		executor.shutdown();
+		try {
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e) {
+			executor.shutdownNow();
+		}
+
+		LogAndSource log = config.getMappingLogger();
+		if(log!=null)log.info("warm-up", "loaded "+loaded.get()+" templates ("+countHot+" used most in the last run), "+
+				failed.get()+" failed, "+scanned[0]+" files scanned in "+(System.currentTimeMillis()-start)+"ms");
+	}
+
+	private void load(PageSource ps) {
+		ThreadLocalConfig.register(config);
+		try {
+			((PageSourceImpl)ps).loadPage(null,config,null);
+			loaded.incrementAndGet();
+		}
+		// templates with syntax errors are reported when they are requested
+		catch(Throwable t) {
+			failed.incrementAndGet();
+		}
+		finally {
+			ThreadLocalConfig.release();
+		}
+	}
+
+	private static void scan(Mapping mapping, Resource dir, String path, ResourceFilter filter, boolean all, Set<PageSource> pages, int[] scanned) {
+		Resource[] children=dir.listResources(filter);
+		if(children==null) return;
+		Resource classRoot=mapping.getClassRootDirectory();
+		PageSource ps;
+		Resource classFile;
+		for(int i=0;i<children.length;i++) {
+			if(pages.size()>=MAX_LOAD || ++scanned[0]>MAX_SCAN) return;
+			if(children[i].isDirectory()) {
+				scan(mapping,children[i],path+"/"+children[i].getName(),filter,all,pages,scanned);
+				continue;
+			}
+			ps=mapping.getPageSource(path+"/"+children[i].getName());
+			if(!all) {
+				classFile=classRoot.getRealResource(ps.getJavaName()+".class");
+				if(classFile.exists() && classFile.lastModified()>=children[i].lastModified()) continue;
+			}
+			pages.add(ps);
+		}
+	}
+
+	/**
+	 * writes the templates used most (more than once) since startup to the manifest read by the next warm-up
+	 * @param config
+	 */
+	public static void writeManifest(ConfigWebImpl config) {
+		if(!config.isWarmUp()) return;
+		List<PageSource> list=new ArrayList<PageSource>();
+		Mapping[] mappings=getMappings(config);
+		PageSourcePool pool;
+		Object[] keys;
+		PageSource ps;
+		for(int i=0;i<mappings.length;i++) {
+			pool=((MappingImpl)mappings[i]).getPageSourcePool();
+			keys=pool.keys();
+			for(int y=0;y<keys.length;y++) {
+				ps=pool.getPageSource(keys[y], false);
+				if(ps!=null && ((PageSourceImpl)ps).isLoad() && ps.getAccessCount()>1)list.add(ps);
+			}
+		}
+		Collections.sort(list, ACCESS_COUNT);
+
+		StringBuilder sb=new StringBuilder();
+		for(int i=0;i<list.size() && i<MAX_HOT;i++) {
+			ps=list.get(i);
+			sb.append(ps.getMapping().getPhysical().getAbsolutePath()).append('\t').append(ps.getRealpath()).append('\n');
+		}
+		try {
+			IOUtil.write(config.getConfigDir().getRealResource(MANIFEST), sb.toString(), "UTF-8", false);
+		}
+		catch (IOException e) {}
+	}
+
+	/**
+	 * @return all mappings of the context with a physical directory
+	 */
+	private static Mapping[] getMappings(ConfigWebImpl config) {
+		List<Mapping> list=new ArrayList<Mapping>();
+		add(list,config.getMappings());
+		add(list,config.getCustomTagMappings());
+		add(list,config.getComponentMappings());
+		return list.toArray(new Mapping[list.size()]);
+	}
+
+	private static void add(List<Mapping> list, Mapping[] mappings) {
+		if(mappings==null) return;
+		Resource physical;
+		for(int i=0;i<mappings.length;i++) {
+			physical=mappings[i].getPhysical();
+			if(!mappings[i].hasPhysical() || physical==null || !physical.isDirectory() || StringUtil.isEmpty(physical.getAbsolutePath())) continue;
+			if(!list.contains(mappings[i]))list.add(mappings[i]);
+		}
+	}
+}
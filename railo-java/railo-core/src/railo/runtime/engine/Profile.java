@@ -0,0 +1,197 @@
+package railo.runtime.engine;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import railo.runtime.type.Query;
+import railo.runtime.type.QueryImpl;
+import railo.runtime.type.Struct;
+import railo.runtime.type.StructImpl;
+
+/**
+ * line timings of all profiled requests, collected by the ProfilerExecutionLog.
+ * The values are only added with atomic operations, so requests can merge their data at the same time without locking.
+ */
+public final class Profile {
+
+	private static final int MAX_TEMPLATES=10000;
+	private static final long[] BUCKETS=new long[]{1,5,10,50,100,500,1000,5000,10000};
+
+	private final Map templates=new ConcurrentHashMap();
+	private final AtomicLong requests=new AtomicLong();
+
+	/**
+	 * returns the profile of the given template, creates it if needed
+	 * @param path
+	 * @return profile or null, if there are already too many templates recorded
+	 */
+	TemplateProfile getTemplate(String path) {
+		TemplateProfile tp=(TemplateProfile) templates.get(path);
+		if(tp==null) {
+			if(templates.size()>=MAX_TEMPLATES) return null;
+			tp=new TemplateProfile(path);
+			TemplateProfile existing=(TemplateProfile) ((ConcurrentHashMap)templates).putIfAbsent(path, tp);
+			if(existing!=null) return existing;
+		}
+		return tp;
+	}
+
+	void requestDone() {
+		requests.incrementAndGet();
+	}
+
+	/**
+	 * removes all recorded data
+	 */
+	public void reset() {
+		templates.clear();
+		requests.set(0);
+	}
+
+	/**
+	 * @return the recorded data, number of requests, a query with one row per line and the time spend in the templates
+	 */
+	public Struct getInfo() {
+		Struct sct=new StructImpl();
+		sct.setEL("requests",new Double(requests.get()));
+		sct.setEL("lines",getLines());
+
+		Struct tmpls=new StructImpl();
+		Iterator it = templates.values().iterator();
+		TemplateProfile tp;
+		while(it.hasNext()) {
+			tp=(TemplateProfile) it.next();
+			tmpls.setEL(tp.path, tp.toStruct());
+		}
+		sct.setEL("templates",tmpls);
+		return sct;
+	}
+
+	/**
+	 * @return one row for every line executed, times are in milliseconds
+	 */
+	public Query getLines() {
+		Query qry=new QueryImpl(new String[]{"template","line","count","time","maxtime"},0,"profile");
+		Iterator it = templates.values().iterator();
+		TemplateProfile tp;
+		AtomicLongArray block;
+		int row,index;
+		long count;
+		while(it.hasNext()) {
+			tp=(TemplateProfile) it.next();
+			for(int b=0;b<TemplateProfile.MAX_BLOCKS;b++) {
+				block=tp.blocks.get(b);
+				if(block==null) continue;
+				for(int i=0;i<TemplateProfile.BLOCK_SIZE;i++) {
+					index=i*3;
+					count=block.get(index);
+					if(count==0) continue;
+					row=qry.addRow();
+					qry.setAtEL("template",row,tp.path);
+					qry.setAtEL("line",row,new Double(b*TemplateProfile.BLOCK_SIZE+i));
+					qry.setAtEL("count",row,new Double(count));
+					qry.setAtEL("time",row,new Double(block.get(index+1)/1000000D));
+					qry.setAtEL("maxtime",row,new Double(block.get(index+2)/1000000D));
+				}
+			}
+		}
+		return qry;
+	}
+
+	/**
+	 * returns the data in the "folded stacks" format used by flame graph tools,
+	 * one line per executed template line ("template;template:line microseconds")
+	 * @return folded stacks
+	 */
+	public String toFolded() {
+		StringBuffer sb=new StringBuffer();
+		Iterator it = templates.values().iterator();
+		TemplateProfile tp;
+		AtomicLongArray block;
+		String frame;
+		long time;
+		while(it.hasNext()) {
+			tp=(TemplateProfile) it.next();
+			// the semicolon separates the frames
+			frame=tp.path.replace(';', ',');
+			for(int b=0;b<TemplateProfile.MAX_BLOCKS;b++) {
+				block=tp.blocks.get(b);
+				if(block==null) continue;
+				for(int i=0;i<TemplateProfile.BLOCK_SIZE;i++) {
+					time=block.get(i*3+1)/1000L;
+					if(time==0) continue;
+					sb.append(frame).append(';').append(frame).append(':').append(b*TemplateProfile.BLOCK_SIZE+i);
+					sb.append(' ').append(time).append('\n');
+				}
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * timings of a single template, the lines are stored in blocks created when a line of the block is used the first time
+	 */
+	static final class TemplateProfile {
+
+		static final int BLOCK_SIZE=256;
+		static final int MAX_BLOCKS=256;
+
+		private final String path;
+		// per line: count, time, max time
+		private final AtomicReferenceArray<AtomicLongArray> blocks=new AtomicReferenceArray<AtomicLongArray>(MAX_BLOCKS);
+		private final AtomicLong requests=new AtomicLong();
+		private final AtomicLong time=new AtomicLong();
+		private final AtomicLongArray histogram=new AtomicLongArray(BUCKETS.length+1);
+
+		private TemplateProfile(String path) {
+			this.path=path;
+		}
+
+		/**
+		 * adds the timings of one request for the given line
+		 */
+		void add(int line, long count, long nanos, long maxNanos) {
+			if(line<0 || line>=BLOCK_SIZE*MAX_BLOCKS) return;
+			int b=line/BLOCK_SIZE;
+			AtomicLongArray block=blocks.get(b);
+			if(block==null) {
+				blocks.compareAndSet(b, null, new AtomicLongArray(BLOCK_SIZE*3));
+				block=blocks.get(b);
+			}
+			int index=(line%BLOCK_SIZE)*3;
+			block.addAndGet(index, count);
+			block.addAndGet(index+1, nanos);
+			long max;
+			while((max=block.get(index+2))<maxNanos && !block.compareAndSet(index+2, max, maxNanos)){}
+		}
+
+		/**
+		 * @param nanos time spend in this template by a request
+		 */
+		void requestDone(long nanos) {
+			requests.incrementAndGet();
+			time.addAndGet(nanos);
+			long millis=nanos/1000000L;
+			int index=0;
+			while(index<BUCKETS.length && millis>=BUCKETS[index]) index++;
+			histogram.incrementAndGet(index);
+		}
+
+		Struct toStruct() {
+			Struct sct=new StructImpl();
+			sct.setEL("requests",new Double(requests.get()));
+			sct.setEL("time",new Double(time.get()/1000000D));
+
+			Struct hist=new StructImpl(StructImpl.TYPE_LINKED);
+			for(int i=0;i<=BUCKETS.length;i++){
+				hist.setEL(i<BUCKETS.length?"<"+BUCKETS[i]+"ms":">="+BUCKETS[BUCKETS.length-1]+"ms", new Double(histogram.get(i)));
+			}
+			sct.setEL("timeHistogram",hist);
+			return sct;
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package railo.runtime.engine;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import railo.runtime.PageContext;
+import railo.runtime.PageSource;
+import railo.runtime.op.Caster;
+
+/**
+ * execution log recording the time spend on every line of a template.
+ * The timings of a request are collected in arrays of the request and added to the shared Profile at the end of the request.
+ * With the argument "interval" only every n-th request is profiled, all other requests only pay for a boolean check per line.
+ */
+public final class ProfilerExecutionLog implements ExecutionLog {
+
+	private static final int INITIAL_LINES=256;
+	private static final AtomicInteger counter=new AtomicInteger();
+
+	private PageContext pc;
+	private Profile profile;
+	private boolean active;
+	private long last;
+
+	private PageSource lastPageSource;
+	private Lines current;
+	private Lines[] lines=new Lines[4];
+	private int len;
+
+	/**
+	 * sets the profile the data of this log is added to, has to be called before init
+	 * @param profile
+	 */
+	void setProfile(Profile profile) {
+		this.profile=profile;
+	}
+
+	/**
+	 * @see railo.runtime.engine.ExecutionLog#init(railo.runtime.PageContext, java.util.Map)
+	 */
+	public void init(PageContext pc, Map<String, String> arguments) {
+		this.pc=pc;
+		if(profile==null) return;
+
+		int interval=Caster.toIntValue(arguments.get("interval"),1);
+		active=interval<=1 || (counter.incrementAndGet()%interval)==0;
+		last=System.nanoTime();
+	}
+
+	/**
+	 * @see railo.runtime.engine.ExecutionLog#line(int)
+	 */
+	public void line(int line) {
+		if(!active) return;
+		long now=System.nanoTime();
+		PageSource ps=pc.getCurrentPageSource();
+		if(ps!=lastPageSource) {
+			current=getLines(ps);
+			lastPageSource=ps;
+		}
+		if(current!=null)current.add(line, now-last);
+		last=now;
+	}
+
+	/**
+	 * @see railo.runtime.engine.ExecutionLog#release()
+	 */
+	public void release() {
+		if(!active) return;
+		for(int i=0;i<len;i++) {
+			lines[i].merge();
+		}
+		profile.requestDone();
+		active=false;
+	}
+
+	private Lines getLines(PageSource ps) {
+		Profile.TemplateProfile tp = profile.getTemplate(ps.getDisplayPath());
+		if(tp==null) return null;
+		for(int i=0;i<len;i++) {
+			if(lines[i].template==tp) return lines[i];
+		}
+		if(len==lines.length) {
+			Lines[] tmp=new Lines[len*2];
+			System.arraycopy(lines, 0, tmp, 0, len);
+			lines=tmp;
+		}
+		return lines[len++]=new Lines(tp);
+	}
+
+	/**
+	 * timings of a template within the current request
+	 */
+	private static final class Lines {
+
+		private final Profile.TemplateProfile template;
+		private int[] counts=new int[INITIAL_LINES];
+		private long[] times=new long[INITIAL_LINES];
+		private long[] maxTimes=new long[INITIAL_LINES];
+		private long total;
+
+		private Lines(Profile.TemplateProfile template) {
+			this.template=template;
+		}
+
+		private void add(int line, long nanos) {
+			if(line<0) return;
+			if(line>=counts.length) grow(line);
+			counts[line]++;
+			times[line]+=nanos;
+			if(maxTimes[line]<nanos)maxTimes[line]=nanos;
+			total+=nanos;
+		}
+
+		private void grow(int line) {
+			int size=Math.max(counts.length*2, line+1);
+			int[] c=new int[size];
+			long[] t=new long[size],m=new long[size];
+			System.arraycopy(counts, 0, c, 0, counts.length);
+			System.arraycopy(times, 0, t, 0, times.length);
+			System.arraycopy(maxTimes, 0, m, 0, maxTimes.length);
+			counts=c;
+			times=t;
+			maxTimes=m;
+		}
+
+		private void merge() {
+			for(int i=0;i<counts.length;i++) {
+				if(counts[i]>0)template.add(i, counts[i], times[i], maxTimes[i]);
+			}
+			template.requestDone(total);
+		}
+	}
+}
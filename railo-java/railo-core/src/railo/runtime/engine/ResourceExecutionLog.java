@@ -2,6 +2,7 @@ package railo.runtime.engine;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
 
@@ -27,6 +28,7 @@ public class ResourceExecutionLog implements ExecutionLog {
 	private int minTime;
 	private StringBuffer header;
 	private ArrayList<String> pathes=new ArrayList<String>();
+	private HashMap<String,Integer> indexes=new HashMap<String,Integer>();
 	private long start;
 	
 	
@@ -113,7 +115,8 @@ public class ResourceExecutionLog implements ExecutionLog {
 	}
 
 	public void line(int line) {
-		long time=System.nanoTime()-last;
+		long now=System.nanoTime();
+		long time=now-last;
 		if(minTime<=time){
 			content.append(path(pc.getCurrentPageSource().getDisplayPath()));
 			content.append("\t");
@@ -121,17 +124,20 @@ public class ResourceExecutionLog implements ExecutionLog {
 			content.append("\t");
 			content.append(time);
 			content.append("\n");
+			// do not count the time used for logging
+			now=System.nanoTime();
 		}
-		last=System.nanoTime();
+		last=now;
 	}
 
 	private int path(String path) {
-		int index= pathes.indexOf(path);
-		if(index==-1){
+		Integer index= indexes.get(path);
+		if(index==null){
+			index=Integer.valueOf(pathes.size());
 			pathes.add(path);
-			return pathes.size()-1;
+			indexes.put(path,index);
 		}
-		return index;
+		return index.intValue();
 	}
 
 	private void err(PageContext pc, String msg) {
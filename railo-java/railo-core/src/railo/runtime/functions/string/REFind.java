@@ -9,7 +9,7 @@ import railo.runtime.PageContext;
 import railo.runtime.exp.ExpressionException;
 import railo.runtime.exp.FunctionException;
 import railo.runtime.ext.function.Function;
-import railo.runtime.regex.Perl5Util;
+import railo.runtime.regex.RegexUtil;
 
 public final class REFind implements Function {
 	public static Object call(PageContext pc , String regExpr, String str) throws ExpressionException {
@@ -21,8 +21,8 @@ public final class REFind implements Function {
 	public static Object call(PageContext pc , String regExpr, String str, double start, boolean returnsubexpressions) throws ExpressionException {
 		try {
 			if(returnsubexpressions)
-				return Perl5Util.find(regExpr,str,(int)start,true);
-			return new Double(Perl5Util.indexOf(regExpr,str,(int)start,true));
+				return RegexUtil.find(pc,regExpr,str,(int)start,true);
+			return new Double(RegexUtil.indexOf(pc,regExpr,str,(int)start,true));
 		} catch (MalformedPatternException e) {
 			throw new FunctionException(pc,"reFind",1,"regularExpression",e.getMessage());
 		}
@@ -7,7 +7,7 @@ import railo.runtime.PageContext;
 import railo.runtime.exp.ExpressionException;
 import railo.runtime.exp.FunctionException;
 import railo.runtime.ext.function.Function;
-import railo.runtime.regex.Perl5Util;
+import railo.runtime.regex.RegexUtil;
 
 /**
  * Implements the Cold Fusion Function refindnocase
@@ -23,8 +23,8 @@ public final class REFindNoCase implements Function {
 	public static Object call(PageContext pc , String regExpr, String str, double start, boolean returnsubexpressions) throws ExpressionException {
 		try {
 			if(returnsubexpressions)
-				return Perl5Util.find(regExpr,str,(int)start,false);
-			return new Double(Perl5Util.indexOf(regExpr,str,(int)start,false));
+				return RegexUtil.find(pc,regExpr,str,(int)start,false);
+			return new Double(RegexUtil.indexOf(pc,regExpr,str,(int)start,false));
 		} catch (MalformedPatternException e) {
 			throw new FunctionException(pc,"reFindNoCase",1,"regularExpression",e.getMessage());
 		}
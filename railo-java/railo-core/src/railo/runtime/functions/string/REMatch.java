@@ -9,14 +9,14 @@ import railo.runtime.PageContext;
 import railo.runtime.exp.ExpressionException;
 import railo.runtime.exp.FunctionException;
 import railo.runtime.ext.function.Function;
-import railo.runtime.regex.Perl5Util;
+import railo.runtime.regex.RegexUtil;
 import railo.runtime.type.Array;
 
 public final class REMatch implements Function {
 	
 	public static Array call(PageContext pc , String regExpr, String str) throws ExpressionException {
 		try {
-			return Perl5Util.match(regExpr, str, 1, true);
+			return RegexUtil.match(pc,regExpr, str, 1, true);
 		} 
 		catch (MalformedPatternException e) {
 			throw new FunctionException(pc,"REMatch",1,"regularExpression",e.getMessage());
@@ -9,13 +9,13 @@ import railo.runtime.PageContext;
 import railo.runtime.exp.ExpressionException;
 import railo.runtime.exp.FunctionException;
 import railo.runtime.ext.function.Function;
-import railo.runtime.regex.Perl5Util;
+import railo.runtime.regex.RegexUtil;
 
 public final class REReplaceNoCase implements Function {
 
 	public static String call(PageContext pc , String string, String regExp, String replace) throws ExpressionException {
         try {
-            return Perl5Util.replace(string,regExp,replace,false,false);
+            return RegexUtil.replace(pc,string,regExp,replace,false,false);
         } 
         catch (MalformedPatternException e) {
             throw new FunctionException(pc,"reReplaceNoCase",2,"regularExpression",e.getMessage());
@@ -24,8 +24,8 @@ public final class REReplaceNoCase implements Function {
     
 	public static String call(PageContext pc , String string, String regExp, String replace, String scope) throws ExpressionException {
 		try {
-			if(scope.equalsIgnoreCase("all"))return Perl5Util.replace(string,regExp,replace,false,true);
-			return Perl5Util.replace(string,regExp,replace,false,false);
+			if(scope.equalsIgnoreCase("all"))return RegexUtil.replace(pc,string,regExp,replace,false,true);
+			return RegexUtil.replace(pc,string,regExp,replace,false,false);
 		} 
 		catch (MalformedPatternException e) {
 			throw new FunctionException(pc,"reReplaceNoCase",2,"regularExpression",e.getMessage());
@@ -19,207 +19,160 @@ import railo.runtime.img.interpolation.Triangle;
 
 public class ImageResizer	{
     
-    private static class ContributionInfo {
-    	int pixel;
-    	double weight;
-	
-	
-	public void setPixel(int pixel) {
-	    this.pixel = pixel;
-	}
-	
-	public int getPixel() {
-	    return pixel;
-	}
-	
-	public void setWeight(double weight) {
-	    this.weight = weight;
-	}
-	
-	public double getWeight() {
-	    return weight;
-	}
+    /**
+     * weights of the source pixels contributing to every pixel of a destination row or column,
+     * calculated once per pass and shared by all rows of the pass
+     */
+    private static final class Contributions {
+    	final int[] start;
+    	final int[] count;
+    	final double[] weights;
+    	final int max;
+    	
+    	private Contributions(int sourceLength, int destLength, double factor, Interpolation ip, double blur) {
+    		double scale = blur * Math.max(1.0 / factor, 1.0);
+    		double support = Math.max(scale * ip.getSupport(), 0.5);
+    		if (support <= 0.5) {
+    			support = 0.500000000001;
+    			scale = 1.0;
+    		}
+    		max=(int) (support * 2 + 3);
+    		start=new int[destLength];
+    		count=new int[destLength];
+    		weights=new double[destLength*max];
+    		
+    		for (int d = 0; d < destLength; d++) {
+    			double center = d / factor;
+    			int s = (int) Math.max(center - support + 0.5, 0.0);
+    			int e = (int) Math.min(center + support + 0.5, sourceLength);
+    			int offset=d*max,n = 0;
+    			double density = 0.0;
+    			for (int i = s; i < e && n<max; i++) {
+    				weights[offset+n] = ip.f((i - center + 0.5D) / scale) / scale;
+    				density += weights[offset+n];
+    				n++;
+    			}
+    			density = density == 0.0 ? 1.0 : 1.0 / density;
+    			for (int i = 0; i < n; i++)
+    				weights[offset+i] *= density;
+    			start[d]=s;
+    			count[d]=n;
+    		}
+    	}
     }
     
-    private static int horizontal(BufferedImage source, BufferedImage destination, double xFactor,Interpolation ip, double blur, ContributionInfo[] contribution) {
-	if (source.getWidth() == destination.getWidth()
-	    && source.getHeight() == destination.getHeight()) {
-	    destination.setData(source.getData());
-	    return destination.getWidth();
-	}
-	double scale = blur * Math.max(1.0 / xFactor, 1.0);
-	double support = Math.max(scale * ip.getSupport(), 0.5);
-	if (support <= 0.5) {
-	    support = 0.500000000001;
-	    scale = 1.0;
-	}
-	ColorModel cm = ColorModel.getRGBdefault();
-	for (int x = 0; x < destination.getWidth(); x++) {
-	    double center = x / xFactor;
-	    int start = (int) Math.max(center - support + 0.5, 0.0);
-	    int end = (int) Math.min(center + support + 0.5,
-				     source.getWidth());
-	    int n = setContributionWeight(start, end, contribution, ip,
-					  center, scale);
-	    int sourceWidth = (contribution[n - 1].getPixel()
-			       - contribution[0].getPixel() + 1);
-	    int[] sourcePixels = new int[sourceWidth * source.getHeight()];
-	    int[] destPixels = new int[destination.getHeight()];
-	    sourcePixels = source.getRGB(contribution[0].getPixel(), 0,
-					 sourceWidth, source.getHeight(),
-					 sourcePixels, 0, sourceWidth);
-	    int destIndex = 0;
-	    for (int y = 0; y < destination.getHeight(); y++) {
-		double blue = 0.0;
-		double green = 0.0;
-		double red = 0.0;
-		double opacity = 0.0;
-		int[] c = new int[4];
-		for (int i = 0; i < n; i++) {
-		    int j = (y * (contribution[n - 1].getPixel()
-				  - contribution[0].getPixel() + 1)
-			     + (contribution[i].getPixel()
-				- contribution[0].getPixel()));
-		    c = cm.getComponents(sourcePixels[j], c, 0);
-		    red += contribution[i].getWeight() * c[0];
-		    green += contribution[i].getWeight() * c[1];
-		    blue += contribution[i].getWeight() * c[2];
-		    opacity += contribution[i].getWeight() * c[3];
-		}
-		red = red < 0.0 ? 0.0 : red > 255.0 ? 255.0 : red + 0.5;
-		green
-		    = green < 0.0 ? 0.0 : green > 255.0 ? 255.0 : green + 0.5;
-		blue = blue < 0.0 ? 0.0 : blue > 255.0 ? 255.0 : blue + 0.5;
-		opacity = (opacity < 0.0 ? 0.0 : opacity > 255.0 ? 255.0
-			   : opacity + 0.5);
-		destPixels[destIndex]
-		    = cm.getDataElement(new int[] { (int) red, (int) green,
-						    (int) blue,
-						    (int) opacity },
-					0);
-		destIndex++;
-	    }
-	    destination.setRGB(x, 0, 1, destination.getHeight(), destPixels, 0,
-			       1);
-	}
-	return destination.getWidth();
+    /**
+     * scales every row of the source to the width of the destination
+     */
+    private static void horizontal(final int[] source, final int sourceWidth, final int[] dest, final int destWidth, int height, double xFactor, Interpolation ip, double blur) {
+    	final Contributions c=new Contributions(sourceWidth, destWidth, xFactor, ip, blur);
+    	ImageWorkers.run(height, (long)destWidth*c.max, new ImageWorkers.Task() {
+			public void run(int from, int to) {
+				for (int y = from; y < to; y++) {
+					int row=y*sourceWidth,destIndex=y*destWidth;
+					for (int x = 0; x < destWidth; x++) {
+						int index=row+c.start[x],offset=x*c.max,n=c.count[x];
+						double red = 0.0,green = 0.0,blue = 0.0,opacity = 0.0,w;
+						int argb;
+						for (int i = 0; i < n; i++) {
+							argb=source[index+i];
+							w=c.weights[offset+i];
+							opacity += w * ((argb >> 24) & 0xff);
+							red += w * ((argb >> 16) & 0xff);
+							green += w * ((argb >> 8) & 0xff);
+							blue += w * (argb & 0xff);
+						}
+						dest[destIndex++]=toARGB(red, green, blue, opacity);
+					}
+				}
+			}
+		});
     }
     
-    private static int setContributionWeight(int start, int end, ContributionInfo[] contribution, Interpolation interpolation, double center, double scale) {
-		int n = 0;
-		double density = 0.0;
-		for (int i = start; i < end; i++) {
-		    contribution[n].setPixel(i);
-		    contribution[n].setWeight(interpolation.f((i - center + 0.5D)
-						       / scale) / scale);
-		    density += contribution[n].getWeight();
-		    n++;
-		}
-		density = density == 0.0 ? 1.0 : 1.0 / density;
-		for (int i = 0; i < n; i++)
-		    contribution[i].setWeight(contribution[i].getWeight() * density);
-		return n;
+    /**
+     * scales every column of the source to the height of the destination
+     */
+    private static void vertical(final int[] source, int sourceHeight, final int[] dest, final int destHeight, final int width, double yFactor, Interpolation ip, double blur) {
+    	final Contributions c=new Contributions(sourceHeight, destHeight, yFactor, ip, blur);
+    	ImageWorkers.run(destHeight, (long)width*c.max, new ImageWorkers.Task() {
+			public void run(int from, int to) {
+				// row by row, so source and destination are read and written sequential
+				double[] red=new double[width],green=new double[width],blue=new double[width],opacity=new double[width];
+				for (int y = from; y < to; y++) {
+					int offset=y*c.max,n=c.count[y],row,argb;
+					double w;
+					for (int x = 0; x < width; x++) {
+						red[x]=green[x]=blue[x]=opacity[x]=0;
+					}
+					for (int i = 0; i < n; i++) {
+						row=(c.start[y]+i)*width;
+						w=c.weights[offset+i];
+						for (int x = 0; x < width; x++) {
+							argb=source[row+x];
+							opacity[x] += w * ((argb >> 24) & 0xff);
+							red[x] += w * ((argb >> 16) & 0xff);
+							green[x] += w * ((argb >> 8) & 0xff);
+							blue[x] += w * (argb & 0xff);
+						}
+					}
+					int destIndex=y*width;
+					for (int x = 0; x < width; x++) {
+						dest[destIndex++]=toARGB(red[x], green[x], blue[x], opacity[x]);
+					}
+				}
+			}
+		});
     }
     
-    private static int vertical(BufferedImage source, BufferedImage destination, double y_factor, Interpolation ip, double blur, ContributionInfo[] contribution) {
-	/*if (source.getWidth() == destination.getWidth()
-	    && source.getHeight() == destination.getHeight()) {
-	    destination.setData(source.getData());
-	    return destination.getWidth();
-	}*/
-	double scale = blur * Math.max(1.0 / y_factor, 1.0);
-	double support = Math.max(scale * ip.getSupport(), 0.5);
-	if (support <= 0.5) {
-	    support = 0.500000000001;
-	    scale = 1.0;
-	}
-	ColorModel cm = ColorModel.getRGBdefault();
-	for (int y = 0; y < destination.getHeight(); y++) {
-	    double center =  y / y_factor;
-	    int start = (int) Math.max(center - support + 0.5, 0.0);
-	    int end = (int) Math.min(center + support + 0.5,
-				     source.getHeight());
-	    int n = setContributionWeight(start, end, contribution, ip,
-					  center, scale);
-	    int sourceHeight = (contribution[n - 1].getPixel()
-				- contribution[0].getPixel() + 1);
-	    int[] sourcePixels = new int[source.getWidth() * sourceHeight];
-	    int[] destPixels = new int[destination.getWidth()];
-	    sourcePixels = source.getRGB(0, contribution[0].getPixel(),
-					 source.getWidth(), sourceHeight,
-					 sourcePixels, 0, source.getWidth());
-	    int destIndex = 0;
-	    for (int x = 0; x < destination.getWidth(); x++) {
-		double blue = 0.0;
-		double green = 0.0;
-		double red = 0.0;
-		double opacity = 0.0;
-		int[] c = new int[4];
-		for (int i = 0; i < n; i++) {
-		    int j = ((contribution[i].getPixel()
-			      - contribution[0].getPixel()) * source.getWidth()
-			     + x);
-		    c = cm.getComponents(sourcePixels[j], c, 0);
-		    red += contribution[i].getWeight() * c[0];
-		    green += contribution[i].getWeight() * c[1];
-		    blue += contribution[i].getWeight() * c[2];
-		    opacity += contribution[i].getWeight() * c[3];
-		}
-		red = red < 0.0 ? 0.0 : red > 255.0 ? 255.0 : red + 0.5;
-		green
-		    = green < 0.0 ? 0.0 : green > 255.0 ? 255.0 : green + 0.5;
-		blue = blue < 0.0 ? 0.0 : blue > 255.0 ? 255.0 : blue + 0.5;
-		opacity = (opacity < 0.0 ? 0.0 : opacity > 255.0 ? 255.0
-			   : opacity + 0.5);
-		destPixels[destIndex]
-		    = cm.getDataElement(new int[] { (int) red, (int) green,
-						    (int) blue,
-						    (int) opacity },
-					0);
-		destIndex++;
-	    }
-	    destination.setRGB(0, y, destination.getWidth(), 1, destPixels, 0,
-			       destination.getWidth());
-	}
-	return destination.getHeight();
+    private static int toARGB(double red, double green, double blue, double opacity) {
+    	int r = (int) (red < 0.0 ? 0.0 : red > 255.0 ? 255.0 : red + 0.5);
+    	int g = (int) (green < 0.0 ? 0.0 : green > 255.0 ? 255.0 : green + 0.5);
+    	int b = (int) (blue < 0.0 ? 0.0 : blue > 255.0 ? 255.0 : blue + 0.5);
+    	int a = (int) (opacity < 0.0 ? 0.0 : opacity > 255.0 ? 255.0 : opacity + 0.5);
+    	return (a << 24) | (r << 16) | (g << 8) | b;
     }
     
-
-    
+    /**
+     * resizes the image with the given interpolation, both passes work on the ARGB pixels of the whole image 
+     * and are split into bands of rows processed in parallel.
+     */
     public static BufferedImage resize(BufferedImage image, int columns, int rows, int interpolation, double blur) throws ExpressionException {
-    	if (columns == 0 || rows == 0)
+    	if (columns <= 0 || rows <= 0)
     		throw new ExpressionException("invalid size for image");
 		
-    	BufferedImage resizeImage = createBufferedImage(image, columns, rows);
-		
 		Interpolation inter = getInterpolation(interpolation);
-		double xFactor = (double) columns / (double) image.getWidth();
-		double scale = blur * Math.max(1.0 / xFactor, 1.0);
-		double xSupport = Math.max(scale * inter.getSupport(), 0.5);
-		double yFactor = (double) rows / (double) image.getHeight();
-		scale = blur * Math.max(1.0 / yFactor, 1.0);
-		double ySupport = Math.max(scale * inter.getSupport(), 0.5);
-		double support = Math.max(xSupport, ySupport);
-		if (support < inter.getSupport())
-		    support = inter.getSupport();
-		ContributionInfo[] contribution = new ContributionInfo[(int) support * 2 + 3];
+		int width=image.getWidth(),height=image.getHeight();
+		double xFactor = (double) columns / (double) width;
+		double yFactor = (double) rows / (double) height;
 		
-		for (int cloop = 0; cloop < (int) support * 2 + 3; cloop++)
-		    contribution[cloop] = new ContributionInfo();
+		// one bulk read of all pixels instead of a read per row or column
+		int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
 		
-		int status;
-		if (columns * (image.getHeight() + rows) < rows * (image.getWidth() + columns)) {
-		    BufferedImage sourceImage = createBufferedImage(image, columns, image.getHeight());
-		    status = horizontal(image, sourceImage, xFactor, inter, blur, contribution);
-		    status |= vertical(sourceImage, resizeImage, yFactor,inter, blur, contribution);
+		// start with the pass producing less pixels
+		if (columns * (height + rows) < rows * (width + columns)) {
+			if(columns!=width) {
+				int[] tmp=new int[columns*height];
+				horizontal(pixels, width, tmp, columns, height, xFactor, inter, blur);
+				pixels=tmp;
+			}
+			// the vertical pass is also done for the same height, the filter smoothes the image
+			int[] tmp=new int[columns*rows];
+			vertical(pixels, height, tmp, rows, columns, yFactor, inter, blur);
+			pixels=tmp;
 		} 
 		else {
-		    BufferedImage sourceImage = createBufferedImage(image, image.getWidth(), rows);
-		    status = vertical(image, sourceImage, yFactor, inter, blur, contribution);
-		    status |= horizontal(sourceImage, resizeImage, xFactor, inter, blur, contribution);
+			int[] tmp=new int[width*rows];
+			vertical(pixels, height, tmp, rows, width, yFactor, inter, blur);
+			pixels=tmp;
+			if(columns!=width) {
+				tmp=new int[columns*rows];
+				horizontal(pixels, width, tmp, columns, rows, xFactor, inter, blur);
+				pixels=tmp;
+			}
 		}
 		
-		if (status == 0) throw new ExpressionException("can't resize image");
+		BufferedImage resizeImage = createBufferedImage(image, columns, rows);
+		resizeImage.setRGB(0, 0, columns, rows, pixels, 0, columns);
 		return resizeImage;
     }
     
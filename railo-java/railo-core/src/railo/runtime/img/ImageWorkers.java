@@ -0,0 +1,98 @@
+package railo.runtime.img;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * splits the rows of a pixel operation into bands processed by all cores,
+ * the calling thread processes the last band itself and waits for the others.
+ * Small operations are not split, handing them over to a other thread costs more than they do.
+ */
+public final class ImageWorkers {
+
+	// minimal work (pixel operations) of a band
+	private static final long MIN_BAND_COST=1<<16;
+	private static final int THREADS=Runtime.getRuntime().availableProcessors();
+
+	private static ThreadPoolExecutor executor;
+
+	/**
+	 * task processing a band of rows, has to write only into the rows given
+	 */
+	public static abstract class Task {
+		/**
+		 * @param from first row (inclusive)
+		 * @param to last row (exclusive)
+		 */
+		public abstract void run(int from, int to);
+	}
+
+	/**
+	 * executes the task for all rows
+	 * @param rows number of rows
+	 * @param rowCost pixel operations needed for a row, used to decide how many bands are used
+	 * @param task
+	 */
+	public static void run(int rows, long rowCost, final Task task) {
+		int bands=(int)Math.min(Math.min(THREADS, rows), Math.max(1,(rows*rowCost)/MIN_BAND_COST));
+		// a worker does not split its work again, it would wait for the pool it is part of
+		if(bands<=1 || Thread.currentThread() instanceof Worker) {
+			task.run(0, rows);
+			return;
+		}
+
+		Future[] futures=new Future[bands-1];
+		int size=rows/bands,from=0;
+		ThreadPoolExecutor executor=getExecutor();
+		for(int i=0;i<futures.length;i++) {
+			final int _from=from,_to=from+size;
+			futures[i]=executor.submit(new Runnable() {
+				public void run() {
+					task.run(_from, _to);
+				}
+			});
+			from=_to;
+		}
+		task.run(from, rows);
+
+		for(int i=0;i<futures.length;i++) {
+			try {
+				futures[i].get();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+			catch (ExecutionException e) {
+				Throwable cause=e.getCause();
+				if(cause instanceof RuntimeException) throw (RuntimeException)cause;
+				if(cause instanceof Error) throw (Error)cause;
+				throw new RuntimeException(cause);
+			}
+		}
+	}
+
+	private static synchronized ThreadPoolExecutor getExecutor() {
+		if(executor==null) {
+			executor=new ThreadPoolExecutor(THREADS, THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				private final AtomicInteger count=new AtomicInteger();
+				public Thread newThread(Runnable r) {
+					return new Worker(r,"Image Worker "+count.incrementAndGet());
+				}
+			});
+		}
+		return executor;
+	}
+
+	private static class Worker extends Thread {
+		private Worker(Runnable r, String name) {
+			super(r,name);
+			setDaemon(true);
+		}
+	}
+}
@@ -24,6 +24,8 @@ import java.awt.image.BufferedImage;
 import java.awt.image.ColorModel;
 import java.awt.image.Kernel;
 
+import railo.runtime.img.ImageWorkers;
+
 public class ConvolveFilter extends AbstractBufferedImageOp {
 	
     /**
@@ -250,15 +252,23 @@ public class ConvolveFilter extends AbstractBufferedImageOp {
      * @param alpha include alpha channel
      * @param edgeAction what to do at the edges
 	 */
-	public static void convolveHV(Kernel kernel, int[] inPixels, int[] outPixels, int width, int height, boolean alpha, int edgeAction) {
-		int index = 0;
+	public static void convolveHV(final Kernel kernel, final int[] inPixels, final int[] outPixels, final int width, final int height, final boolean alpha, final int edgeAction) {
+		ImageWorkers.run(height, (long)width*kernel.getWidth()*kernel.getHeight(), new ImageWorkers.Task() {
+			public void run(int from, int to) {
+				convolveHV(kernel, inPixels, outPixels, width, height, alpha, edgeAction, from, to);
+			}
+		});
+	}
+
+	private static void convolveHV(Kernel kernel, int[] inPixels, int[] outPixels, int width, int height, boolean alpha, int edgeAction, int from, int to) {
+		int index = from*width;
 		float[] matrix = kernel.getKernelData( null );
 		int rows = kernel.getHeight();
 		int cols = kernel.getWidth();
 		int rows2 = rows/2;
 		int cols2 = cols/2;
 
-		for (int y = 0; y < height; y++) {
+		for (int y = from; y < to; y++) {
 			for (int x = 0; x < width; x++) {
 				float r = 0, g = 0, b = 0, a = 0;
 
@@ -314,13 +324,21 @@ public class ConvolveFilter extends AbstractBufferedImageOp {
      * @param alpha include alpha channel
      * @param edgeAction what to do at the edges
 	 */
-	public static void convolveH(Kernel kernel, int[] inPixels, int[] outPixels, int width, int height, boolean alpha, int edgeAction) {
-		int index = 0;
+	public static void convolveH(final Kernel kernel, final int[] inPixels, final int[] outPixels, final int width, final int height, final boolean alpha, final int edgeAction) {
+		ImageWorkers.run(height, (long)width*kernel.getWidth(), new ImageWorkers.Task() {
+			public void run(int from, int to) {
+				convolveH(kernel, inPixels, outPixels, width, height, alpha, edgeAction, from, to);
+			}
+		});
+	}
+
+	private static void convolveH(Kernel kernel, int[] inPixels, int[] outPixels, int width, int height, boolean alpha, int edgeAction, int from, int to) {
+		int index = from*width;
 		float[] matrix = kernel.getKernelData( null );
 		int cols = kernel.getWidth();
 		int cols2 = cols/2;
 
-		for (int y = 0; y < height; y++) {
+		for (int y = from; y < to; y++) {
 			int ioffset = y*width;
 			for (int x = 0; x < width; x++) {
 				float r = 0, g = 0, b = 0, a = 0;
@@ -367,13 +385,21 @@ public class ConvolveFilter extends AbstractBufferedImageOp {
      * @param alpha include alpha channel
      * @param edgeAction what to do at the edges
 	 */
-	public static void convolveV(Kernel kernel, int[] inPixels, int[] outPixels, int width, int height, boolean alpha, int edgeAction) {
-		int index = 0;
+	public static void convolveV(final Kernel kernel, final int[] inPixels, final int[] outPixels, final int width, final int height, final boolean alpha, final int edgeAction) {
+		ImageWorkers.run(height, (long)width*kernel.getHeight(), new ImageWorkers.Task() {
+			public void run(int from, int to) {
+				convolveV(kernel, inPixels, outPixels, width, height, alpha, edgeAction, from, to);
+			}
+		});
+	}
+
+	private static void convolveV(Kernel kernel, int[] inPixels, int[] outPixels, int width, int height, boolean alpha, int edgeAction, int from, int to) {
+		int index = from*width;
 		float[] matrix = kernel.getKernelData( null );
 		int rows = kernel.getHeight();
 		int rows2 = rows/2;
 
-		for (int y = 0; y < height; y++) {
+		for (int y = from; y < to; y++) {
 			for (int x = 0; x < width; x++) {
 				float r = 0, g = 0, b = 0, a = 0;
 
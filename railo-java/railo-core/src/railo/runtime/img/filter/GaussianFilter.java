@@ -19,6 +19,8 @@ package railo.runtime.img.filter;
 import java.awt.image.BufferedImage;
 import java.awt.image.Kernel;
 
+import railo.runtime.img.ImageWorkers;
+
 /**
  * A filter which applies Gaussian blur to an image. This is a subclass of ConvolveFilter
  * which simply creates a kernel with a Gaussian distribution for blurring.
@@ -102,12 +104,20 @@ public class GaussianFilter extends ConvolveFilter {
      * @param alpha whether to blur the alpha channel
      * @param edgeAction what to do at the edges
      */
-	public static void convolveAndTranspose(Kernel kernel, int[] inPixels, int[] outPixels, int width, int height, boolean alpha, boolean premultiply, boolean unpremultiply, int edgeAction) {
+	public static void convolveAndTranspose(final Kernel kernel, final int[] inPixels, final int[] outPixels, final int width, final int height, final boolean alpha, final boolean premultiply, final boolean unpremultiply, final int edgeAction) {
+		ImageWorkers.run(height, (long)width*kernel.getWidth(), new ImageWorkers.Task() {
+			public void run(int from, int to) {
+				convolveAndTranspose(kernel, inPixels, outPixels, width, height, alpha, premultiply, unpremultiply, edgeAction, from, to);
+			}
+		});
+	}
+
+	private static void convolveAndTranspose(Kernel kernel, int[] inPixels, int[] outPixels, int width, int height, boolean alpha, boolean premultiply, boolean unpremultiply, int edgeAction, int from, int to) {
 		float[] matrix = kernel.getKernelData( null );
 		int cols = kernel.getWidth();
 		int cols2 = cols/2;
 
-		for (int y = 0; y < height; y++) {
+		for (int y = from; y < to; y++) {
 			int index = y;
 			int ioffset = y*width;
 			for (int x = 0; x < width; x++) {
@@ -164,6 +164,19 @@ public class CFMLExpressionInterpreter {
      * @throws PageException
      */
     public Object interpret(PageContext pc,ParserString cfml) throws PageException {    
+        return parse(pc,cfml).getValue();
+    }
+    
+    /**
+     * reads a expression from the given CFMLString without interpreting it,
+     * the returned reference is bound to the given PageContext and can be interpreted several times with getValue.
+     * 
+     * @param pc
+     * @param cfml
+     * @return reference to the expression
+     * @throws PageException
+     */
+    public Ref parse(PageContext pc,ParserString cfml) throws PageException {    
         this.cfml = cfml;
         this.pc=pc;
         if(pc!=null)fld=((ConfigImpl)pc.getConfig()).getCombinedFLDs();
@@ -176,7 +189,7 @@ public class CFMLExpressionInterpreter {
         cfml.removeSpace();
         
         if(cfml.isAfterLast()) {
-            return ref.getValue();
+            return ref;
         }
         throw new ExpressionException("Syntax Error, invalid Expression ["+cfml.toString()+"]");
     }
@@ -0,0 +1,96 @@
+package railo.runtime.interpreter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import railo.commons.lang.ParserString;
+import railo.runtime.PageContext;
+import railo.runtime.config.ConfigImpl;
+import railo.runtime.exp.PageException;
+import railo.runtime.interpreter.ref.Ref;
+import railo.runtime.type.Struct;
+import railo.runtime.type.StructImpl;
+import railo.transformer.library.function.FunctionLib;
+
+/**
+ * size bounded cache for the parsed expressions of Evaluate and IIf, when the cache is full the least recently used expression is removed.
+ * A parsed expression is bound to the PageContext it was parsed for, so every PageContext has its own cache,
+ * the PageContext are pooled, so the cache survives the request. 
+ * The cache is cleared when the function libraries or the config of the PageContext change, 
+ * because the parser decides with help of the function libraries if a call is a built-in or a user defined function.
+ */
+public final class ExpressionCache {
+
+	private static final int MAX_SIZE=500;
+	// longer expressions are hardly ever evaluated more than once
+	private static final int MAX_LENGTH=2048;
+
+	private static final AtomicLong hits=new AtomicLong();
+	private static final AtomicLong misses=new AtomicLong();
+	private static final AtomicLong evictions=new AtomicLong();
+	private static final AtomicLong invalidations=new AtomicLong();
+	private static final AtomicLong bypassed=new AtomicLong();
+
+	private final Map expressions=new LinkedHashMap(16,0.75f,true) {
+		protected boolean removeEldestEntry(Map.Entry eldest) {
+			if(size()<=MAX_SIZE) return false;
+			evictions.incrementAndGet();
+			return true;
+		}
+	};
+	private FunctionLib fld;
+	private long loadTime;
+
+	/**
+	 * interprets the given expression, the parsed expression is taken from the cache or stored in it
+	 * @param pc page context owning this cache, used only by the thread of the page context
+	 * @param expression
+	 * @return result of the expression
+	 * @throws PageException
+	 */
+	public Object evaluate(PageContext pc, String expression) throws PageException {
+		if(expression.length()>MAX_LENGTH) {
+			bypassed.incrementAndGet();
+			return new CFMLExpressionInterpreter().interpret(pc,expression);
+		}
+
+		ConfigImpl config=(ConfigImpl) pc.getConfig();
+		FunctionLib fld=config.getCombinedFLDs();
+		if(fld!=this.fld || config.getLoadTime()!=loadTime) {
+			if(!expressions.isEmpty()) {
+				expressions.clear();
+				invalidations.incrementAndGet();
+			}
+			this.fld=fld;
+			this.loadTime=config.getLoadTime();
+		}
+
+		Ref ref=(Ref) expressions.get(expression);
+		if(ref==null) {
+			misses.incrementAndGet();
+			ref=new CFMLExpressionInterpreter().parse(pc,new ParserString(expression));
+			expressions.put(expression, ref);
+		}
+		else hits.incrementAndGet();
+		return ref.getValue();
+	}
+
+	/**
+	 * @return hits and misses of the caches of all PageContext
+	 */
+	public static Struct getInfo() {
+		long hits=ExpressionCache.hits.get();
+		long misses=ExpressionCache.misses.get();
+		Struct sct=new StructImpl();
+		sct.setEL("maxSize", new Double(MAX_SIZE));
+		sct.setEL("maxLength", new Double(MAX_LENGTH));
+		sct.setEL("hits", new Double(hits));
+		sct.setEL("misses", new Double(misses));
+		sct.setEL("evictions", new Double(evictions.get()));
+		sct.setEL("invalidations", new Double(invalidations.get()));
+		sct.setEL("bypassed", new Double(bypassed.get()));
+		sct.setEL("hitRate", new Double(hits+misses==0?0:(double)hits/(hits+misses)));
+		return sct;
+	}
+}
@@ -1,6 +1,9 @@
 package railo.runtime.interpreter;
 
 import railo.commons.lang.NumberUtil;
+import railo.runtime.PageContext;
+import railo.runtime.converter.ConverterException;
+import railo.runtime.converter.JSONParser;
 import railo.runtime.exp.ExpressionException;
 import railo.runtime.exp.PageException;
 import railo.runtime.interpreter.ref.Ref;
@@ -11,6 +14,20 @@ public class JSONExpressionInterpreter extends CFMLExpressionInterpreter {
 	public JSONExpressionInterpreter(){
 		allowNullConstant=true;
     }
+	
+	/**
+	 * strict JSON is read with the JSONParser, only when this fails (single quotes, unquoted keys, expressions ...) 
+	 * the input is interpreted as CFML expression
+	 * @see railo.runtime.interpreter.CFMLExpressionInterpreter#interpret(railo.runtime.PageContext, java.lang.String)
+	 */
+	public Object interpret(PageContext pc, String str) throws PageException {
+		try {
+			return new JSONParser(str).parse();
+		}
+		catch (ConverterException e) {
+			return super.interpret(pc, str);
+		}
+	}
         
 	/**
 	 *
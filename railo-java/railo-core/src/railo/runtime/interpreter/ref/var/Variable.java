@@ -97,7 +97,8 @@ public final class Variable extends RefSupport implements Set {
     }
     
     public String getKeyAsString() throws PageException {
-        if(key==null)key=Caster.toString(refKey.getValue());
+        // a dynamic key is not stored, the reference can be interpreted again (see ExpressionCache)
+        if(key==null)return Caster.toString(refKey.getValue());
         return key;
     }
 
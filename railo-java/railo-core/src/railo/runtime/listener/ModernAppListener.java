@@ -60,6 +60,8 @@ public class ModernAppListener extends AppListenerSupport {
 	private static final Collection.Key CUSTOM_TAG_PATHS = KeyImpl.getInstance("customtagpaths");
 	private static final Collection.Key SECURE_JSON_PREFIX = KeyImpl.getInstance("secureJsonPrefix");
 	private static final Collection.Key SECURE_JSON = KeyImpl.getInstance("secureJson");
+	private static final Collection.Key REGEX = KeyImpl.getInstance("regex");
+	private static final Collection.Key TYPE = KeyImpl.getInstance("type");
 	
 
 	private static final Collection.Key ON_REQUEST_START = KeyImpl.getInstance("onRequestStart");
@@ -465,6 +467,11 @@ public class ModernAppListener extends AppListenerSupport {
 			o=get(app,SECURE_JSON,null);
 			if(o!=null) appContext.setSecureJson(Caster.toBooleanValue(o));
 			
+			// regex (this.regex="java" or this.regex.type="java")
+			o=get(app,REGEX,null);
+			if(o!=null && Decision.isStruct(o)) o=Caster.toStruct(o).get(TYPE,null);
+			if(o!=null) appContext.setRegexEngine(Caster.toString(o));
+			
 			// S3
 			o=get(app,S3,null);
 			if(o!=null && Decision.isStruct(o)){
@@ -1,60 +1,98 @@
 package railo.runtime.lock;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
-import railo.commons.collections.HashTable;
+import railo.runtime.type.Query;
+import railo.runtime.type.QueryImpl;
+import railo.runtime.type.Struct;
+import railo.runtime.type.StructImpl;
 
 
 /**
- * Lock mnager to make a log by a string name
+ * Lock mnager to make a log by a string name.
+ * A lock is owned by a PageContext (not by a thread), so it can be released by a other thread (request timeout),
+ * the same PageContext can enter a lock it already holds.
+ * Readers share a lock, but new readers wait as long as a writer is waiting, so writers do not starve.
  */
 public final class LockManagerImpl implements LockManager {
 
-	private static List managers=new ArrayList();
-    private Map locks=new HashTable();
-	
+	private static final int MAX_STATISTICS=1000;
+	private static final String OTHER="[other]";
+
+	private static List managers=new CopyOnWriteArrayList();
+	// the concurrency level defines the number of independent segments (stripes) of the name table
+    private Map locks=new ConcurrentHashMap(256,0.75f,64);
+    private Map statistics=new ConcurrentHashMap();
+
     private LockManagerImpl() {
-    	
+
     }
-	
+
     public static LockManager getInstance() {
     	LockManagerImpl lmi = new LockManagerImpl();
     	managers.add(lmi);
     	return lmi;
     }
-	
+
 	/**
      * @see railo.runtime.lock.LockManager#lock(int, java.lang.String, int, int)
      */
 	public LockData lock(int type, String name, int timeout, int pageContextId) throws LockTimeoutException, InterruptedException {
-		//print.out("lock:"+timeout);
-        
         LockData data = new LockDataImpl(type,name,pageContextId);
-        LockToken token=touchLookToken(data);
-        long start=System.currentTimeMillis();
+        LockStatistic statistic=getStatistic(data.getName());
         if(timeout<=0)timeout=1;
-        synchronized(token) {
-        	//print.out("count:"+token.getDataCount()+":"+token.canEnter(data));
-
-        	while(!token.canEnter(data)) { 
-            	//print.out("wait:"+timeout);
-                token.wait(timeout);
-            	//print.out("count:"+timeout+"+"+(start+timeout<=System.currentTimeMillis()));
-                if(timeout!=0 && start+timeout<=System.currentTimeMillis()) {
-                    //SystemOut.printDate("lock ["+name+"] timeout after "+(System.currentTimeMillis()-start)+" millis");
-    				throw new LockTimeoutException(type,name,timeout);
-    			}
-    		}
-            token.addLockData(data);
-            if(data.isReadOnly())token.notify();
+        long start=System.nanoTime();
+        long nanos=TimeUnit.MILLISECONDS.toNanos(timeout);
+        boolean contended=false;
+
+        LockToken token;
+        while(true) {
+        	token=touchLockToken(data.getName());
+        	token.lock.lock();
+        	try {
+        		// the token was removed from the table in the meantime, get a new one
+        		if(token.removed) continue;
+
+        		if(!token.canEnter(data)) {
+        			contended=true;
+        			token.waiters++;
+        			if(!data.isReadOnly())token.waitingWriters++;
+        			try {
+        				while(!token.canEnter(data)) {
+        					if(nanos<=0) {
+        						statistic.timeout(System.nanoTime()-start);
+        						throw new LockTimeoutException(type,name,timeout);
+        					}
+        					nanos=token.changed.awaitNanos(nanos);
+        				}
+        			}
+        			finally {
+        				token.waiters--;
+        				if(!data.isReadOnly()) {
+        					token.waitingWriters--;
+        					// readers may wait for this writer
+        					token.changed.signalAll();
+        				}
+        				removeIfUnused(token);
+        			}
+        		}
+        		token.datas.add(data);
+        	}
+        	finally {
+        		token.lock.unlock();
+        	}
+        	statistic.acquired(System.nanoTime()-start, contended);
+        	return data;
         }
-        return data;
 	}
 
     /**
@@ -63,90 +101,107 @@ public final class LockManagerImpl implements LockManager {
 	public void unlock(LockData data) {
         if(data==null)return;
         LockToken token=(LockToken)locks.get(data.getName());
-        
+
         if(token!=null) {
-           if(token.removeLockData(data));
-               //locks.remove(data.getName());
+        	token.lock.lock();
+        	try {
+        		if(token.datas.remove(data))token.changed.signalAll();
+        		removeIfUnused(token);
+        	}
+        	finally {
+        		token.lock.unlock();
+        	}
         }
 	}
-    
+
+	/**
+	 * removes the token from the table when nobody holds or waits for it, has to be called within the lock of the token
+	 */
+	private void removeIfUnused(LockToken token) {
+		if(token.datas.isEmpty() && token.waiters==0 && !token.removed) {
+			token.removed=true;
+			((ConcurrentHashMap)locks).remove(token.name, token);
+		}
+	}
+
     /**
      * touch a LockToken, create if needed
-     * @param data
+     * @param name
      * @return token
      */
-    private LockToken touchLookToken(LockData data) {
-    	LockToken token=null;
-    	synchronized(locks) {
-	    	token=(LockToken)locks.get(data.getName());
-	        if(token == null){
-	            token=new LockToken();
-	            locks.put(data.getName(),token);
-	        }
-    	}
+    private LockToken touchLockToken(String name) {
+    	LockToken token=(LockToken)locks.get(name);
+        if(token == null){
+            token=new LockToken(name);
+            LockToken existing=(LockToken) ((ConcurrentHashMap)locks).putIfAbsent(name,token);
+            if(existing!=null) return existing;
+        }
         return token;
     }
-    
+
+    /**
+     * returns the statistic for the given lock name, scope locks are combined by scope
+     * (names like "__session_<id>" are counted as "__session")
+     */
+    private LockStatistic getStatistic(String name) {
+    	if(name.startsWith("__")) {
+    		int index=name.indexOf('_',2);
+    		if(index!=-1) name=name.substring(0,index);
+    	}
+    	LockStatistic statistic=(LockStatistic) statistics.get(name);
+    	if(statistic==null) {
+    		if(statistics.size()>=MAX_STATISTICS) name=OTHER;
+    		statistic=new LockStatistic();
+    		LockStatistic existing=(LockStatistic) ((ConcurrentHashMap)statistics).putIfAbsent(name,statistic);
+    		if(existing!=null) return existing;
+    	}
+    	return statistic;
+    }
+
     /**
      * a running lock token
      */
-    private class LockToken {
-        
-        //private LockData data;
-        //private int count;
-        private Set datas=new HashSet();
+    private static class LockToken {
 
-        public int getDataCount() {
-        	return datas.size();
-        }
-        
-        /**
-         * remove lock data
-         * @param data 
-         * @return has removed or not
-         */
-        private synchronized boolean removeLockData(LockData data) {
-        	if(datas.remove(data))notify();
-        	return datas.isEmpty();
+    	private final String name;
+    	private final ReentrantLock lock=new ReentrantLock();
+    	private final Condition changed=lock.newCondition();
+        private List datas=new ArrayList();
+        private int waiters;
+        private int waitingWriters;
+        private boolean removed;
+
+        private LockToken(String name) {
+        	this.name=name;
         }
 
-        /**
-         * adds a data to token
-         * @param data
-         */
-        private void addLockData(LockData data) {
-        	//print.out("b:"+datas.size()+":"+this);
-        	datas.add(data);
-        	//print.out("a:"+datas.size());
+        public int getDataCount() {
+        	lock.lock();
+        	try {
+        		return datas.size();
+        	}
+        	finally {
+        		lock.unlock();
+        	}
         }
 
         /**
-         * can the data entry in the lock with this token
+         * can the data entry in the lock with this token, has to be called within the lock of the token
          * @param data
          * @return can entry
          */
         private boolean canEnter(LockData data) {
         	LockData d=null;
-        	synchronized(datas){ 
-	        	Iterator it = datas.iterator();
-	        	while(it.hasNext()) {
-	        		d=(LockData) it.next();
-	        		if(d!=data && d.getId()!=data.getId() && !data.isReadOnly()) return false;
-	        	}
+        	boolean holds=false;
+        	Iterator it = datas.iterator();
+        	while(it.hasNext()) {
+        		d=(LockData) it.next();
+        		if(d.getId()==data.getId()) holds=true;
+        		else if(!data.isReadOnly() || !d.isReadOnly()) return false;
         	}
-        	return true;
+        	// a new reader has to wait for waiting writers, but not when it already holds this lock
+        	return holds || !data.isReadOnly() || waitingWriters==0;
         }
-        /*private boolean hasId(int id) {
-        	LockData d=null;
-        	synchronized(datas){ 
-	        	Iterator it = datas.iterator();
-	        	while(it.hasNext()) {
-	        		d=(LockData) it.next();
-	        		if(d.getId()==id) return true;
-	        	}
-        	}
-        	return false;
-        }*/
     }
 
 	/**
@@ -154,10 +209,6 @@ public final class LockManagerImpl implements LockManager {
 	 * @see railo.runtime.lock.LockManager#getOpenLockNames()
 	 */
 	public String[] getOpenLockNames() {
-	/*	return getOpenLockNames(-1);
-	}
-	
-	private String[] getOpenLockNames(int pageContextId) {*/
 		Iterator it = locks.entrySet().iterator();
 		ArrayList rtn=new ArrayList();
 		LockToken token;
@@ -165,7 +216,7 @@ public final class LockManagerImpl implements LockManager {
 		while(it.hasNext()) {
 			entry=(Entry) it.next();
 			token=(LockToken) entry.getValue();
-			
+
 			if(token.getDataCount()>0) {
 				rtn.add(entry.getKey());
 			}
@@ -173,20 +224,26 @@ public final class LockManagerImpl implements LockManager {
 		return (String[]) rtn.toArray(new String[rtn.size()]);
 	}
 
-	
-	
+
+
 	private LockData[] getLockDatas(int pageContextId) {
-		Iterator it = locks.entrySet().iterator(),itt;
+		Iterator it = locks.values().iterator(),itt;
 		ArrayList rtn=new ArrayList();
 		LockToken token;
 		LockData data;
-		
+
 		while(it.hasNext()) {
-			token=(LockToken) ((Entry) it.next()).getValue();
-			itt=token.datas.iterator();
-			while(itt.hasNext()) {
-				data=(LockData) itt.next();
-				if(data.getId()==pageContextId)rtn.add(data);
+			token=(LockToken) it.next();
+			token.lock.lock();
+			try {
+				itt=token.datas.iterator();
+				while(itt.hasNext()) {
+					data=(LockData) itt.next();
+					if(data.getId()==pageContextId)rtn.add(data);
+				}
+			}
+			finally {
+				token.lock.unlock();
 			}
 		}
 		return (LockData[]) rtn.toArray(new LockData[rtn.size()]);
@@ -202,11 +259,45 @@ public final class LockManagerImpl implements LockManager {
 			unlock(datas[i]);
 		}
 	}
-	
+
 	public void clear() {
 		//locks.clear();
 	}
-	
+
+	/**
+	 * @return statistic of all lock names used so far (name:struct)
+	 */
+	public Struct getStatistics() {
+		Struct sct=new StructImpl();
+		Iterator it = statistics.entrySet().iterator();
+		Map.Entry entry;
+		while(it.hasNext()) {
+			entry=(Entry) it.next();
+			sct.setEL((String)entry.getKey(), ((LockStatistic)entry.getValue()).toStruct());
+		}
+		return sct;
+	}
+
+	/**
+	 * @return statistic of all lock names used so far as query (one row per name)
+	 */
+	public Query getStatisticsAsQuery() {
+		Query qry=new QueryImpl(new String[]{"name","acquisitions","contentions","timeouts","waittime","maxwaittime","waittime50","waittime90","waittime99"},0,"locks");
+		Struct sct=getStatistics(),data;
+		String[] names=sct.keysAsString();
+		String[] cols=new String[]{"acquisitions","contentions","timeouts","waitTime","maxWaitTime","waitTime50","waitTime90","waitTime99"};
+		int row;
+		for(int i=0;i<names.length;i++) {
+			row=qry.addRow();
+			data=(Struct) sct.get(names[i],null);
+			qry.setAtEL("name",row,names[i]);
+			for(int y=0;y<cols.length;y++) {
+				qry.setAtEL(cols[y].toLowerCase(),row,data.get(cols[y],null));
+			}
+		}
+		return qry;
+	}
+
 	public static void unlockAll(int pageContextId) {
 		Iterator it = managers.iterator();
 		LockManagerImpl lmi;
@@ -215,6 +306,6 @@ public final class LockManagerImpl implements LockManager {
 			lmi.unlock(pageContextId);
 		}
 	}
-	
-	
-}
\ No newline at end of file
+
+
+}
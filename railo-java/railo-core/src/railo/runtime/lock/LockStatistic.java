@@ -0,0 +1,89 @@
+package railo.runtime.lock;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import railo.runtime.type.Struct;
+import railo.runtime.type.StructImpl;
+
+/**
+ * usage statistic of all locks with the same name
+ */
+final class LockStatistic {
+
+	private static final long[] BUCKETS=new long[]{1,5,10,50,100,500,1000,5000,10000};
+
+	private final AtomicLong acquisitions=new AtomicLong();
+	private final AtomicLong contentions=new AtomicLong();
+	private final AtomicLong timeouts=new AtomicLong();
+	private final AtomicLong waitNanos=new AtomicLong();
+	private final AtomicLong maxWaitNanos=new AtomicLong();
+	private final AtomicLongArray histogram=new AtomicLongArray(BUCKETS.length+1);
+
+	/**
+	 * @param nanos time waited for the lock
+	 * @param contended the lock was not free at the first try
+	 */
+	void acquired(long nanos, boolean contended) {
+		acquisitions.incrementAndGet();
+		if(contended) {
+			contentions.incrementAndGet();
+			record(nanos);
+		}
+		else histogram.incrementAndGet(0);
+	}
+
+	void timeout(long nanos) {
+		timeouts.incrementAndGet();
+		contentions.incrementAndGet();
+		record(nanos);
+	}
+
+	private void record(long nanos) {
+		waitNanos.addAndGet(nanos);
+		long max;
+		while((max=maxWaitNanos.get())<nanos && !maxWaitNanos.compareAndSet(max, nanos)){}
+
+		long millis=nanos/1000000L;
+		int index=0;
+		while(index<BUCKETS.length && millis>=BUCKETS[index]) index++;
+		histogram.incrementAndGet(index);
+	}
+
+	/**
+	 * returns the upper bound (in milliseconds) of the bucket the given percentile falls in,
+	 * for the last (open) bucket the max wait time is returned
+	 */
+	private long percentile(double p) {
+		long total=0;
+		for(int i=0;i<=BUCKETS.length;i++) total+=histogram.get(i);
+		if(total==0) return 0;
+
+		long limit=(long)Math.ceil(total*p),count=0;
+		for(int i=0;i<BUCKETS.length;i++) {
+			count+=histogram.get(i);
+			if(count>=limit) return BUCKETS[i];
+		}
+		return maxWaitNanos.get()/1000000L;
+	}
+
+	Struct toStruct() {
+		Struct sct=new StructImpl();
+		long acq=acquisitions.get();
+		sct.setEL("acquisitions",new Double(acq));
+		sct.setEL("contentions",new Double(contentions.get()));
+		sct.setEL("timeouts",new Double(timeouts.get()));
+		sct.setEL("waitTime",new Double(waitNanos.get()/1000000L));
+		sct.setEL("maxWaitTime",new Double(maxWaitNanos.get()/1000000L));
+		sct.setEL("waitTime50",new Double(percentile(0.5)));
+		sct.setEL("waitTime90",new Double(percentile(0.9)));
+		sct.setEL("waitTime99",new Double(percentile(0.99)));
+
+		Struct hist=new StructImpl(StructImpl.TYPE_LINKED);
+		for(int i=0;i<=BUCKETS.length;i++){
+			hist.setEL(i<BUCKETS.length?"<"+BUCKETS[i]+"ms":">="+BUCKETS[BUCKETS.length-1]+"ms", new Double(histogram.get(i)));
+		}
+		sct.setEL("waitTimeHistogram",hist);
+		return sct;
+	}
+}
@@ -0,0 +1,126 @@
+package railo.runtime.net.http;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+
+import railo.runtime.type.Struct;
+import railo.runtime.type.StructImpl;
+
+/**
+ * HTTP connections shared by all cfhttp calls of a web context, open connections are kept alive and reused
+ * for the next call to the same host. Every call gets its own HttpClient (own cookies, credentials and proxy),
+ * only the connections are shared.
+ */
+public final class HttpConnectionPool {
+
+	private static final long[] BUCKETS=new long[]{10,50,100,500,1000,5000,10000,30000};
+
+	public static final int DEFAULT_MAX_PER_HOST=20;
+	public static final int DEFAULT_MAX_TOTAL=200;
+	public static final int DEFAULT_CONNECTION_TIMEOUT=30000;
+	public static final long DEFAULT_IDLE_TIMEOUT=60000;
+
+	private final MultiThreadedHttpConnectionManager manager;
+	private long idleTimeout=DEFAULT_IDLE_TIMEOUT;
+
+	private final AtomicLong requests=new AtomicLong();
+	private final AtomicLong failures=new AtomicLong();
+	private final AtomicLong timeouts=new AtomicLong();
+	private final AtomicLong time=new AtomicLong();
+	private final AtomicLongArray histogram=new AtomicLongArray(BUCKETS.length+1);
+
+	public HttpConnectionPool() {
+		manager=new MultiThreadedHttpConnectionManager();
+		HttpConnectionManagerParams params = manager.getParams();
+		params.setDefaultMaxConnectionsPerHost(DEFAULT_MAX_PER_HOST);
+		params.setMaxTotalConnections(DEFAULT_MAX_TOTAL);
+		// a connection to a host that is down should not block a request forever
+		params.setConnectionTimeout(DEFAULT_CONNECTION_TIMEOUT);
+		// a kept alive connection can be closed by the server, check it before reuse
+		params.setStaleCheckingEnabled(true);
+		// the request is written in several packets, with Nagle every call on a kept alive connection waits for the delayed ack
+		params.setTcpNoDelay(true);
+	}
+
+	/**
+	 * @return a new client working with the shared connections
+	 */
+	public HttpClient getClient() {
+		return new HttpClient(manager);
+	}
+
+	/**
+	 * @param maxPerHost max number of connections to the same host
+	 * @param maxTotal max number of connections over all hosts
+	 */
+	public void setMaxConnections(int maxPerHost, int maxTotal) {
+		HttpConnectionManagerParams params = manager.getParams();
+		if(maxPerHost>0)params.setDefaultMaxConnectionsPerHost(maxPerHost);
+		if(maxTotal>0)params.setMaxTotalConnections(maxTotal);
+	}
+
+	/**
+	 * @param idleTimeout time in milliseconds a unused connection is kept open
+	 */
+	public void setIdleTimeout(long idleTimeout) {
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * closes all connections not used within the idle timeout, called by the controller
+	 */
+	public void closeIdleConnections() {
+		manager.closeIdleConnections(idleTimeout);
+		manager.deleteClosedConnections();
+	}
+
+	/**
+	 * closes all connections, the pool cannot be used anymore after this call
+	 */
+	public void shutdown() {
+		manager.shutdown();
+	}
+
+	/**
+	 * records a finished call
+	 * @param millis duration of the call
+	 * @param success
+	 * @param timeout the call was stopped because of a timeout
+	 */
+	public void record(long millis, boolean success, boolean timeout) {
+		requests.incrementAndGet();
+		if(!success)failures.incrementAndGet();
+		if(timeout)timeouts.incrementAndGet();
+		time.addAndGet(millis);
+		int index=0;
+		while(index<BUCKETS.length && millis>=BUCKETS[index]) index++;
+		histogram.incrementAndGet(index);
+	}
+
+	/**
+	 * @return pool and latency metrics
+	 */
+	public Struct getInfo() {
+		Struct sct=new StructImpl();
+		sct.setEL("maxConnectionsPerHost",new Double(manager.getParams().getDefaultMaxConnectionsPerHost()));
+		sct.setEL("maxConnections",new Double(manager.getParams().getMaxTotalConnections()));
+		sct.setEL("connections",new Double(manager.getConnectionsInPool()));
+		sct.setEL("connectionsInUse",new Double(manager.getConnectionsInUse()));
+		sct.setEL("idleTimeout",new Double(idleTimeout));
+		sct.setEL("requests",new Double(requests.get()));
+		sct.setEL("failures",new Double(failures.get()));
+		sct.setEL("timeouts",new Double(timeouts.get()));
+		sct.setEL("time",new Double(time.get()));
+
+		Struct hist=new StructImpl(StructImpl.TYPE_LINKED);
+		for(int i=0;i<=BUCKETS.length;i++){
+			hist.setEL(i<BUCKETS.length?"<"+BUCKETS[i]+"ms":">="+BUCKETS[BUCKETS.length-1]+"ms", new Double(histogram.get(i)));
+		}
+		sct.setEL("timeHistogram",hist);
+		return sct;
+	}
+}
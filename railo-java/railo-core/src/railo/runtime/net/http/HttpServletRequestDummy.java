@@ -88,6 +88,9 @@ public final class HttpServletRequestDummy implements HttpServletRequest,Seriali
 
 	private HttpSession session;
 
+	// headers and parameters are shared with a other copy of the request and have to be copied before they are changed
+	private boolean shared;
+
 
 
 	/**
@@ -224,6 +227,7 @@ public final class HttpServletRequestDummy implements HttpServletRequest,Seriali
 	 * @param value header value
 	 */ 
 	public void setHeader(String name, String value) {
+		unshare();
 		headers=ReqRspUtil.set(headers,name,value);
 	}
 	
@@ -563,6 +567,7 @@ public final class HttpServletRequestDummy implements HttpServletRequest,Seriali
 	}
 
 	public void setParameter(String key,String value) {
+		unshare();
 		parameters=ReqRspUtil.set(parameters,key,value);
 		rewriteQS();
 	}
@@ -803,6 +808,45 @@ public final class HttpServletRequestDummy implements HttpServletRequest,Seriali
 		dest.setSession(getSessionEL(req));
 		return dest;
 	}
+
+	/**
+	 * returns a copy of this request with its own attributes, headers and parameters are shared with this request
+	 * until one of them changes them (copy-on-write), so a copy is made without reading the request again
+	 * @param attributes attributes of the copy
+	 * @return copy of the request
+	 */
+	public HttpServletRequestDummy copy(Struct attributes) {
+		HttpServletRequestDummy dest = new HttpServletRequestDummy(contextRoot,serverName,requestURI,null,cookies,headers,parameters,attributes,session);
+		dest.queryString=queryString;
+		dest.authType=authType;
+		dest.method=method;
+		dest.pathInfo=pathInfo;
+		dest.pathTranslated=pathTranslated;
+		dest.contextPath=contextPath;
+		dest.remoteUser=remoteUser;
+		dest.requestedSessionId=requestedSessionId;
+		dest.protocol=protocol;
+		dest.port=port;
+		dest.characterEncoding=characterEncoding;
+		dest.contentType=contentType;
+		dest.inputData=inputData;
+		dest.remoteAddr=remoteAddr;
+		dest.remoteHost=remoteHost;
+		dest.locale=locale;
+		dest.secure=secure;
+		dest.scheme=scheme;
+		shared=true;
+		dest.shared=true;
+		return dest;
+	}
+
+	private void unshare() {
+		if(!shared) return;
+		headers=(Pair[]) headers.clone();
+		parameters=(Pair[]) parameters.clone();
+		shared=false;
+	}
+	
 	private static HttpSession getSessionEL(HttpServletRequest req) {
 		try{
 			return req.getSession();
@@ -28,6 +28,7 @@ import railo.runtime.reflection.pairs.ConstructorInstance;
 import railo.runtime.reflection.pairs.MethodInstance;
 import railo.runtime.reflection.storage.WeakConstructorStorage;
 import railo.runtime.reflection.storage.WeakFieldStorage;
+import railo.runtime.reflection.storage.WeakMatchStorage;
 import railo.runtime.reflection.storage.WeakMethodStorage;
 import railo.runtime.type.Array;
 import railo.runtime.type.Collection;
@@ -50,6 +51,7 @@ public final class Reflector {
 	private static WeakConstructorStorage cStorage=new WeakConstructorStorage();
     private static WeakFieldStorage fStorage=new WeakFieldStorage();
     private static WeakMethodStorage mStorage=new WeakMethodStorage();
+    private static WeakMatchStorage matchStorage=new WeakMatchStorage();
 
     /**
      * check if Class is instanceof a a other Class
@@ -307,9 +309,13 @@ public final class Reflector {
 	
 	public static ConstructorInstance getConstructorInstance(Class clazz, Object[] args, ConstructorInstance defaultValue) {
 		args=cleanArgs(args);
+	    Class[] clazzArgs = getClasses(args);
+	    // matched before with the same argument types
+	    Constructor constructor=(Constructor) matchStorage.get(clazz,null,clazzArgs);
+	    if(constructor!=null) return new ConstructorInstance(constructor,args);
+		
 		Constructor[] constructors=cStorage.getConstructors(clazz,args.length);//getConstructors(clazz);
 		if(constructors!=null) {
-		    Class[] clazzArgs = getClasses(args);
 			// exact comparsion
 			outer:for(int i=0;i<constructors.length;i++) {
 				if(constructors[i]!=null) {
@@ -318,6 +324,7 @@ public final class Reflector {
 					for(int y=0;y<parameterTypes.length;y++) {
 						if(toReferenceClass(parameterTypes[y])!=clazzArgs[y]) continue outer;
 					}
+					matchStorage.put(clazz, null, clazzArgs, constructors[i]);
 					return new ConstructorInstance(constructors[i],args);
 				}
 			}
@@ -328,6 +335,7 @@ public final class Reflector {
 					for(int y=0;y<parameterTypes.length;y++) {
 						if(!like(clazzArgs[y],toReferenceClass(parameterTypes[y]))) continue outer;
 					}
+					matchStorage.put(clazz, null, clazzArgs, constructors[i]);
 					return new ConstructorInstance(constructors[i],args);
 				}
 			}	
@@ -364,11 +372,14 @@ public final class Reflector {
 	 */
 	public static MethodInstance getMethodInstanceEL(Class clazz, Collection.Key methodName, Object[] args) {
 	    args=cleanArgs(args);
+	    Class[] clazzArgs = getClasses(args);
+	    // matched before with the same argument types, only matches not needing a conversion of the arguments are stored
+	    Method method=(Method) matchStorage.get(clazz,methodName.getLowerString(),clazzArgs);
+	    if(method!=null) return new MethodInstance(method,args);
 		
 		Method[] methods = mStorage.getMethods(clazz,methodName,args.length);//getDeclaredMethods(clazz);
 		
 		if(methods!=null) {
-		    Class[] clazzArgs = getClasses(args);
 			// exact comparsion
 		    //print.o("exact:"+methodName);
 		    outer:for(int i=0;i<methods.length;i++) {
@@ -377,6 +388,7 @@ public final class Reflector {
 					for(int y=0;y<parameterTypes.length;y++) {
 						if(toReferenceClass(parameterTypes[y])!=clazzArgs[y]) continue outer;
 					}
+					matchStorage.put(clazz, methodName.getLowerString(), clazzArgs, methods[i]);
 					return new MethodInstance(methods[i],args);
 				}
 			}
@@ -392,7 +404,10 @@ public final class Reflector {
 					mi=create(mi,methods[i],args);
 				}
 			}
-		    if(mi!=null) return mi;
+		    if(mi!=null) {
+		    	matchStorage.put(clazz, methodName.getLowerString(), clazzArgs, mi.getMethod());
+		    	return mi;
+		    }
 		    
 		    
 			// convert comparsion
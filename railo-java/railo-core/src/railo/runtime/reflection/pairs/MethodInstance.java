@@ -20,7 +20,8 @@ public final class MethodInstance {
 	public MethodInstance(Method method, Object[] args) {
 		this.method=method;
 		this.args=args;
-		method.setAccessible(true);
+		// setAccessible does a security check, only needed once for a method
+		if(!method.isAccessible())method.setAccessible(true);
 	}
 	
 	/**
@@ -0,0 +1,105 @@
+package railo.runtime.reflection.storage;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * map with classes as weak keys and soft values, a value is read without a lock.
+ * The values are soft because they hold the methods of the class and with it the class itself,
+ * with hard values the keys would never be released.
+ */
+final class WeakClassMap {
+
+	private final ConcurrentHashMap<Object,SoftReference<Object>> map=new ConcurrentHashMap<Object,SoftReference<Object>>();
+	private final ReferenceQueue<Class> queue=new ReferenceQueue<Class>();
+
+	/**
+	 * @param clazz
+	 * @return value stored for the given class or null
+	 */
+	Object get(Class clazz) {
+		SoftReference<Object> ref=map.get(new Lookup(clazz));
+		return ref==null?null:ref.get();
+	}
+
+	/**
+	 * stores a value for the given class, a existing value is replaced
+	 * @param clazz
+	 * @param value
+	 */
+	void put(Class clazz, Object value) {
+		expunge();
+		map.put(new Key(clazz,queue), new SoftReference<Object>(value));
+	}
+
+	/**
+	 * removes the entries of the classes released by the garbage collector
+	 */
+	private void expunge() {
+		Object key;
+		while((key=queue.poll())!=null) {
+			map.remove(key);
+		}
+	}
+
+	private static Class get(Object key) {
+		if(key instanceof Key) return ((Key)key).get();
+		if(key instanceof Lookup) return ((Lookup)key).clazz;
+		return null;
+	}
+
+	/**
+	 * key stored in the map
+	 */
+	private static final class Key extends WeakReference<Class> {
+		private final int hash;
+
+		private Key(Class clazz, ReferenceQueue<Class> queue) {
+			super(clazz,queue);
+			this.hash=System.identityHashCode(clazz);
+		}
+
+		/**
+		 * @see java.lang.Object#hashCode()
+		 */
+		public int hashCode() {
+			return hash;
+		}
+
+		/**
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		public boolean equals(Object obj) {
+			if(obj==this) return true;
+			Class clazz=get();
+			return clazz!=null && clazz==WeakClassMap.get(obj);
+		}
+	}
+
+	/**
+	 * key used to read from the map, without creating a reference
+	 */
+	private static final class Lookup {
+		private final Class clazz;
+
+		private Lookup(Class clazz) {
+			this.clazz=clazz;
+		}
+
+		/**
+		 * @see java.lang.Object#hashCode()
+		 */
+		public int hashCode() {
+			return System.identityHashCode(clazz);
+		}
+
+		/**
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		public boolean equals(Object obj) {
+			return clazz==WeakClassMap.get(obj);
+		}
+	}
+}
@@ -0,0 +1,94 @@
+package railo.runtime.reflection.storage;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Storage of the overload resolution, holds for every class the method or constructor
+ * matching a name and the types of the arguments, so the matching is done only once for a call.
+ * Only matches depending on the types of the arguments and not on their values are stored.
+ * The storage is read without a lock, a lock is only taken to create the storage of a class.
+ */
+public final class WeakMatchStorage {
+
+	// a class called with more signatures than this is not worth to cache
+	private static final int MAX_SIGNATURES=512;
+
+	private final WeakClassMap map=new WeakClassMap();
+
+	/**
+	 * returns the stored method or constructor matching the given signature or null
+	 * @param clazz
+	 * @param name name of the method or null for a constructor
+	 * @param types types of the arguments
+	 * @return stored method or constructor
+	 */
+	public Object get(Class clazz,String name, Class[] types) {
+		Map signatures=getSignatures(clazz,false);
+		if(signatures==null) return null;
+		return signatures.get(new Signature(name,types));
+	}
+
+	/**
+	 * stores the method or constructor matching the given signature
+	 * @param clazz
+	 * @param name name of the method or null for a constructor
+	 * @param types types of the arguments
+	 * @param member method or constructor
+	 */
+	public void put(Class clazz,String name, Class[] types, Object member) {
+		Map signatures=getSignatures(clazz,true);
+		if(signatures.size()>=MAX_SIGNATURES) signatures.clear();
+		signatures.put(new Signature(name,types), member);
+	}
+
+	private Map getSignatures(Class clazz, boolean create) {
+		Map signatures=(Map) map.get(clazz);
+		if(signatures!=null || !create) return signatures;
+		synchronized(map) {
+			signatures=(Map) map.get(clazz);
+			if(signatures==null) {
+				signatures=new ConcurrentHashMap();
+				map.put(clazz, signatures);
+			}
+			return signatures;
+		}
+	}
+
+	private static final class Signature {
+		private final String name;
+		private final Class[] types;
+		private final int hash;
+
+		private Signature(String name, Class[] types) {
+			this.name=name;
+			this.types=types;
+			int h=name==null?0:name.hashCode();
+			for(int i=0;i<types.length;i++) {
+				h=31*h+System.identityHashCode(types[i]);
+			}
+			this.hash=h;
+		}
+
+		/**
+		 * @see java.lang.Object#hashCode()
+		 */
+		public int hashCode() {
+			return hash;
+		}
+
+		/**
+		 * @see java.lang.Object#equals(java.lang.Object)
+		 */
+		public boolean equals(Object obj) {
+			if(!(obj instanceof Signature)) return false;
+			Signature other=(Signature) obj;
+			if(hash!=other.hash || types.length!=other.types.length) return false;
+			if(name==null?other.name!=null:!name.equals(other.name)) return false;
+			for(int i=0;i<types.length;i++) {
+				if(types[i]!=other.types[i]) return false;
+			}
+			return true;
+		}
+	}
+}
@@ -1,9 +1,6 @@
 package railo.runtime.reflection.storage;
 
 import java.lang.reflect.Method;
-import java.util.Map;
-
-import org.apache.commons.collections.map.ReferenceMap;
 
 import railo.runtime.type.Array;
 import railo.runtime.type.ArrayImpl;
@@ -14,10 +11,10 @@ import railo.runtime.type.Struct;
 import railo.runtime.type.StructImpl;
 
 /**
- * Method Storage Class
+ * Method Storage Class, the methods of a class are read without a lock, a lock is only taken to store the methods of a class
  */
 public final class WeakMethodStorage {
-	private Map map=new ReferenceMap();
+	private final WeakClassMap map=new WeakClassMap();
 	
 	/**
 	 * returns a methods matching given criteria or null if method doesn't exist
@@ -30,7 +27,11 @@ public final class WeakMethodStorage {
 		Object o=map.get(clazz);
 		Struct methodsMap;
 		if(o==null) {
-			methodsMap=store(clazz);
+			synchronized(map) {
+				o=map.get(clazz);
+				if(o==null) methodsMap=store(clazz);
+				else methodsMap=(Struct) o;
+			}
 		}
 		else methodsMap=(Struct) o;
 		
@@ -45,7 +46,7 @@ public final class WeakMethodStorage {
 
 
 	/**
-	 * store a class with his methods
+	 * store a class with his methods, the struct is not changed after it is stored, so it can be read by multiple threads
 	 * @param clazz
 	 * @return returns stored struct
 	 */
@@ -0,0 +1,197 @@
+package railo.runtime.regex;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.oro.text.regex.MalformedPatternException;
+
+import railo.commons.lang.StringUtil;
+import railo.runtime.op.Constants;
+import railo.runtime.type.Array;
+import railo.runtime.type.ArrayImpl;
+import railo.runtime.type.Struct;
+import railo.runtime.type.StructImpl;
+import railo.runtime.util.ApplicationContextPro;
+
+/**
+ * same functionality as Perl5Util, but based on java.util.regex, 
+ * posix classes ([:alpha:]) and the replacement syntax of CFML (backslash followed by a digit, U, L, E, u or l) are translated
+ */
+public final class JREUtil {
+
+	private static final String[][] POSIX=new String[][]{
+		{"[:alpha:]","\\p{Alpha}"},
+		{"[:digit:]","\\p{Digit}"},
+		{"[:alnum:]","\\p{Alnum}"},
+		{"[:upper:]","\\p{Upper}"},
+		{"[:lower:]","\\p{Lower}"},
+		{"[:space:]","\\s"},
+		{"[:blank:]","\\p{Blank}"},
+		{"[:punct:]","\\p{Punct}"},
+		{"[:xdigit:]","\\p{XDigit}"},
+		{"[:cntrl:]","\\p{Cntrl}"},
+		{"[:print:]","\\p{Print}"},
+		{"[:graph:]","\\p{Graph}"},
+		{"[:word:]","\\w"}
+	};
+
+	/**
+	 * return index of the first occurence of the pattern in input text
+	 * @param strPattern pattern to search
+	 * @param strInput text to search pattern
+	 * @param offset 
+	 * @param caseSensitive
+	 * @return position of the first occurence
+	 * @throws MalformedPatternException
+	 */
+	public static int indexOf(String strPattern, String strInput, int offset, boolean caseSensitive) throws MalformedPatternException {
+		if(offset < 1) offset = 1;
+		if(offset > strInput.length()) return 0;
+		
+		Matcher matcher = getPattern(strPattern,Pattern.DOTALL|(caseSensitive?0:Pattern.CASE_INSENSITIVE)).matcher(strInput);
+		if(matcher.find(offset-1)) return matcher.start()+1;
+		return 0;
+	}
+
+	/**
+	 * find occurence of a pattern in a string (same like indexOf), but dont return first ocurence , it return
+	 * struct with all information
+	 * @param strPattern
+	 * @param strInput
+	 * @param offset
+	 * @param caseSensitive
+	 * @return
+	 * @throws MalformedPatternException
+	 */
+	public static Struct find(String strPattern, String strInput, int offset, boolean caseSensitive) throws MalformedPatternException {
+		if(offset < 1) offset = 1;
+		Array posArray = new ArrayImpl();
+		Array lenArray = new ArrayImpl();
+		
+		Matcher matcher = getPattern(strPattern,Pattern.DOTALL|(caseSensitive?0:Pattern.CASE_INSENSITIVE)).matcher(strInput);
+		if(offset <= strInput.length() && matcher.find(offset-1)) {
+			for(int i = 0; i <= matcher.groupCount(); i++) {
+				int off = matcher.start(i);
+				posArray.appendEL(Integer.valueOf(off + 1));
+				lenArray.appendEL(Integer.valueOf(matcher.end(i) - off));
+			}
+		}
+		else {
+			posArray.appendEL(Constants.INTEGER_0);
+			lenArray.appendEL(Constants.INTEGER_0);
+		}
+		Struct struct = new StructImpl();
+		struct.setEL("pos", posArray);
+		struct.setEL("len", lenArray);
+		return struct;
+	}
+
+	public static Array match(String strPattern, String strInput, int offset, boolean caseSensitive) throws MalformedPatternException {
+		Matcher matcher = getPattern(strPattern,Pattern.MULTILINE|(caseSensitive?0:Pattern.CASE_INSENSITIVE)).matcher(strInput);
+		Array rtn = new ArrayImpl();
+		while(matcher.find()) {
+			rtn.appendEL(matcher.group());
+		}
+		return rtn;
+	}
+
+	/**
+	 * replace the first/all occurence of given pattern
+	 * @param strInput text to search pattern
+	 * @param strPattern pattern to search
+	 * @param replacement text to replace with pattern
+	 * @param caseSensitive
+	 * @param replaceAll do replace all or only one
+	 * @return transformed text
+	 * @throws MalformedPatternException
+	 */
+	public static String replace(String strInput, String strPattern, String replacement, boolean caseSensitive, boolean replaceAll) throws MalformedPatternException {
+		Matcher matcher = getPattern(strPattern,Pattern.DOTALL|(caseSensitive?0:Pattern.CASE_INSENSITIVE)).matcher(strInput);
+		if(!matcher.find()) return strInput;
+		
+		StringBuffer sb=new StringBuffer(strInput.length()+16);
+		int last=0;
+		do {
+			sb.append(strInput, last, matcher.start());
+			substitute(sb, matcher, replacement);
+			last=matcher.end();
+		}
+		while(replaceAll && matcher.find());
+		sb.append(strInput, last, strInput.length());
+		return sb.toString();
+	}
+
+	/**
+	 * appends the replacement for the current match, backslash n is replaced with the group n, 
+	 * backslash U and L change the case until backslash E, backslash u and l change the case of the next character
+	 */
+	private static void substitute(StringBuffer sb, Matcher matcher, String replacement) {
+		int len=replacement.length();
+		char c,n;
+		char mode=0,next=0;
+		String str;
+		for(int i=0;i<len;i++) {
+			c=replacement.charAt(i);
+			str=null;
+			if(c=='\\' && i+1<len) {
+				n=replacement.charAt(i+1);
+				if(n>='0' && n<='9') {
+					int group=n-'0';
+					str=group<=matcher.groupCount()?matcher.group(group):null;
+					if(str==null) str="";
+					i++;
+				}
+				else if(n=='U' || n=='L') {
+					mode=n;
+					i++;
+					continue;
+				}
+				else if(n=='E') {
+					mode=0;
+					i++;
+					continue;
+				}
+				else if(n=='u' || n=='l') {
+					next=n;
+					i++;
+					continue;
+				}
+			}
+			if(str==null) str=String.valueOf(c);
+			if(mode=='U') str=str.toUpperCase();
+			else if(mode=='L') str=str.toLowerCase();
+			if(next!=0 && str.length()>0) {
+				str=(next=='u'?str.substring(0,1).toUpperCase():str.substring(0,1).toLowerCase())+str.substring(1);
+				next=0;
+			}
+			sb.append(str);
+		}
+	}
+
+	private static Pattern getPattern(String strPattern, int flags) throws MalformedPatternException {
+		Object key=PatternCache.key(strPattern, ApplicationContextPro.REGEX_ENGINE_JAVA, flags);
+		Pattern pattern=(Pattern) PatternCache.INSTANCE.get(key);
+		if(pattern==null) {
+			try {
+				pattern=Pattern.compile(translate(strPattern), flags);
+			}
+			catch(PatternSyntaxException e) {
+				throw new MalformedPatternException(e.getMessage());
+			}
+			PatternCache.INSTANCE.put(key, pattern);
+		}
+		return pattern;
+	}
+
+	/**
+	 * translates posix classes, java.util.regex does not support them inside brackets
+	 */
+	private static String translate(String strPattern) {
+		if(strPattern.indexOf("[:")==-1) return strPattern;
+		for(int i=0;i<POSIX.length;i++) {
+			strPattern=StringUtil.replace(strPattern, POSIX[i][0], POSIX[i][1], false);
+		}
+		return strPattern;
+	}
+}
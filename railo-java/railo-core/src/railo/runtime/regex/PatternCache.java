@@ -0,0 +1,157 @@
+package railo.runtime.regex;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import railo.runtime.type.Struct;
+import railo.runtime.type.StructImpl;
+
+/**
+ * size bounded cache for compiled regular expressions, read and written without a lock.
+ * Every pattern remembers when it was used the last time, when the cache is full the least recently used tenth of the patterns is removed, 
+ * by one thread at a time, the others continue without waiting. So the eviction is only approximately LRU, 
+ * patterns used while the eviction runs can be removed as well.
+ */
+final class PatternCache {
+
+	static final PatternCache INSTANCE=new PatternCache(1000);
+
+	private static final Comparator<Candidate> LEAST_RECENTLY_USED=new Comparator<Candidate>() {
+		public int compare(Candidate left, Candidate right) {
+			return left.used<right.used?-1:(left.used==right.used?0:1);
+		}
+	};
+
+	private final int max;
+	private final ConcurrentHashMap<Object,Entry> patterns=new ConcurrentHashMap<Object,Entry>();
+	private final AtomicBoolean evicting=new AtomicBoolean();
+	private final AtomicLong hits=new AtomicLong();
+	private final AtomicLong misses=new AtomicLong();
+	private final AtomicLong evictions=new AtomicLong();
+
+	PatternCache(int max) {
+		this.max=max;
+	}
+
+	/**
+	 * @param key key made by key(...)
+	 * @return the cached pattern or null
+	 */
+	Object get(Object key) {
+		Entry entry=patterns.get(key);
+		if(entry==null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		entry.used=System.nanoTime();
+		return entry.pattern;
+	}
+
+	void put(Object key, Object pattern) {
+		patterns.put(key, new Entry(pattern));
+		if(patterns.size()>max) evict();
+	}
+
+	void clear() {
+		patterns.clear();
+	}
+
+	/**
+	 * removes the least recently used patterns, so a tenth of the cache is free again
+	 */
+	private void evict() {
+		if(!evicting.compareAndSet(false, true)) return;
+		try {
+			int size=patterns.size();
+			if(size<=max) return;
+			List<Candidate> candidates=new ArrayList<Candidate>(size);
+			Iterator<Map.Entry<Object,Entry>> it = patterns.entrySet().iterator();
+			Map.Entry<Object,Entry> e;
+			while(it.hasNext()) {
+				e=it.next();
+				candidates.add(new Candidate(e.getKey(),e.getValue()));
+			}
+			Collections.sort(candidates, LEAST_RECENTLY_USED);
+			int remove=Math.min(candidates.size(), size-max+Math.max(1,max/10));
+			Candidate c;
+			for(int i=0;i<remove;i++) {
+				c=candidates.get(i);
+				if(patterns.remove(c.key,c.entry)) evictions.incrementAndGet();
+			}
+		}
+		finally {
+			evicting.set(false);
+		}
+	}
+
+	static Object key(String pattern, int engine, int flags) {
+		return new Key(pattern,engine,flags);
+	}
+
+	Struct getInfo() {
+		long hits=this.hits.get();
+		long misses=this.misses.get();
+		Struct sct=new StructImpl();
+		sct.setEL("size", new Double(patterns.size()));
+		sct.setEL("maxSize", new Double(max));
+		sct.setEL("hits", new Double(hits));
+		sct.setEL("misses", new Double(misses));
+		sct.setEL("evictions", new Double(evictions.get()));
+		sct.setEL("hitRate", new Double(hits+misses==0?0:(double)hits/(hits+misses)));
+		return sct;
+	}
+
+	private static final class Entry {
+		private final Object pattern;
+		private volatile long used=System.nanoTime();
+
+		private Entry(Object pattern) {
+			this.pattern=pattern;
+		}
+	}
+
+	/**
+	 * entry taken for the eviction, with the time of the last use at that moment, so the order does not change while sorting
+	 */
+	private static final class Candidate {
+		private final Object key;
+		private final Entry entry;
+		private final long used;
+
+		private Candidate(Object key, Entry entry) {
+			this.key=key;
+			this.entry=entry;
+			this.used=entry.used;
+		}
+	}
+
+	private static final class Key {
+		private final String pattern;
+		private final int engine;
+		private final int flags;
+
+		private Key(String pattern, int engine, int flags) {
+			this.pattern=pattern;
+			this.engine=engine;
+			this.flags=flags;
+		}
+
+		public int hashCode() {
+			return pattern.hashCode()*31+(engine*1024+flags);
+		}
+
+		public boolean equals(Object obj) {
+			if(!(obj instanceof Key)) return false;
+			Key other=(Key) obj;
+			return flags==other.flags && engine==other.engine && pattern.equals(other.pattern);
+		}
+	}
+}
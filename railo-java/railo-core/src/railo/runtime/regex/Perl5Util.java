@@ -9,19 +9,24 @@ import org.apache.oro.text.regex.Perl5Matcher;
 import org.apache.oro.text.regex.Perl5Substitution;
 import org.apache.oro.text.regex.Util;
 
-import railo.commons.collections.HashTable;
 import railo.runtime.op.Constants;
 import railo.runtime.type.Array;
 import railo.runtime.type.ArrayImpl;
 import railo.runtime.type.Struct;
 import railo.runtime.type.StructImpl;
+import railo.runtime.util.ApplicationContextPro;
 
 /**
  * 
  */
 public final class Perl5Util {
     
-    private static HashTable patterns=new HashTable();
+    // Perl5Matcher is not thread safe, but can be reused for any pattern
+    private static final ThreadLocal matchers=new ThreadLocal() {
+    	protected Object initialValue() {
+    		return new Perl5Matcher();
+    	}
+    };
     
 	/**
 	 * return index of the first occurence of the pattern in input text
@@ -35,7 +40,7 @@ public final class Perl5Util {
 	public static int indexOf(String strPattern, String strInput, int offset, boolean caseSensitive) throws MalformedPatternException {
         //Perl5Compiler compiler = new Perl5Compiler();
         PatternMatcherInput input = new PatternMatcherInput(strInput);
-        Perl5Matcher matcher = new Perl5Matcher();
+        Perl5Matcher matcher = getMatcher();
         
         int compileOptions=caseSensitive ? 0 : Perl5Compiler.CASE_INSENSITIVE_MASK;
         compileOptions+=Perl5Compiler.SINGLELINE_MASK;
@@ -66,7 +71,7 @@ public final class Perl5Util {
 	 */
 	public static Struct find(String strPattern, String strInput, int offset, boolean caseSensitive) throws MalformedPatternException {
         
-        Perl5Matcher matcher = new Perl5Matcher();
+        Perl5Matcher matcher = getMatcher();
         PatternMatcherInput input = new PatternMatcherInput(strInput);
         
         
@@ -111,7 +116,7 @@ public final class Perl5Util {
 
 	public static Array match(String strPattern, String strInput, int offset, boolean caseSensitive) throws MalformedPatternException {
         
-        Perl5Matcher matcher = new Perl5Matcher();
+        Perl5Matcher matcher = getMatcher();
         PatternMatcherInput input = new PatternMatcherInput(strInput);
         
         
@@ -149,14 +154,18 @@ public final class Perl5Util {
 	
 	
 	private static Pattern getPattern(String strPattern, int type) throws MalformedPatternException {
-	    Object o=patterns.get(strPattern+type);
-	    if(o==null) {
-	        Pattern pattern = new Perl5Compiler().compile(strPattern, type);
-	        patterns.put(strPattern+type,pattern);
-	        return pattern;
+		Object key=PatternCache.key(strPattern, ApplicationContextPro.REGEX_ENGINE_PERL, type);
+	    Pattern pattern=(Pattern) PatternCache.INSTANCE.get(key);
+	    if(pattern==null) {
+	    	// read only patterns can be shared between threads
+	        pattern = new Perl5Compiler().compile(strPattern, type|Perl5Compiler.READ_ONLY_MASK);
+	        PatternCache.INSTANCE.put(key,pattern);
 	    }
-	    return (Pattern) o;
-	    
+	    return pattern;
+	}
+	
+	private static Perl5Matcher getMatcher() {
+		return (Perl5Matcher) matchers.get();
 	}
 	
 	/**
@@ -174,7 +183,7 @@ public final class Perl5Util {
 	}
 	private static String _replace(String strInput, String strPattern, String replacement, boolean caseSensitive, boolean replaceAll) throws MalformedPatternException {
 		Pattern pattern = getPattern(strPattern, caseSensitive?16:17);
-		return Util.substitute(new Perl5Matcher(), pattern, new Perl5Substitution(replacement), strInput, replaceAll ? -1 : 1);
+		return Util.substitute(getMatcher(), pattern, new Perl5Substitution(replacement), strInput, replaceAll ? -1 : 1);
 	}
 	
 
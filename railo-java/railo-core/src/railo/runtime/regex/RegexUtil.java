@@ -0,0 +1,50 @@
+package railo.runtime.regex;
+
+import org.apache.oro.text.regex.MalformedPatternException;
+
+import railo.runtime.PageContext;
+import railo.runtime.engine.ThreadLocalPageContext;
+import railo.runtime.type.Array;
+import railo.runtime.type.Struct;
+import railo.runtime.util.ApplicationContext;
+import railo.runtime.util.ApplicationContextPro;
+
+/**
+ * regular expression functions, executed with the engine defined by the current application (Perl5Util or JREUtil)
+ */
+public final class RegexUtil {
+
+	public static int indexOf(PageContext pc, String strPattern, String strInput, int offset, boolean caseSensitive) throws MalformedPatternException {
+		if(isJava(pc)) return JREUtil.indexOf(strPattern, strInput, offset, caseSensitive);
+		return Perl5Util.indexOf(strPattern, strInput, offset, caseSensitive);
+	}
+
+	public static Struct find(PageContext pc, String strPattern, String strInput, int offset, boolean caseSensitive) throws MalformedPatternException {
+		if(isJava(pc)) return JREUtil.find(strPattern, strInput, offset, caseSensitive);
+		return Perl5Util.find(strPattern, strInput, offset, caseSensitive);
+	}
+
+	public static Array match(PageContext pc, String strPattern, String strInput, int offset, boolean caseSensitive) throws MalformedPatternException {
+		if(isJava(pc)) return JREUtil.match(strPattern, strInput, offset, caseSensitive);
+		return Perl5Util.match(strPattern, strInput, offset, caseSensitive);
+	}
+
+	public static String replace(PageContext pc, String strInput, String strPattern, String replacement, boolean caseSensitive, boolean replaceAll) throws MalformedPatternException {
+		if(isJava(pc)) return JREUtil.replace(strInput, strPattern, replacement, caseSensitive, replaceAll);
+		return Perl5Util.replace(strInput, strPattern, replacement, caseSensitive, replaceAll);
+	}
+
+	/**
+	 * @return size and hit rate of the compiled pattern cache (shared by both engines)
+	 */
+	public static Struct getCacheInfo() {
+		return PatternCache.INSTANCE.getInfo();
+	}
+
+	private static boolean isJava(PageContext pc) {
+		pc=ThreadLocalPageContext.get(pc);
+		if(pc==null) return false;
+		ApplicationContext ac = pc.getApplicationContext();
+		return ac instanceof ApplicationContextPro && ((ApplicationContextPro)ac).getRegexEngine()==ApplicationContextPro.REGEX_ENGINE_JAVA;
+	}
+}
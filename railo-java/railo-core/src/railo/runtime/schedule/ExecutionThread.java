@@ -39,7 +39,11 @@ class ExecutionThread extends Thread {
 	public void run() {
 		execute(config, log, task, charset);
 	}
-	public static void execute(Config config, LogAndSource log, ScheduleTask task, String charset) {
+	/**
+	 * executes the task
+	 * @return false if the execution failed
+	 */
+	public static boolean execute(Config config, LogAndSource log, ScheduleTask task, String charset) {
 		boolean hasError=false;
         String logName="schedule task:"+task.getTask();
        // init
@@ -164,6 +168,7 @@ class ExecutionThread extends Thread {
 	        }
         }
         if(!hasError && log!=null)log.info(logName,"executed");
+        return !hasError;
 	}
 	
     private static boolean isText(HttpMethod get) {
@@ -0,0 +1,105 @@
+package railo.runtime.schedule;
+
+import java.util.Iterator;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * executes the schedule tasks of all contexts, a single timer thread waits for the next due task
+ * and hands the execution over to a pool with a fixed number of threads.
+ */
+final class ScheduleEngine {
+
+	private static final int MAX_THREADS=10;
+	private static ScheduleEngine instance;
+
+	private final DelayQueue<ScheduleJob> queue=new DelayQueue<ScheduleJob>();
+	private final ThreadPoolExecutor executor;
+	private Thread timer;
+
+	private ScheduleEngine() {
+		executor=new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new WorkerFactory());
+	}
+
+	static synchronized ScheduleEngine getInstance() {
+		if(instance==null)instance=new ScheduleEngine();
+		return instance;
+	}
+
+	/**
+	 * adds a job, the job is executed when its next execution is reached
+	 * @param job
+	 */
+	synchronized void schedule(ScheduleJob job) {
+		queue.offer(job);
+		if(timer==null || !timer.isAlive()) {
+			timer=new Timer();
+			timer.start();
+		}
+	}
+
+	/**
+	 * removes the job of the given task
+	 * @param task
+	 */
+	void cancel(ScheduleTask task) {
+		Iterator<ScheduleJob> it = queue.iterator();
+		ScheduleJob job;
+		while(it.hasNext()) {
+			job=it.next();
+			if(job.getTask()==task)it.remove();
+		}
+	}
+
+	/**
+	 * executes the given execution within the pool
+	 * @param execution
+	 */
+	void execute(Runnable execution) {
+		executor.execute(execution);
+	}
+
+	private class Timer extends Thread {
+
+		private Timer() {
+			super("Scheduler Timer");
+			setDaemon(true);
+		}
+
+		public void run() {
+			ScheduleJob job;
+			long next;
+			while(true) {
+				try {
+					job=queue.take();
+				}
+				catch (InterruptedException e) {
+					return;
+				}
+				// a broken job cannot stop the timer
+				try {
+					next=job.fire(ScheduleEngine.this);
+				}
+				catch(Throwable t) {
+					next=-1;
+				}
+				if(next!=-1)queue.offer(job);
+			}
+		}
+	}
+
+	private static class WorkerFactory implements ThreadFactory {
+
+		private final AtomicInteger count=new AtomicInteger();
+
+		public Thread newThread(Runnable r) {
+			Thread t=new Thread(r,"Scheduler Worker "+count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
@@ -0,0 +1,322 @@
+package railo.runtime.schedule;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import railo.commons.date.DateTimeUtil;
+import railo.commons.date.JREDateTimeUtil;
+import railo.commons.io.log.Log;
+import railo.commons.io.log.LogAndSource;
+import railo.commons.io.log.LogUtil;
+import railo.commons.lang.SystemOut;
+import railo.runtime.config.Config;
+import railo.runtime.engine.CFMLEngineImpl;
+import railo.runtime.engine.ThreadLocalPageContext;
+import railo.runtime.type.Struct;
+import railo.runtime.type.StructImpl;
+import railo.runtime.type.dt.DateTimeImpl;
+
+/**
+ * schedule of a single task, calculates the executions of the task and records the metrics of the executions.
+ * The job is held by the ScheduleEngine until its next execution is reached.
+ */
+final class ScheduleJob implements Delayed {
+
+	private static final long DAY=24*3600000;
+	// a execution started later than this is logged as late start
+	private static final long LATE_START=5000;
+	// a execution the timer reaches later than this is a misfire (server was suspended or the clock was changed)
+	private static final long MISFIRE=60000;
+	private static final long[] BUCKETS=new long[]{100,500,1000,5000,10000,60000,300000};
+
+	private Calendar calendar;
+
+	private long startDate;
+	private long startTime;
+	private long endDate;
+	private long endTime;
+	private int intervall;
+	private int amount;
+
+	private DateTimeUtil util;
+
+	private int cIntervall;
+
+	private Config config;
+	private LogAndSource log;
+	private ScheduleTask task;
+	private String charset;
+	private final CFMLEngineImpl engine;
+	private TimeZone timeZone;
+	private boolean isOnce;
+	private volatile long execution;
+
+	private final AtomicInteger running=new AtomicInteger();
+	private final AtomicLong executions=new AtomicLong();
+	private final AtomicLong failures=new AtomicLong();
+	private final AtomicLong overlaps=new AtomicLong();
+	private final AtomicLong misfires=new AtomicLong();
+	private final AtomicLong lateStarts=new AtomicLong();
+	private final AtomicLong time=new AtomicLong();
+	private final AtomicLong maxTime=new AtomicLong();
+	private final AtomicLongArray histogram=new AtomicLongArray(BUCKETS.length+1);
+	private volatile long lastExecution;
+	private volatile long lastTime;
+	private volatile boolean lastSuccess;
+
+
+	public ScheduleJob(CFMLEngineImpl engine,Config config, LogAndSource log, ScheduleTask task, String charset) {
+		util = DateTimeUtil.getInstance();
+		this.engine=engine;
+		this.config=config;
+		this.log=log;
+		this.task=task;
+		this.charset=charset;
+		timeZone=ThreadLocalPageContext.getTimeZone(config);
+
+		this.startDate=util.getMilliSecondsAdMidnight(timeZone,task.getStartDate().getTime());
+		this.startTime=util.getMilliSecondsInDay(timeZone, task.getStartTime().getTime());
+		this.endDate=task.getEndDate()==null?Long.MAX_VALUE:util.getMilliSecondsAdMidnight(timeZone,task.getEndDate().getTime());
+		this.endTime=task.getEndTime()==null?DAY:util.getMilliSecondsInDay(timeZone, task.getEndTime().getTime());
+
+
+		this.intervall=task.getInterval();
+		if(intervall>=10){
+			amount=intervall;
+			intervall=ScheduleTaskImpl.INTERVAL_EVEREY;
+		}
+		else amount=1;
+
+		cIntervall = toCalndarIntervall(intervall);
+		isOnce=intervall==ScheduleTask.INTERVAL_ONCE;
+	}
+
+	ScheduleTask getTask() {
+		return task;
+	}
+
+	/**
+	 * calculates the first execution
+	 * @return false if the task is never executed
+	 */
+	boolean init() {
+		// check values
+		if(startDate>endDate) {
+			log(Log.LEVEL_ERROR,"This task can not be executed because the task definition is invalid; enddate is before startdate");
+			return end();
+		}
+		if(intervall==ScheduleTaskImpl.INTERVAL_EVEREY && startTime>endTime) {
+			log(Log.LEVEL_ERROR,"This task can not be executed because the task definition is invalid; endtime is before starttime");
+			return end();
+		}
+
+		long today = System.currentTimeMillis();
+		if(isOnce){
+			if(startDate+startTime<today) return end();
+			execution=startDate+startTime;
+		}
+		else execution = calculateNextExecution(today,false);
+
+		log(Log.LEVEL_INFO,"first execution runs at "+new DateTimeImpl(execution,false).castToString(timeZone));
+		return true;
+	}
+
+	/**
+	 * called by the timer when the execution is reached, starts the execution and calculates the next
+	 * @param se engine executing the task
+	 * @return next execution or -1 if the task is not executed anymore
+	 */
+	long fire(ScheduleEngine se) {
+		if(!engine.isRunning() || !task.isValid()) {
+			end();
+			return -1;
+		}
+		long today=System.currentTimeMillis();
+		long todayTime=util.getMilliSecondsInDay(null,today);
+		long todayDate=today-todayTime;
+
+		if(!task.isPaused()){
+			if(endDate<todayDate && endTime<todayTime) {
+				end();
+				return -1;
+			}
+			long late=today-execution;
+			if(late>MISFIRE && ((ScheduleTaskImpl)task).isSkipMisfire()) {
+				misfires.incrementAndGet();
+				log(Log.LEVEL_WARN,"execution at "+new DateTimeImpl(execution,false).castToString(timeZone)+" skipped, it was missed by "+late+"ms");
+			}
+			else execute(se,execution);
+		}
+		if(isOnce) {
+			end();
+			return -1;
+		}
+		today=System.currentTimeMillis();
+		execution=calculateNextExecution(today,true);
+		log(Log.LEVEL_INFO,"next execution runs at "+new DateTimeImpl(execution,false).castToString(timeZone)+":"+today+":"+execution);
+		return execution;
+	}
+
+	/**
+	 * executes the task within the pool of the engine
+	 * @param se
+	 * @param scheduled time the execution should start
+	 */
+	void execute(ScheduleEngine se, final long scheduled) {
+		if(config==null) return;
+		if(running.incrementAndGet()>1 && !((ScheduleTaskImpl)task).isAllowOverlap()) {
+			running.decrementAndGet();
+			overlaps.incrementAndGet();
+			log(Log.LEVEL_WARN,"execution skipped, the last execution is still running");
+			return;
+		}
+		try {
+			se.execute(new Runnable() {
+				public void run() {
+					try {
+						_execute(scheduled);
+					}
+					finally {
+						running.decrementAndGet();
+					}
+				}
+			});
+		}
+		catch(RuntimeException re) {
+			running.decrementAndGet();
+			throw re;
+		}
+	}
+
+	private void _execute(long scheduled) {
+		long start=System.currentTimeMillis();
+		long late=start-scheduled;
+		if(late>LATE_START) {
+			lateStarts.incrementAndGet();
+			log(Log.LEVEL_WARN,"execution started "+late+"ms late");
+		}
+		boolean success=ExecutionThread.execute(config,log,task,charset);
+		long millis=System.currentTimeMillis()-start;
+
+		executions.incrementAndGet();
+		if(!success)failures.incrementAndGet();
+		time.addAndGet(millis);
+		long max;
+		while((max=maxTime.get())<millis && !maxTime.compareAndSet(max, millis)){}
+		int index=0;
+		while(index<BUCKETS.length && millis>=BUCKETS[index]) index++;
+		histogram.incrementAndGet(index);
+		lastExecution=start;
+		lastTime=millis;
+		lastSuccess=success;
+	}
+
+	private boolean end() {
+		task.setValid(false);
+		return false;
+	}
+
+	/**
+	 * @return metrics of the executions of this task
+	 */
+	Struct getStatistics() {
+		Struct sct=new StructImpl();
+		sct.setEL("nextExecution",task.isValid()?new DateTimeImpl(execution,false):null);
+		sct.setEL("running",new Double(running.get()));
+		sct.setEL("executions",new Double(executions.get()));
+		sct.setEL("failures",new Double(failures.get()));
+		sct.setEL("overlaps",new Double(overlaps.get()));
+		sct.setEL("misfires",new Double(misfires.get()));
+		sct.setEL("lateStarts",new Double(lateStarts.get()));
+		sct.setEL("time",new Double(time.get()));
+		sct.setEL("maxTime",new Double(maxTime.get()));
+		if(lastExecution>0) {
+			sct.setEL("lastExecution",new DateTimeImpl(lastExecution,false));
+			sct.setEL("lastTime",new Double(lastTime));
+			sct.setEL("lastSuccess",Boolean.valueOf(lastSuccess));
+		}
+
+		Struct hist=new StructImpl(StructImpl.TYPE_LINKED);
+		for(int i=0;i<=BUCKETS.length;i++){
+			hist.setEL(i<BUCKETS.length?"<"+BUCKETS[i]+"ms":">="+BUCKETS[BUCKETS.length-1]+"ms", new Double(histogram.get(i)));
+		}
+		sct.setEL("timeHistogram",hist);
+		return sct;
+	}
+
+	/**
+	 * @see java.util.concurrent.Delayed#getDelay(java.util.concurrent.TimeUnit)
+	 */
+	public long getDelay(TimeUnit unit) {
+		return unit.convert(execution-System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @see java.lang.Comparable#compareTo(java.lang.Object)
+	 */
+	public int compareTo(Delayed other) {
+		long l=getDelay(TimeUnit.MILLISECONDS),r=other.getDelay(TimeUnit.MILLISECONDS);
+		return l<r?-1:(l==r?0:1);
+	}
+
+	private void log(int level, String msg) {
+		String logName="schedule task:"+task.getTask();
+		if(log!=null) log.log(level,logName, msg);
+		else SystemOut.print(LogUtil.toStringType(level, "INFO").toUpperCase()+":"+msg);
+
+	}
+
+	private long calculateNextExecution(long now, boolean notNow) {
+		long nowTime=util.getMilliSecondsInDay(timeZone,now);
+		long nowDate=now-nowTime;
+
+
+		// when second or date intervall switch to current date
+		if(startDate<nowDate && (cIntervall==Calendar.SECOND || cIntervall==Calendar.DATE))
+			startDate=nowDate;
+
+		// init calendar
+		if(calendar==null){
+			calendar=JREDateTimeUtil.newInstance(timeZone);
+			calendar.setTimeInMillis(startDate+startTime);
+		}
+		long time;
+		while(true) {
+			time=getMilliSecondsInDay(calendar);
+			if(now<=calendar.getTimeInMillis() && time>=startTime) {
+				// this is used because when cames back sometme to early
+				if(notNow && (calendar.getTimeInMillis()-now)<1000);
+				else if(intervall==ScheduleTaskImpl.INTERVAL_EVEREY && time>endTime)
+					now=nowDate+DAY;
+				else
+					break;
+			}
+			calendar.add(cIntervall, amount);
+		}
+		return calendar.getTimeInMillis();
+	}
+
+	private static int toCalndarIntervall(int intervall) {
+		switch(intervall){
+		case ScheduleTask.INTERVAL_DAY:return Calendar.DATE;
+		case ScheduleTask.INTERVAL_MONTH:return Calendar.MONTH;
+		case ScheduleTask.INTERVAL_WEEK:return Calendar.WEEK_OF_YEAR;
+		case ScheduleTask.INTERVAL_ONCE:return -1;
+
+		}
+		return Calendar.SECOND;
+	}
+
+	public static long getMilliSecondsInDay(Calendar c) {
+		return  (c.get(Calendar.HOUR_OF_DAY)*3600000)+
+                    (c.get(Calendar.MINUTE)*60000)+
+                    (c.get(Calendar.SECOND)*1000)+
+                    (c.get(Calendar.MILLISECOND));
+
+    }
+}
@@ -45,6 +45,8 @@ public final class ScheduleTaskImpl implements ScheduleTask {
 	private boolean hidden;
 	private boolean readonly;
 	private boolean paused;
+	private boolean allowOverlap;
+	private boolean skipMisfire;
 	private String md5;
 
     
@@ -353,4 +355,34 @@ public final class ScheduleTaskImpl implements ScheduleTask {
 	public String md5() {
 		return md5;
 	}
+
+
+
+	/**
+	 * @return can a execution start while the last execution is still running
+	 */
+	public boolean isAllowOverlap() {
+		return allowOverlap;
+	}
+
+
+
+	public void setAllowOverlap(boolean allowOverlap) {
+		this.allowOverlap=allowOverlap;
+	}
+
+
+
+	/**
+	 * @return is a execution skipped when it was missed (server suspended or clock changed), otherwise it is done at once
+	 */
+	public boolean isSkipMisfire() {
+		return skipMisfire;
+	}
+
+
+
+	public void setSkipMisfire(boolean skipMisfire) {
+		this.skipMisfire=skipMisfire;
+	}
 }
\ No newline at end of file
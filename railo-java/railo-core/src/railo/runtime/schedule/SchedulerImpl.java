@@ -2,6 +2,9 @@ package railo.runtime.schedule;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.w3c.dom.Attr;
 import org.w3c.dom.Document;
@@ -18,9 +21,11 @@ import railo.runtime.config.Config;
 import railo.runtime.engine.CFMLEngineImpl;
 import railo.runtime.exp.PageException;
 import railo.runtime.op.Caster;
+import railo.runtime.type.Struct;
+import railo.runtime.type.StructImpl;
 
 /**
- * scheduler class to execute the scheduled tasks
+ * scheduler class to execute the scheduled tasks, the tasks of all schedulers are executed by the ScheduleEngine
  */
 public final class SchedulerImpl implements Scheduler {
 
@@ -31,6 +36,8 @@ public final class SchedulerImpl implements Scheduler {
     private StorageUtil su=new StorageUtil();
 	private String charset;
 	private Config config;
+	// schedule of every task (lower case name:job)
+	private Map jobs=new ConcurrentHashMap();
 	//private String md5;
 
 	private CFMLEngineImpl engine;
@@ -94,7 +101,19 @@ public final class SchedulerImpl implements Scheduler {
     }
 
 	private void init(ScheduleTask task) {
-		new ScheduledTaskThread(engine,config,log,task,charset).start();
+		ScheduleJob job = new ScheduleJob(engine,config,log,task,charset);
+		jobs.put(task.getTask().toLowerCase(), job);
+		if(job.init())ScheduleEngine.getInstance().schedule(job);
+	}
+
+	/**
+	 * stops the executions of the given task
+	 */
+	private void cancel(ScheduleTask task) {
+		task.setValid(false);
+		ScheduleEngine.getInstance().cancel(task);
+		ScheduleJob job=(ScheduleJob) jobs.get(task.getTask().toLowerCase());
+		if(job!=null && job.getTask()==task)jobs.remove(task.getTask().toLowerCase());
 	}
 
 	/**
@@ -150,6 +169,8 @@ public final class SchedulerImpl implements Scheduler {
                     su.toBoolean(el,"hidden",false),
                     su.toBoolean(el,"readonly",false),
                     su.toBoolean(el,"paused",false));
+            st.setAllowOverlap("allow".equalsIgnoreCase(su.toString(el,"overlap","")));
+            st.setSkipMisfire("skip".equalsIgnoreCase(su.toString(el,"misfire","")));
             return st;
         } catch (Exception e) {e.printStackTrace();
             throw Caster.toPageException(e);
@@ -161,7 +182,7 @@ public final class SchedulerImpl implements Scheduler {
 		for(int i=0;i<tasks.length;i++){
 			if(!tasks[i].getTask().equals(task.getTask())) continue;
 			if(!tasks[i].md5().equals(task.md5())) {
-				tasks[i].setValid(false);
+				cancel(tasks[i]);
 				tasks[i]=task;
 				init(task);
 			}
@@ -209,6 +230,9 @@ public final class SchedulerImpl implements Scheduler {
         su.setBoolean(el,"publish",task.isPublish());   
         su.setBoolean(el,"hidden",((ScheduleTaskImpl)task).isHidden());  
         su.setBoolean(el,"readonly",((ScheduleTaskImpl)task).isReadonly());  
+        // only written when not the default, so the file stays readable by older versions
+        if(((ScheduleTaskImpl)task).isAllowOverlap())su.setString(el,"overlap","allow");
+        if(((ScheduleTaskImpl)task).isSkipMisfire())su.setString(el,"misfire","skip");
     }
     
     /**
@@ -309,7 +333,7 @@ public final class SchedulerImpl implements Scheduler {
 	    int pos=-1;
 	    for(int i=0;i<tasks.length;i++) {
 	        if(tasks[i].getTask().equalsIgnoreCase(name)) {
-	        	tasks[i].setValid(false);
+	        	cancel(tasks[i]);
 	            pos=i;
 	        }
 	    }
@@ -355,8 +379,25 @@ public final class SchedulerImpl implements Scheduler {
      * @see railo.runtime.schedule.Scheduler#execute()
      */
     public void execute(ScheduleTask task) {
-    	new ExecutionThread(config,log,task,charset).start();
+    	ScheduleEngine se = ScheduleEngine.getInstance();
+    	ScheduleJob job=(ScheduleJob) jobs.get(task.getTask().toLowerCase());
+    	if(job!=null && job.getTask()==task) job.execute(se, System.currentTimeMillis());
+    	else se.execute(new ExecutionThread(config,log,task,charset));
     } 
+
+    /**
+     * @return metrics of the executions of all tasks (name:struct)
+     */
+    public Struct getStatistics() {
+    	Struct sct=new StructImpl();
+    	Iterator it = jobs.values().iterator();
+    	ScheduleJob job;
+    	while(it.hasNext()) {
+    		job=(ScheduleJob) it.next();
+    		sct.setEL(job.getTask().getTask(), job.getStatistics());
+    	}
+    	return sct;
+    }
     
 
     /**
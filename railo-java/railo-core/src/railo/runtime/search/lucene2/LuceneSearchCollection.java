@@ -5,14 +5,22 @@ import java.io.IOException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
 import org.apache.lucene.queryParser.ParseException;
 import org.apache.lucene.queryParser.QueryParser;
 import org.apache.lucene.search.Hits;
@@ -27,7 +35,6 @@ import org.apache.lucene.store.FSDirectory;
 import railo.commons.io.SystemUtil;
 import railo.commons.io.log.LogAndSource;
 import railo.commons.io.res.Resource;
-import railo.commons.io.res.ResourcesImpl;
 import railo.commons.io.res.filter.DirectoryResourceFilter;
 import railo.commons.io.res.filter.ResourceFilter;
 import railo.commons.io.res.filter.ResourceNameFilter;
@@ -59,7 +66,9 @@ import railo.runtime.type.StructImpl;
 import railo.runtime.type.dt.DateTime;
 
 /**
- * 
+ * Collection stored in Lucene indexes, one index for every id.
+ * The indexes are not optimized after a update, Lucene merges the segments in the background,
+ * searches use readers shared by all requests (see SharedReaders) that are refreshed after every update.
  */
 public final class LuceneSearchCollection extends SearchCollectionSupport {
     
@@ -69,6 +78,11 @@ public final class LuceneSearchCollection extends SearchCollectionSupport {
 	private boolean spellcheck;
 	private LogAndSource log;
     private static final SerializableObject token=new SerializableObject();
+    private static ExecutorService spellCheckExecutor;
+    
+    private transient SharedReaders readers;
+    // ids of the indexes waiting for the update of the spellcheck dictionary
+    private transient Set<String> spellCheckPending;
 	
 	
     /**
@@ -117,6 +131,10 @@ public final class LuceneSearchCollection extends SearchCollectionSupport {
             	close(writers[i]);
             }
         }
+        Resource[] dirs=_getIndexDirectories();
+        if(dirs!=null)for(int i=0;i<dirs.length;i++) {
+        	readers().changed(dirs[i].getName());
+        }
     }
 
     /**
@@ -146,7 +164,6 @@ public final class LuceneSearchCollection extends SearchCollectionSupport {
 	        try {
 	            writer = _getWriter(id,true);
 	            _index(writer,res,res.getName());
-	            writer.optimize();
 	        } 
 	        catch (Exception e) {
 	            throw new SearchException(e);
@@ -154,7 +171,7 @@ public final class LuceneSearchCollection extends SearchCollectionSupport {
 	        finally {
 	        	close(writer);
 	        }
-	        indexSpellCheck(id);
+	        changed(id);
         }
         if(getDocumentCount(id)==before) return new IndexResultImpl(0,0,1);
         return new IndexResultImpl(0,1,0);
@@ -174,8 +191,6 @@ public final class LuceneSearchCollection extends SearchCollectionSupport {
 	        try {
 	            writer = _getWriter(id,true);
 				doccount=_list(0,writer,dir,new LuceneExtensionFileFilter(extensions,recurse),"");
-	        	//optimizeEL(writer);
-				writer.optimize();
 	        } 
 	        catch (IOException e) {
 				throw new SearchException(e);
@@ -183,7 +198,7 @@ public final class LuceneSearchCollection extends SearchCollectionSupport {
 	        finally {
 	        	close(writer);
 	        }
-	        indexSpellCheck(id);
+	        changed(id);
         }
         
         
@@ -201,6 +216,59 @@ public final class LuceneSearchCollection extends SearchCollectionSupport {
 		}
 	}
 
+    /**
+     * called after a index was changed, refreshes the shared reader and updates the spellcheck dictionary in the background
+     * @param id
+     */
+    private void changed(String id) {
+    	readers().changed(id);
+    	if(!spellcheck) return;
+    	synchronized(this) {
+    		if(spellCheckPending==null)spellCheckPending=new HashSet<String>();
+    		// already waiting, the update will see this change as well
+    		if(!spellCheckPending.add(id)) return;
+    	}
+    	final String _id=id;
+    	getSpellCheckExecutor().execute(new Runnable() {
+			public void run() {
+				synchronized(LuceneSearchCollection.this) {
+					spellCheckPending.remove(_id);
+				}
+				synchronized(token){
+					try {
+						indexSpellCheck(_id);
+					}
+					catch (SearchException e) {
+						if(log!=null)log.error("Collection:"+getName(), "update of spellcheck dictionary failed:"+e.getMessage());
+					}
+				}
+			}
+		});
+    }
+
+    private synchronized SharedReaders readers() {
+    	if(readers==null)readers=new SharedReaders();
+    	return readers;
+    }
+
+    /**
+     * the dictionary is build from all words of a index, this takes time depending on the size of the index,
+     * so all collections update their dictionaries one after the other in a single background thread
+     */
+    private static synchronized ExecutorService getSpellCheckExecutor() {
+    	if(spellCheckExecutor==null) {
+    		spellCheckExecutor=new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t=new Thread(r,"Search Spellcheck");
+					t.setDaemon(true);
+					t.setPriority(Thread.MIN_PRIORITY);
+					return t;
+				}
+			});
+    	}
+    	return spellCheckExecutor;
+    }
+
 	private void indexSpellCheck(String id) throws SearchException  {
     	if(!spellcheck) return;
     	
@@ -211,7 +279,7 @@ public final class LuceneSearchCollection extends SearchCollectionSupport {
 		try {
     		File spellFile = FileWrapper.toFile(dir);
     		spellDir = FSDirectory.getDirectory(spellFile);
-	    	reader = _getReader(id,false);
+	    	reader = _getReader(id);
 	    	Dictionary dictionary = new LuceneDictionary(reader,"contents");
 			
 	    	SpellChecker spellChecker = new SpellChecker(spellDir);
@@ -222,8 +290,7 @@ public final class LuceneSearchCollection extends SearchCollectionSupport {
     		throw new SearchException(ioe);
     	}
     	finally {
-    		flushEL(reader);
-			closeEL(reader);
+    		readers().release(reader);
     	}
 	}
 
@@ -238,16 +305,6 @@ public final class LuceneSearchCollection extends SearchCollectionSupport {
     	}
 	}
 
-    private static void close(IndexReader reader) throws SearchException {
-    	if(reader!=null){
-    		try {
-				reader.close();
-			} catch (IOException e) {
-				throw new SearchException(e);
-			}
-    	}
-	}
-
     private static void close(Searcher searcher) throws SearchException {
     	if(searcher!=null){
     		try {
@@ -258,27 +315,6 @@ public final class LuceneSearchCollection extends SearchCollectionSupport {
     	}
 	}
 
-    private static void flushEL(IndexReader reader) {
-    	//print.out("r-closeEL");
-    	if(reader!=null){
-    		try {
-				reader.flush();
-			} catch (Throwable t) {
-				//throw new SearchException(t);
-			}
-    	}
-	}
-    private static void closeEL(IndexReader reader) {
-    	//print.out("r-closeEL");
-    	if(reader!=null){
-    		try {
-				reader.close();
-			} catch (Throwable t) {
-				//throw new SearchException(t);
-			}
-    	}
-	}
-
 	/**
      * @see railo.runtime.search.SearchCollection#_indexURL(java.lang.String, java.lang.String, java.net.URL, java.lang.String[], boolean, java.lang.String)
      */
@@ -295,8 +331,6 @@ public final class LuceneSearchCollection extends SearchCollectionSupport {
 	        try {
 	            writer = _getWriter(id,true);
 	            new WebCrawler(log).parse(writer, url, extensions, recurse,timeout);
-	            
-	            writer.optimize();
 	        } 
 	        catch (Exception e) {
 	            throw new SearchException(e);
@@ -304,7 +338,7 @@ public final class LuceneSearchCollection extends SearchCollectionSupport {
 	        finally {
 	        	close(writer);
 	        }
-	        indexSpellCheck(id);
+	        changed(id);
         }
         if(getDocumentCount(id)==before) return new IndexResultImpl(0,0,1);
         return new IndexResultImpl(0,1,0);
@@ -347,17 +381,18 @@ public final class LuceneSearchCollection extends SearchCollectionSupport {
 		        // read existing reader
 	        	IndexReader reader=null;
 	        	try {
-	        		reader=_getReader(id,false);
+	        		reader=_getReader(id);
 	        		int len=reader.maxDoc();
 	        		Document doc;
 	        		for(int i=0;i<len;i++) {
+	        			if(reader.isDeleted(i)) continue;
 	        			doc=reader.document(i);
 	        			docs.put(doc.getField("key").stringValue(),doc);
 	        		}
 		        }
 		        catch(Exception e) {}
 		        finally {
-		        	close(reader);
+		        	readers().release(reader);
 		        }  
 	
         		countExisting=docs.size();
@@ -397,9 +432,6 @@ public final class LuceneSearchCollection extends SearchCollectionSupport {
 		        	doc = entry.getValue();
 		        	writer.addDocument(doc);
 		        }
-		        optimizeEL(writer);
-	            //writer.optimize();
-	            
 	        }
 	        catch(IOException ioe) {
 	            throw new SearchException(ioe);
@@ -407,13 +439,46 @@ public final class LuceneSearchCollection extends SearchCollectionSupport {
 	        finally {
 	        	close(writer);
 	        }
-	        indexSpellCheck(id);
+	        changed(id);
     	}
         int inserts=countNew-countExisting;
 
         return new IndexResultImpl(0,inserts,countAdd-inserts);
     }
 
+    /**
+     * adds the given documents to the index with one writer and one commit, 
+     * a existing document with the same key is replaced.
+     * @param id id of the index
+     * @param documents
+     * @return result
+     * @throws SearchException
+     */
+    public IndexResult indexDocuments(String id, Document[] documents) throws SearchException {
+    	int updates=0;
+    	IndexWriter writer=null;
+    	synchronized(token){
+	    	try {
+	    		writer = _getWriter(id,!IndexReader.indexExists(_getFile(id)));
+	    		String key;
+	    		for(int i=0;i<documents.length;i++) {
+	    			key=documents[i].get("key");
+	    			if(StringUtil.isEmpty(key)) writer.addDocument(documents[i]);
+	    			else writer.updateDocument(new Term("key",key), documents[i]);
+	    		}
+	    		updates=documents.length;
+	    	}
+	    	catch(IOException ioe) {
+	            throw new SearchException(ioe);
+	        }
+	        finally {
+	        	close(writer);
+	        }
+	        changed(id);
+    	}
+    	return new IndexResultImpl(0,0,updates);
+    }
+
 	private String getRow(Object column, int row) {
 		if(column instanceof QueryColumn){
 			return Caster.toString(((QueryColumn)column).get(row,null),null);
@@ -431,6 +496,7 @@ public final class LuceneSearchCollection extends SearchCollectionSupport {
     	for(int i=0;i<indexes.length;i++) {
     		count+=getDocumentCount(indexes[i].getId());
     	}
+    	readers().closeAll();
     	ResourceUtil.removeChildrenEL(collectionDir);
     	return new IndexResultImpl(count,0,0);
     }
@@ -444,6 +510,7 @@ public final class LuceneSearchCollection extends SearchCollectionSupport {
     	for(int i=0;i<indexes.length;i++) {
     		count+=getDocumentCount(indexes[i].getId());
     	}
+    	readers().closeAll();
     	ResourceUtil.removeEL(collectionDir, true);
     	return new IndexResultImpl(count,0,0);
     }
@@ -453,6 +520,7 @@ public final class LuceneSearchCollection extends SearchCollectionSupport {
      */
     protected IndexResult _deleteIndex(String id) throws SearchException {
     	int count=getDocumentCount(id);
+    	readers().close(id);
     	ResourceUtil.removeEL(_getIndexDirectory(id,true), true);
     	return new IndexResultImpl(count,0,0);
     }
@@ -502,12 +570,10 @@ public final class LuceneSearchCollection extends SearchCollectionSupport {
             ArrayList<String> spellCheckIndex=spellcheck?new ArrayList<String>():null;
             
             int count=0;
-            IndexReader reader = null;
-            Searcher searcher = null;
-            try {
+            IndexReader reader;
+            Searcher searcher;
 	            outer:for(int i=0;i<files.length;i++) {
 		        	if(removeCorrupt(files[i]))continue;
-	            	String strFile=files[i].toString();
 		            SearchIndex si = (SearchIndex)indexes.get(files[i].getName());
 		            
 		            if(si==null)continue;
@@ -520,12 +586,14 @@ public final class LuceneSearchCollection extends SearchCollectionSupport {
 		            
 		            Document doc;
 		            String id=files[i].getName();
-		            data.addRecordsSearched(_countDocs(strFile));
-		            
-            		reader = _getReader(id,false);
+            		reader = _getReader(id);
+            		searcher = null;
+            		try {
+		            data.addRecordsSearched(reader.numDocs());
             		if(query==null && "*".equals(criteria)) {
-		            	int len=reader.numDocs();
+		            	int len=reader.maxDoc();
 			            for(int y=0;y<len;y++) {
+			            	if(reader.isDeleted(y))continue;
 			            	if(startrow>++count)continue;
 			            	if(maxrows>-1 && list.size()>=maxrows) break outer;
 			            	doc = reader.document(y);
@@ -547,13 +615,13 @@ public final class LuceneSearchCollection extends SearchCollectionSupport {
 			            }  
 			           
 		            }
-	             
+            		}
+            		finally {
+            			// closing the searcher does not close the shared reader
+            			close(searcher);
+            			readers().release(reader);
+            		}
 	        	}
-            }
-        	finally {
-        		close(reader);
-        		close(searcher);
-        	}   
             
             // spellcheck
             //SearchData data=ThreadLocalSearchData.get();
@@ -732,17 +800,18 @@ public final class LuceneSearchCollection extends SearchCollectionSupport {
 		}*/
     }
 
-    private IndexReader _getReader(String id,boolean absolute) throws IOException {
-    	return _getReader(_getFile(id, absolute));
-    }  
-
-    private IndexReader _getReader(File file) throws IOException {
-    	if(!IndexReader.indexExists(file))throw new IOException("there is no index in ["+file+"]");
-    	return IndexReader.open(file);
+    /**
+     * returns the shared reader of the given index, the reader has to be given back with readers().release(reader)
+     * @param id
+     * @return reader
+     * @throws IOException
+     */
+    private IndexReader _getReader(String id) throws IOException {
+    	return readers().acquire(id,_getFile(id));
     }  
     
-    private File _getFile(String id,boolean absolute) throws IOException {
-    	Resource res = absolute?ResourcesImpl.getFileResourceProvider().getResource(id):_getIndexDirectory(id,true);
+    private File _getFile(String id) throws IOException {
+    	Resource res = _getIndexDirectory(id,true);
     	res.getResourceProvider().read(res);
     	return FileWrapper.toFile(res);
     }  
@@ -774,23 +843,6 @@ public final class LuceneSearchCollection extends SearchCollectionSupport {
     }
     
 
-    private int _countDocs(String col)	{
-    	// FUTURE add support for none file resources
-        int totalDocs;
-        IndexReader reader=null;
-        try	{
-        	reader=_getReader(col,true);
-        	totalDocs = reader.numDocs();
-        }
-        catch(Exception e)	{
-            return 0;
-        }
-        finally {
-        	closeEL(reader);
-        }
-        return totalDocs;
-    }
-
     /**
      * @deprecated see SearchUtil.getAnalyzer(String language);
      * @param language
@@ -822,11 +874,11 @@ public final class LuceneSearchCollection extends SearchCollectionSupport {
 			IndexReader r=null;
 			int num=0;
 			try {
-				r = _getReader(id,false);
+				r = _getReader(id);
 				num=r.numDocs();
 			}
 			finally {
-				close(r);
+				readers().release(r);
 			}
 			return num;
 		}
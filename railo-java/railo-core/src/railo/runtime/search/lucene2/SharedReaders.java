@@ -0,0 +1,89 @@
+package railo.runtime.search.lucene2;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.apache.lucene.index.IndexReader;
+
+/**
+ * long living readers of the indexes of a collection, a reader is shared by all searches and reopened after the index was changed,
+ * so a search does not pay for opening the index.
+ * The readers are reference counted, a reader replaced by a newer one is closed when the last search using it is done.
+ */
+final class SharedReaders {
+
+	private final Map<String,IndexReader> readers=new HashMap<String,IndexReader>();
+
+	/**
+	 * returns the reader of the given index, the reader has to be given back with release
+	 * @param id id of the index
+	 * @param dir directory of the index
+	 * @return reader
+	 * @throws IOException
+	 */
+	synchronized IndexReader acquire(String id, File dir) throws IOException {
+		IndexReader reader=readers.get(id);
+		if(reader==null) {
+			if(!IndexReader.indexExists(dir))throw new IOException("there is no index in ["+dir+"]");
+			reader=IndexReader.open(dir);
+			readers.put(id, reader);
+		}
+		reader.incRef();
+		return reader;
+	}
+
+	/**
+	 * gives back a reader taken with acquire
+	 * @param reader
+	 */
+	void release(IndexReader reader) {
+		if(reader==null) return;
+		try {
+			reader.decRef();
+		}
+		catch (IOException e) {}
+	}
+
+	/**
+	 * reopens the reader of the given index after a commit, only the changed segments are read
+	 * @param id
+	 */
+	synchronized void changed(String id) {
+		IndexReader reader=readers.get(id);
+		if(reader==null) return;
+		try {
+			IndexReader newReader=reader.reopen();
+			if(newReader!=reader) {
+				readers.put(id, newReader);
+				release(reader);
+			}
+		}
+		// the next search opens a new reader
+		catch (IOException e) {
+			readers.remove(id);
+			release(reader);
+		}
+	}
+
+	/**
+	 * closes the reader of the given index (as soon it is no longer used), has to be called before the index is deleted
+	 * @param id
+	 */
+	synchronized void close(String id) {
+		release(readers.remove(id));
+	}
+
+	/**
+	 * closes all readers
+	 */
+	synchronized void closeAll() {
+		Iterator<IndexReader> it = readers.values().iterator();
+		while(it.hasNext()) {
+			release(it.next());
+		}
+		readers.clear();
+	}
+}
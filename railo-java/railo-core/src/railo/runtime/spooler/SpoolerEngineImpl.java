@@ -3,18 +3,17 @@ package railo.runtime.spooler;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import railo.commons.io.IOUtil;
-import railo.commons.io.SystemUtil;
 import railo.commons.io.log.Log;
 import railo.commons.io.res.Resource;
 import railo.commons.io.res.filter.ResourceNameFilter;
-import railo.commons.io.res.util.ResourceUtil;
-import railo.commons.lang.StringUtil;
 import railo.runtime.config.Config;
 import railo.runtime.engine.ThreadLocalConfig;
 import railo.runtime.exp.ApplicationException;
@@ -29,11 +28,21 @@ import railo.runtime.type.Query;
 import railo.runtime.type.QueryImpl;
 import railo.runtime.type.Struct;
 import railo.runtime.type.dt.DateTimeImpl;
-import railo.runtime.type.util.ArrayUtil;
 
+/**
+ * Spooler holding the tasks in a journal file, the tasks are executed by a pool of worker threads.
+ * The open tasks are held in a queue ordered by the next execution, a worker takes the next task as soon it is due.
+ * Workers are started when tasks are due and all workers are busy (up to the max threads),
+ * a worker ends when it was idle for a while, only the last one stays as long there are open tasks.
+ */
 public class SpoolerEngineImpl implements SpoolerEngine {
 	
 	private static final TaskFileFilter FILTER=new TaskFileFilter();
+	private static final String JOURNAL="tasks.journal";
+	public static final int DEFAULT_MAX_THREADS=20;
+	private static final long IDLE_TIMEOUT=60000;
+	// max factor the interval of a execution plan grows with every failed try
+	private static final int MAX_BACKOFF=4;
 
 	private static final Collection.Key TYPE = KeyImpl.getInstance("type");
 	private static final Collection.Key NAME = KeyImpl.getInstance("name");
@@ -52,68 +61,171 @@ public class SpoolerEngineImpl implements SpoolerEngine {
 	private String label;
 	
 
-	//private LinkedList<SpoolerTask> openTaskss=new LinkedList<SpoolerTask>();
-	//private LinkedList<SpoolerTask> closedTasks=new LinkedList<SpoolerTask>();
-	private SpoolerThread thread;
-	//private ExecutionPlan[] plans;
 	private Resource persisDirectory;
-	private long count=0;
+	private TaskJournal journal;
 	private Log log;
 	private Config config; 
 	private int add=0;
 
-
-	private Resource closedDirectory;
-	private Resource openDirectory;
+	private final ReentrantLock lock=new ReentrantLock();
+	private final Condition changed=lock.newCondition();
+	private final PriorityQueue<TaskJournal.Entry> queue=new PriorityQueue<TaskJournal.Entry>();
+	private int maxThreads=DEFAULT_MAX_THREADS;
+	private int workers;
+	private int idle;
+	private int workerCount;
 	
 	public SpoolerEngineImpl(Config config,Resource persisDirectory,String label, Log log) throws IOException {
 		this.config=config;
-		this.persisDirectory=persisDirectory;
-
-		closedDirectory = persisDirectory.getRealResource("closed");
-		openDirectory = persisDirectory.getRealResource("open");
-		//calculateSize();
-		
-		
 		this.label=label;
 		this.log=log;
-		//print.ds(persisDirectory.getAbsolutePath());
-		//load();
-		if(getOpenTaskCount()>0)start();
+		open(persisDirectory);
 	}
 
-	/*private void calculateSize() {
-		closedCount=calculateSize(closedDirectory);
-		openCount=calculateSize(openDirectory);
-	}*/
+	/**
+	 * opens the journal in the given directory, tasks stored as single files by older versions are moved to the journal
+	 */
+	private void open(Resource persisDirectory) throws IOException {
+		TaskJournal journal=new TaskJournal(persisDirectory.getRealResource(JOURNAL));
+		importTasks(journal,persisDirectory.getRealResource("open"));
+		importTasks(journal,persisDirectory.getRealResource("closed"));
 
-	private int calculateSize(Resource res) {
-		return ResourceUtil.directrySize(res,FILTER);
+		lock.lock();
+		try {
+			this.persisDirectory=persisDirectory;
+			this.journal=journal;
+			queue.clear();
+			queue.addAll(journal.getEntries(false, 0, -1));
+			dispatch();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	private void importTasks(TaskJournal journal, Resource dir) throws IOException {
+		Resource[] children = dir.listResources(FILTER);
+		if(children==null) return;
+		SpoolerTask task;
+		for(int i=0;i<children.length;i++) {
+			task=getTask(children[i],null);
+			if(task!=null)journal.store(task);
+			children[i].delete();
+		}
 	}
 
 	/**
 	 * @see railo.runtime.spooler.SpoolerEngine#add(railo.runtime.spooler.SpoolerTask)
 	 */
 	public void add(SpoolerTask task) {
-		//openTasks.add(task);
 		add++;
 		task.setNextExecution(System.currentTimeMillis());
-		task.setId(createId(task));
+		task.setId(journal.createId());
 		store(task);
-		start();
 	}
 
+	/**
+	 * sets the max number of tasks executed at the same time
+	 * @param maxThreads
+	 */
+	public void setMaxThreads(int maxThreads) {
+		if(maxThreads<1)maxThreads=1;
+		lock.lock();
+		try {
+			this.maxThreads=maxThreads;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return max number of tasks executed at the same time
+	 */
+	public int getMaxThreads() {
+		return maxThreads;
+	}
+
+	/**
+	 * adds a open task to the queue
+	 */
+	private void schedule(TaskJournal.Entry entry) {
+		lock.lock();
+		try {
+			queue.add(entry);
+			dispatch();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * wakes up a waiting worker or starts a new one, has to be called within the lock
+	 */
+	private void dispatch() {
+		TaskJournal.Entry next=queue.peek();
+		if(next==null) return;
+		if(idle>0) changed.signal();
+		else if(workers==0 || (workers<maxThreads && next.next<=System.currentTimeMillis())) {
+			Worker worker=new Worker(++workerCount);
+			workers++;
+			worker.start();
+		}
+	}
 
-	private void start() {
-		if(thread==null || !thread.isAlive()) {
-			thread=new SpoolerThread(this);
-			thread.setPriority(Thread.MIN_PRIORITY);
-			thread.start();
+	/**
+	 * waits for the next due task
+	 * @return the entry of the task or null, if the worker should end
+	 */
+	private TaskJournal.Entry take() {
+		lock.lock();
+		try {
+			long idleNanos=TimeUnit.MILLISECONDS.toNanos(IDLE_TIMEOUT);
+			long now,wait;
+			TaskJournal.Entry next;
+			while(true) {
+				next=queue.peek();
+				now=System.currentTimeMillis();
+				if(next!=null && next.next<=now) {
+					queue.poll();
+					if(!queue.isEmpty())dispatch();
+					return next;
+				}
+				// the last worker stays as long there are tasks waiting for the next execution
+				if(idleNanos<=0 && (queue.isEmpty() || workers>1)) {
+					workers--;
+					return null;
+				}
+				if(next==null)wait=idleNanos;
+				else wait=TimeUnit.MILLISECONDS.toNanos(next.next-now);
+				if(wait<=0) wait=idleNanos;
+
+				idle++;
+				try {
+					long left=changed.awaitNanos(wait);
+					idleNanos-=wait-left;
+				}
+				catch (InterruptedException e) {
+					workers--;
+					return null;
+				}
+				finally {
+					idle--;
+				}
+			}
 		}
-		else if(thread.sleeping) {
-			thread.interrupt();
+		finally {
+			lock.unlock();
 		}
-		//else print.out("- existing");
+	}
+
+	/**
+	 * executes the task of the given entry, when it was not changed or removed since it was added to the queue
+	 */
+	private void execute(TaskJournal.Entry entry) {
+		SpoolerTask task=journal.read(entry);
+		if(task!=null)execute(task);
 	}
 
 	/**
@@ -125,14 +237,6 @@ public class SpoolerEngineImpl implements SpoolerEngine {
 	
 	
 
-	private SpoolerTask getTaskById(Resource dir,String id) {
-		return getTask(dir.getRealResource(id+".tsk"),null);
-	}
-	
-	private SpoolerTask getTaskByName(Resource dir,String name) {
-		return getTask(dir.getRealResource(name),null);
-	}
-
 	private SpoolerTask getTask(Resource res, SpoolerTask defaultValue) {
 		InputStream is = null;
         ObjectInputStream ois = null;
@@ -153,52 +257,40 @@ public class SpoolerEngineImpl implements SpoolerEngine {
 		return task;
 	}
 
+	/**
+	 * writes the task to the journal, open tasks are added to the queue
+	 */
 	private void store(SpoolerTask task) {
-		ObjectOutputStream oos=null;
-		Resource persis = getFile(task);
-		if(persis.exists()) persis.delete();
-        try {
-	        oos = new ObjectOutputStream(persis.getOutputStream());
-	        oos.writeObject(task);
-        } 
-        catch (IOException e) {}
-        finally {
-        	IOUtil.closeEL(oos);
-        }
+		try {
+			TaskJournal.Entry entry = journal.store(task);
+			if(!entry.closed)schedule(entry);
+		}
+		catch (IOException e) {
+			log.error("remote-client", "can't store task "+task.subject()+":"+e.getMessage());
+		}
 	}
 
 	private void unstore(SpoolerTask task) {
-		Resource persis = getFile(task);
-		boolean exists=persis.exists();
-		if(exists) persis.delete(); 
-	}
-	private Resource getFile(SpoolerTask task) {
-		Resource dir = persisDirectory.getRealResource(task.closed()?"closed":"open");
-		dir.mkdirs();
-		return dir.getRealResource(task.getId()+".tsk");
-	}
-	
-	private String createId(SpoolerTask task) {
-		Resource dir = persisDirectory.getRealResource(task.closed()?"closed":"open");
-		dir.mkdirs();
-		
-		String id=null;
-		do{
-			id=StringUtil.addZeros(++count, 8);
-		}while(dir.getRealResource(id+".tsk").exists());
-		return id;
+		try {
+			journal.remove(task.getId());
+		}
+		catch (IOException e) {
+			log.error("remote-client", "can't remove task "+task.subject()+":"+e.getMessage());
+		}
 	}
-	
 
 	/**
+	 * the interval of the current execution plan doubles with every failed try within this plan (up to MAX_BACKOFF times the interval),
+	 * a random part of up to 10% is added, so tasks failed at the same time (mail server down) are not all tried again at the same time.
 	 * @see railo.runtime.spooler.SpoolerEngine#calculateNextExecution(railo.runtime.spooler.SpoolerTask)
 	 */
 	public long calculateNextExecution(SpoolerTask task) {
-		int _tries=0;
+		int _tries=0,before=0;
 		ExecutionPlan plan=null;
 		ExecutionPlan[] plans=task.getPlans();
 		
 		for(int i=0;i<plans.length;i++) {
+			before=_tries;
 			_tries+=plans[i].getTries();
 			if(_tries>task.tries()) {
 				plan=plans[i];
@@ -206,7 +298,15 @@ public class SpoolerEngineImpl implements SpoolerEngine {
 			}
 		}
 		if(plan==null)return -1;
-		return task.lastExecution()+(plan.getIntervall()*1000);
+		long interval=plan.getIntervall()*1000L;
+		int failed=Math.max(0,task.tries()-before-1);
+		long delay=interval;
+		for(int i=0;i<failed && delay<interval*MAX_BACKOFF;i++) {
+			delay*=2;
+		}
+		delay=Math.min(delay, interval*MAX_BACKOFF);
+		delay+=(long)(Math.random()*delay/10);
+		return task.lastExecution()+delay;
 	}
 
 	/**
@@ -225,17 +325,17 @@ public class SpoolerEngineImpl implements SpoolerEngine {
 	
 	// FUTURE add to interface
 	public Query getOpenTasksAsQuery(int startrow, int maxrow) throws PageException {
-		return getTasksAsQuery(createQuery(),openDirectory,startrow, maxrow);
+		return getTasksAsQuery(createQuery(),false,startrow, maxrow);
 	}
 
 	public Query getClosedTasksAsQuery(int startrow, int maxrow) throws PageException {
-		return getTasksAsQuery(createQuery(),closedDirectory,startrow, maxrow);
+		return getTasksAsQuery(createQuery(),true,startrow, maxrow);
 	}
 
 	public Query getAllTasksAsQuery(int startrow, int maxrow) throws PageException {
 		Query query = createQuery();
 		//print.o(startrow+":"+maxrow);
-		getTasksAsQuery(query,openDirectory,startrow, maxrow);
+		getTasksAsQuery(query,false,startrow, maxrow);
 		int records = query.getRecordcount();
 		if(maxrow<0) maxrow=Integer.MAX_VALUE;
 		// no open tasks
@@ -247,34 +347,28 @@ public class SpoolerEngineImpl implements SpoolerEngine {
 			startrow=1;
 			maxrow-=records;
 		}
-		if(maxrow>0)getTasksAsQuery(query,closedDirectory,startrow, maxrow);
+		if(maxrow>0)getTasksAsQuery(query,true,startrow, maxrow);
 		return query;
 	}
 	
 	public int getOpenTaskCount() {
-		return calculateSize(openDirectory);
+		return journal.size(false);
 	}
 	
 	public int getClosedTaskCount() {
-		return calculateSize(closedDirectory);
+		return journal.size(true);
 	}
 	
 	
-	private Query getTasksAsQuery(Query qry,Resource dir, int startrow, int maxrow) throws PageException {
-		String[] children = dir.list(FILTER);
-		if(ArrayUtil.isEmpty(children)) return qry;
-		if(children.length<maxrow)maxrow=children.length;
-		SpoolerTask task;
-		
-		int to=startrow+maxrow;
-		if(to>children.length)to=children.length;
+	private Query getTasksAsQuery(Query qry,boolean closed, int startrow, int maxrow) throws PageException {
 		if(startrow<1)startrow=1;
-		
-		for(int i=startrow-1;i<to;i++){
-			task = getTaskByName(dir, children[i]);
+		List<TaskJournal.Entry> entries = journal.getEntries(closed, startrow-1, maxrow);
+		Iterator<TaskJournal.Entry> it = entries.iterator();
+		SpoolerTask task;
+		while(it.hasNext()){
+			task = journal.read(it.next());
 			if(task!=null)addQueryRow(qry, task);
 		}
-		
 		return qry;
 	}
 	
@@ -351,126 +445,36 @@ public class SpoolerEngineImpl implements SpoolerEngine {
 		}
 	}*/
 	
-	class SpoolerThread extends Thread {
-
-		private SpoolerEngineImpl engine;
-		private boolean sleeping;
-		private int maxThreads=20;
+	/**
+	 * thread of the pool, executes due tasks until it was idle for a while
+	 */
+	class Worker extends Thread {
 
-		public SpoolerThread(SpoolerEngineImpl engine) {
-			this.engine=engine;
+		public Worker(int index) {
+			super("Spooler Worker "+index);
 			try{
 				this.setPriority(MIN_PRIORITY);
 			}
 			// can throw security exceptions
 			catch(Throwable t){}
 		}
-		
+
 		public void run() {
-			String[] taskNames;
-			//SpoolerTask[] tasks;
-			SpoolerTask task=null;
-			long nextExection;
-			ThreadLocalConfig.register(engine.config);
-			//ThreadLocalPageContext.register(engine.);
-			List<TaskThread> runningTasks=new ArrayList<TaskThread>();
-			TaskThread tt;
-			int adds;
-			
-			while(getOpenTaskCount()>0) {
-				adds=engine.adds();
-				taskNames = openDirectory.list(FILTER);
-				//tasks=engine.getOpenTasks();
-				nextExection=Long.MAX_VALUE;
-				for(int i=0;i<taskNames.length;i++) {
-					task=getTaskByName(openDirectory, taskNames[i]);
-					if(task==null) continue;
-					
-					if(task.nextExecution()<=System.currentTimeMillis()) {
-						//print.o("- execute");
-						tt=new TaskThread(engine,task);
-						tt.start();
-						runningTasks.add(tt);
+			ThreadLocalConfig.register(config);
+			try {
+				TaskJournal.Entry entry;
+				while((entry=take())!=null) {
+					try {
+						execute(entry);
 					}
-					else if(task.nextExecution()<nextExection && 
-							nextExection!=-1 && 
-							!task.closed()) 
-						nextExection=task.nextExecution();
-					nextExection=joinTasks(runningTasks,maxThreads,nextExection);
-				}
-				
-				nextExection=joinTasks(runningTasks,0,nextExection);
-				if(adds!=engine.adds()) continue;
-				
-				if(nextExection==Long.MAX_VALUE)break;
-				long sleep = nextExection-System.currentTimeMillis();
-				
-				//print.o("sleep:"+sleep+">"+(sleep/1000));
-				if(sleep>0)doWait(sleep);
-				
-				//if(sleep<0)break;
-			}
-			//print.o("end:"+getOpenTaskCount());
-		}
-
-		private long joinTasks(List<TaskThread> runningTasks, int maxThreads,long nextExection) {
-			if(runningTasks.size()>=maxThreads){
-				Iterator<TaskThread> it = runningTasks.iterator();
-				TaskThread tt;
-				SpoolerTask task;
-				while(it.hasNext()){
-					tt = it.next();
-					SystemUtil.join(tt);
-					task = tt.getTask();
-
-					if(task!=null && task.nextExecution()!=-1 && task.nextExecution()<nextExection && !task.closed()) {
-						nextExection=task.nextExecution();
+					catch(Throwable t) {
+						log.error("remote-client", t.getMessage());
 					}
 				}
-				runningTasks.clear();
-			}
-			return nextExection;
-		}
-
-		private void doWait(long sleep) {
-			//long start=System.currentTimeMillis();
-			try {
-				sleeping=true;
-				synchronized (this) {
-					wait(sleep);
-				}
-				
-			} catch (Throwable t) {
-				//
 			}
 			finally {
-				sleeping=false;
+				ThreadLocalConfig.release();
 			}
-			//print.out(sleep+":"+(System.currentTimeMillis()-start));
-		}
-		
-	}
-	
-	
-	class TaskThread extends Thread {
-		
-		private SpoolerEngineImpl engine;
-		private SpoolerTask task;
-
-		public TaskThread(SpoolerEngineImpl engine,SpoolerTask task) {
-			this.engine=engine;
-			this.task=task;
-		}
-		
-		public SpoolerTask getTask() {
-			return task;
-		}
-
-		public void run() {
-			ThreadLocalConfig.register(engine.config);
-			engine.execute(task);
-			ThreadLocalConfig.release();
-			
 		}
 	}
 	
@@ -485,11 +489,17 @@ public class SpoolerEngineImpl implements SpoolerEngine {
 	}
 	
 	public void removeAll() {
-		ResourceUtil.removeChildrenEL(openDirectory);
-		ResourceUtil.removeChildrenEL(closedDirectory);
-		SystemUtil.sleep(100);
-		ResourceUtil.removeChildrenEL(openDirectory);
-		ResourceUtil.removeChildrenEL(closedDirectory);
+		lock.lock();
+		try {
+			queue.clear();
+			journal.clear();
+		}
+		catch (IOException e) {
+			log.error("remote-client", "can't remove tasks:"+e.getMessage());
+		}
+		finally {
+			lock.unlock();
+		}
 	}
 	
 
@@ -512,8 +522,7 @@ public class SpoolerEngineImpl implements SpoolerEngine {
 	 * @see railo.runtime.spooler.SpoolerEngine#remove(java.lang.String)
 	 */
 	public void remove(String id) {
-		SpoolerTask task = getTaskById(openDirectory,id);
-		if(task==null)task=getTaskById(closedDirectory,id);
+		SpoolerTask task = journal.get(id);
 		if(task!=null)remove(task);
 	}
 
@@ -532,8 +541,7 @@ public class SpoolerEngineImpl implements SpoolerEngine {
 	 * @throws SpoolerException
 	 */
 	public PageException execute(String id) {
-		SpoolerTask task = getTaskById(openDirectory,id);
-		if(task==null)task=getTaskById(closedDirectory,id);
+		SpoolerTask task = journal.get(id);
 		if(task!=null){
 			return execute(task);
 		}
@@ -562,7 +570,6 @@ public class SpoolerEngineImpl implements SpoolerEngine {
 			if(task.nextExecution()==-1) {
 				//openTasks.remove(task);
 				//if(!closedTasks.contains(task))closedTasks.add(task);
-				unstore(task);
 				task.setClosed(true);
 				store(task);
 				task=null;
@@ -586,7 +593,13 @@ public class SpoolerEngineImpl implements SpoolerEngine {
 	 * @see railo.runtime.spooler.SpoolerEngine#setPersisDirectory(railo.commons.io.res.Resource)
 	 */
 	public void setPersisDirectory(Resource persisDirectory) {
-		this.persisDirectory = persisDirectory;
+		if(this.persisDirectory.equals(persisDirectory)) return;
+		try {
+			open(persisDirectory);
+		}
+		catch (IOException e) {
+			log.error("remote-client", "can't open spooler directory "+persisDirectory+":"+e.getMessage());
+		}
 	}
 
 	/**
@@ -0,0 +1,417 @@
+package railo.runtime.spooler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import railo.commons.io.IOUtil;
+import railo.commons.io.res.Resource;
+import railo.commons.lang.StringUtil;
+
+/**
+ * append only file holding the tasks of a spooler engine. Every change of a task appends a new record to the file,
+ * the position of the current record of every task is held in a index in memory, so a task is read without scanning the file
+ * and the number of tasks is known without listing anything.
+ * The index is built when the journal is opened by reading the record headers only,
+ * the file is rewritten when most of it are outdated records.
+ */
+final class TaskJournal {
+
+	private static final byte STORE=1;
+	private static final byte REMOVE=2;
+	private static final long MIN_COMPACT=1024*1024;
+
+	private static final Comparator POSITION=new Comparator() {
+		public int compare(Object left, Object right) {
+			long l=((Entry)left).start,r=((Entry)right).start;
+			return l<r?-1:(l==r?0:1);
+		}
+	};
+
+	private final Resource file;
+	private final Map<String,Entry> open=new LinkedHashMap<String,Entry>();
+	private final Map<String,Entry> closed=new LinkedHashMap<String,Entry>();
+	private long length;
+	// bytes of records no longer used
+	private long garbage;
+	private long count;
+	// the last write failed, the file can end with a incomplete record
+	private boolean broken;
+
+	TaskJournal(Resource file) throws IOException {
+		this.file=file;
+		load();
+	}
+
+	/**
+	 * @return a new id not used by any task of this journal
+	 */
+	synchronized String createId() {
+		String id;
+		do{
+			id=StringUtil.addZeros(++count, 8);
+		}while(open.containsKey(id) || closed.containsKey(id));
+		return id;
+	}
+
+	/**
+	 * writes the current state of the task
+	 * @param task
+	 * @return the index entry of the task
+	 * @throws IOException
+	 */
+	Entry store(SpoolerTask task) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		ObjectOutputStream oos = new ObjectOutputStream(baos);
+		oos.writeObject(task);
+		oos.close();
+		byte[] body=baos.toByteArray();
+
+		synchronized(this) {
+			Entry entry=new Entry(task.getId(),task.closed(),task.tries(),task.nextExecution(),length,headerLength(task.getId()),body.length);
+			append(STORE,entry,body);
+			put(entry);
+			compactIfNeeded();
+			return entry;
+		}
+	}
+
+	/**
+	 * removes the task with the given id
+	 * @param id
+	 * @throws IOException
+	 */
+	synchronized void remove(String id) throws IOException {
+		if(!open.containsKey(id) && !closed.containsKey(id)) return;
+		Entry entry=new Entry(id,false,0,-1,length,headerLength(id),0);
+		append(REMOVE,entry,new byte[0]);
+		garbage+=drop(id).size()+entry.size();
+		compactIfNeeded();
+	}
+
+	/**
+	 * @param id
+	 * @return current index entry of the task or null if there is no task with this id
+	 */
+	synchronized Entry getEntry(String id) {
+		Entry entry=open.get(id);
+		if(entry==null)entry=closed.get(id);
+		return entry;
+	}
+
+	/**
+	 * @param id
+	 * @return task with the given id or null
+	 */
+	SpoolerTask get(String id) {
+		Entry entry=getEntry(id);
+		return entry==null?null:read(entry);
+	}
+
+	/**
+	 * reads the task of the given entry
+	 * @param entry
+	 * @return the task or null, if the task cannot be read (anymore)
+	 */
+	SpoolerTask read(Entry entry) {
+		byte[] body;
+		synchronized(this) {
+			if(getEntry(entry.id)!=entry) return null;
+			InputStream is=null;
+			try {
+				is=file.getInputStream();
+				skip(is, entry.start+entry.header);
+				body=new byte[entry.length];
+				new DataInputStream(is).readFully(body);
+			}
+			catch(IOException e) {
+				return null;
+			}
+			finally {
+				IOUtil.closeEL(is);
+			}
+		}
+		ObjectInputStream ois=null;
+		try {
+			ois = new ObjectInputStream(new ByteArrayInputStream(body));
+			return (SpoolerTask) ois.readObject();
+		}
+		catch(Throwable t) {
+			return null;
+		}
+		finally {
+			IOUtil.closeEL(ois);
+		}
+	}
+
+	/**
+	 * @param closed
+	 * @return number of open or closed tasks
+	 */
+	synchronized int size(boolean closed) {
+		return closed?this.closed.size():open.size();
+	}
+
+	/**
+	 * returns a part of the open or closed tasks in the order they are added
+	 * @param closed
+	 * @param from index of the first entry returned (0 based)
+	 * @param max max number of entries returned, less than 0 for all
+	 * @return entries
+	 */
+	synchronized List<Entry> getEntries(boolean closed, int from, int max) {
+		Map<String,Entry> map=closed?this.closed:open;
+		List<Entry> list=new ArrayList<Entry>();
+		if(max<0)max=Integer.MAX_VALUE;
+		Iterator<Entry> it = map.values().iterator();
+		int index=0;
+		while(it.hasNext() && list.size()<max) {
+			if(index++<from)it.next();
+			else list.add(it.next());
+		}
+		return list;
+	}
+
+	/**
+	 * removes all tasks
+	 * @throws IOException
+	 */
+	synchronized void clear() throws IOException {
+		open.clear();
+		closed.clear();
+		if(file.exists())file.delete();
+		length=0;
+		garbage=0;
+		broken=false;
+	}
+
+	private void put(Entry entry) {
+		Entry old=drop(entry.id);
+		if(old!=null)garbage+=old.size();
+		if(entry.closed)closed.put(entry.id, entry);
+		else open.put(entry.id, entry);
+	}
+
+	private Entry drop(String id) {
+		Entry old=open.remove(id);
+		if(old==null)old=closed.remove(id);
+		return old;
+	}
+
+	private void append(byte op, Entry entry, byte[] body) throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream(entry.header+body.length);
+		DataOutputStream dos=new DataOutputStream(baos);
+		dos.writeByte(op);
+		dos.writeUTF(entry.id);
+		dos.writeBoolean(entry.closed);
+		dos.writeInt(entry.tries);
+		dos.writeLong(entry.next);
+		dos.writeInt(body.length);
+		dos.write(body);
+		dos.flush();
+
+		if(broken)compact();
+		Resource parent = file.getParentResource();
+		if(parent!=null && !parent.exists())parent.mkdirs();
+		// the file is locked as long the stream is open, so it is opened for every record
+		// one write per record, so a failing write or a crash only leaves a incomplete record at the end of the file,
+		// it is removed by the next rewrite of the file
+		OutputStream os=null;
+		try {
+			os=file.getOutputStream(true);
+			os.write(baos.toByteArray());
+		}
+		catch(IOException e) {
+			broken=true;
+			throw e;
+		}
+		finally {
+			IOUtil.closeEL(os);
+		}
+		length+=baos.size();
+	}
+
+	private void compactIfNeeded() throws IOException {
+		if(garbage>MIN_COMPACT && garbage>length/2)compact();
+	}
+
+	/**
+	 * reads the headers of all records and builds the index
+	 */
+	private void load() throws IOException {
+		Resource tmp=getTempFile();
+		if(!file.exists() && tmp.exists())tmp.moveTo(file);
+		if(!file.exists()) return;
+
+		DataInputStream dis=new DataInputStream(new BufferedInputStream(file.getInputStream()));
+		long pos=0;
+		try {
+			int op;
+			String id;
+			Entry entry;
+			while((op=dis.read())!=-1) {
+				id=dis.readUTF();
+				entry=new Entry(id,dis.readBoolean(),dis.readInt(),dis.readLong(),pos,headerLength(id),dis.readInt());
+				skip(dis,entry.length);
+				pos+=entry.size();
+				if(op==STORE) {
+					put(entry);
+					updateCount(id);
+				}
+				else {
+					Entry old=drop(id);
+					if(old!=null)garbage+=old.size();
+					garbage+=entry.size();
+				}
+			}
+		}
+		// the last record was not written completely
+		catch(EOFException e) {
+			broken=true;
+		}
+		finally {
+			IOUtil.closeEL(dis);
+		}
+		length=pos;
+		if(broken)compact();
+		else compactIfNeeded();
+	}
+
+	/**
+	 * writes a new file containing only the current record of every task
+	 */
+	private void compact() throws IOException {
+		List<Entry> entries=new ArrayList<Entry>(open.size()+closed.size());
+		entries.addAll(open.values());
+		entries.addAll(closed.values());
+		Collections.sort(entries, POSITION);
+
+		Resource tmp=getTempFile();
+		InputStream is=new BufferedInputStream(file.getInputStream());
+		OutputStream os=new BufferedOutputStream(tmp.getOutputStream());
+		long pos=0,newPos=0;
+		Entry entry;
+		try {
+			byte[] buffer=new byte[0xffff];
+			int len,size;
+			Iterator<Entry> it = entries.iterator();
+			while(it.hasNext()) {
+				entry=it.next();
+				skip(is,entry.start-pos);
+				size=entry.size();
+				while(size>0 && (len=is.read(buffer,0,Math.min(size,buffer.length)))!=-1) {
+					os.write(buffer,0,len);
+					size-=len;
+				}
+				pos=entry.start+entry.size();
+				// the entry keeps its identity, it is also referenced by the queue of the engine
+				entry.start=newPos;
+				newPos+=entry.size();
+			}
+		}
+		finally {
+			IOUtil.closeEL(is);
+			IOUtil.closeEL(os);
+		}
+		file.delete();
+		tmp.moveTo(file);
+		length=newPos;
+		garbage=0;
+		broken=false;
+	}
+
+	private Resource getTempFile() {
+		return file.getParentResource().getRealResource(file.getName()+".tmp");
+	}
+
+	private void updateCount(String id) {
+		try {
+			long c=Long.parseLong(id);
+			if(c>count)count=c;
+		}
+		catch(NumberFormatException e) {}
+	}
+
+	private static void skip(InputStream is, long len) throws IOException {
+		long skipped;
+		while(len>0) {
+			skipped=is.skip(len);
+			if(skipped<=0) {
+				if(is.read()==-1) throw new EOFException();
+				skipped=1;
+			}
+			len-=skipped;
+		}
+	}
+
+	/**
+	 * length of the record header for the given id (op, id as modified UTF-8, closed, tries, next execution and body length)
+	 */
+	private static int headerLength(String id) {
+		int len=0;
+		char c;
+		for(int i=0;i<id.length();i++) {
+			c=id.charAt(i);
+			if(c>=0x0001 && c<=0x007F) len++;
+			else if(c>0x07FF) len+=3;
+			else len+=2;
+		}
+		return 1+2+len+1+4+8+4;
+	}
+
+	/**
+	 * index entry of a task, a new entry is created with every change of the task
+	 */
+	static final class Entry implements Comparable {
+
+		final String id;
+		final boolean closed;
+		final int tries;
+		final long next;
+		// only changed within the lock of the journal
+		private long start;
+		private final int header;
+		private final int length;
+
+		private Entry(String id,boolean closed, int tries, long next, long start, int header, int length) {
+			this.id=id;
+			this.closed=closed;
+			this.tries=tries;
+			this.next=next;
+			this.start=start;
+			this.header=header;
+			this.length=length;
+		}
+
+		private int size() {
+			return header+length;
+		}
+
+		/**
+		 * order of execution, first by the next execution, then tasks with less tries first
+		 * @see java.lang.Comparable#compareTo(java.lang.Object)
+		 */
+		public int compareTo(Object o) {
+			Entry other=(Entry) o;
+			if(next!=other.next) return next<other.next?-1:1;
+			if(tries!=other.tries) return tries<other.tries?-1:1;
+			return id.compareTo(other.id);
+		}
+	}
+}
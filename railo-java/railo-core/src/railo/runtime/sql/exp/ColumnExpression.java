@@ -12,6 +12,7 @@ public class ColumnExpression extends ExpressionSupport implements Column {
 	private boolean hasBracked;
 	private int columnIndex;
 	private QueryColumn col;
+	private Query qr;
 
 	public ColumnExpression(String value, int columnIndex) {
 		this.column=value;
@@ -73,16 +74,31 @@ public class ColumnExpression extends ExpressionSupport implements Column {
 	}
 	
 	public Object getValue(Query qr, int row) throws PageException {
-		if(col==null)col = qr.getColumn(getColumn());
+		if(col==null || this.qr!=qr){
+			col = getColumn(qr,null);
+			if(col==null) col = qr.getColumn(getColumn());
+			this.qr=qr;
+		}
 		return col.get(row);
 	}
 	
 	public Object getValue(Query qr, int row, Object defaultValue) {
-		if(col==null){
-			col = qr.getColumn(getColumn(),null);
+		if(col==null || this.qr!=qr){
+			col = getColumn(qr,null);
 			if(col==null) return defaultValue;
+			this.qr=qr;
 		}
 		return col.get(row,defaultValue);
 	}
 
+	/**
+	 * the qualified name (table.column) is used when the query contains such a column (joined queries), otherwise the column name 
+	 */
+	private QueryColumn getColumn(Query qr, QueryColumn defaultValue) {
+		QueryColumn c=null;
+		if(table!=null) c=qr.getColumn(getFullName(),null);
+		if(c==null) c=qr.getColumn(getColumn(),null);
+		return c==null?defaultValue:c;
+	}
+
 }
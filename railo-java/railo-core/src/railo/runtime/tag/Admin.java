@@ -80,9 +80,11 @@ import railo.runtime.gateway.GatewayEngineImpl;
 import railo.runtime.gateway.GatewayEntry;
 import railo.runtime.gateway.GatewayEntryImpl;
 import railo.runtime.i18n.LocaleFactory;
+import railo.runtime.interpreter.ExpressionCache;
 import railo.runtime.listener.AppListenerUtil;
 import railo.runtime.listener.ApplicationContextUtil;
 import railo.runtime.listener.ApplicationListener;
+import railo.runtime.lock.LockManagerImpl;
 import railo.runtime.net.mail.SMTPException;
 import railo.runtime.net.mail.SMTPVerifier;
 import railo.runtime.net.mail.Server;
@@ -93,7 +95,9 @@ import railo.runtime.op.Caster;
 import railo.runtime.op.Decision;
 import railo.runtime.op.date.DateCaster;
 import railo.runtime.orm.ORMConfiguration;
+import railo.runtime.regex.RegexUtil;
 import railo.runtime.reflection.Reflector;
+import railo.runtime.schedule.SchedulerImpl;
 import railo.runtime.security.SecurityManager;
 import railo.runtime.security.SecurityManagerImpl;
 import railo.runtime.spooler.ExecutionPlan;
@@ -112,6 +116,7 @@ import railo.runtime.type.StructImpl;
 import railo.runtime.type.dt.DateTime;
 import railo.runtime.type.dt.DateTimeImpl;
 import railo.runtime.type.dt.TimeSpan;
+import railo.runtime.type.scope.ClientDatasourceWriter;
 import railo.runtime.type.scope.Cluster;
 import railo.runtime.type.scope.ClusterEntryImpl;
 import railo.runtime.type.scope.Undefined;
@@ -476,6 +481,19 @@ public final class Admin extends TagImpl implements DynamicAttributes {
         else if(check("getCacheConnection",     ACCESS_FREE) && check2(ACCESS_READ  )) doGetCacheConnection();
         else if(check("getCacheDefaultConnection",ACCESS_FREE) && check2(ACCESS_READ  )) doGetCacheDefaultConnection();
         else if(check("getDatasources",         ACCESS_FREE) && check2(ACCESS_READ  )) doGetDatasources();
+        else if(check("getDatasourcePoolMetrics",ACCESS_FREE) && check2(ACCESS_READ  )) doGetDatasourcePoolMetrics();
+        else if(check("getRegexCacheInfo",		ACCESS_FREE) && check2(ACCESS_READ  )) doGetRegexCacheInfo();
+        else if(check("getExpressionCacheInfo",	ACCESS_FREE) && check2(ACCESS_READ  )) doGetExpressionCacheInfo();
+        else if(check("getPageContextPoolInfo",	ACCESS_FREE) && check2(ACCESS_READ  )) doGetPageContextPoolInfo();
+        else if(check("getLockInfo",			ACCESS_FREE) && check2(ACCESS_READ  )) doGetLockInfo();
+        else if(check("getHttpConnectionPoolInfo",ACCESS_FREE) && check2(ACCESS_READ  )) doGetHttpConnectionPoolInfo();
+        else if(check("getProfile",				ACCESS_FREE) && check2(ACCESS_READ  )) doGetProfile();
+        else if(check("getProfileFolded",		ACCESS_FREE) && check2(ACCESS_READ  )) doGetProfileFolded();
+        else if(check("resetProfile",			ACCESS_FREE) && check2(ACCESS_WRITE  )) doResetProfile();
+        else if(check("getScheduledTaskStatistics",ACCESS_FREE) && check2(ACCESS_READ  )) doGetScheduledTaskStatistics();
+        else if(check("getThreadStatistics",	ACCESS_FREE) && check2(ACCESS_READ  )) doGetThreadStatistics();
+        else if(check("getConfigLoadStatistics",ACCESS_FREE) && check2(ACCESS_READ  )) doGetConfigLoadStatistics();
+        else if(check("getClientStorageStatistics",ACCESS_FREE) && check2(ACCESS_READ  )) doGetClientStorageStatistics();
         else if(check("getRemoteClients",       ACCESS_FREE) && check2(ACCESS_READ  )) doGetRemoteClients();
         else if(check("getRemoteClient",       	ACCESS_FREE) && check2(ACCESS_READ  )) doGetRemoteClient();
         else if(check("getRemoteClientUsage",   ACCESS_FREE) && check2(ACCESS_READ  )) doGetRemoteClientUsage();
@@ -2965,6 +2983,63 @@ private void doGetMappings() throws PageException {
         }
         throw new ApplicationException("there is no datasource with name ["+name+"]");
     }
+    /**
+     * @throws PageException
+     * 
+     */
+    private void doGetDatasourcePoolMetrics() throws PageException {
+    	pageContext.setVariable(getString("admin",action,"returnVariable"),config.getDatasourceConnectionPool().getMetrics());
+    }
+    
+    private void doGetRegexCacheInfo() throws PageException {
+    	pageContext.setVariable(getString("admin",action,"returnVariable"),RegexUtil.getCacheInfo());
+    }
+    
+    private void doGetExpressionCacheInfo() throws PageException {
+    	pageContext.setVariable(getString("admin",action,"returnVariable"),ExpressionCache.getInfo());
+    }
+    
+    private void doGetHttpConnectionPoolInfo() throws PageException {
+    	pageContext.setVariable(getString("admin",action,"returnVariable"),((ConfigWebImpl)pageContext.getConfig()).getHttpConnectionPool().getInfo());
+    }
+    
+    private void doGetLockInfo() throws PageException {
+    	pageContext.setVariable(getString("admin",action,"returnVariable"),((LockManagerImpl)pageContext.getConfig().getLockManager()).getStatistics());
+    }
+    
+    private void doGetProfile() throws PageException {
+    	pageContext.setVariable(getString("admin",action,"returnVariable"),config.getExecutionLogFactory().getProfile().getInfo());
+    }
+    
+    private void doGetProfileFolded() throws PageException {
+    	pageContext.setVariable(getString("admin",action,"returnVariable"),config.getExecutionLogFactory().getProfile().toFolded());
+    }
+    
+    private void doResetProfile() {
+    	config.getExecutionLogFactory().getProfile().reset();
+    }
+    
+    private void doGetScheduledTaskStatistics() throws PageException {
+    	pageContext.setVariable(getString("admin",action,"returnVariable"),((SchedulerImpl)pageContext.getConfig().getScheduler()).getStatistics());
+    }
+    
+    private void doGetThreadStatistics() throws PageException {
+    	pageContext.setVariable(getString("admin",action,"returnVariable"),((CFMLFactoryImpl)pageContext.getConfig().getFactory()).getChildThreadExecutor().getStatistics());
+    }
+    
+    private void doGetConfigLoadStatistics() throws PageException {
+    	Struct sct=config.getLoadStatistics();
+    	pageContext.setVariable(getString("admin",action,"returnVariable"),sct==null?new StructImpl():sct.duplicate(true));
+    }
+    
+    private void doGetClientStorageStatistics() throws PageException {
+    	pageContext.setVariable(getString("admin",action,"returnVariable"),ClientDatasourceWriter.getInstance().getStatistics());
+    }
+    
+    private void doGetPageContextPoolInfo() throws PageException {
+    	pageContext.setVariable(getString("admin",action,"returnVariable"),((CFMLFactoryImpl)pageContext.getConfig().getFactory()).getPageContextPoolInfo());
+    }
+    
     private void doGetRemoteClient() throws PageException {
         
         String url=getString("admin",action,"url");
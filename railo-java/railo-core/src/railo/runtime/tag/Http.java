@@ -7,18 +7,19 @@ import java.io.InputStream;
 import java.io.PrintStream;
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.util.ArrayList;
 
+import org.apache.commons.httpclient.ConnectTimeoutException;
+import org.apache.commons.httpclient.ConnectionPoolTimeoutException;
 import org.apache.commons.httpclient.Cookie;
 import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HostConfiguration;
 import org.apache.commons.httpclient.HttpClient;
-import org.apache.commons.httpclient.HttpConnectionManager;
 import org.apache.commons.httpclient.HttpMethod;
 import org.apache.commons.httpclient.HttpState;
 import org.apache.commons.httpclient.NameValuePair;
-import org.apache.commons.httpclient.SimpleHttpConnectionManager;
 import org.apache.commons.httpclient.UsernamePasswordCredentials;
 import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
 import org.apache.commons.httpclient.methods.DeleteMethod;
@@ -46,12 +47,16 @@ import railo.commons.net.ResourcePart;
 import railo.commons.net.ResourcePartSource;
 import railo.commons.net.ResourceRequestEntity;
 import railo.commons.net.URLEncoder;
+import railo.runtime.PageContextImpl;
+import railo.runtime.config.ConfigWebImpl;
+import railo.runtime.engine.Cancelable;
 import railo.runtime.exp.ApplicationException;
 import railo.runtime.exp.ExpressionException;
 import railo.runtime.exp.HTTPException;
 import railo.runtime.exp.NativeException;
 import railo.runtime.exp.PageException;
 import railo.runtime.ext.tag.BodyTagImpl;
+import railo.runtime.net.http.HttpConnectionPool;
 import railo.runtime.op.Caster;
 import railo.runtime.op.Decision;
 import railo.runtime.text.csv.CSVParser;
@@ -574,57 +579,42 @@ public final class Http extends BodyTagImpl {
 	
 	
 	private void _doEndTag(Struct cfhttp) throws PageException, IOException	{
-		HttpConnectionManager manager=new SimpleHttpConnectionManager();//MultiThreadedHttpConnectionManager();
-		HttpClient client = new HttpClient(manager);
+		// the connections are shared by all calls of the web context, the timeout is handled by the socket (no extra thread)
+		HttpConnectionPool pool=((ConfigWebImpl)pageContext.getConfig()).getHttpConnectionPool();
+		HttpClient client = pool.getClient();
 		HttpMethod httpMethod=createMethod(this,client,url,port);
+		long start=System.currentTimeMillis();
+		PageContextImpl pci=(PageContextImpl) pageContext;
+		Cancelable oldCancelable=null;
 		try {
 		
 /////////////////////////////////////////// EXECUTE /////////////////////////////////////////////////
 		Executor e = new Executor(this,client,httpMethod,redirect);
-		if(timeout<0){
-			try{
-				e.execute();
-			}
-			
-			catch(Throwable t){
-				if(!throwonerror){
-					setUnknownHost(cfhttp, t);
-					return;
-				}
-				throw toPageException(t);
-				
-			}
+		// the call (including reading the response) is aborted when the request runs into a timeout
+		oldCancelable=pci.setCancelable(e);
+		try{
+			e.execute();
 		}
-		else {
-			e.start();
-			try {
-				synchronized(this){//print.err(timeout);
-					this.wait(timeout);
-				}
-			} catch (InterruptedException ie) {
-				throw Caster.toPageException(ie);
-			}
-			if(e.t!=null){
-				if(!throwonerror){
-					setUnknownHost(cfhttp,e.t);
-					return;
-				}
-				throw toPageException(e.t);	
-			}
-			
+		catch(Throwable t){
+			// a new method was created by a redirect, this one holds the connection now
 			httpMethod=e.httpMethod;
-			
-			
-			if(!e.done){
-				httpMethod.abort();
+			pci.checkRequestTimeout();
+			if(isTimeout(t)) {
+				pool.record(System.currentTimeMillis()-start, false, true);
 				if(throwonerror)
 					throw new HTTPException("408 Request Time-out","there is a timeout occurred in tag http",408);
 				setRequestTimeout(cfhttp);	
 				return;
-				//throw new ApplicationException("timeout");	
 			}
+			pool.record(System.currentTimeMillis()-start, false, false);
+			if(!throwonerror){
+				setUnknownHost(cfhttp, t);
+				return;
+			}
+			throw toPageException(t);
 		}
 		httpMethod=e.httpMethod;
+		pool.record(System.currentTimeMillis()-start, true, false);
 /////////////////////////////////////////// EXECUTE /////////////////////////////////////////////////
 		int status = httpMethod.getStatusCode();
 		
@@ -815,6 +805,7 @@ public final class Http extends BodyTagImpl {
         }
 		}
 		finally {
+			pci.setCancelable(oldCancelable);
 			releaseConnection(httpMethod);
 		}
 	    
@@ -857,6 +848,10 @@ public final class Http extends BodyTagImpl {
 		cfhttp.setEL(TEXT,Boolean.TRUE);
 	}
 
+	private static boolean isTimeout(Throwable t) {
+		return t instanceof SocketTimeoutException || t instanceof ConnectTimeoutException || t instanceof ConnectionPoolTimeoutException;
+	}
+
 	private void setRequestTimeout(Struct cfhttp) {
 		cfhttp.setEL(CHARSET,"");
 		cfhttp.setEL(ERROR_DETAIL,"");
@@ -1130,9 +1125,11 @@ public final class Http extends BodyTagImpl {
 		// set User Agent
 			httpMethod.setRequestHeader("User-Agent",http.useragent);
 		
-	// set timeout
-		if(http.timeout>0L)client.setConnectionTimeout((int)http.timeout);
-		// for 3.0 client.getParams().setConnectionManagerTimeout(timeout);
+	// set timeout (the connection timeout is defined by the connection pool)
+		if(http.timeout>0L) {
+			httpMethod.getParams().setSoTimeout((int)http.timeout);
+			client.getParams().setConnectionManagerTimeout(http.timeout);
+		}
 		
 	// set Query String
 		//NameValuePair[] qsPairs=new NameValuePair[arrQS.length+listQS.size()];
@@ -1394,14 +1391,12 @@ class MultipartRequestEntityFlex extends MultipartRequestEntity {
 	}
 }
 
-class Executor extends Thread {
+class Executor implements Cancelable {
 	
 	 final Http http;
 	 final HttpClient client;
-	 HttpMethod httpMethod;
+	 volatile HttpMethod httpMethod;
 	 final boolean redirect;
-	 Throwable t;
-	 boolean done;
 
 	public Executor(Http http, HttpClient client,HttpMethod httpMethod,boolean redirect) {
 		this.http=http;
@@ -1411,18 +1406,6 @@ class Executor extends Thread {
 	}
 	
 
-	public void run(){
-		try {
-			execute();
-			done=true;
-			synchronized(http){
-				http.notify();
-			}
-		} catch (Throwable t) {
-			this.t=t;
-		}
-	}
-	
 	public void execute() throws IOException, PageException	{
 		// Execute Request 
 		
@@ -1436,4 +1419,12 @@ class Executor extends Thread {
         }
         
 	}
+
+	/**
+	 * aborts the running call, used when the request runs into a timeout
+	 * @see railo.runtime.engine.Cancelable#cancel()
+	 */
+	public void cancel() {
+		httpMethod.abort();
+	}
 }
\ No newline at end of file
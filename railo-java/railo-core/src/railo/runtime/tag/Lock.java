@@ -1,5 +1,6 @@
 package railo.runtime.tag;
 
+import railo.runtime.PageContextImpl;
 import railo.runtime.exp.ApplicationException;
 import railo.runtime.exp.LockException;
 import railo.runtime.exp.PageException;
@@ -245,6 +246,8 @@ public final class Lock extends BodyTagTryCatchFinallyImpl {
 			return SKIP_BODY;
 		} 
 		catch (InterruptedException e) {
+			// interrupted because the request run into a timeout, the request has to end and not only the lock
+			((PageContextImpl)pageContext).checkRequestTimeout();
 		    
 		    cflock.set("succeeded",Boolean.FALSE);
 		    cflock.set("errortext",e.getMessage());
@@ -4,6 +4,7 @@ import java.util.Iterator;
 
 import railo.commons.io.SystemUtil;
 import railo.commons.lang.StringUtil;
+import railo.runtime.CFMLFactoryImpl;
 import railo.runtime.Page;
 import railo.runtime.PageContext;
 import railo.runtime.PageContextImpl;
@@ -18,7 +19,6 @@ import railo.runtime.op.Caster;
 import railo.runtime.spooler.ExecutionPlan;
 import railo.runtime.spooler.ExecutionPlanImpl;
 import railo.runtime.thread.ChildSpoolerTask;
-import railo.runtime.thread.ChildThread;
 import railo.runtime.thread.ChildThreadImpl;
 import railo.runtime.thread.ThreadUtil;
 import railo.runtime.thread.ThreadsImpl;
@@ -288,8 +288,8 @@ public final class ThreadTag extends BodyTagImpl implements DynamicAttributes {
 				ChildThreadImpl ct = new ChildThreadImpl((PageContextImpl) pc,currentPage,name,threadIndex,attrs,false);
 				pc.setThreadScope(name,new ThreadsImpl(ct));
 				ct.setPriority(priority);
-				ct.setDaemon(false);
-				ct.start();
+				ConfigImpl config=(ConfigImpl)pc.getConfig();
+				((CFMLFactoryImpl)config.getFactory()).getChildThreadExecutor().execute(ct,config);
 			}
 			else {
 				ChildThreadImpl ct = new ChildThreadImpl((PageContextImpl) pc,currentPage,name,threadIndex,attrs,true);
@@ -317,7 +317,7 @@ public final class ThreadTag extends BodyTagImpl implements DynamicAttributes {
     private void doJoin() throws ApplicationException {
     	String[] names=List.listToStringArray(lcName, ',');
     	
-    	ChildThread ct;
+    	ChildThreadImpl ct;
     	Threads ts;
     	for(int i=0;i<names.length;i++) {
     		if(StringUtil.isEmpty(names[i],true))continue;
@@ -325,12 +325,11 @@ public final class ThreadTag extends BodyTagImpl implements DynamicAttributes {
     		ts = mpc.getThreadScope(names[i]);
     		if(ts==null)
     			throw new ApplicationException("there is no thread running with the name ["+names[i]+"]");
-    		ct=ts.getChildThread();
+    		ct=(ChildThreadImpl)ts.getChildThread();
     		
-    		if(ct.isAlive()) {
+    		if(!ct.isDone()) {
     			try {
-					if(timeout>0)ct.join(timeout);
-					else ct.join();
+					ct.waitFor(timeout);
 				} 
     			catch (InterruptedException e) {}
     		}
@@ -344,11 +343,10 @@ public final class ThreadTag extends BodyTagImpl implements DynamicAttributes {
 		
 		if(ts==null)
 			throw new ApplicationException("there is no thread running with the name ["+name+"]");
-		ChildThread ct = ts.getChildThread();
+		ChildThreadImpl ct = (ChildThreadImpl)ts.getChildThread();
 		
-		if(ct.isAlive()){
-			ct.terminated();
-			ct.stop();
+		if(!ct.isDone()){
+			ct.terminate();
 		}
 		
 	}
@@ -0,0 +1,280 @@
+package railo.runtime.thread;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import railo.runtime.config.ConfigImpl;
+import railo.runtime.exp.ApplicationException;
+import railo.runtime.exp.PageException;
+import railo.runtime.type.Struct;
+import railo.runtime.type.StructImpl;
+
+/**
+ * executes the cfthread threads of a web context with a bounded pool of threads,
+ * threads exceeding the pool wait in a bounded queue, when the queue is full as well the rejection policy decides.
+ * Pool and queue size are read from the config with every execution, so a change of the config takes effect directly.
+ */
+public final class ChildThreadExecutor {
+
+	/**
+	 * the thread is executed by the thread creating it, so the request creating to many threads is slowed down
+	 */
+	public static final short REJECTION_CALLER=1;
+	/**
+	 * the thread is not executed, the creation of the thread fails with an exception
+	 */
+	public static final short REJECTION_ERROR=2;
+	/**
+	 * the thread is executed by a new thread outside the pool
+	 */
+	public static final short REJECTION_THREAD=3;
+
+	private static final long[] BUCKETS=new long[]{10,100,1000,10000,60000,300000};
+
+	// set for the threads of the pool while they execute a cfthread
+	private static final ThreadLocal<Boolean> worker=new ThreadLocal<Boolean>();
+
+	private ThreadPoolExecutor executor;
+	private int poolMax;
+	private int queueMax;
+	private boolean virtual;
+
+	private final AtomicInteger running=new AtomicInteger();
+	private final AtomicLong submitted=new AtomicLong();
+	private final AtomicLong executions=new AtomicLong();
+	private final AtomicLong failures=new AtomicLong();
+	private final AtomicLong callerRuns=new AtomicLong();
+	private final AtomicLong threadRuns=new AtomicLong();
+	private final AtomicLong rejected=new AtomicLong();
+	private final AtomicLong time=new AtomicLong();
+	private final AtomicLong maxTime=new AtomicLong();
+	private final AtomicLong waitTime=new AtomicLong();
+	private final AtomicLong maxWaitTime=new AtomicLong();
+	private final AtomicLongArray histogram=new AtomicLongArray(BUCKETS.length+1);
+
+	/**
+	 * executes the given thread within the pool
+	 * @param ct thread to execute
+	 * @param config config of the web context
+	 * @throws PageException the thread was rejected (rejection policy error)
+	 */
+	public void execute(ChildThreadImpl ct, ConfigImpl config) throws PageException {
+		final Job job=new Job(ct);
+		submitted.incrementAndGet();
+
+		// a cfthread started by a cfthread executed by the pool gets its own thread, 
+		// when all threads of the pool are parents waiting for their children (join), the children in the queue would never be executed
+		if(worker.get()!=null) {
+			executeThread(job,ct);
+			return;
+		}
+		try {
+			getExecutor(config).execute(new Runnable() {
+				public void run() {
+					worker.set(Boolean.TRUE);
+					try {
+						job.run();
+					}
+					finally {
+						worker.remove();
+					}
+				}
+			});
+			return;
+		}
+		catch(RejectedExecutionException e) {}
+
+		short rejection=config.getThreadRejection();
+		if(rejection==REJECTION_ERROR) {
+			rejected.incrementAndGet();
+			throw new ApplicationException("could not start thread ["+ct.getTagName()+"], all "+poolMax+" threads of the pool are busy and "+queueMax+" threads are waiting",
+					"the size of the pool and the queue is defined with the attributes thread-pool-max and thread-queue-max of the application settings");
+		}
+		if(rejection==REJECTION_THREAD) {
+			executeThread(job,ct);
+			return;
+		}
+		callerRuns.incrementAndGet();
+		job.run();
+	}
+
+	/**
+	 * executes the given job with a new thread outside the pool
+	 */
+	private void executeThread(Job job, ChildThreadImpl ct) {
+		threadRuns.incrementAndGet();
+		Thread t=new Thread(job,ct.getName());
+		t.setPriority(ct.getPriority());
+		t.setDaemon(false);
+		t.start();
+	}
+
+	private synchronized ThreadPoolExecutor getExecutor(ConfigImpl config) {
+		int poolMax=Math.max(1,config.getThreadPoolMax());
+		int queueMax=Math.max(0,config.getThreadQueueMax());
+		boolean virtual=config.isThreadVirtual();
+
+		// the queue cannot be resized, a new pool is created, the old one ends after executing the threads waiting in its queue
+		if(executor==null || queueMax!=this.queueMax || virtual!=this.virtual) {
+			if(executor!=null) executor.shutdown();
+			ThreadFactory factory=virtual?createVirtualThreadFactory():null;
+			if(factory==null) factory=new WorkerFactory();
+			BlockingQueue<Runnable> queue;
+			if(queueMax==0) queue=new SynchronousQueue<Runnable>();
+			else queue=new LinkedBlockingQueue<Runnable>(queueMax);
+			executor=new ThreadPoolExecutor(poolMax, poolMax, 60, TimeUnit.SECONDS, queue, factory);
+		}
+		else if(poolMax>this.poolMax) {
+			executor.setMaximumPoolSize(poolMax);
+			executor.setCorePoolSize(poolMax);
+		}
+		else if(poolMax<this.poolMax) {
+			executor.setCorePoolSize(poolMax);
+			executor.setMaximumPoolSize(poolMax);
+		}
+		this.poolMax=poolMax;
+		this.queueMax=queueMax;
+		this.virtual=virtual;
+		return executor;
+	}
+
+	/**
+	 * @return a factory for virtual threads or null when the JVM does not support them (available since Java 21)
+	 */
+	private static ThreadFactory createVirtualThreadFactory() {
+		try {
+			Method ofVirtual=Thread.class.getMethod("ofVirtual", new Class[0]);
+			Class builder=Class.forName("java.lang.Thread$Builder");
+			Object obj=ofVirtual.invoke(null, new Object[0]);
+			obj=builder.getMethod("name", new Class[]{String.class,long.class}).invoke(obj, new Object[]{"cfthread-worker-",new Long(1)});
+			return (ThreadFactory) builder.getMethod("factory", new Class[0]).invoke(obj, new Object[0]);
+		}
+		catch(Throwable t) {
+			return null;
+		}
+	}
+
+	/**
+	 * @param str
+	 * @param defaultValue
+	 * @return rejection policy matching the given name (caller,error,thread)
+	 */
+	public static short toRejection(String str, short defaultValue) {
+		if(str==null) return defaultValue;
+		str=str.trim().toLowerCase();
+		if("caller".equals(str) || "caller-runs".equals(str))	return REJECTION_CALLER;
+		if("error".equals(str) || "abort".equals(str))			return REJECTION_ERROR;
+		if("thread".equals(str))								return REJECTION_THREAD;
+		return defaultValue;
+	}
+
+	/**
+	 * @param rejection
+	 * @return name of the given rejection policy
+	 */
+	public static String toStringRejection(short rejection) {
+		if(rejection==REJECTION_ERROR) return "error";
+		if(rejection==REJECTION_THREAD) return "thread";
+		return "caller";
+	}
+
+	/**
+	 * @return state of the pool and metrics of the executed threads
+	 */
+	public Struct getStatistics() {
+		Struct sct=new StructImpl();
+		ThreadPoolExecutor executor;
+		synchronized (this) {
+			executor=this.executor;
+		}
+		sct.setEL("poolMax",new Double(poolMax));
+		sct.setEL("queueMax",new Double(queueMax));
+		sct.setEL("virtual",Boolean.valueOf(virtual && executor!=null && !(executor.getThreadFactory() instanceof WorkerFactory)));
+		sct.setEL("poolSize",new Double(executor==null?0:executor.getPoolSize()));
+		sct.setEL("largestPoolSize",new Double(executor==null?0:executor.getLargestPoolSize()));
+		sct.setEL("queued",new Double(executor==null?0:executor.getQueue().size()));
+		sct.setEL("running",new Double(running.get()));
+		sct.setEL("submitted",new Double(submitted.get()));
+		sct.setEL("executions",new Double(executions.get()));
+		sct.setEL("failures",new Double(failures.get()));
+		sct.setEL("callerRuns",new Double(callerRuns.get()));
+		sct.setEL("threadRuns",new Double(threadRuns.get()));
+		sct.setEL("rejected",new Double(rejected.get()));
+		sct.setEL("time",new Double(time.get()));
+		sct.setEL("maxTime",new Double(maxTime.get()));
+		sct.setEL("waitTime",new Double(waitTime.get()));
+		sct.setEL("maxWaitTime",new Double(maxWaitTime.get()));
+
+		Struct hist=new StructImpl(StructImpl.TYPE_LINKED);
+		for(int i=0;i<=BUCKETS.length;i++){
+			hist.setEL(i<BUCKETS.length?"<"+BUCKETS[i]+"ms":">="+BUCKETS[BUCKETS.length-1]+"ms", new Double(histogram.get(i)));
+		}
+		sct.setEL("timeHistogram",hist);
+		return sct;
+	}
+
+	private static void max(AtomicLong max, long value) {
+		long m;
+		while((m=max.get())<value && !max.compareAndSet(m, value)){}
+	}
+
+	private final class Job implements Runnable {
+
+		private final ChildThreadImpl ct;
+		private final long created=System.currentTimeMillis();
+
+		private Job(ChildThreadImpl ct) {
+			this.ct=ct;
+		}
+
+		public void run() {
+			long start=System.currentTimeMillis();
+			waitTime.addAndGet(start-created);
+			max(maxWaitTime,start-created);
+
+			// the worker takes over name and priority of the cfthread, so it can be identified in a thread dump
+			Thread t=Thread.currentThread();
+			String name=t.getName();
+			int priority=t.getPriority();
+			t.setName(ct.getName());
+			if(priority!=ct.getPriority())t.setPriority(ct.getPriority());
+			running.incrementAndGet();
+			try {
+				if(ct.execute(null)!=null) failures.incrementAndGet();
+			}
+			finally {
+				running.decrementAndGet();
+				t.setName(name);
+				if(priority!=t.getPriority())t.setPriority(priority);
+
+				long millis=System.currentTimeMillis()-start;
+				executions.incrementAndGet();
+				time.addAndGet(millis);
+				max(maxTime,millis);
+				int index=0;
+				while(index<BUCKETS.length && millis>=BUCKETS[index]) index++;
+				histogram.incrementAndGet(index);
+			}
+		}
+	}
+
+	private static class WorkerFactory implements ThreadFactory {
+
+		private final AtomicInteger count=new AtomicInteger();
+
+		public Thread newThread(Runnable r) {
+			Thread t=new Thread(r,"cfthread-worker-"+count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}
+	}
+}
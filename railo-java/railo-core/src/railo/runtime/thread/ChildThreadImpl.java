@@ -3,6 +3,8 @@ package railo.runtime.thread;
 import java.io.ByteArrayOutputStream;
 import java.io.Serializable;
 import java.util.ConcurrentModificationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -19,6 +21,7 @@ import railo.runtime.config.ConfigWeb;
 import railo.runtime.config.ConfigWebImpl;
 import railo.runtime.engine.ThreadLocalPageContext;
 import railo.runtime.exp.PageException;
+import railo.runtime.exp.RequestTimeoutException;
 import railo.runtime.net.http.HttpUtil;
 import railo.runtime.net.http.ReqRspUtil;
 import railo.runtime.op.Caster;
@@ -42,7 +45,7 @@ public class ChildThreadImpl extends ChildThread implements Serializable {
 	
 	private int threadIndex;
 	private PageContextImpl parent;
-	PageContextImpl pc =null;
+	volatile PageContextImpl pc =null;
 	private String tagName;
 	private long start;
 	private Threads scope;
@@ -50,9 +53,14 @@ public class ChildThreadImpl extends ChildThread implements Serializable {
 	// accesible from scope
 	Struct content=new StructImpl();
 	Struct catchBlock;
-	boolean terminated;
-	boolean completed;
+	volatile boolean terminated;
+	volatile boolean completed;
 	ByteArrayOutputStream output;
+	// thread executing this thread (a thread of the pool), null when not running
+	transient volatile Thread runner;
+	// generation of the page context while this thread runs on it, see PageContextImpl#requestTimeout(Thread, long, RequestTimeoutException)
+	private transient volatile long generation;
+	private transient CountDownLatch done;
 	
 	
 	// only used for type deamon
@@ -84,6 +92,7 @@ public class ChildThreadImpl extends ChildThread implements Serializable {
 		
 		
 		if(!serializable){
+			done=new CountDownLatch(1);
 			this.page=page;
 			if(parent!=null){
 				output = new ByteArrayOutputStream();
@@ -143,6 +152,8 @@ public class ChildThreadImpl extends ChildThread implements Serializable {
 		}
 		pc.setThreadScope("thread", new ThreadsImpl(this));
 		pc.setThread(Thread.currentThread());
+		generation=pc.getGeneration();
+		runner=Thread.currentThread();
 		
         Undefined undefined=pc.us();
 		
@@ -164,7 +175,8 @@ public class ChildThreadImpl extends ChildThread implements Serializable {
 		pc.setFunctionScopes(newLocal,newArgs);
 		
 		try {
-			p.threadCall(pc, threadIndex); 
+			// terminated while waiting in the queue
+			if(!terminated)p.threadCall(pc, threadIndex); 
 		}
 		catch (Throwable t) {
 			//t.printStackTrace(pc.getConfig().getErrWriter());
@@ -186,13 +198,47 @@ public class ChildThreadImpl extends ChildThread implements Serializable {
 		    //pc.getScopeFactory().recycle(newArgs);
             pc.getScopeFactory().recycle(newLocal);
             
-			((ConfigImpl)pc.getConfig()).getFactory().releasePageContext(pc);
+			// cleared before the page context goes back to the pool, so terminate cannot reach the request using it next
+			PageContextImpl released=pc;
 			pc=null;
+			runner=null;
+			((ConfigImpl)released.getConfig()).getFactory().releasePageContext(released);
 			if(oldPc!=null)ThreadLocalPageContext.register(oldPc);
+			if(done!=null)done.countDown();
 		}
 		return null;
 	}
 
+	/**
+	 * @return the thread has ended
+	 */
+	public boolean isDone() {
+		return done==null?completed:done.getCount()==0;
+	}
+
+	/**
+	 * waits until the thread has ended
+	 * @param timeout max time to wait in milliseconds, 0 waits without timeout
+	 * @throws InterruptedException
+	 */
+	public void waitFor(long timeout) throws InterruptedException {
+		if(done==null) return;
+		if(timeout>0)done.await(timeout, TimeUnit.MILLISECONDS);
+		else done.await();
+	}
+
+	/**
+	 * ends the thread, a thread waiting in the queue of the pool is not executed,
+	 * a running thread ends the same way a request running into a timeout does (see PageContextImpl#requestTimeout)
+	 */
+	public void terminate() {
+		terminated();
+		Thread t=runner;
+		long g=generation;
+		PageContextImpl p=pc;
+		if(p!=null && t!=null)p.requestTimeout(t,g,new RequestTimeoutException(p,"thread ["+tagName+"] has been terminated"));
+	}
+
 	/**
 	 * @see railo.runtime.thread.ChildThread#getTagName()
 	 */
@@ -12,7 +12,6 @@ import railo.runtime.CFMLFactory;
 import railo.runtime.CFMLFactoryImpl;
 import railo.runtime.PageContext;
 import railo.runtime.PageContextImpl;
-import railo.runtime.config.Config;
 import railo.runtime.config.ConfigImpl;
 import railo.runtime.config.ConfigWeb;
 import railo.runtime.net.http.HTTPServletRequestWrap;
@@ -63,10 +62,7 @@ public class ThreadUtil {
 	
 
 	public static HttpServletRequest cloneHttpServletRequest(PageContext pc) {
-		Config config = pc.getConfig();
-		HttpServletRequest req = pc.getHttpServletRequest();
-		HttpServletRequestDummy dest = HttpServletRequestDummy.clone(config,config.getRootDirectory(),req);
-		return dest;
+		return ((PageContextImpl)pc).getChildRequest();
 	}
 	
 	public static HttpServletResponse createHttpServletResponse(OutputStream os) {
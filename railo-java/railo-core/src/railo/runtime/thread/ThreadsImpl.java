@@ -147,26 +147,15 @@ public class ThreadsImpl extends StructSupport implements railo.runtime.type.sco
 The current status of the thread; one of the following values:
     
 		*/
-		try {
-			State state = ct.getState();
-			if(State.NEW.equals(state)) return "NOT_STARTED";
-			if(State.WAITING.equals(state)) return "WAITING";
-			if(State.TERMINATED.equals(state)) {
-				if(ct.terminated || ct.catchBlock!=null)return "TERMINATED";
-				return "COMPLETED";
-			}
-			
-			return "RUNNING";
-		}
-		// java 1.4 execution
-		catch(Throwable t) {
+		// the thread is executed by a thread of the pool, so the state of the pool thread is checked
+		if(ct.isDone()) {
 			if(ct.terminated || ct.catchBlock!=null)return "TERMINATED";
-			if(ct.completed)return "COMPLETED";
-			if(!ct.isAlive())return "WAITING";
-			return "RUNNING";
-			
-			
+			return "COMPLETED";
 		}
+		Thread runner=ct.runner;
+		if(runner==null) return "NOT_STARTED";
+		if(State.WAITING.equals(runner.getState())) return "WAITING";
+		return "RUNNING";
 	}
 
 
@@ -394,7 +383,8 @@ The current status of the thread; one of the following values:
 	private boolean isReadonly() {
 		PageContext pc = ThreadLocalPageContext.get();
 		if(pc==null) return true;
-		return pc.getThread()!=ct;
+		Thread runner=ct.runner;
+		return runner==null || pc.getThread()!=runner;
 	}
 
 	private ApplicationException errorOutside() {
@@ -4,9 +4,10 @@ import java.io.Externalizable;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import railo.commons.lang.SizeOf;
 import railo.commons.lang.StringUtil;
@@ -24,7 +25,7 @@ public class KeyImpl implements Collection.Key,Castable,Comparable,Sizeable,Exte
 	private String key;
 	private String lcKey;
 	private String ucKey;
-	//private int hashcode;
+	private int hashcode;
 	
 	public KeyImpl() {
 		// DO NOT USE, JUST FOR UNSERIALIZE
@@ -38,25 +39,32 @@ public class KeyImpl implements Collection.Key,Castable,Comparable,Sizeable,Exte
 	}
 	public void readExternal(ObjectInput in) throws IOException,ClassNotFoundException {
 		key=(String) in.readObject();
-		lcKey=((String) in.readObject()).intern();
+		lcKey=(String) in.readObject();
 		ucKey=(String) in.readObject();
-		
+		hashcode=lcKey.hashCode();
 	}
 	
 	
-	
-	private static Map<String,KeyImpl> keys = new HashMap<String, KeyImpl>();//HashTableNotSync();
+	/**
+	 * all keys in use, a key no longer referenced elsewhere can be collected by the gc, 
+	 * the entry is then removed with the next key created
+	 */
+	private static ConcurrentHashMap<String,KeyRef> keys = new ConcurrentHashMap<String, KeyRef>();
+	private static ReferenceQueue<KeyImpl> queue=new ReferenceQueue<KeyImpl>();
 	
 	//public int index;
 	//private static long count=0;
 	
 	protected KeyImpl(String key) {
 		//this.index=count++;
-		
+		this(key,true);
+	}
+	
+	private KeyImpl(String key, boolean register) {
 		this.key=key;
-		this.lcKey=StringUtil.toLowerCase(key).intern();
-		keys.put(key,this);
-		
+		this.lcKey=StringUtil.toLowerCase(key);
+		this.hashcode=lcKey.hashCode();
+		if(register)keys.put(key,new KeyRef(this));
 	}
 	/*public static void main(String[] args) {
 		KeyImpl k1 = (KeyImpl) KeyImpl.init("an");
@@ -134,13 +142,42 @@ public class KeyImpl implements Collection.Key,Castable,Comparable,Sizeable,Exte
 	 * @param string
 	 * @return
 	 */
-	public synchronized static Collection.Key getInstance(String key) {
-		Collection.Key k= (Key) keys.get(key);
-		if(k!=null) return k;
-		return new KeyImpl(key);
-		
+	public static Collection.Key getInstance(String key) {
+		KeyRef ref = keys.get(key);
+		KeyImpl k;
+		if(ref!=null && (k=ref.get())!=null) return k;
 		
+		expunge();
+		k=new KeyImpl(key,false);
+		KeyRef nr=new KeyRef(k);
+		KeyImpl other;
+		while(true) {
+			if(ref==null) {
+				if((ref=keys.putIfAbsent(key, nr))==null) return k;
+			}
+			else if((other=ref.get())!=null) return other;
+			else if(keys.replace(key, ref, nr)) return k;
+			else ref=keys.get(key);
+		}
+	}
+	
+	/**
+	 * removes the entries of collected keys from the table
+	 */
+	private static void expunge() {
+		KeyRef ref;
+		while((ref=(KeyRef) queue.poll())!=null) {
+			keys.remove(ref.key, ref);
+		}
+	}
+	
+	private static final class KeyRef extends WeakReference<KeyImpl> {
+		private final String key;
 		
+		private KeyRef(KeyImpl k) {
+			super(k,queue);
+			this.key=k.key;
+		}
 	}
 	
 	/**
@@ -203,7 +240,8 @@ public class KeyImpl implements Collection.Key,Castable,Comparable,Sizeable,Exte
 		
 		if(other instanceof KeyImpl)	{
 			//print.out("slow("+veryslow+":"+(slow++)+":"+fast+"):"+other);
-			return lcKey==(((KeyImpl)other).lcKey);
+			KeyImpl o=(KeyImpl)other;
+			return hashcode==o.hashcode && (lcKey==o.lcKey || lcKey.equals(o.lcKey));
 		}
 		else if(other instanceof String)	{
 			//print.out("veryslow("+(veryslow++)+":"+fast+"):"+other);
@@ -243,8 +281,7 @@ public class KeyImpl implements Collection.Key,Castable,Comparable,Sizeable,Exte
 	 * @see java.lang.Object#hashCode()
 	 */
 	public int hashCode() {
-	
-		return lcKey.hashCode();
+		return hashcode;
 	}
 
 	/**
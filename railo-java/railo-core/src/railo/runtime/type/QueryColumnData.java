@@ -0,0 +1,318 @@
+package railo.runtime.type;
+
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.Map;
+
+import railo.commons.lang.SizeOf;
+
+/**
+ * compact storage for the values of a query column loaded from a database,
+ * numbers are stored in primitive arrays (with a bitmap for null values), strings of columns with only few different values
+ * are stored as index to a dictionary.
+ * A storage only accepts values of the exact type it was made for, when another value is added,
+ * the column has to switch back to a object array (see QueryColumnImpl.inflate()).
+ */
+abstract class QueryColumnData {
+
+	private long[] nulls;
+
+	/**
+	 * returns a storage for the given sql type or null if there is no compact storage for this type
+	 * @param type sql type (java.sql.Types.XYZ)
+	 * @param capacity initial capacity
+	 * @return storage or null
+	 */
+	static QueryColumnData getInstance(int type, int capacity) {
+		switch(type) {
+		case Types.INTEGER:
+		case Types.SMALLINT:
+		case Types.TINYINT:		return new IntData(capacity);
+		case Types.BIGINT:		return new LongData(capacity);
+		case Types.BIT:
+		case Types.DOUBLE:
+		case Types.FLOAT:		return new DoubleData(capacity);
+		case Types.BOOLEAN:		return new BooleanData(capacity);
+		case Types.CHAR:
+		case Types.VARCHAR:		return new StringData(capacity);
+		}
+		return null;
+	}
+
+	/**
+	 * sets the value at given index
+	 * @param index
+	 * @param value
+	 * @return false if the value is not supported by this storage
+	 */
+	final boolean set(int index, Object value) {
+		if(value==null) {
+			ensureCapacity(index+1);
+			setNull(index,true);
+			return true;
+		}
+		if(!_set(index,value)) return false;
+		if(nulls!=null)setNull(index,false);
+		return true;
+	}
+
+	/**
+	 * returns the value at given index
+	 * @param index
+	 * @return value or null
+	 */
+	final Object get(int index) {
+		if(isNull(index)) return null;
+		return _get(index);
+	}
+
+	/**
+	 * copy all values to a object array
+	 * @param size number of values
+	 * @param capacity length of the array returned
+	 * @return values
+	 */
+	final Object[] toArray(int size, int capacity) {
+		Object[] arr=new Object[Math.max(size, capacity)];
+		for(int i=0;i<size;i++){
+			arr[i]=get(i);
+		}
+		return arr;
+	}
+
+	final long sizeOf() {
+		return SizeOf.size(nulls)+_sizeOf();
+	}
+
+	final QueryColumnData duplicate() {
+		QueryColumnData clone=_duplicate();
+		if(nulls!=null) {
+			clone.nulls=new long[nulls.length];
+			System.arraycopy(nulls, 0, clone.nulls, 0, nulls.length);
+		}
+		return clone;
+	}
+
+	private boolean isNull(int index) {
+		int i=index>>6;
+		return nulls!=null && i<nulls.length && (nulls[i]&(1L<<index))!=0;
+	}
+
+	private void setNull(int index, boolean isNull) {
+		int i=index>>6;
+		if(nulls==null || nulls.length<=i) {
+			if(!isNull) return;
+			long[] tmp=new long[Math.max(i+1,(capacity()>>6)+1)];
+			if(nulls!=null) System.arraycopy(nulls, 0, tmp, 0, nulls.length);
+			nulls=tmp;
+		}
+		if(isNull) nulls[i]|=(1L<<index);
+		else nulls[i]&=~(1L<<index);
+	}
+
+	static int grow(int capacity, int min) {
+		int newSize=(capacity+1)*2;
+		while(newSize<min) newSize*=2;
+		return newSize;
+	}
+
+	abstract boolean _set(int index, Object value);
+	abstract Object _get(int index);
+	abstract int capacity();
+	abstract void ensureCapacity(int min);
+	abstract long _sizeOf();
+	abstract QueryColumnData _duplicate();
+
+
+	static final class IntData extends QueryColumnData {
+		private int[] values;
+
+		IntData(int capacity) {
+			values=new int[capacity];
+		}
+		boolean _set(int index, Object value) {
+			if(value.getClass()!=Integer.class) return false;
+			ensureCapacity(index+1);
+			values[index]=((Integer)value).intValue();
+			return true;
+		}
+		Object _get(int index) {
+			return Integer.valueOf(values[index]);
+		}
+		int capacity() {
+			return values.length;
+		}
+		void ensureCapacity(int min) {
+			if(values.length>=min) return;
+			int[] tmp=new int[grow(values.length,min)];
+			System.arraycopy(values, 0, tmp, 0, values.length);
+			values=tmp;
+		}
+		long _sizeOf() {
+			return SizeOf.size(values);
+		}
+		QueryColumnData _duplicate() {
+			IntData clone=new IntData(values.length);
+			System.arraycopy(values, 0, clone.values, 0, values.length);
+			return clone;
+		}
+	}
+
+	static final class LongData extends QueryColumnData {
+		private long[] values;
+
+		LongData(int capacity) {
+			values=new long[capacity];
+		}
+		boolean _set(int index, Object value) {
+			if(value.getClass()!=Long.class) return false;
+			ensureCapacity(index+1);
+			values[index]=((Long)value).longValue();
+			return true;
+		}
+		Object _get(int index) {
+			return Long.valueOf(values[index]);
+		}
+		int capacity() {
+			return values.length;
+		}
+		void ensureCapacity(int min) {
+			if(values.length>=min) return;
+			long[] tmp=new long[grow(values.length,min)];
+			System.arraycopy(values, 0, tmp, 0, values.length);
+			values=tmp;
+		}
+		long _sizeOf() {
+			return SizeOf.size(values);
+		}
+		QueryColumnData _duplicate() {
+			LongData clone=new LongData(values.length);
+			System.arraycopy(values, 0, clone.values, 0, values.length);
+			return clone;
+		}
+	}
+
+	static final class DoubleData extends QueryColumnData {
+		private double[] values;
+
+		DoubleData(int capacity) {
+			values=new double[capacity];
+		}
+		boolean _set(int index, Object value) {
+			if(value.getClass()!=Double.class) return false;
+			ensureCapacity(index+1);
+			values[index]=((Double)value).doubleValue();
+			return true;
+		}
+		Object _get(int index) {
+			return new Double(values[index]);
+		}
+		int capacity() {
+			return values.length;
+		}
+		void ensureCapacity(int min) {
+			if(values.length>=min) return;
+			double[] tmp=new double[grow(values.length,min)];
+			System.arraycopy(values, 0, tmp, 0, values.length);
+			values=tmp;
+		}
+		long _sizeOf() {
+			return SizeOf.size(values);
+		}
+		QueryColumnData _duplicate() {
+			DoubleData clone=new DoubleData(values.length);
+			System.arraycopy(values, 0, clone.values, 0, values.length);
+			return clone;
+		}
+	}
+
+	static final class BooleanData extends QueryColumnData {
+		private boolean[] values;
+
+		BooleanData(int capacity) {
+			values=new boolean[capacity];
+		}
+		boolean _set(int index, Object value) {
+			if(value.getClass()!=Boolean.class) return false;
+			ensureCapacity(index+1);
+			values[index]=((Boolean)value).booleanValue();
+			return true;
+		}
+		Object _get(int index) {
+			return values[index]?Boolean.TRUE:Boolean.FALSE;
+		}
+		int capacity() {
+			return values.length;
+		}
+		void ensureCapacity(int min) {
+			if(values.length>=min) return;
+			boolean[] tmp=new boolean[grow(values.length,min)];
+			System.arraycopy(values, 0, tmp, 0, values.length);
+			values=tmp;
+		}
+		long _sizeOf() {
+			return SizeOf.size(values);
+		}
+		QueryColumnData _duplicate() {
+			BooleanData clone=new BooleanData(values.length);
+			System.arraycopy(values, 0, clone.values, 0, values.length);
+			return clone;
+		}
+	}
+
+	/**
+	 * dictionary encoded strings, only used as long the column has not more than MAX_DICTIONARY different values
+	 */
+	static final class StringData extends QueryColumnData {
+		private static final int MAX_DICTIONARY=1024;
+
+		private char[] codes;
+		private String[] dictionary=new String[16];
+		private Map<String,Integer> lookup=new HashMap<String, Integer>();
+
+		StringData(int capacity) {
+			codes=new char[capacity];
+		}
+		boolean _set(int index, Object value) {
+			if(value.getClass()!=String.class) return false;
+			Integer code=lookup.get(value);
+			if(code==null) {
+				int size=lookup.size();
+				if(size>=MAX_DICTIONARY) return false;
+				if(dictionary.length<=size) {
+					String[] tmp=new String[dictionary.length*2];
+					System.arraycopy(dictionary, 0, tmp, 0, dictionary.length);
+					dictionary=tmp;
+				}
+				dictionary[size]=(String) value;
+				lookup.put((String) value, code=Integer.valueOf(size));
+			}
+			ensureCapacity(index+1);
+			codes[index]=(char)code.intValue();
+			return true;
+		}
+		Object _get(int index) {
+			return dictionary[codes[index]];
+		}
+		int capacity() {
+			return codes.length;
+		}
+		void ensureCapacity(int min) {
+			if(codes.length>=min) return;
+			char[] tmp=new char[grow(codes.length,min)];
+			System.arraycopy(codes, 0, tmp, 0, codes.length);
+			codes=tmp;
+		}
+		long _sizeOf() {
+			return SizeOf.size(codes)+SizeOf.size(dictionary);
+		}
+		QueryColumnData _duplicate() {
+			StringData clone=new StringData(codes.length);
+			System.arraycopy(codes, 0, clone.codes, 0, codes.length);
+			clone.dictionary=new String[dictionary.length];
+			System.arraycopy(dictionary, 0, clone.dictionary, 0, dictionary.length);
+			clone.lookup=new HashMap<String, Integer>(lookup);
+			return clone;
+		}
+	}
+}
@@ -1,5 +1,6 @@
 package railo.runtime.type;
 
+import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
@@ -36,6 +37,7 @@ public final class QueryColumnImpl implements QueryColumn,Sizeable,Objects {
 	protected int type;
 	private int size;
 	protected Object[] data;
+	private volatile QueryColumnData compact;
     private static final int CAPACITY=32;
     private QueryColumnUtil queryColumnUtil;
     
@@ -162,6 +164,7 @@ public final class QueryColumnImpl implements QueryColumn,Sizeable,Objects {
         // query.disconnectCache();
         resetType();
 		data=new Object[CAPACITY];
+		compact=null;
 		size=0;
 	}
 	
@@ -269,9 +272,14 @@ public final class QueryColumnImpl implements QueryColumn,Sizeable,Objects {
      */
     public Object get(int row){
         if(row<1 || row>size) return "";
-        Object o=data[row-1];
+        Object o=_get(row-1);
         return o==null?"":o;
     }
+    
+    private Object _get(int index) {
+    	QueryColumnData c=compact;
+    	return c==null?data[index]:c.get(index);
+    }
 
     /**
      * touch the given line on the column at given row
@@ -282,7 +290,7 @@ public final class QueryColumnImpl implements QueryColumn,Sizeable,Objects {
     public Object touch(int row) throws DatabaseException{
         // query.disconnectCache();
         if(row<1 || row>size) return "";
-        Object o=data[row-1];
+        Object o=_get(row-1);
         if(o!=null) return o;
         return set(row,new StructImpl());
     }
@@ -296,7 +304,7 @@ public final class QueryColumnImpl implements QueryColumn,Sizeable,Objects {
     public Object touchEL(int row) {
         // query.disconnectCache();
         if(row<1 || row>size) return "";
-        Object o=data[row-1];
+        Object o=_get(row-1);
         if(o!=null) return o;
         return setEL(row,new StructImpl());
     }
@@ -349,7 +357,7 @@ public final class QueryColumnImpl implements QueryColumn,Sizeable,Objects {
 	 */
 	public Object get(int row, Object defaultValue) {
 	    if(row<1 || row>size) return defaultValue;
-	    Object o=data[row-1];
+	    Object o=_get(row-1);
 	    return o==null?defaultValue:o;
 	}
 
@@ -379,6 +387,7 @@ public final class QueryColumnImpl implements QueryColumn,Sizeable,Objects {
 	    	throw new DatabaseException("invalid row number ["+row+"]","valid row numbers goes from 1 to "+size,null,null,null);
 	    }
 	    
+	    inflate();
 	    value=reDefineType(value);
 	    data[row-1]=value;
 	    return value;
@@ -406,6 +415,7 @@ public final class QueryColumnImpl implements QueryColumn,Sizeable,Objects {
         // query.disconnectCache();
         if(row<1 || row>size) return value;
 	    
+	    inflate();
 	    value=reDefineType(value);
 	    data[row-1]=value;
 	    return value;
@@ -416,6 +426,13 @@ public final class QueryColumnImpl implements QueryColumn,Sizeable,Objects {
 	 */
 	public synchronized void add(Object value) {
         // query.disconnectCache();
+		if(compact!=null) {
+			if(compact.set(size, value)) {
+				size++;
+				return;
+			}
+			inflate();
+		}
         if(data.length<=size) growTo(size);
 	    data[size++]=value;
 	}
@@ -433,6 +450,10 @@ public final class QueryColumnImpl implements QueryColumn,Sizeable,Objects {
 	 */
 	public synchronized void addRow(int count) {	    
         // query.disconnectCache();
+		if(compact!=null) {
+			for(int i=0;i<count;i++)compact.set(size++, null);
+			return;
+		}
         if(data.length<(size+count)) growTo(size+count);
 	    for(int i=0;i<count;i++)size++;
 	}
@@ -441,6 +462,7 @@ public final class QueryColumnImpl implements QueryColumn,Sizeable,Objects {
         // query.disconnectCache();
         if(row<1 || row>size) 
             throw new DatabaseException("invalid row number ["+row+"]","valid rows goes from 1 to "+size,null,null,null);
+        inflate();
         Object o=data[row-1];
         for(int i=row;i<size;i++) {
             data[i-1]=data[i];
@@ -504,11 +526,32 @@ public final class QueryColumnImpl implements QueryColumn,Sizeable,Objects {
     }
     
     private synchronized void reOrganizeType() {
+    	if(type==Types.OTHER) inflate();
         if(queryColumnUtil==null)
             queryColumnUtil=new QueryColumnUtil(this);
         queryColumnUtil.reOrganizeType();
     }
 
+    /**
+     * switches the column to a compact storage (see QueryColumnData) if there is one for the type of the column,
+     * only used for a empty column that is filled with add(Object)
+     */
+    synchronized void useCompactStorage() {
+    	if(size>0) return;
+    	compact=QueryColumnData.getInstance(type, data==null?CAPACITY:data.length);
+    	if(compact!=null) data=null;
+    }
+    
+    /**
+     * switches the column back from the compact storage to a object array
+     */
+    private synchronized void inflate() {
+    	QueryColumnData c=compact;
+    	if(c==null) return;
+    	data=c.toArray(size, c.capacity());
+    	compact=null;
+    }
+
     public Collection.Key getKey() {
         return key;
     }
@@ -686,6 +729,10 @@ public final class QueryColumnImpl implements QueryColumn,Sizeable,Objects {
 	        clone.type=type;
 	        clone.key=key;
 	        
+	        if(compact!=null) {
+	        	clone.compact=compact.duplicate();
+	        	return clone;
+	        }
 	        clone.data=new Object[data.length];
 	        for(int i=0;i<data.length;i++) {
 	            clone.data[i]=deepCopy?Duplicator.duplicate(data[i],true):data[i];
@@ -728,6 +775,8 @@ public final class QueryColumnImpl implements QueryColumn,Sizeable,Objects {
 	 * @see railo.runtime.type.Sizeable#sizeOf()
 	 */
 	public long sizeOf() {
+		QueryColumnData c=compact;
+		if(c!=null) return SizeOf.size(key)+c.sizeOf();
 		return SizeOf.size(key)+SizeOf.size(data);
 	}
 	
@@ -750,6 +799,8 @@ public final class QueryColumnImpl implements QueryColumn,Sizeable,Objects {
 	 * @see railo.runtime.type.Iteratorable#valueIterator()
 	 */
 	public Iterator valueIterator() {
+		QueryColumnData c=compact;
+		if(c!=null) return new ArrayIterator(c.toArray(size,0),0,size);
 		return new ArrayIterator(data,0,size);
 	}
 	
@@ -912,7 +963,7 @@ public final class QueryColumnImpl implements QueryColumn,Sizeable,Objects {
 	public int indexOf(Object o) {
 		for(int i=0;i<size;i++){
 			try {
-				if(Operator.compare(o, data[i])==0) return i;
+				if(Operator.compare(o, _get(i))==0) return i;
 			} 
 			catch (PageException e) {}
 		}
@@ -925,7 +976,7 @@ public final class QueryColumnImpl implements QueryColumn,Sizeable,Objects {
 	public int lastIndexOf(Object o) {
 		for(int i=size-1;i>=0;i--){
 			try {
-				if(Operator.compare(o, data[i])==0) return i;
+				if(Operator.compare(o, _get(i))==0) return i;
 			} 
 			catch (PageException e) {}
 		}
@@ -986,7 +1037,7 @@ public final class QueryColumnImpl implements QueryColumn,Sizeable,Objects {
 	public List<Object> subList(int fromIndex, int toIndex) {
 		ArrayList<Object> list=new ArrayList<Object>();
 		for(int i=fromIndex;i<toIndex;i++){
-			list.add(data[i]);
+			list.add(_get(i));
 		}
 		return list;
 	}
@@ -1002,6 +1053,13 @@ public final class QueryColumnImpl implements QueryColumn,Sizeable,Objects {
 	 * @see java.util.List#toArray(T[])
 	 */
 	public  Object[] toArray(Object[] trg) {
+		QueryColumnData c=compact;
+		if(c!=null) {
+			for(int i=Math.min(size, trg.length)-1;i>=0;i--){
+				trg[i]=c.get(i);
+			}
+			return trg;
+		}
 		System.arraycopy(data, 0, trg, 0, data.length>trg.length?trg.length:data.length);
 		return trg;
 	}
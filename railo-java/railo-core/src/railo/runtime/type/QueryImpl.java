@@ -37,6 +37,7 @@ import railo.commons.lang.StringUtil;
 import railo.commons.sql.SQLUtil;
 import railo.loader.engine.CFMLEngineFactory;
 import railo.runtime.PageContext;
+import railo.runtime.PageContextImpl;
 import railo.runtime.converter.ScriptConverter;
 import railo.runtime.db.CFTypes;
 import railo.runtime.db.DataSource;
@@ -53,6 +54,7 @@ import railo.runtime.dump.DumpTable;
 import railo.runtime.dump.DumpTablePro;
 import railo.runtime.dump.DumpUtil;
 import railo.runtime.dump.SimpleDumpData;
+import railo.runtime.engine.Cancelable;
 import railo.runtime.engine.ThreadLocalPageContext;
 import railo.runtime.exp.DatabaseException;
 import railo.runtime.exp.ExpressionException;
@@ -209,11 +211,16 @@ public class QueryImpl implements QueryPro,Objects,Sizeable {
 		Stopwatch stopwatch=new Stopwatch();
 		stopwatch.start();
 		boolean hasResult=false;
+		// the statement is canceled when the request runs into a timeout
+		PageContext pc = ThreadLocalPageContext.get();
+		PageContextImpl pci=pc instanceof PageContextImpl?(PageContextImpl)pc:null;
+		Cancelable oldCancelable=null;
 		try {	
 			SQLItem[] items=sql.getItems();
 			if(items.length==0) {
 		    	stat=dc.getConnection().createStatement();
 		        setAttributes(stat,maxrow,fetchsize,timeout);
+		        if(pci!=null)oldCancelable=pci.setCancelable(toCancelable(stat));
 		     // some driver do not support second argument
 		        hasResult=createGeneratedKeys?stat.execute(sql.getSQLString(),Statement.RETURN_GENERATED_KEYS):stat.execute(sql.getSQLString());
 	        }
@@ -229,6 +236,7 @@ public class QueryImpl implements QueryPro,Objects,Sizeable {
 		    	stat=preStat;
 	            setAttributes(preStat,maxrow,fetchsize,timeout);
 	            setItems(preStat,items);
+	            if(pci!=null)oldCancelable=pci.setCancelable(toCancelable(stat));
 		        hasResult=preStat.execute();    
 	        }
 			
@@ -272,16 +280,30 @@ public class QueryImpl implements QueryPro,Objects,Sizeable {
 			
 		} 
 		catch (SQLException e) {
+			// the statement was canceled because of a timeout
+			if(pci!=null)pci.checkRequestTimeout();
 			throw new DatabaseException(e,sql,dc);
 		} 
 		catch (Throwable e) {
 			throw Caster.toPageException(e);
 		}
         finally {
+        	if(pci!=null)pci.setCancelable(oldCancelable);
         	DBUtil.closeEL(stat);
         }  
 		exeTime=stopwatch.time();
 	}
+
+	private static Cancelable toCancelable(final Statement stat) {
+		return new Cancelable() {
+			public void cancel() {
+				try {
+					stat.cancel();
+				}
+				catch (SQLException e) {}
+			}
+		};
+	}
     
 	private boolean setUpdateCount(Statement stat)  {
 		
@@ -438,6 +460,7 @@ public class QueryImpl implements QueryPro,Objects,Sizeable {
 		for(int i=0;i<usedColumns.length;i++) {
             columnNames[i]=tmpColumnNames[usedColumns[i]];
             columns[i]=new QueryColumnImpl(this,columnNames[i],types[i]=meta.getColumnType(usedColumns[i]+1));
+            columns[i].useCompactStorage();
             
             if(types[i]==Types.TIMESTAMP)	casts[i]=Cast.TIMESTAMP;
             else if(types[i]==Types.TIME)	casts[i]=Cast.TIME;
@@ -401,6 +401,7 @@ public class UDFImpl extends MemberSupport implements UDF,Sizeable,Externalizabl
     private Object _call(PageContext pc, Object[] args, Struct values,boolean doIncludePath) throws PageException {
     	//print.out(count++);
     	PageContextImpl pci=(PageContextImpl) pc;
+    	pci.checkRequestTimeout();
         ArgumentPro newArgs=(ArgumentPro) pci.getScopeFactory().getArgumentInstance();// FUTURE
         newArgs.setFunctionArgumentNames(properties.argumentsSet);
         LocalImpl newLocal=pci.getScopeFactory().getLocalInstance();
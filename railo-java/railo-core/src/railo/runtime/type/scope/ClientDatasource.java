@@ -1,8 +1,5 @@
 package railo.runtime.type.scope;
 
-import java.sql.Connection;
-import java.sql.PreparedStatement;
-import java.sql.SQLException;
 import java.sql.Types;
 
 import railo.runtime.PageContext;
@@ -12,7 +9,6 @@ import railo.runtime.converter.ScriptConverter;
 import railo.runtime.db.DatasourceConnection;
 import railo.runtime.db.DatasourceConnectionPool;
 import railo.runtime.db.SQL;
-import railo.runtime.db.SQLCaster;
 import railo.runtime.db.SQLImpl;
 import railo.runtime.db.SQLItem;
 import railo.runtime.db.SQLItemImpl;
@@ -33,16 +29,30 @@ import railo.runtime.type.dt.DateTime;
 import railo.runtime.type.dt.DateTimeImpl;
 
 /**
- * client scope that store it's data in a datasource
+ * client scope that store it's data in a datasource,
+ * the scope is only written when it has changed and the writing is done behind the request (see ClientDatasourceWriter).
+ * The scope is kept in memory and only read again from the datasource after the time defined with the attribute 
+ * client-datasource-cache of the scope settings (default 10 seconds). 
+ * A change made by a other server sharing the datasource within this time is not seen and is overwritten 
+ * when this server writes the scope, so for a cluster the time has to be set to 0, what reads the scope with every request.
  */
 public final class ClientDatasource extends ClientSupport {
 
 	private static final long serialVersionUID = 239179599401918216L;
 	private static final Collection.Key DATA = KeyImpl.getInstance("data");
-
-	private static boolean structOk;
+	// a scope not changed is written anyway after this time, to store lastvisit and hitcount
+	private static final long TOUCH_INTERVAL=60000;
 	
 	private String datasourceName;
+	private transient ConfigImpl config;
+	private String cfid;
+	private String appName;
+	private long loaded;
+	private long stored;
+	// content of the scope (without lastvisit, hitcount ...) as stored in the datasource
+	private String storedContent;
+	// loaded by getInstance for the current request
+	private transient boolean fresh;
 	
 	
 	/**
@@ -62,6 +72,9 @@ public final class ClientDatasource extends ClientSupport {
 
 		//this.isNew=isNew;
 		this.datasourceName=datasourceName;
+		this.config=(ConfigImpl) pc.getConfig();
+		this.cfid=pc.getCFID();
+		this.appName=pc.getApplicationContext().getName();
 		//this.manager = (DatasourceManagerImpl) pc.getDataSourceManager(); 
 	}
 
@@ -73,6 +86,12 @@ public final class ClientDatasource extends ClientSupport {
 		super(other,deepCopy);
 		
 		this.datasourceName=other.datasourceName;
+		this.config=other.config;
+		this.cfid=other.cfid;
+		this.appName=other.appName;
+		this.loaded=other.loaded;
+		this.stored=other.stored;
+		this.storedContent=other.storedContent;
 		//this.manager=other.manager;
 	}
 	
@@ -91,11 +110,13 @@ public final class ClientDatasource extends ClientSupport {
 	 */
 	public static Client getInstance(String datasourceName, PageContext pc) throws PageException {
 			
-			Struct _sct = _loadData(pc, datasourceName, false);
-			structOk=true;
+			Struct _sct = _loadData(pc, datasourceName);
 			if(_sct==null) _sct=new StructImpl();
 			
-		return new ClientDatasource(pc,datasourceName,_sct);
+		ClientDatasource client = new ClientDatasource(pc,datasourceName,_sct);
+		client.loaded(_sct);
+		client.fresh=true;
+		return client;
 	}
 	
 	public static Client getInstanceEL(String datasourceName, PageContext pc) {
@@ -107,6 +128,20 @@ public final class ClientDatasource extends ClientSupport {
 	}
 	
 	
+	/**
+	 * returns the data of the scope, the state waiting to be written is newer than the one in the datasource
+	 */
+	private static Struct _loadData(PageContext pc, String datasourceName) throws PageException	{
+		ClientDatasourceWriter writer = ClientDatasourceWriter.getInstance();
+		String data=writer.getPending(ClientDatasourceWriter.toKey((ConfigImpl)pc.getConfig(), datasourceName, pc.getApplicationContext().getName(), pc.getCFID()));
+		if(data!=null) {
+			writer.hit();
+			return (Struct)pc.evaluate(data);
+		}
+		writer.load();
+		return _loadData(pc, datasourceName, false);
+	}
+	
 	private static Struct _loadData(PageContext pc, String datasourceName, boolean mxStyle) throws PageException	{
 		DatasourceConnection dc=null;
 		Query query=null;
@@ -163,58 +198,52 @@ public final class ClientDatasource extends ClientSupport {
 		release(ThreadLocalPageContext.get());
 	}
 	public void release(PageContext pc) {
-		structOk=false;
 		super.release();
-		if(!super.hasContent()) return;
-		
-		DatasourceConnection dc = null;
-		ConfigImpl config = (ConfigImpl)pc.getConfig();
-		//int pid=1000;//pc.getId()+10000;
-		DatasourceConnectionPool pool = config.getDatasourceConnectionPool();
-		try {
-			dc=pool.getDatasourceConnection(pc,config.getDataSource(datasourceName),null,null);
-			int recordsAffected = executeUpdate(pc,dc.getConnection(),"update railo_client_data set data=? where cfid=? and name=?",false);
-		    if(recordsAffected>1) {
-		    	executeUpdate(pc,dc.getConnection(),"delete from railo_client_data where cfid=? and name=?",true);
-		    	recordsAffected=0;
-		    }
-		    if(recordsAffected==0) {
-		    	executeUpdate(pc,dc.getConnection(),"insert into railo_client_data (data,cfid,name) values(?,?,?)",false);
-		    }
+		write(false);
+	}
 
-		} 
-		catch (Exception e) {}
-		finally {
-			if(dc!=null) pool.releaseDatasourceConnection(dc);
+	/**
+	 * @see railo.runtime.type.scope.ClientSupport#store()
+	 */
+	public void store() {
+		// lastvisit and hitcount changed since the scope was written the last time
+		if(stored<lastvisit)write(true);
+	}
+
+	/**
+	 * queues the scope to be written when it has changed
+	 * @param force write also when only lastvisit and hitcount have changed
+	 */
+	private void write(boolean force) {
+		if(!super.hasContent() || config==null) return;
+		ClientDatasourceWriter writer = ClientDatasourceWriter.getInstance();
+		try {
+			String content=new ScriptConverter().serializeStruct(sct,FIX_KEYS);
+			long now=System.currentTimeMillis();
+			if(!force && content.equals(storedContent) && stored+TOUCH_INTERVAL>now) {
+				writer.skip();
+				return;
+			}
+			writer.write(config, datasourceName, appName, cfid, new ScriptConverter().serializeStruct(sct,ignoreSet));
+			storedContent=content;
+			stored=now;
 		}
+		catch (ConverterException e) {}
 	}
 
-	private int executeUpdate(PageContext pc,Connection conn, String strSQL, boolean ignoreData) throws SQLException, PageException, ConverterException {
-		String appName = pc.getApplicationContext().getName();
-		SQLImpl sql = new SQLImpl(strSQL,new SQLItem[]{
-			new SQLItemImpl(new ScriptConverter().serializeStruct(sct,ignoreSet),Types.VARCHAR),
-			new SQLItemImpl(pc.getCFID(),Types.VARCHAR),
-			new SQLItemImpl(appName,Types.VARCHAR)
-		});
-		if(ignoreData)sql = new SQLImpl(strSQL,new SQLItem[]{
-				new SQLItemImpl(pc.getCFID(),Types.VARCHAR),
-				new SQLItemImpl(appName,Types.VARCHAR)
-			});
-		
-		//print.out(sql);
-		PreparedStatement preStat = conn.prepareStatement(sql.getSQLString());
-		int count=0;
+	/**
+	 * sets the state of the scope read from the datasource
+	 * @param sct
+	 */
+	private void loaded(Struct sct) {
+		loaded=System.currentTimeMillis();
+		stored=loaded;
 		try {
-			SQLItem[] items=sql.getItems();
-		    for(int i=0;i<items.length;i++) {
-	            SQLCaster.setValue(preStat,i+1,items[i]);
-	        }
-		    count= preStat.executeUpdate();
+			storedContent=sct==null?null:new ScriptConverter().serializeStruct(sct,FIX_KEYS);
 		}
-		finally {
-		    preStat.close();	
+		catch (ConverterException e) {
+			storedContent=null;
 		}
-	    return count;
 	}
 
 	private static SQL createSQL(DatasourceConnection dc, boolean mxStyle, String textType) {
@@ -273,8 +302,14 @@ public final class ClientDatasource extends ClientSupport {
 	 */
 	public void initialize(PageContext pc) {
 		try {
-			if(!structOk)sct=_loadData(pc, datasourceName, false);
-			
+			// loaded by getInstance for this request
+			if(fresh) fresh=false;
+			// read from the datasource not long ago
+			else if(loaded+((ConfigImpl)pc.getConfig()).getClientDatasourceCache()>System.currentTimeMillis()) ClientDatasourceWriter.getInstance().hit();
+			else {
+				sct=_loadData(pc, datasourceName);
+				loaded(sct);
+			}
 		} catch (PageException e) {
 			//
 		}
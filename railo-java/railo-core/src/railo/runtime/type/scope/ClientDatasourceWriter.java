@@ -0,0 +1,344 @@
+package railo.runtime.type.scope;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import railo.runtime.config.ConfigImpl;
+import railo.runtime.db.DatasourceConnection;
+import railo.runtime.db.DatasourceConnectionPool;
+import railo.runtime.exp.PageException;
+import railo.runtime.type.Struct;
+import railo.runtime.type.StructImpl;
+
+/**
+ * writes the client scopes stored in a datasource behind the requests,
+ * a request only queues the data of its client scope, a background thread writes all queued scopes every second in batches
+ * (one transaction per datasource). A scope changed several times before it is written is written only once with its last state.
+ * The queued data is also used by the read path, so a client scope is never read from the datasource while a newer state waits to be written.
+ */
+public final class ClientDatasourceWriter {
+
+	private static final long FLUSH_INTERVAL=1000;
+	private static ClientDatasourceWriter instance;
+
+	// data waiting to be written and data in the process of being written
+	private final ConcurrentHashMap<String,Entry> pending=new ConcurrentHashMap<String,Entry>();
+	private final ConcurrentHashMap<String,Entry> flushing=new ConcurrentHashMap<String,Entry>();
+	private volatile Thread flusher;
+	private final Object token=new Object();
+
+	private final AtomicLong reads=new AtomicLong();
+	private final AtomicLong hits=new AtomicLong();
+	private final AtomicLong loads=new AtomicLong();
+	private final AtomicLong skipped=new AtomicLong();
+	private final AtomicLong queued=new AtomicLong();
+	private final AtomicLong coalesced=new AtomicLong();
+	private final AtomicLong updated=new AtomicLong();
+	private final AtomicLong inserted=new AtomicLong();
+	private final AtomicLong batches=new AtomicLong();
+	private final AtomicLong failures=new AtomicLong();
+	private final AtomicLong lag=new AtomicLong();
+	private final AtomicLong maxLag=new AtomicLong();
+	private volatile long lastLag;
+
+	private ClientDatasourceWriter() {}
+
+	public static synchronized ClientDatasourceWriter getInstance() {
+		if(instance==null)instance=new ClientDatasourceWriter();
+		return instance;
+	}
+
+	/**
+	 * @param config
+	 * @param datasourceName
+	 * @param appName
+	 * @param cfid
+	 * @return key of the client scope
+	 */
+	static String toKey(ConfigImpl config, String datasourceName, String appName, String cfid) {
+		return config.getId()+":"+datasourceName+":"+appName+":"+cfid;
+	}
+
+	/**
+	 * returns the serialized data of a client scope not written yet
+	 * @param key
+	 * @return data or null when nothing is waiting to be written
+	 */
+	String getPending(String key) {
+		Entry e=pending.get(key);
+		if(e==null) e=flushing.get(key);
+		return e==null?null:e.data;
+	}
+
+	/**
+	 * queues the data of a client scope, the data is written with the next flush
+	 * @param config
+	 * @param datasourceName
+	 * @param appName
+	 * @param cfid
+	 * @param data serialized client scope
+	 */
+	void write(ConfigImpl config, String datasourceName, String appName, String cfid, String data) {
+		String key=toKey(config, datasourceName, appName, cfid);
+		Entry e=new Entry(key,config,datasourceName,appName,cfid,data);
+		// the older state is replaced and not written, the lag is measured from the first change not written
+		Entry old=pending.put(key, e);
+		if(old!=null) {
+			e.queued=old.queued;
+			coalesced.incrementAndGet();
+		}
+		queued.incrementAndGet();
+		startFlusher();
+	}
+
+	private void startFlusher() {
+		if(flusher!=null && flusher.isAlive()) return;
+		synchronized (this) {
+			if(flusher!=null && flusher.isAlive()) return;
+			flusher=new Flusher();
+			flusher.start();
+		}
+	}
+
+	/**
+	 * writes all queued client scopes
+	 */
+	public void flush() {
+		if(pending.isEmpty()) return;
+		synchronized (token) {
+			_flush();
+		}
+	}
+
+	private void _flush() {
+		// group by datasource
+		Map<String,List<Entry>> groups=new HashMap<String,List<Entry>>();
+		Iterator<Entry> it = pending.values().iterator();
+		Entry e;
+		List<Entry> list;
+		while(it.hasNext()) {
+			e=it.next();
+			flushing.put(e.key, e);
+			// replaced by a newer state in the meantime, the newer state is written with the next flush
+			if(!pending.remove(e.key, e)) {
+				flushing.remove(e.key);
+				continue;
+			}
+			list=groups.get(e.groupKey);
+			if(list==null) groups.put(e.groupKey, list=new ArrayList<Entry>());
+			list.add(e);
+		}
+
+		Iterator<List<Entry>> itGroups = groups.values().iterator();
+		while(itGroups.hasNext()) {
+			list=itGroups.next();
+			try {
+				write(list);
+				long now=System.currentTimeMillis(),l;
+				for(int i=0;i<list.size();i++) {
+					l=now-list.get(i).queued;
+					lag.addAndGet(l);
+					long m;
+					while((m=maxLag.get())<l && !maxLag.compareAndSet(m, l)){}
+					lastLag=l;
+				}
+			}
+			catch(Throwable t) {
+				failures.incrementAndGet();
+				// written again with the next flush, unless there is a newer state
+				for(int i=0;i<list.size();i++) {
+					e=list.get(i);
+					pending.putIfAbsent(e.key, e);
+				}
+			}
+			finally {
+				for(int i=0;i<list.size();i++) {
+					e=list.get(i);
+					flushing.remove(e.key, e);
+				}
+			}
+		}
+	}
+
+	private void write(List<Entry> list) throws PageException, SQLException {
+		Entry first=list.get(0);
+		DatasourceConnectionPool pool = first.config.getDatasourceConnectionPool();
+		DatasourceConnection dc=pool.getDatasourceConnection(null,first.config.getDataSource(first.datasourceName),null,null);
+		try {
+			Connection conn=dc.getConnection();
+			conn.setAutoCommit(false);
+			try {
+				int[] counts=execute(conn,"update railo_client_data set data=? where cfid=? and name=?",list,true,true);
+				List<Entry> missing=new ArrayList<Entry>();
+				List<Entry> duplicates=new ArrayList<Entry>();
+				for(int i=0;i<counts.length;i++) {
+					if(counts[i]==0) missing.add(list.get(i));
+					else if(counts[i]>1) duplicates.add(list.get(i));
+				}
+				updated.addAndGet(list.size()-missing.size()-duplicates.size());
+				if(duplicates.size()>0) {
+					execute(conn,"delete from railo_client_data where cfid=? and name=?",duplicates,false,false);
+					missing.addAll(duplicates);
+				}
+				if(missing.size()>0) {
+					execute(conn,"insert into railo_client_data (data,cfid,name) values(?,?,?)",missing,true,false);
+					inserted.addAndGet(missing.size());
+				}
+				conn.commit();
+			}
+			catch(SQLException se) {
+				conn.rollback();
+				throw se;
+			}
+			finally {
+				conn.setAutoCommit(true);
+			}
+		}
+		finally {
+			pool.releaseDatasourceConnection(dc);
+		}
+	}
+
+	/**
+	 * executes the statement for all entries, as batch when the driver supports it
+	 * @param needCounts the number of changed rows is needed
+	 * @return the number of rows changed by every entry
+	 */
+	private int[] execute(Connection conn, String sql, List<Entry> list, boolean withData, boolean needCounts) throws SQLException {
+		PreparedStatement ps = conn.prepareStatement(sql);
+		try {
+			boolean batch=list.size()>1 && conn.getMetaData().supportsBatchUpdates();
+			int[] counts=batch?null:new int[list.size()];
+			Entry e;
+			for(int i=0;i<list.size();i++) {
+				e=list.get(i);
+				set(ps,e,withData);
+				if(batch) ps.addBatch();
+				else counts[i]=ps.executeUpdate();
+			}
+			if(!batch) return counts;
+			batches.incrementAndGet();
+			counts=ps.executeBatch();
+			// the driver does not tell the number of changed rows, so the statements are executed again one by one
+			for(int i=0;needCounts && i<counts.length;i++) {
+				if(counts[i]==Statement.SUCCESS_NO_INFO) {
+					set(ps,list.get(i),withData);
+					counts[i]=ps.executeUpdate();
+				}
+			}
+			return counts;
+		}
+		finally {
+			ps.close();
+		}
+	}
+
+	private void set(PreparedStatement ps, Entry e, boolean withData) throws SQLException {
+		int index=1;
+		if(withData) ps.setObject(index++, e.data, Types.VARCHAR);
+		ps.setObject(index++, e.cfid, Types.VARCHAR);
+		ps.setObject(index++, e.appName, Types.VARCHAR);
+	}
+
+	/**
+	 * a client scope was read from memory (near cache) and not from the datasource
+	 */
+	void hit() {
+		reads.incrementAndGet();
+		hits.incrementAndGet();
+	}
+
+	/**
+	 * a client scope was read from the datasource
+	 */
+	void load() {
+		reads.incrementAndGet();
+		loads.incrementAndGet();
+	}
+
+	/**
+	 * a client scope was not written because it has not changed
+	 */
+	void skip() {
+		skipped.incrementAndGet();
+	}
+
+	/**
+	 * @return metrics of the reads and writes of the client scopes stored in a datasource
+	 */
+	public Struct getStatistics() {
+		Struct sct=new StructImpl();
+		long r=reads.get(),h=hits.get();
+		sct.setEL("reads",new Double(r));
+		sct.setEL("hits",new Double(h));
+		sct.setEL("loads",new Double(loads.get()));
+		sct.setEL("hitRate",new Double(r==0?0:((double)h)/r));
+		sct.setEL("skipped",new Double(skipped.get()));
+		sct.setEL("queued",new Double(queued.get()));
+		sct.setEL("coalesced",new Double(coalesced.get()));
+		sct.setEL("pending",new Double(pending.size()+flushing.size()));
+		long written=updated.get()+inserted.get();
+		sct.setEL("updated",new Double(updated.get()));
+		sct.setEL("inserted",new Double(inserted.get()));
+		sct.setEL("batches",new Double(batches.get()));
+		sct.setEL("failures",new Double(failures.get()));
+		sct.setEL("lastLag",new Double(lastLag));
+		sct.setEL("maxLag",new Double(maxLag.get()));
+		sct.setEL("avgLag",new Double(written==0?0:lag.get()/written));
+		return sct;
+	}
+
+	private static final class Entry {
+		private final String key;
+		private final String groupKey;
+		private final ConfigImpl config;
+		private final String datasourceName;
+		private final String appName;
+		private final String cfid;
+		private final String data;
+		private volatile long queued=System.currentTimeMillis();
+
+		private Entry(String key, ConfigImpl config, String datasourceName, String appName, String cfid, String data) {
+			this.key=key;
+			this.groupKey=config.getId()+":"+datasourceName;
+			this.config=config;
+			this.datasourceName=datasourceName;
+			this.appName=appName;
+			this.cfid=cfid;
+			this.data=data;
+		}
+	}
+
+	private final class Flusher extends Thread {
+
+		private Flusher() {
+			super("Client Datasource Writer");
+			setDaemon(true);
+		}
+
+		public void run() {
+			while(true) {
+				try {
+					sleep(FLUSH_INTERVAL);
+				}
+				catch (InterruptedException e) {
+					return;
+				}
+				try {
+					flush();
+				}
+				catch(Throwable t) {}
+			}
+		}
+	}
+}
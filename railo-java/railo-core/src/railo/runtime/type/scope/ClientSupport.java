@@ -25,7 +25,7 @@ import railo.runtime.type.util.StructUtil;
 public abstract class ClientSupport extends StructSupport implements Client,Sizeable {
 	
 
-	private static Set FIX_KEYS=new HashSet();
+	protected static Set FIX_KEYS=new HashSet();
 	static {
 		FIX_KEYS.add("cfid");
 		FIX_KEYS.add("cftoken");
@@ -3,12 +3,12 @@ package railo.runtime.type.scope;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.servlet.http.HttpSession;
 
 import org.safehaus.uuid.UUIDGenerator;
 
-import railo.commons.collections.HashTable;
 import railo.commons.lang.ClassUtil;
 import railo.commons.lang.SizeOf;
 import railo.commons.lang.StringUtil;
@@ -38,12 +38,25 @@ public final class ScopeContext {
 	
 	private static final long CLIENT_MEMORY_TIMESPAN =  1*60*1000;
 	
+	// number of locks used to create scopes, has to be a power of 2
+	private static final int STRIPES=64;
+	
 	private static UUIDGenerator generator = UUIDGenerator.getInstance();
-	private Map cfSessionContextes=new HashTable();
-	private Map cfClientContextes=new HashTable();
-	private Map applicationContextes=new HashTable();
+	private Map cfSessionContextes=new ConcurrentHashMap();
+	private Map cfClientContextes=new ConcurrentHashMap();
+	private Map applicationContextes=new ConcurrentHashMap();
+	
+	// reading a scope needs no lock, only the creation of a scope is done within a lock, 
+	// chosen by application name and cfid, so requests of different sessions/applications do not block each other
+	private final Object[] locks=new Object[STRIPES];
 
-	private int maxSessionTimeout=0;
+	private volatile int maxSessionTimeout=0;
+	
+	public ScopeContext() {
+		for(int i=0;i<locks.length;i++){
+			locks[i]=new Object();
+		}
+	}
 
 	private static Cluster cluster;
 	private static Server server=null;
@@ -59,12 +72,48 @@ public final class ScopeContext {
 		Map context=(Map) parent.get(key);
 		if(context!=null) return context;
 		
-		context = new HashTable();
-		parent.put(key,context);
-		return context;
+		context = new ConcurrentHashMap();
+		Map existing=(Map) ((ConcurrentHashMap)parent).putIfAbsent(key,context);
+		return existing==null?context:existing;
 		
 	}
 	
+	/**
+	 * puts a scope into the map of the given key, a map removed by a sweep at the same time is not used
+	 * @param parent
+	 * @param key key of the map
+	 * @param subKey key of the scope
+	 * @param value scope
+	 */
+	private void putInSubMap(Map parent, String key, Object subKey, Object value) {
+		Map context;
+		do {
+			context=getSubMap(parent,key);
+			context.put(subKey,value);
+		}
+		while(parent.get(key)!=context);
+	}
+	
+	/**
+	 * removes the map of the given key when it is empty, 
+	 * scopes added to it at the same time are moved to the map now registered for the key
+	 * @param parent
+	 * @param key key of the map
+	 * @param context the map
+	 */
+	private void removeSubMapIfEmpty(Map parent, String key, Map context) {
+		if(!context.isEmpty() || !((ConcurrentHashMap)parent).remove(key,context)) return;
+		if(context.isEmpty()) return;
+		
+		ConcurrentHashMap current=(ConcurrentHashMap) getSubMap(parent,key);
+		Iterator it = context.entrySet().iterator();
+		Map.Entry entry;
+		while(it.hasNext()) {
+			entry=(Entry) it.next();
+			current.putIfAbsent(entry.getKey(),entry.getValue());
+		}
+	}
+	
 	/**
 	 * return the server Scope for this context
 	 * @param pc
@@ -140,20 +189,26 @@ public final class ScopeContext {
 			else storage="";
 			client=(Client) context.get(pc.getCFID()+storage);
 			if(client==null) {
-				if(StringUtil.isEmpty(storage) || "file".equals(storage) || "registry".equals(storage)){
-					client=ClientFile.getInstance(appContext.getName(),pc);
-				}
-				else if("cookie".equals(storage))
-					client=ClientCookie.getInstance(appContext.getName(),pc);
-				else if("memory".equals(storage) || "ram".equals(storage)){
-					//storage="ram";
-					client=ClientMemory.getInstance(pc);
+				synchronized(getLock(appContext.getName(),pc.getCFID())) {
+					context=getSubMap(cfClientContextes,appContext.getName());
+					client=(Client) context.get(pc.getCFID()+storage);
+					if(client==null) {
+						if(StringUtil.isEmpty(storage) || "file".equals(storage) || "registry".equals(storage)){
+							client=ClientFile.getInstance(appContext.getName(),pc);
+						}
+						else if("cookie".equals(storage))
+							client=ClientCookie.getInstance(appContext.getName(),pc);
+						else if("memory".equals(storage) || "ram".equals(storage)){
+							//storage="ram";
+							client=ClientMemory.getInstance(pc);
+						}
+						else{
+							//storage="db";
+							client=ClientDatasource.getInstance(storage,pc);
+						}
+						putInSubMap(cfClientContextes,appContext.getName(),pc.getCFID()+storage,client);
+					}
 				}
-				else{
-					//storage="db";
-					client=ClientDatasource.getInstance(storage,pc);
-				}
-				context.put(pc.getCFID()+storage,client);
 			}
 			client.initialize(pc);
 			return client;
@@ -170,20 +225,26 @@ public final class ScopeContext {
 			client=(Client) context.get(pc.getCFID()+storage);
 			
 			if(client==null) {
-				if(StringUtil.isEmpty(storage) || "file".equals(storage) || "registry".equals(storage)){
-					client=ClientFile.getInstance(appContext.getName(),pc);
-				}
-				else if("cookie".equals(storage))
-					client=ClientCookie.getInstance(appContext.getName(),pc);
-				else if("memory".equals(storage) || "ram".equals(storage)){
-					//storage="ram";
-					client=ClientMemory.getInstance(pc);
+				synchronized(getLock(appContext.getName(),pc.getCFID())) {
+					context=getSubMap(cfClientContextes,appContext.getName());
+					client=(Client) context.get(pc.getCFID()+storage);
+					if(client==null) {
+						if(StringUtil.isEmpty(storage) || "file".equals(storage) || "registry".equals(storage)){
+							client=ClientFile.getInstance(appContext.getName(),pc);
+						}
+						else if("cookie".equals(storage))
+							client=ClientCookie.getInstance(appContext.getName(),pc);
+						else if("memory".equals(storage) || "ram".equals(storage)){
+							//storage="ram";
+							client=ClientMemory.getInstance(pc);
+						}
+						else{
+							//storage="db";
+							client=ClientDatasource.getInstanceEL(storage,pc);
+						}
+						putInSubMap(cfClientContextes,appContext.getName(),pc.getCFID()+storage,client);
+					}
 				}
-				else{
-					//storage="db";
-					client=ClientDatasource.getInstanceEL(storage,pc);
-				}
-				context.put(pc.getCFID()+storage,client);
 			}
 			client.initialize(pc);
 			return client;
@@ -312,13 +373,13 @@ public final class ScopeContext {
 		return hasExistingJSessionScope(pc);
 	}
 	
-	private synchronized boolean hasExistingCFSessionScope(PageContext pc) {
+	private boolean hasExistingCFSessionScope(PageContext pc) {
 		Map context=getSubMap(cfSessionContextes,pc.getApplicationContext().getName());
 		Session session=(Session) context.get(pc.getCFID());
 		return session instanceof CFSession;
 	}
 	
-	private synchronized boolean hasExistingJSessionScope(PageContext pc) {
+	private boolean hasExistingJSessionScope(PageContext pc) {
 		HttpSession httpSession=pc.getSession();
         if(httpSession==null) return false;
         
@@ -337,24 +398,30 @@ public final class ScopeContext {
 	 * @return cf session matching the context
 	 * @throws PageException 
 	 */
-	private synchronized Session getCFSessionScope(PageContext pc, RefBoolean isNew) {
+	private Session getCFSessionScope(PageContext pc, RefBoolean isNew) {
 		
 		ApplicationContext appContext = pc.getApplicationContext(); 
 		// get Context
 			Map context=getSubMap(cfSessionContextes,appContext.getName());
 			
-		// get Session
+		// get Session, the lock is only needed to create or renew it
 			Session session=(Session) context.get(pc.getCFID());
-			if(session instanceof CFSession) {
-				if(session.isExpired()) {
-					session.touch();
+			if(!(session instanceof CFSession) || session.isExpired()) {
+				synchronized(getLock(appContext.getName(),pc.getCFID())) {
+					context=getSubMap(cfSessionContextes,appContext.getName());
+					session=(Session) context.get(pc.getCFID());
+					if(session instanceof CFSession) {
+						if(session.isExpired()) {
+							session.touch();
+						}
+					}
+					else {
+					    session=new CFSession();
+					    putInSubMap(cfSessionContextes,appContext.getName(),pc.getCFID(),session);
+						isNew.setValue(true);
+					}
 				}
 			}
-			else {
-			    session=new CFSession();
-				context.put(pc.getCFID(),session);
-				isNew.setValue(true);
-			}
 			session.initialize(pc);
 			return session;
 	}
@@ -366,7 +433,7 @@ public final class ScopeContext {
 	 * @return j session matching the context
 	 * @throws PageException
 	 */
-	private synchronized Session getJSessionScope(PageContext pc, RefBoolean isNew) {
+	private Session getJSessionScope(PageContext pc, RefBoolean isNew) {
         HttpSession httpSession=pc.getSession();
         ApplicationContext appContext = pc.getApplicationContext(); 
         Session session=null;
@@ -374,15 +441,13 @@ public final class ScopeContext {
         int s=(int) appContext.getSessionTimeout().getSeconds();
         if(maxSessionTimeout<s)maxSessionTimeout=s;
         
-        if(httpSession!=null) {
-        	httpSession.setMaxInactiveInterval(maxSessionTimeout);
-        	session=(Session) httpSession.getAttribute(appContext.getName());
-        }
-     // call of listeners
-        else {
-        	Map context=getSubMap(cfSessionContextes,appContext.getName());
-        	session=(Session) context.get(pc.getCFID());
-        }
+        if(httpSession!=null) httpSession.setMaxInactiveInterval(maxSessionTimeout);
+        session=getExistingJSession(pc, httpSession);
+        
+        // the lock is only needed to create or renew the session
+        if(!(session instanceof JSession) || session.isExpired()) {
+        synchronized(getLock(appContext.getName(),pc.getCFID())) {
+        session=getExistingJSession(pc, httpSession);
         
 		if(session instanceof JSession) {
             try {
@@ -400,12 +465,19 @@ public final class ScopeContext {
             session=new JSession();
 		    httpSession.setAttribute(appContext.getName(),session);
 			isNew.setValue(true);
-			Map context=getSubMap(cfSessionContextes,appContext.getName());
-			context.put(pc.getCFID(),session);
+			putInSubMap(cfSessionContextes,appContext.getName(),pc.getCFID(),session);
 		}
+        }
+        }
 		session.initialize(pc);
 		return session;    
 	}
+	
+	private Session getExistingJSession(PageContext pc, HttpSession httpSession) {
+		String name=pc.getApplicationContext().getName();
+		if(httpSession!=null) return (Session) httpSession.getAttribute(name);
+		return (Session) getSubMap(cfSessionContextes,name).get(pc.getCFID());
+	}
 
 	/**
 	 * return the application Scope for this context (cfid,cftoken,contextname)
@@ -415,27 +487,44 @@ public final class ScopeContext {
 	 * @return session matching the context
 	 * @throws PageException 
 	 */
-	public synchronized Application getApplicationScope(PageContext pc, RefBoolean isNew) {
+	public Application getApplicationScope(PageContext pc, RefBoolean isNew) {
 		ApplicationContext appContext = pc.getApplicationContext(); 
-		// getApplication Scope from Context
-			Application application;
-			Object objApp=applicationContextes.get(appContext.getName());
-			if(objApp!=null) {
-			    application=(Application)objApp;
-			    if(application.isExpired()) {
-			    	application.release();	
+		// getApplication Scope from Context, the lock is only needed to create or renew it
+		Application application=(Application) applicationContextes.get(appContext.getName());
+		if(application==null || application.isExpired()) {
+			synchronized(getLock(appContext.getName(),null)) {
+				application=(Application) applicationContextes.get(appContext.getName());
+				if(application!=null) {
+				    if(application.isExpired()) {
+				    	application.release();
+				    	// renewed, so a other request waiting for the lock does not release it again
+				    	application.touch();
+				    	isNew.setValue(true);
+				    }
+				}
+				else {
+					application=new ApplicationImpl();
+					applicationContextes.put(appContext.getName(),application);	
 			    	isNew.setValue(true);
-			    }
-			}
-			else {
-				application=new ApplicationImpl();
-				applicationContextes.put(appContext.getName(),application);	
-		    	isNew.setValue(true);
+				}
 			}
-			application.initialize(pc);
-			//if(newApplication)listener.onApplicationStart(pc);
-			
-			return application;
+		}
+		application.initialize(pc);
+		//if(newApplication)listener.onApplicationStart(pc);
+		
+		return application;
+	}
+	
+	/**
+	 * returns the lock for the given application and cfid 
+	 * @param appName
+	 * @param cfid cfid or null for the lock of the application itself
+	 */
+	private Object getLock(String appName, String cfid) {
+		int hash=appName==null?0:appName.hashCode();
+		if(cfid!=null) hash=hash*31+cfid.hashCode();
+		hash^=(hash>>>16);
+		return locks[hash&(STRIPES-1)];
 	}
 	
 	public void removeApplicationScope(PageContext pc) {
@@ -465,30 +554,34 @@ public final class ScopeContext {
 
     
 
+	/*
+	 * the sweeps below iterate the concurrent maps directly (weakly consistent), so requests are never blocked 
+	 * and no copy of all keys is made, a entry is only removed when it is still the same object (remove(key,value)). 
+	 * Empty contexts of a application are removed, a scope added to it at the same time is moved to the context registered then.
+	 */
+
 	private void storeUnusedClients(CFMLFactoryImpl jspFactory) {
         if(cfClientContextes.size()==0)return;
 		long now = System.currentTimeMillis();
-		Object[] arrContextes= cfClientContextes.keySet().toArray();
-		Object applicationName,cfid;
+		Iterator it = cfClientContextes.entrySet().iterator();
+		Iterator itClients;
+		Map.Entry entry,e;
+		Map fhm;
+		Client client;
 		
-		for(int i=0;i<arrContextes.length;i++) {
-			
-			applicationName=arrContextes[i];
-            Map fhm=(Map) cfClientContextes.get(applicationName);
-            if(fhm.size()>0){
-    			Object[] arrClients= fhm.keySet().toArray();
-                int count=arrClients.length;
-                for(int y=0;y<arrClients.length;y++) {
-                	cfid=arrClients[y];
-    				Client client=(Client) fhm.get(cfid);
-    				if(client.lastVisit()+CLIENT_MEMORY_TIMESPAN<now) {
-    					if(client instanceof ClientSupport)((ClientSupport)client).store();
-    					fhm.remove(arrClients[y]);
-        				count--;
-    				}
-    			}
-                if(count==0)cfClientContextes.remove(arrContextes[i]);
-            }
+		while(it.hasNext()) {
+			e=(Entry) it.next();
+            fhm=(Map) e.getValue();
+            itClients=fhm.entrySet().iterator();
+            while(itClients.hasNext()) {
+            	entry=(Entry) itClients.next();
+				client=(Client) entry.getValue();
+				if(client.lastVisit()+CLIENT_MEMORY_TIMESPAN<now) {
+					if(client instanceof ClientSupport)((ClientSupport)client).store();
+					((ConcurrentHashMap)fhm).remove(entry.getKey(),client);
+				}
+			}
+			removeSubMapIfEmpty(cfClientContextes,(String)e.getKey(),fhm);
 		}
 	}
     
@@ -498,45 +591,47 @@ public final class ScopeContext {
 	 */
 	private void clearUnusedSessions(CFMLFactoryImpl jspFactory) {
         if(cfSessionContextes.size()==0)return;
-		Object[] arrContextes= cfSessionContextes.keySet().toArray();
 		ApplicationListener listener = jspFactory.getConfig().getApplicationListener();
+		Iterator it = cfSessionContextes.entrySet().iterator();
+		Iterator itSessions;
+		Map.Entry entry,e;
+		Map fhm;
 		Object applicationName,cfid;
+		Session session;
 		
-		for(int i=0;i<arrContextes.length;i++) {
-			applicationName=arrContextes[i];
-            Map fhm=(Map) cfSessionContextes.get(applicationName);
-            if(fhm.size()>0){
-    			Object[] arrSessions= fhm.keySet().toArray();
-                int count=arrSessions.length;
-                for(int y=0;y<arrSessions.length;y++) {
-                	cfid=arrSessions[y];
-    				Session session=(Session) fhm.get(cfid);
-    				if(session.isExpired()) {
-    					// TODO macht das sinn? ist das nicht kopierleiche?
-    					ApplicationImpl application=(ApplicationImpl) applicationContextes.get(applicationName);
-    					long appLastAccess=0;
-    					if(application!=null){
-    						appLastAccess=application.getLastAccess();
-    						application.touch();
-    					}
-    					session.touch();
-                        
-    					try {
-    						listener.onSessionEnd(jspFactory,(String)applicationName,(String)cfid);
-    					} 
-    					catch (Throwable t) {
-    						ExceptionHandler.log(jspFactory.getConfig(),Caster.toPageException(t));
-    					}
-    					finally {
-    						if(application!=null)application.setLastAccess(appLastAccess);
-    						fhm.remove(arrSessions[y]);
-        					session.release();
-    						count--;
-    					}
-    				}
-    			}
-                if(count==0)cfSessionContextes.remove(arrContextes[i]);
-            }
+		while(it.hasNext()) {
+			entry=(Entry) it.next();
+			applicationName=entry.getKey();
+            fhm=(Map) entry.getValue();
+            itSessions=fhm.entrySet().iterator();
+            while(itSessions.hasNext()) {
+            	e=(Entry) itSessions.next();
+            	cfid=e.getKey();
+				session=(Session) e.getValue();
+				if(session.isExpired()) {
+					// TODO macht das sinn? ist das nicht kopierleiche?
+					ApplicationImpl application=(ApplicationImpl) applicationContextes.get(applicationName);
+					long appLastAccess=0;
+					if(application!=null){
+						appLastAccess=application.getLastAccess();
+						application.touch();
+					}
+					session.touch();
+                    
+					try {
+						listener.onSessionEnd(jspFactory,(String)applicationName,(String)cfid);
+					} 
+					catch (Throwable t) {
+						ExceptionHandler.log(jspFactory.getConfig(),Caster.toPageException(t));
+					}
+					finally {
+						if(application!=null)application.setLastAccess(appLastAccess);
+						if(((ConcurrentHashMap)fhm).remove(cfid,session))
+							session.release();
+					}
+				}
+			}
+			removeSubMapIfEmpty(cfSessionContextes,(String)applicationName,fhm);
 		}
 	}
 	
@@ -545,23 +640,26 @@ public final class ScopeContext {
         if(applicationContextes.size()==0)return;
 		
 		long now=System.currentTimeMillis();
-		Object[] arrContextes= applicationContextes.keySet().toArray();
 		ApplicationListener listener = jspFactory.getConfig().getApplicationListener();
-		for(int i=0;i<arrContextes.length;i++) {
-            Application application=(Application) applicationContextes.get(arrContextes[i]);
+		Iterator it = applicationContextes.entrySet().iterator();
+		Map.Entry entry;
+		Application application;
+		while(it.hasNext()) {
+			entry=(Entry) it.next();
+            application=(Application) entry.getValue();
 			
 			if(application.getLastAccess()+application.getTimeSpan()<now) {
-                //SystemOut .printDate(jspFactory.getConfigWebImpl().getOut(),"Clear application scope:"+arrContextes[i]+"-"+this);
+                //SystemOut .printDate(jspFactory.getConfigWebImpl().getOut(),"Clear application scope:"+entry.getKey()+"-"+this);
                 application.touch();
 				try {
-					listener.onApplicationEnd(jspFactory,(String)arrContextes[i]);
+					listener.onApplicationEnd(jspFactory,(String)entry.getKey());
 				} 
 				catch (Throwable t) {
 					ExceptionHandler.log(jspFactory.getConfig(),Caster.toPageException(t));
 				}
 				finally {
-					applicationContextes.remove(arrContextes[i]);
-					application.release();
+					if(((ConcurrentHashMap)applicationContextes).remove(entry.getKey(),application))
+						application.release();
 				}
 				
 			}
@@ -49,6 +49,7 @@ public class ApplicationContextImpl implements ApplicationContextPro {
 	private String applicationtoken;
 	private String cookiedomain;
 	private int idletimeout=1800;
+	private int regexEngine=REGEX_ENGINE_PERL;
     
     /**
      * constructor of the class
@@ -103,6 +104,7 @@ public class ApplicationContextImpl implements ApplicationContextPro {
 		dbl.applicationtoken=applicationtoken;
 		dbl.cookiedomain=cookiedomain;
 		dbl.idletimeout=idletimeout;
+		dbl.regexEngine=regexEngine;
 		
 		dbl.ormEnabled=ormEnabled;
 		dbl.config=config;
@@ -368,6 +370,23 @@ public class ApplicationContextImpl implements ApplicationContextPro {
 	}
 
 
+	/**
+	 * @see railo.runtime.util.ApplicationContextPro#getRegexEngine()
+	 */
+	public int getRegexEngine() {
+		return regexEngine;
+	}
+
+	/**
+	 * @param strRegexEngine "java" or "perl"
+	 */
+	public void setRegexEngine(String strRegexEngine) {
+		strRegexEngine=strRegexEngine.trim().toLowerCase();
+		if("java".equals(strRegexEngine)) regexEngine=REGEX_ENGINE_JAVA;
+		else regexEngine=REGEX_ENGINE_PERL;
+	}
+
+
 	public void setSecuritySettings(String applicationtoken, String cookiedomain, int idletimeout) {
 		this.applicationtoken=applicationtoken;
 		this.cookiedomain=cookiedomain;
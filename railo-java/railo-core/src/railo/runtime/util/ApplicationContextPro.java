@@ -8,6 +8,9 @@ import railo.runtime.type.Collection;
 // FUTURE move all this to ApplicationContext and delete this interface
 public interface ApplicationContextPro extends ApplicationContext {
 	
+	public static final int REGEX_ENGINE_PERL=0;
+	public static final int REGEX_ENGINE_JAVA=1;
+	
 	public String getDefaultDataSource();
 	
 	public boolean isORMEnabled();
@@ -25,4 +28,10 @@ public interface ApplicationContextPro extends ApplicationContext {
 	 * @param string
 	 */
 	public Object getCustom(Collection.Key key);
+
+	/**
+	 * returns the engine used by the regular expression functions (REFind,REReplace,REMatch)
+	 * @return REGEX_ENGINE_PERL or REGEX_ENGINE_JAVA
+	 */
+	public int getRegexEngine();
 }
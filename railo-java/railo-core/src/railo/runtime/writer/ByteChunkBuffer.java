@@ -0,0 +1,133 @@
+package railo.runtime.writer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * growing byte buffer made of fixed size chunks, the chunks are taken from and returned to a pool shared by all buffers,
+ * so the buffer never copies the content when growing and a request does not allocate new memory for the response
+ */
+final class ByteChunkBuffer {
+
+	static final int CHUNK_SIZE=8192;
+	private static final int MAX_POOLED=512; // 4 MB
+
+	private static final ConcurrentLinkedQueue<byte[]> pool=new ConcurrentLinkedQueue<byte[]>();
+	private static final AtomicInteger pooled=new AtomicInteger();
+
+	private final ArrayList<byte[]> chunks=new ArrayList<byte[]>();
+	// position within the last chunk
+	private int pos=CHUNK_SIZE;
+	private int size;
+
+	void write(int b) {
+		if(pos==CHUNK_SIZE) addChunk();
+		chunks.get(chunks.size()-1)[pos++]=(byte)b;
+		size++;
+	}
+
+	void write(byte[] barr, int off, int len) {
+		int l;
+		while(len>0) {
+			if(pos==CHUNK_SIZE) addChunk();
+			l=Math.min(len, CHUNK_SIZE-pos);
+			System.arraycopy(barr, off, chunks.get(chunks.size()-1), pos, l);
+			pos+=l;
+			off+=l;
+			len-=l;
+			size+=l;
+		}
+	}
+
+	int size() {
+		return size;
+	}
+
+	byte get(int index) {
+		return chunks.get(index/CHUNK_SIZE)[index%CHUNK_SIZE];
+	}
+
+	/**
+	 * writes the bytes from start (inclusive) to end (exclusive) to the given stream
+	 */
+	void writeTo(OutputStream os, int start, int end) throws IOException {
+		int index,off,len;
+		while(start<end) {
+			index=start/CHUNK_SIZE;
+			off=start%CHUNK_SIZE;
+			len=Math.min(end-start, CHUNK_SIZE-off);
+			os.write(chunks.get(index), off, len);
+			start+=len;
+		}
+	}
+
+	void writeTo(OutputStream os) throws IOException {
+		writeTo(os, 0, size);
+	}
+
+	byte[] toByteArray() {
+		byte[] barr=new byte[size];
+		int off=0,len;
+		for(int i=0;i<chunks.size();i++) {
+			len=Math.min(CHUNK_SIZE, size-off);
+			System.arraycopy(chunks.get(i), 0, barr, off, len);
+			off+=len;
+		}
+		return barr;
+	}
+
+	/**
+	 * returns the first position of the given (ascii) text, the case is ignored
+	 * @param ascii text to search, lower case
+	 * @return position or -1
+	 */
+	int indexOfIgnoreCase(byte[] ascii) {
+		int last=size-ascii.length;
+		int y;
+		for(int i=0;i<=last;i++) {
+			for(y=0;y<ascii.length;y++) {
+				if(Character.toLowerCase((char)(get(i+y)&0xFF))!=ascii[y]) break;
+			}
+			if(y==ascii.length) return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return stream writing to this buffer
+	 */
+	OutputStream getOutputStream() {
+		return new OutputStream() {
+			public void write(int b) {
+				ByteChunkBuffer.this.write(b);
+			}
+			public void write(byte[] barr, int off, int len) {
+				ByteChunkBuffer.this.write(barr, off, len);
+			}
+		};
+	}
+
+	/**
+	 * empties the buffer and gives the chunks back to the pool
+	 */
+	void reset() {
+		for(int i=0;i<chunks.size();i++) {
+			if(pooled.incrementAndGet()<=MAX_POOLED) pool.offer(chunks.get(i));
+			else pooled.decrementAndGet();
+		}
+		chunks.clear();
+		pos=CHUNK_SIZE;
+		size=0;
+	}
+
+	private void addChunk() {
+		byte[] chunk=pool.poll();
+		if(chunk==null) chunk=new byte[CHUNK_SIZE];
+		else pooled.decrementAndGet();
+		chunks.add(chunk);
+		pos=0;
+	}
+}
@@ -1,9 +1,19 @@
 package railo.runtime.writer;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
 
 import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import railo.commons.io.IOUtil;
@@ -14,17 +24,32 @@ import railo.runtime.cache.legacy.MetaData;
 import railo.runtime.net.http.ReqRspUtil;
 
 /**
- * Implementation of a JSpWriter
+ * Implementation of a JSpWriter, the content is encoded in small steps into pooled byte chunks,
+ * so the page is not held as chars and bytes at the same time.
+ * When the complete page is written at the end of the request, the content can be compressed (gzip/deflate)
  */
 public class CFMLWriterImpl extends CFMLWriter { 
      
 	private static final int BUFFER_SIZE = 1024;
+	// smaller content is not worth to compress
+	private static final int MIN_COMPRESSION_SIZE = 1024;
+	private static final byte[] HEAD_START = new byte[]{'<','h','e','a','d','>'};
+	private static final byte[] HEAD_END = new byte[]{'<','/','h','e','a','d','>'};
 	private static final String VERSION = Info.getVersionAsString();  
     private ServletOutputStream out;
+	private HttpServletRequest request;
 	private HttpServletResponse response;
     private boolean flushed;
     private String headData;
-    private StringBuffer buffer=new StringBuffer(BUFFER_SIZE);
+    private int headIndex;
+    private final ByteChunkBuffer bytes=new ByteChunkBuffer();
+    // chars not encoded yet
+    private char[] chars=new char[BUFFER_SIZE];
+    private int count;
+    private String charset;
+    private CharsetEncoder encoder;
+    private ByteBuffer encoded;
+    private boolean allowCompression;
     private boolean closed=false;
     private boolean closeConn;
     private boolean showVersion;
@@ -47,6 +72,20 @@ public class CFMLWriterImpl extends CFMLWriter {
         this.contentLength=contentLength;
     }
 
+    /**
+     * constructor of the class
+     * @param request Request Object, used to check if the client accepts compressed content
+     * @param response Response Object
+     * @param bufferSize buffer Size
+     * @param autoFlush do auto flush Content
+     * @param allowCompression compress the content when the client accepts it
+     */
+    public CFMLWriterImpl(HttpServletRequest request, HttpServletResponse response, int bufferSize, boolean autoFlush, boolean closeConn, boolean showVersion, boolean contentLength, boolean allowCompression) {
+        this(response, bufferSize, autoFlush, closeConn, showVersion, contentLength);
+        this.request=request;
+        this.allowCompression=allowCompression;
+    }
+
     /* *
      * constructor of the class
      * @param response Response Object
@@ -56,7 +95,7 @@ public class CFMLWriterImpl extends CFMLWriter {
     }*/
     
     private void _check() throws IOException {
-        if(autoFlush && buffer.length()>bufferSize)  {
+        if(autoFlush && bytes.size()+count>bufferSize)  {
             _flush(true);
         }
     }
@@ -75,7 +114,7 @@ public class CFMLWriterImpl extends CFMLWriter {
      * @see javax.servlet.jsp.JspWriter#print(char[]) 
      */ 
     public void print(char[] arg) throws IOException { 
-        buffer.append(arg);
+        _append(arg,0,arg.length);
         _check();
     }
     
@@ -132,7 +171,7 @@ public class CFMLWriterImpl extends CFMLWriter {
      * @see java.io.Writer#write(char[], int, int) 
      */ 
     public void write(char[] cbuf, int off, int len) throws IOException { 
-        buffer.append(cbuf,off,len);
+        _append(cbuf,off,len);
         _check();
     }
 
@@ -148,7 +187,9 @@ public class CFMLWriterImpl extends CFMLWriter {
      * @see javax.servlet.jsp.JspWriter#clearBuffer() 
      */ 
     public void clearBuffer() { 
-    	buffer=new StringBuffer(BUFFER_SIZE);
+    	bytes.reset();
+    	count=0;
+    	if(encoder!=null)encoder.reset();
     } 
 
     /** 
@@ -183,24 +224,215 @@ public class CFMLWriterImpl extends CFMLWriter {
         	
         }
     	initOut();
-    	byte[] barr = _toString(true).getBytes(response.getCharacterEncoding());
+    	checkCharset();
+    	encode(false);
+    	byte[] head=prepareHead();
         
     	if(cacheItem!=null && cacheItem.getResource()!=null) {
-        	writeCache(barr,flushed);
+        	writeCache(head,flushed);
         }
         flushed = true;
-        out.write(barr);
+        writeContent(out, bytes, head);
         
-        buffer=new StringBuffer(BUFFER_SIZE); // to not change to clearBuffer, produce problem with CFMLWriterWhiteSpace.clearBuffer 
+        bytes.reset(); // to not change to clearBuffer, produce problem with CFMLWriterWhiteSpace.clearBuffer 
     } 
+
+    /**
+     * appends chars to the buffer, the chars are encoded when the char buffer is full
+     */
+    private void _append(char[] cbuf, int off, int len) throws IOException {
+    	int l;
+    	while(len>0) {
+    		if(count==chars.length) encode(false);
+    		l=Math.min(len, chars.length-count);
+    		System.arraycopy(cbuf, off, chars, count, l);
+    		count+=l;
+    		off+=l;
+    		len-=l;
+    	}
+    }
+
+    private void _append(String str, int off, int len) throws IOException {
+    	int l;
+    	while(len>0) {
+    		if(count==chars.length) encode(false);
+    		l=Math.min(len, chars.length-count);
+    		str.getChars(off, off+l, chars, count);
+    		count+=l;
+    		off+=l;
+    		len-=l;
+    	}
+    }
+
+    private void _append(String str) throws IOException {
+    	if(str==null) str="null";
+    	_append(str,0,str.length());
+    }
+
+    private void _append(char c) throws IOException {
+    	if(count==chars.length) encode(false);
+    	chars[count++]=c;
+    }
+
+    /**
+     * encodes the buffered chars to the byte buffer
+     * @param endOfInput no more chars follow
+     */
+    private void encode(boolean endOfInput) throws IOException {
+    	if(encoder==null) initEncoder(response.getCharacterEncoding());
+    	CharBuffer in = CharBuffer.wrap(chars, 0, count);
+    	CoderResult cr;
+    	do {
+    		encoded.clear();
+    		cr=encoder.encode(in, encoded, endOfInput);
+    		bytes.write(encoded.array(), 0, encoded.position());
+    	}
+    	while(cr.isOverflow());
+    	
+    	if(endOfInput) {
+    		do {
+        		encoded.clear();
+        		cr=encoder.flush(encoded);
+        		bytes.write(encoded.array(), 0, encoded.position());
+        	}
+        	while(cr.isOverflow());
+    		encoder.reset();
+    	}
+    	
+    	// the first half of a surrogate pair waits for the second
+    	count=in.remaining();
+    	if(count>0) System.arraycopy(chars, in.position(), chars, 0, count);
+    }
+    
+    private void initEncoder(String charset) throws IOException {
+    	if(charset==null) charset="ISO-8859-1";
+    	try {
+    		encoder=Charset.forName(charset).newEncoder();
+    	}
+    	catch(IllegalArgumentException e) {
+    		throw new UnsupportedEncodingException(charset);
+    	}
+    	// same behavior as String.getBytes
+    	encoder.onMalformedInput(CodingErrorAction.REPLACE);
+    	encoder.onUnmappableCharacter(CodingErrorAction.REPLACE);
+    	if(encoded==null) encoded=ByteBuffer.allocate(BUFFER_SIZE*4);
+    	this.charset=charset;
+    }
+    
+    /**
+     * the charset of the response can be changed after content is written, in this case the not flushed content is encoded again
+     */
+    private void checkCharset() throws IOException {
+    	if(encoder==null) return;
+    	String cs=response.getCharacterEncoding();
+    	if(cs==null || cs.equalsIgnoreCase(charset)) return;
+    	String str=decode();
+    	bytes.reset();
+    	count=0;
+    	initEncoder(cs);
+    	_append(str);
+    }
+    
+    /**
+     * @return content of the buffer (not flushed yet) as string
+     */
+    private String decode() throws UnsupportedEncodingException {
+    	if(bytes.size()==0) return new String(chars,0,count);
+    	return new String(bytes.toByteArray(),charset).concat(new String(chars,0,count));
+    }
+    
+    /**
+     * prepares the html head data for the output, the position to insert is stored in headIndex
+     * @return head data as bytes or null if there is no head data (anymore)
+     */
+    private byte[] prepareHead() throws IOException {
+    	if(headData==null) return null;
+    	
+    	// the tags can only be searched in the bytes when the charset encodes ascii in single bytes
+    	if(HEAD_END.length!="</head>".getBytes(charset).length) {
+    		String str=_toString(true);
+    		bytes.reset();
+    		count=0;
+    		_append(str);
+    		encode(false);
+    		return null;
+    	}
+    	byte[] head=headData.getBytes(charset);
+    	headData=null;
+    	
+    	headIndex=bytes.indexOfIgnoreCase(HEAD_END);
+    	if(headIndex!=-1) return head;
+    	
+    	headIndex=bytes.indexOfIgnoreCase(HEAD_START);
+    	if(headIndex!=-1) headIndex+=HEAD_START.length;
+    	else headIndex=0;
+    	return head;
+    }
+    
+    /**
+     * writes the content with the head data to the given stream
+     */
+    private void writeContent(OutputStream os, ByteChunkBuffer content, byte[] head) throws IOException {
+    	if(head==null) {
+    		content.writeTo(os);
+    		return;
+    	}
+    	content.writeTo(os, 0, headIndex);
+    	os.write(head);
+    	content.writeTo(os, headIndex, content.size());
+    }
     
+    /**
+     * checks if the content can be compressed and the client accepts it
+     * @return content encoding to use (gzip or deflate) or null for no compression
+     */
+    private String getCompression(int size) {
+    	if(!allowCompression || request==null || size<MIN_COMPRESSION_SIZE) return null;
+    	if(response.containsHeader("Content-Encoding")) return null;
+    	
+    	String header=request.getHeader("Accept-Encoding");
+    	if(StringUtil.isEmpty(header)) return null;
+    	
+    	String[] encodings=header.split(",");
+    	String enc;
+    	int index;
+    	boolean deflate=false;
+    	for(int i=0;i<encodings.length;i++) {
+    		enc=encodings[i];
+    		index=enc.indexOf(';');
+    		if(index!=-1) {
+    			if(isZeroQuality(enc.substring(index+1))) continue;
+    			enc=enc.substring(0,index);
+    		}
+    		enc=enc.trim().toLowerCase();
+    		if("gzip".equals(enc) || "x-gzip".equals(enc)) return "gzip";
+    		if("deflate".equals(enc)) deflate=true;
+    	}
+    	return deflate?"deflate":null;
+    }
     
+    private static boolean isZeroQuality(String param) {
+    	param=StringUtil.removeWhiteSpace(param).toLowerCase();
+    	if(!param.startsWith("q=")) return false;
+    	try {
+    		return Double.parseDouble(param.substring(2))==0;
+    	}
+    	catch(NumberFormatException e) {
+    		return false;
+    	}
+    }
 
     private String _toString(boolean releaseHeadData) {
+    	String str;
+    	try {
+    		str=decode();
+    	}
+    	catch (UnsupportedEncodingException e) {
+    		str=new String(chars,0,count);
+    	}
         if(headData==null) {
-            return buffer.toString();
+            return str;
         }
-        String str=buffer.toString();
         
     // /head
         int index=StringUtil.indexOfIgnoreCase(str,"</head>");
@@ -213,7 +445,7 @@ public class CFMLWriterImpl extends CFMLWriter {
      // head
         index=StringUtil.indexOfIgnoreCase(str,"<head>");
         if(index!=-1){
-        	str= str.substring(0,index+7).concat(headData).concat(str.substring(index+7));
+        	str= str.substring(0,index+6).concat(headData).concat(str.substring(index+6));
             if(releaseHeadData)headData=null;
             return str;
         }
@@ -245,36 +477,72 @@ public class CFMLWriterImpl extends CFMLWriter {
     	//boolean closeConn=true;
         if(out==null) { 
         	if(response.isCommitted()) {
+        		bytes.reset();
         		closed=true;
         		return;
         	}
-        	//print.out(_toString());
-        	byte[] barr = _toString(true).getBytes(response.getCharacterEncoding());
+        	checkCharset();
+        	encode(true);
+        	byte[] head=prepareHead();
             
         	if(cacheItem!=null)	{
-        		writeCache(barr,false);
+        		writeCache(head,false);
         	}
         	
         	if(closeConn)response.setHeader("connection", "close");
         	if(showVersion)response.setHeader("Railo-Version", VERSION);
-            if(contentLength)ReqRspUtil.setContentLength(response,barr.length);
+        	
+        	// the complete page is known, so it can be compressed and still get a content length
+        	ByteChunkBuffer content=bytes;
+        	String compression=getCompression(bytes.size()+(head==null?0:head.length));
+        	if(compression!=null) {
+        		content=new ByteChunkBuffer();
+        		DeflaterOutputStream dos="gzip".equals(compression)?
+        				new GZIPOutputStream(content.getOutputStream()):
+        				new DeflaterOutputStream(content.getOutputStream());
+        		writeContent(dos, bytes, head);
+        		dos.close();
+        		bytes.reset();
+        		head=null;
+        		response.setHeader("Content-Encoding", compression);
+        		response.addHeader("Vary", "Accept-Encoding");
+        	}
+        	
+            if(contentLength)ReqRspUtil.setContentLength(response,content.size()+(head==null?0:head.length));
             
             out = response.getOutputStream();
-            out.write(barr);
+            try {
+            	writeContent(out, content, head);
+            }
+            finally {
+            	content.reset();
+            	bytes.reset();
+            }
             out.flush();
             out.close();
             out = null;
         }
         else {
-            _flush(closeConn);
+        	try {
+        		_flush(closeConn);
+        	}
+        	finally {
+        		bytes.reset();
+        	}
             out.close();
             out = null;
         }
         closed = true;
     } 
 
-    private void writeCache(byte[] barr,boolean append) throws IOException {
-    	IOUtil.copy(new ByteArrayInputStream(barr), cacheItem.getResource().getOutputStream(append),true,true);
+    private void writeCache(byte[] head,boolean append) throws IOException {
+    	OutputStream os = cacheItem.getResource().getOutputStream(append);
+    	try {
+    		writeContent(os, bytes, head);
+    	}
+    	finally {
+    		IOUtil.closeEL(os);
+    	}
     	MetaData.getInstance(cacheItem.getDirectory()).add(cacheItem.getName(), cacheItem.getRaw());
 	}
 
@@ -282,7 +550,7 @@ public class CFMLWriterImpl extends CFMLWriter {
      * @see javax.servlet.jsp.JspWriter#getRemaining() 
      */ 
     public int getRemaining() { 
-        return bufferSize - buffer.length();
+        return bufferSize - (bytes.size()+count);
     }
 
     /** 
@@ -303,7 +571,7 @@ public class CFMLWriterImpl extends CFMLWriter {
      * @see javax.servlet.jsp.JspWriter#print(char) 
      */ 
     public void print(char arg) throws IOException { 
-        buffer.append(arg);
+        _append(arg);
         _check();
     } 
 
@@ -340,7 +608,7 @@ public class CFMLWriterImpl extends CFMLWriter {
      * @see javax.servlet.jsp.JspWriter#print(java.lang.String) 
      */ 
     public void print(String arg) throws IOException { 
-        buffer.append(arg);
+        _append(arg);
         _check();
     } 
 
@@ -447,7 +715,8 @@ public class CFMLWriterImpl extends CFMLWriter {
      * @see java.io.Writer#write(java.lang.String, int, int) 
      */ 
     public void write(String str, int off, int len) throws IOException { 
-        write(str.toCharArray(),off,len);
+        _append(str,off,len);
+        _check();
     } 
 
     /** 
@@ -469,7 +738,7 @@ public class CFMLWriterImpl extends CFMLWriter {
     }
 
     private void _print(String arg) throws IOException { 
-        buffer.append(arg);
+        _append(arg);
         _check();
     }
 
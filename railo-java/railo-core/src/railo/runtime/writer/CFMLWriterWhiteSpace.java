@@ -2,6 +2,7 @@ package railo.runtime.writer;
 
 import java.io.IOException;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 /**
@@ -28,6 +29,18 @@ public final class CFMLWriterWhiteSpace extends CFMLWriterImpl implements WhiteS
 	public CFMLWriterWhiteSpace(HttpServletResponse rsp, int bufferSize, boolean autoFlush, boolean closeConn, boolean showVersion, boolean contentLength) {
 		super(rsp, bufferSize, autoFlush,closeConn,showVersion,contentLength);
 	}
+
+	/**
+	 * constructor of the class
+	 * @param req
+	 * @param rsp
+	 * @param bufferSize 
+	 * @param autoFlush 
+	 * @param allowCompression 
+	 */
+	public CFMLWriterWhiteSpace(HttpServletRequest req, HttpServletResponse rsp, int bufferSize, boolean autoFlush, boolean closeConn, boolean showVersion, boolean contentLength, boolean allowCompression) {
+		super(req, rsp, bufferSize, autoFlush,closeConn,showVersion,contentLength,allowCompression);
+	}
 	
 
 	/**
@@ -251,7 +264,7 @@ public final class CFMLWriterWhiteSpace extends CFMLWriterImpl implements WhiteS
 	 * @see railo.runtime.writer.CFMLWriterImpl#write(char[], int, int)
 	 */
 	public void write(char[] chars, int off, int len) throws IOException {
-		for(int i=off;i<len;i++) {
+		for(int i=off;i<off+len;i++) {
 			print(chars[i]);
 		}
 	}
@@ -10,6 +10,7 @@ import railo.transformer.bytecode.BytecodeException;
 import railo.transformer.bytecode.cast.CastBoolean;
 import railo.transformer.bytecode.expression.ExprBoolean;
 import railo.transformer.bytecode.expression.Expression;
+import railo.transformer.bytecode.util.ExpressionUtil;
 
 public final class DoWhile extends StatementBase implements FlowControl,HasBody {
 
@@ -41,6 +42,7 @@ public final class DoWhile extends StatementBase implements FlowControl,HasBody
 	public void _writeOut(BytecodeContext bc) throws BytecodeException {
 		GeneratorAdapter adapter = bc.getAdapter();
 		adapter.visitLabel(begin);
+		ExpressionUtil.writeCheckRequestTimeout(bc);
 		body.writeOut(bc);
 		
 		adapter.visitLabel(beforeEnd);
@@ -63,6 +63,7 @@ public final class For extends StatementBase implements FlowControl,HasBody {
 		adapter.visitJumpInsn(Opcodes.GOTO, afterUpdate);
 		adapter.visitLabel(afterInit);
 		
+		ExpressionUtil.writeCheckRequestTimeout(bc);
 		body.writeOut(bc);
 		
 		adapter.visitLabel(beforeUpdate);
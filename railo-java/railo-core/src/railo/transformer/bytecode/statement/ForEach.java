@@ -93,6 +93,7 @@ public final class ForEach extends StatementBase implements FlowControl,HasBody
 			adapter.pop();
 			
 			// Body
+			ExpressionUtil.writeCheckRequestTimeout(bc);
 			body.writeOut(bc);
 			adapter.visitJumpInsn(Opcodes.GOTO, begin);
 			adapter.visitLabel(end);
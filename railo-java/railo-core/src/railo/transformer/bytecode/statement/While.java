@@ -11,6 +11,7 @@ import railo.transformer.bytecode.cast.CastBoolean;
 import railo.transformer.bytecode.expression.ExprBoolean;
 import railo.transformer.bytecode.expression.Expression;
 import railo.transformer.bytecode.literal.LitBoolean;
+import railo.transformer.bytecode.util.ExpressionUtil;
 
 public final class While extends StatementBase implements FlowControl,HasBody {
 	
@@ -59,6 +60,7 @@ public final class While extends StatementBase implements FlowControl,HasBody {
 		expr.writeOut(bc, Expression.MODE_VALUE);
 		adapter.ifZCmp(Opcodes.IFEQ, end);
 		
+		ExpressionUtil.writeCheckRequestTimeout(bc);
 		body.writeOut(bc);
 		adapter.visitJumpInsn(Opcodes.GOTO, begin);
 		
@@ -303,6 +303,7 @@ public final class TagLoop extends TagBase implements FlowControl {
 			adapter.invokeVirtual(Types.VARIABLE_REFERENCE, SET);
 			adapter.pop();
 		
+			ExpressionUtil.writeCheckRequestTimeout(bc);
 			getBody().writeOut(bc);
 		whileVisitor.visitAfterBody(bc,getEndLine());
 		
@@ -319,6 +320,7 @@ public final class TagLoop extends TagBase implements FlowControl {
 		whileVisitor.visitBeforeExpression(bc);
 			CastBoolean.toExprBoolean(getAttribute("condition").getValue()).writeOut(bc, Expression.MODE_VALUE);
 		whileVisitor.visitAfterExpressionBeforeBody(bc);
+			ExpressionUtil.writeCheckRequestTimeout(bc);
 			getBody().writeOut(bc);
 		whileVisitor.visitAfterBody(bc,getEndLine());
 		
@@ -483,6 +485,7 @@ public final class TagLoop extends TagBase implements FlowControl {
 				adapter.invokeVirtual(Types.VARIABLE_REFERENCE, SET);
 				adapter.pop();
 				
+				ExpressionUtil.writeCheckRequestTimeout(bc);
 				getBody().writeOut(bc);
 				
 			whileVisitor.visitAfterBody(bc,getEndLine());
@@ -628,6 +631,7 @@ public final class TagLoop extends TagBase implements FlowControl {
 				//adapter.visitVarInsn(Opcodes.DLOAD, i);
 				//adapter.invokeVirtual(Types.VARIABLE_REFERENCE, SET_DOUBLE);
 				
+				ExpressionUtil.writeCheckRequestTimeout(bc);
 				getBody().writeOut(bc);
 			
 			forContitionVisitor.visitEndBody(bc,getEndLine());
@@ -699,6 +703,7 @@ public final class TagLoop extends TagBase implements FlowControl {
 			adapter.invokeInterface(Types.ARRAY, GETE);
 			adapter.invokeVirtual(Types.VARIABLE_REFERENCE, SET);
 			adapter.pop();
+			ExpressionUtil.writeCheckRequestTimeout(bc);
 			getBody().writeOut(bc);
 		forVisitor.visitEnd(bc, len, true,getStartLine()); 
 	}
@@ -776,6 +781,7 @@ public final class TagLoop extends TagBase implements FlowControl {
 			// For
 			
 			int i=forContitionVisitor.visitBegin(adapter, start, true);
+				ExpressionUtil.writeCheckRequestTimeout(bc);
 				getBody().writeOut(bc);
 			forContitionVisitor.visitEndBeforeContition(bc,1,false,getStartLine());
 				
@@ -6,6 +6,7 @@ import railo.transformer.bytecode.BytecodeContext;
 import railo.transformer.bytecode.BytecodeException;
 import railo.transformer.bytecode.expression.Expression;
 import railo.transformer.bytecode.statement.FlowControl;
+import railo.transformer.bytecode.util.ExpressionUtil;
 import railo.transformer.bytecode.visitor.WhileVisitor;
 
 public final class TagWhile extends TagBase implements FlowControl {
@@ -32,6 +33,7 @@ public final class TagWhile extends TagBase implements FlowControl {
 		wv.visitBeforeExpression(bc);
 			getAttribute("condition").getValue().writeOut(bc, Expression.MODE_VALUE);
 		wv.visitAfterExpressionBeforeBody(bc);
+			ExpressionUtil.writeCheckRequestTimeout(bc);
 			getBody().writeOut(bc);
 		wv.visitAfterBody(bc,getEndLine());
 	}
@@ -24,6 +24,11 @@ public final class ExpressionUtil {
 			Types.VOID,
 			new Type[]{Types.INT_VALUE});
 	
+	private static final Method CHECK_REQUEST_TIMEOUT = new Method(
+			"checkRequestTimeout",
+			Types.VOID,
+			new Type[]{});
+	
 	/*public static final Method START = new Method(
 			"exeLogStart",
 			Types.VOID,
@@ -109,6 +114,20 @@ public final class ExpressionUtil {
 		}		
 	}
   
+    /**
+     * writes a check if the request run into a timeout, used at the begin of every loop iteration,
+     * so a endless loop can be ended without stopping the thread
+     * @param bc
+     */
+    public static void writeCheckRequestTimeout(BytecodeContext bc) {
+    	// only the call methods have the PageContext as first argument
+    	if(StringUtil.indexOfIgnoreCase(bc.getMethod().getName(),"call")==-1)return;
+    	GeneratorAdapter adapter = bc.getAdapter();
+    	adapter.loadArg(0);
+        adapter.checkCast(Types.PAGE_CONTEXT_IMPL);
+	    adapter.invokeVirtual(Types.PAGE_CONTEXT_IMPL, CHECK_REQUEST_TIMEOUT);
+	}
+  
     /*public static void writeLogEnd(BytecodeContext bc) {
     	if(!bc.writeLog())return;
 		try{